@@ -16,43 +16,53 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.FrameDecoder;
 
 /**
  * A dispatcher for the AddATudeAIO server
  */
 public class AddATudeAIODispatcher {
 
-    /** Default buffer size */
-    private static final int BUFSIZE = 1024;
     /** Protocol-specific handler */
     private final AddATudeAIOHandler handler;
     /** Server logger */
     private final Logger logger;
-    /** Buffer to read into */
-    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFSIZE);
-    /** Buffers to write from */
-    private List<ByteBuffer> writeBufferList = new ArrayList<>();
-    /** Local byte buffer for processing */
-    private final byte[] localBuffer = new byte[BUFSIZE];
+    /** Pool that read buffers are borrowed from */
+    private final BufferPool bufferPool;
+    /** One-byte buffer that a read waits on while the client is idle */
+    private final ByteBuffer peekBuffer = ByteBuffer.allocate(1);
+    /** Buffer borrowed for the read in flight, or null if none is */
+    private ByteBuffer readBuffer;
+    /** Splits the bytes read into messages, and holds a partial one */
+    private final FrameDecoder decoder = new FrameDecoder();
+    /** Limit on the replies held for the client */
+    private final WriteLimit writeLimit;
+    /** Replies waiting to be written */
+    private final WriteQueue writeQueue;
 
     /**
      * Instantiate dispatcher for new client
      * 
      * @param handler
      *            protocol-specific handler
+     * @param bufferPool
+     *            pool that read buffers are borrowed from
+     * @param writeLimit
+     *            limit on the replies held for the client
      * @param logger
      *            server logger
      */
     public AddATudeAIODispatcher(final AddATudeAIOHandler handler,
+            final BufferPool bufferPool, final WriteLimit writeLimit,
             final Logger logger) {
         this.handler = handler;
+        this.bufferPool = bufferPool;
+        this.writeLimit = writeLimit;
+        this.writeQueue = new WriteQueue(writeLimit);
         this.logger = logger;
     }
 
@@ -64,132 +74,261 @@ public class AddATudeAIODispatcher {
      */
     public void handleAccept(final AsynchronousSocketChannel clientChannel) {
         /** Prepare for reading. We don't need to send anything back. */
-        processWriteBuffer(clientChannel, null);
+        read(clientChannel);
     }
 
     /**
-     * Prepare the write buffer containing given bytes to be sent on given
-     * channel
+     * Handle the messages read so far, then write the replies, or read more
+     * if there are none.
      * 
      * @param clientChannel
-     *            channel on which to send bytes
-     * @param buf
-     *            bytes to send
+     *            channel of the client
      */
-    private void processWriteBuffer(
-            final AsynchronousSocketChannel clientChannel, final byte[] buf) {
-        /** If buffer contains data to write, prepare for sending. */
-        if (buf != null && buf.length > 0) {
-            writeBufferList.add(ByteBuffer.wrap(buf));
-            clientChannel.write(writeBufferList.toArray(new ByteBuffer[] {}), 0,
-                    writeBufferList.size(), -1, null, this,
-                    makeWriteCompletionHandler(clientChannel, logger));
-            /** If buffer does not contain data, prepare for reading */
-        } else {
-            clientChannel.read(readBuffer, this,
-                    makeReadCompletionHandler(clientChannel, logger));
+    private void serve(final AsynchronousSocketChannel clientChannel) {
+        if (handleFrames(clientChannel)) {
+            writeOrRead(clientChannel);
         }
     }
 
     /**
-     * Handle client read
+     * Write the replies, or read more if there are none.
      * 
      * @param clientChannel
-     *            channel for reading
+     *            channel of the client
      */
-    public void handleRead(final AsynchronousSocketChannel clientChannel) {
-        /** Read next set of bytes */
-        readBuffer.flip();
-        readBuffer.get(localBuffer, 0, readBuffer.limit());
+    private void writeOrRead(final AsynchronousSocketChannel clientChannel) {
+        if (!writeQueue.isEmpty()) {
+            write(clientChannel);
+        } else {
+            read(clientChannel);
+        }
+    }
 
-        /**
-         * Get the position of the end of line character, -1 if it doesn't
-         * exist.
-         */
-        int pos = getEOLNPosition();
+    /**
+     * Handle every whole message read so far, until the write queue is full.
+     * A message left over when the queue fills is put back in the decoder to
+     * wait for the queue to be written, and no more is read from the client
+     * meanwhile.
+     * 
+     * @param clientChannel
+     *            channel of the client
+     * @return false if the client was disconnected for going past the limit
+     */
+    private boolean handleFrames(
+            final AsynchronousSocketChannel clientChannel) {
+        InetSocketAddress socketAddress = null;
+        try {
+            socketAddress = (InetSocketAddress) clientChannel
+                    .getRemoteAddress();
+        } catch (IOException e) {
+            System.err.println("Problem fetching channel's socket address.");
+        }
 
-        byte buf[] = null;
-        if (pos != -1) {
-            /**
-             * Because there was a message amidst the buffer's bytes, tell the
-             * handler to handle it.
-             */
-            try {
-                InetSocketAddress socketAddress = (InetSocketAddress) clientChannel
-                        .getRemoteAddress();
-                buf = handler.handleMessage(Arrays.copyOf(localBuffer, pos),
-                        logger, socketAddress);
-            } catch (IOException e) {
-                System.err
-                        .println("Problem fetching channel's socket address.");
+        while (decoder.nextFrame()) {
+            if (writeQueue.isFull()) {
+                decoder.unread();
+                if (writeLimit.countExceeded()) {
+                    logger.warning("Write queue over limit. Closing "
+                            + clientChannel);
+                    close(clientChannel);
+                    return false;
+                }
+                return true;
+            }
+            ByteBuffer buf = handler.handleMessage(decoder.getFrameArray(),
+                    decoder.getFrameOffset(), decoder.getFrameLength(),
+                    socketAddress);
+            if (buf.hasRemaining()) {
+                writeQueue.add(buf);
             }
-            /**
-             * After handling it, reset the read buffer to hold what was left
-             * from reading the message.
-             */
-            readBuffer.position(0);
-            readBuffer.put(localBuffer, pos, readBuffer.limit());
-            readBuffer.limit(readBuffer.limit() - pos);
-        } else {
-            /**
-             * If no message has been received, readjust the buffer's stuff to
-             * keep the old information.
-             */
-            readBuffer.position(readBuffer.limit());
-            readBuffer.limit(readBuffer.capacity());
         }
+        /** Hold no buffer while no partial message is waiting. */
+        decoder.releaseAll();
+        return true;
+    }
 
-        /** Write result */
-        processWriteBuffer(clientChannel, buf);
+    /**
+     * Write the waiting replies with one gathering write.
+     * 
+     * @param clientChannel
+     *            channel for writing
+     */
+    private void write(final AsynchronousSocketChannel clientChannel) {
+        clientChannel.write(writeQueue.getBuffers(), writeQueue.getOffset(),
+                writeQueue.getLength(), -1, null, this,
+                makeWriteCompletionHandler(clientChannel, logger));
     }
 
     /**
-     * Get the position of the character after the eoln sequence
+     * Close the client's channel, logging if that fails.
      * 
-     * @return position of the character after the eoln sequence
+     * @param clientChannel
+     *            channel to close
      */
-    public int getEOLNPosition() {
-        int pos = -1;
-        boolean found = false;
-        for (int i = 1; i < readBuffer.limit() && !found; ++i) {
-            if ((char) localBuffer[i - 1] == AddATudeMessage.EOLN.charAt(0)
-                    && (char) localBuffer[i] == AddATudeMessage.EOLN
-                            .charAt(1)) {
-                pos = i + 1;
-                found = true;
-            }
+    private void close(final AsynchronousSocketChannel clientChannel) {
+        try {
+            clientChannel.close();
+        } catch (IOException e) {
+            logger.warning(
+                    "Attempted to close " + clientChannel + " and failed");
         }
-        return pos;
     }
 
     /**
-     * Handle client write
+     * Wait for the client to send something with a one-byte read, so that an
+     * idle client holds no buffer from the pool.
      * 
      * @param clientChannel
-     *            channel for writing
+     *            channel for reading
+     */
+    private void read(final AsynchronousSocketChannel clientChannel) {
+        peekBuffer.clear();
+        clientChannel.read(peekBuffer, this,
+                makePeekCompletionHandler(clientChannel, logger));
+    }
+
+    /**
+     * Borrow a buffer from the pool, starting with the byte the idle read
+     * got, and read the rest of what the client has sent into it. The client
+     * has sent something, so the buffer is only held while a message is on
+     * its way.
+     * 
+     * @param clientChannel
+     *            channel for reading
+     */
+    public void readRest(final AsynchronousSocketChannel clientChannel) {
+        readBuffer = bufferPool.acquire();
+        peekBuffer.flip();
+        readBuffer.put(peekBuffer);
+        clientChannel.read(readBuffer, this,
+                makeReadCompletionHandler(clientChannel, logger));
+    }
+
+    /**
+     * Give the buffer borrowed for reading back to the pool, if there is one.
      */
-    public void handleWrite(final AsynchronousSocketChannel clientChannel) {
+    public void releaseReadBuffer() {
+        if (readBuffer != null) {
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+    /**
+     * Handle client read
+     * 
+     * @param clientChannel
+     *            channel for reading
+     */
+    public void handleRead(final AsynchronousSocketChannel clientChannel) {
         /**
-         * Remove first buffer in list until list is empty or the first buffer
-         * has bytes left to write
+         * Handle the messages straight from the buffer, let the decoder copy
+         * what's left over and give the buffer back, or close the channel if
+         * the client has sent a message that is too long.
          */
-        while (!writeBufferList.isEmpty()
-                && !writeBufferList.get(0).hasRemaining()) {
+        readBuffer.flip();
+        boolean served;
+        try {
+            decoder.setSource(readBuffer);
+            served = handleFrames(clientChannel);
+            decoder.keepRest();
+        } catch (AddATudeException e) {
+            logger.warning(e.getMessage() + " Closing " + clientChannel);
+            close(clientChannel);
+            return;
+        } finally {
+            releaseReadBuffer();
+        }
 
-            writeBufferList.remove(0);
+        /** Write results, or read more */
+        if (served) {
+            writeOrRead(clientChannel);
         }
-        /** Nothing to write, so read */
-        if (writeBufferList.isEmpty()) {
-            clientChannel.read(readBuffer, this,
-                    makeReadCompletionHandler(clientChannel, logger));
-        } else {
+    }
+
+    /**
+     * Handle client write
+     * 
+     * @param clientChannel
+     *            channel for writing
+     * @param bytesWritten
+     *            number of bytes the write took
+     */
+    public void handleWrite(final AsynchronousSocketChannel clientChannel,
+            final long bytesWritten) {
+        /** Drop the replies that have been written */
+        writeQueue.removeWritten(bytesWritten);
+        if (!writeQueue.isEmpty()) {
             /** More to write */
-            clientChannel.write(writeBufferList.toArray(new ByteBuffer[] {}), 0,
-                    writeBufferList.size(), -1, null, this,
-                    makeWriteCompletionHandler(clientChannel, logger));
+            write(clientChannel);
+        } else {
+            /** Caught up, so handle any message left waiting, or read */
+            serve(clientChannel);
         }
     }
 
+    /**
+     * Create completion handler for the idle read
+     * 
+     * @param clientChannel
+     *            channel for reading
+     * @param logger
+     *            server logger
+     * 
+     * @return idle read completion handler
+     */
+    public static CompletionHandler<Integer, AddATudeAIODispatcher> makePeekCompletionHandler(
+            final AsynchronousSocketChannel clientChannel,
+            final Logger logger) {
+        return new CompletionHandler<Integer, AddATudeAIODispatcher>() {
+
+            /**
+             * Called when the idle read completes
+             * 
+             * @param bytesRead
+             *            number of bytes read
+             * 
+             * @param aioDispatcher
+             *            AIO dispatcher for handling read
+             */
+            public void completed(final Integer bytesRead,
+                    final AddATudeAIODispatcher aioDispatcher) {
+                try {
+                    /** If other end closed, we will */
+                    if (bytesRead == -1) {
+                        clientChannel.close();
+                        logger.log(Level.INFO, "***client terminated");
+                        return;
+                    }
+                    /** Read the rest into a buffer from the pool */
+                    aioDispatcher.readRest(clientChannel);
+                } catch (IOException ex) {
+                    failed(ex, aioDispatcher);
+                }
+            }
+
+            /**
+             * Called if the idle read fails
+             * 
+             * @param ex
+             *            exception triggered by read failure
+             * 
+             * @param aioDispatcher
+             *            AIO dispatcher for handling read
+             */
+            public void failed(final Throwable ex,
+                    final AddATudeAIODispatcher aioDispatcher) {
+                logger.log(Level.WARNING, "read failed", ex);
+                try {
+                    clientChannel.close();
+                } catch (IOException e) {
+                    logger.warning("Attempted to close " + clientChannel
+                            + " and failed");
+                }
+            }
+        };
+    }
+
     /**
      * Create completion handler for read
      * 
@@ -219,6 +358,7 @@ public class AddATudeAIODispatcher {
                 try {
                     /** If other end closed, we will */
                     if (bytesRead == -1) {
+                        aioDispatcher.releaseReadBuffer();
                         clientChannel.close();
                         logger.log(Level.INFO, "***client terminated");
                         return;
@@ -242,6 +382,7 @@ public class AddATudeAIODispatcher {
             public void failed(final Throwable ex,
                     final AddATudeAIODispatcher aioDispatcher) {
                 logger.log(Level.WARNING, "read failed", ex);
+                aioDispatcher.releaseReadBuffer();
                 try {
                     clientChannel.close();
                 } catch (IOException e) {
@@ -278,7 +419,7 @@ public class AddATudeAIODispatcher {
              */
             public void completed(final Long bytesWritten,
                     final AddATudeAIODispatcher aioDispatcher) {
-                aioDispatcher.handleWrite(clientChannel);
+                aioDispatcher.handleWrite(clientChannel, bytesWritten);
             }
 
             /**
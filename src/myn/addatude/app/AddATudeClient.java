@@ -14,7 +14,7 @@ package myn.addatude.app;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
@@ -351,8 +351,7 @@ public class AddATudeClient {
     public static void reportResponse(AddATudeLocationResponse response) {
         System.out.println(
                 "mapID=" + response.getMapId() + " - " + response.getMapName());
-        ArrayList<LocationRecord> locationList = (ArrayList<LocationRecord>) response
-                .getLocationRecordList();
+        List<LocationRecord> locationList = response.getLocationRecordList();
 
         for (int i = 0; i < locationList.size(); ++i) {
             LocationRecord temp = locationList.get(i);
@@ -15,15 +15,16 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -38,40 +39,123 @@ import myn.notifi.app.NoTiFiServer;
  * @version 16 October 2015
  * @author Austin Sandlin
  */
-public class AddATudeServer {
-    /** Server socket variable. */
-    private static ServerSocket serverSocket;
+public class AddATudeServer implements AddATudeTransport {
     /** Final variable for the marker file. */
     private static final String MARKER_FILE = "markers.js";
     /** Final variable for the log file. */
     private static final String LOG_FILE = "connections.log";
-    /** Logger for the logging of things in the client handler. */
-    private static Logger logger = Logger.getLogger(LOG_FILE);
-
-    public static NoTiFiServer notifiServer;
-
-    /** Map manager for google. */
-    public static MapManager mapManager;
 
     /** Final variable for server timeout. */
     public static final int TIMEOUT = 50000;
 
-    /** Maps for linking information and storing it for the client handler. */
-    public static SortedMap<Integer, String> nameMap = Collections
-            .synchronizedSortedMap(new TreeMap<Integer, String>());
+    /** Server socket variable. */
+    private final ServerSocket serverSocket;
+    /** The number of threads accepting clients. */
+    private final int threadPoolSize;
+    /** The engine that handles the clients' messages. */
+    private final LocationService service;
+
+    /**
+     * Constructs a server that accepts clients on the given socket and hands
+     * their messages to the given service.
+     * 
+     * @param serverSocket
+     *            the socket to accept clients on
+     * @param threadPoolSize
+     *            the number of threads accepting clients, or 0 to give each
+     *            client its own thread
+     * @param service
+     *            the engine that handles the clients' messages
+     */
+    public AddATudeServer(ServerSocket serverSocket, int threadPoolSize,
+            LocationService service) {
+        this.serverSocket = serverSocket;
+        this.threadPoolSize = threadPoolSize;
+        this.service = service;
+    }
 
-    public static SortedMap<Integer, ArrayList<LocationRecord>> locationMap = Collections
-            .synchronizedSortedMap(
-                    new TreeMap<Integer, ArrayList<LocationRecord>>());
+    /**
+     * Starts the pool of threads. Each one accepts a client and handles it
+     * until it disconnects. If the pool size is 0, one thread accepts clients
+     * instead and hands each of them to a thread of its own, so idle clients
+     * don't hold up the others.
+     */
+    @Override
+    public void start() {
+        if (threadPoolSize <= 0) {
+            startPerClient(newPerClientExecutor());
+            return;
+        }
+        for (int i = 0; i < threadPoolSize; ++i) {
+            Thread thread = new Thread() {
+                public void run() {
+                    while (true) {
+                        try {
+                            /** Block on waiting for the client connection. */
+                            Socket clientSocket = serverSocket.accept();
+                            ClientHandler.handleClient(clientSocket, service);
+                        } catch (IOException e) {
+                            System.err.println(e.getMessage());
+                        }
+                    }
+                }
+            };
+            thread.start();
+        }
+    }
 
-    public static SortedMap<Integer, String> usernameMap = Collections
-            .synchronizedSortedMap(new TreeMap<Integer, String>());
+    /**
+     * Starts the thread that accepts clients and hands each one to the given
+     * executor to handle.
+     * 
+     * @param executor
+     *            runs each client's handler
+     */
+    private void startPerClient(final ExecutorService executor) {
+        Thread thread = new Thread() {
+            public void run() {
+                while (true) {
+                    try {
+                        /** Block on waiting for the client connection. */
+                        Socket clientSocket = serverSocket.accept();
+                        executor.execute(
+                                new ClientHandler(clientSocket, service));
+                    } catch (IOException e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+            }
+        };
+        thread.start();
+    }
+
+    /**
+     * Makes the executor that gives each client its own thread. Virtual
+     * threads are used when the JVM has them, since a mostly idle client then
+     * costs almost nothing to keep. Otherwise each client gets a platform
+     * thread, reused after the client disconnects. The virtual thread
+     * executor is looked up by name so that this still builds and runs on
+     * JVMs without it.
+     * 
+     * @return an executor that runs each task on its own thread
+     */
+    static ExecutorService newPerClientExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
 
     public static void main(String[] args) throws IOException {
         /** Check parameters! */
-        if (args.length != 3) {
-            System.err.println(
-                    "Parameter(s): <Server Port> <Thread Pool Size> <Password File>");
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Parameter(s): <Server Port> "
+                    + "<Thread Pool Size, 0 for a thread per client> "
+                    + "<Password File> "
+                    + "[<Multicast Group>:<Port>[@<Interface>]]");
             return;
         }
 
@@ -88,12 +172,16 @@ public class AddATudeServer {
         int threadPoolSize = 0;
         try {
             threadPoolSize = Integer.parseInt(args[1]);
+            if (threadPoolSize < 0) {
+                throw new NumberFormatException();
+            }
         } catch (NumberFormatException e) {
             System.err.println("Thread pool size is not a valid integer.");
             System.exit(0);
         }
 
         /** Read the user names from the password file. */
+        SortedMap<Integer, String> usernameMap = new TreeMap<Integer, String>();
         try {
             Scanner passwordFile = new Scanner(new File(args[2]),
                     MessageOutput.ENCODING);
@@ -114,6 +202,7 @@ public class AddATudeServer {
         }
 
         /** Set the server socket and allow it to be restarted instantly. */
+        ServerSocket serverSocket = null;
         try {
             serverSocket = new ServerSocket(serverPort);
             serverSocket.setReuseAddress(true);
@@ -123,43 +212,52 @@ public class AddATudeServer {
         }
 
         /** Instantiate the google map stuff with the proper file. */
-        mapManager = new MemoryMapManager();
-        mapManager.register(new GoogleMapMaker(MARKER_FILE, mapManager));
+        IndexedMapManager mapManager = new IndexedMapManager();
+        MarkerWriter markerWriter = new MarkerWriter(MARKER_FILE, mapManager);
+        mapManager.register(markerWriter);
 
         /** Setup the logger handlers for writing to the file. */
+        Logger logger = Logger.getLogger(LOG_FILE);
         FileHandler fileHandler = new FileHandler(LOG_FILE);
         fileHandler.setFormatter(new SimpleFormatter());
         logger.addHandler(fileHandler);
 
-        /** Hard coded mapId and class name, since we weren't given any... */
-        nameMap.put(345, "Class Map");
-        /** Make a blank ArrayList for the map with mapId and locations. */
-        locationMap.put(345, new ArrayList<LocationRecord>());
-
         /** Create a NoTiFiServer to handle any UDP packets for updates. */
-        notifiServer = new NoTiFiServer(serverSocket.getLocalPort(),
-                serverSocket.getInetAddress(), logger);
+        NoTiFiServer notifiServer = new NoTiFiServer(
+                serverSocket.getLocalPort(), serverSocket.getInetAddress(),
+                logger);
+
+        /** Publish notifications to the multicast group too, if given. */
+        if (args.length == 4) {
+            try {
+                notifiServer.enableMulticast(args[3]);
+            } catch (IOException e) {
+                System.err.println("Unable to use multicast group: "
+                        + e.getMessage());
+                System.exit(0);
+            }
+        }
+
+        /** Make the engine that the client handlers all share. */
+        LocationService service = new LocationService(usernameMap,
+                notifiServer, mapManager, logger);
+
+        /** Hard coded mapId and class name, since we weren't given any... */
+        try {
+            service.addMap(345, "Class Map");
+        } catch (AddATudeException e) {
+            System.err.println("Unable to make the map: " + e.getMessage());
+            System.exit(0);
+        }
 
         /**
          * Do the threading here. The threads run a client handler that do all
          * the work...
          */
-        for (int i = 0; i < threadPoolSize; ++i) {
-            Thread thread = new Thread() {
-                public void run() {
-                    while (true) {
-                        try {
-                            /** Block on waiting for the client connection. */
-                            Socket clientSocket = serverSocket.accept();
-                            ClientHandler.handleClient(clientSocket, logger);
-                        } catch (IOException e) {
-                            System.err.println(e.getMessage());
-                        }
-                    }
-                }
-            };
-            thread.start();
-        }
+        new AddATudeServer(serverSocket, threadPoolSize, service).start();
+
+        /** Log the server's numbers every so often. */
+        new ServerReport(logger, notifiServer, markerWriter).start();
     }
 }
 
@@ -172,20 +270,20 @@ public class AddATudeServer {
 class ClientHandler implements Runnable {
     /** Socket variable for the client socket. */
     private Socket clientSocket;
-    /** Logger variable for the logger. */
-    private Logger logger;
+    /** The engine that handles the client's messages. */
+    private LocationService service;
 
     /**
      * Constructor for the client handler class.
      * 
      * @param clientSocket
      *            socket for the client
-     * @param logger
-     *            logger for the server
+     * @param service
+     *            the engine that handles the client's messages
      */
-    public ClientHandler(Socket clientSocket, Logger logger) {
+    public ClientHandler(Socket clientSocket, LocationService service) {
         this.clientSocket = clientSocket;
-        this.logger = logger;
+        this.service = service;
     }
 
     /**
@@ -194,10 +292,15 @@ class ClientHandler implements Runnable {
      * 
      * @param clientSocket
      *            socket for the client
-     * @param logger
-     *            logger for the server
+     * @param service
+     *            the engine that handles the client's messages
      */
-    public static void handleClient(Socket clientSocket, Logger logger) {
+    public static void handleClient(Socket clientSocket,
+            LocationService service) {
+        /** The client's address, for logging. */
+        InetSocketAddress client = (InetSocketAddress) clientSocket
+                .getRemoteSocketAddress();
+
         /** Set the timeout to 5 seconds for the client. */
         try {
             clientSocket.setSoTimeout(AddATudeServer.TIMEOUT);
@@ -237,7 +340,7 @@ class ClientHandler implements Runnable {
                  * AddATudeError message to send to the user. Then clear the
                  * buffer from the remaining junk.
                  */
-                messageOut = makeError(0, e.getMessage());
+                messageOut = service.makeError(0, e.getMessage(), client);
                 done = purge(in);
             } catch (AddATudeOperationException e) {
                 /**
@@ -245,14 +348,16 @@ class ClientHandler implements Runnable {
                  * AddATudeError message to send to the user.Then clear the
                  * buffer from the remaining junk.
                  */
-                messageOut = makeError(e.getMapId(), e.getMessage());
+                messageOut = service.makeError(e.getMapId(), e.getMessage(),
+                        client);
                 done = purge(in);
             } catch (AddATudeException e) {
                 /**
                  * If the client time's out, send the unable to parse message
                  * and disconnect them.
                  */
-                messageOut = makeError(0, "Unable to parse message");
+                messageOut = service.makeError(0, "Unable to parse message",
+                        client);
                 /**
                  * If there is a cause for the AddATudeException and the cause
                  * is an instance of an IOException, that means the
@@ -279,79 +384,10 @@ class ClientHandler implements Runnable {
 
             /**
              * If the stream hasn't closed and we haven't already generated an
-             * error message above, then we have more to do.
+             * error message above, then the service works out the reply.
              */
             if (!done && messageOut == null) {
-                /**
-                 * If the mapId for the input message exists in our records,
-                 * then we can continue.
-                 */
-                if (existingMapID(messageIn.getMapId())) {
-                    switch (messageIn.getOperation()) {
-                    case AddATudeMessage.NEW_OPERATION:
-                        /**
-                         * Since we know it's a new operation at this point,
-                         * then we can make a LocationRecord for ease of use.
-                         */
-                        LocationRecord location = ((AddATudeNewLocation) messageIn)
-                                .getLocationRecord();
-
-                        /**
-                         * Next, we need to check if the user exists in our map.
-                         * If the user exists, we can update the map with the
-                         * right information.
-                         */
-                        if (existingUserID(location.getUserId())) {
-                            /**
-                             * Update the location map with the user's new
-                             * location and make a response to send back.
-                             */
-                            updateMap(messageIn.getMapId(), location);
-                            messageOut = makeResponse(messageIn.getMapId());
-
-                            /**
-                             * If the message we wound up writing was a new
-                             * location,then we need to log that update to
-                             * position message.
-                             */
-                            location = ((AddATudeNewLocation) messageIn)
-                                    .getLocationRecord();
-                            logger.info(clientSocket.getInetAddress() + " "
-                                    + clientSocket.getPort() + " "
-                                    + location.getLocationName() + "-"
-                                    + location.getLocationDescription() + " at "
-                                    + location.getLongitude() + ","
-                                    + location.getLatitude());
-                        } else {
-                            /**
-                             * If the user doesn't exist, report that to the
-                             * client.
-                             */
-                            messageOut = makeError(messageIn.getMapId(),
-                                    "No such user: " + location.getUserId());
-                        }
-                        break;
-                    case AddATudeMessage.REQUEST_OPERATION:
-                        /** Make a response to send back. */
-                        messageOut = makeResponse(messageIn.getMapId());
-                        break;
-                    default:
-                        /**
-                         * If the operation isn't a new operation or a request,
-                         * then we have an error message to write.
-                         */
-                        messageOut = makeError(messageIn.getMapId(),
-                                "Unexpected message type: "
-                                        + messageIn.getOperation());
-                    }
-                } else {
-                    /**
-                     * If the mapId doesn't exist, we need to report that to the
-                     * client.
-                     */
-                    messageOut = makeError(messageIn.getMapId(),
-                            "No such map: " + messageIn.getMapId());
-                }
+                messageOut = service.handle(messageIn, client);
             }
 
             /**
@@ -360,17 +396,6 @@ class ClientHandler implements Runnable {
              */
             try {
                 messageOut.encode(out);
-
-                /**
-                 * If the message we wound up writing was an error,then we need
-                 * to log that error message.
-                 */
-                if (AddATudeMessage.ERROR_OPERATION
-                        .equals(messageOut.getOperation())) {
-                    logger.info(clientSocket.getInetAddress() + " "
-                            + clientSocket.getPort() + " "
-                            + ((AddATudeError) messageOut).getErrorMessage());
-                }
             } catch (AddATudeException e) {
                 System.err.println("Failed to encode to the outputstream.");
             }
@@ -381,7 +406,8 @@ class ClientHandler implements Runnable {
          * socket.
          */
         try {
-            logger.warning("***client terminated" + System.lineSeparator());
+            service.getLogger()
+                    .warning("***client terminated" + System.lineSeparator());
             clientSocket.close();
         } catch (IOException e) {
             System.err.println("Ran into issue closing the socket.");
@@ -389,67 +415,6 @@ class ClientHandler implements Runnable {
 
     }
 
-    /**
-     * This is a helper function for making an error message. This cleans up
-     * some code in the main looping function because it limits the number of
-     * try-catch blocks.
-     * 
-     * @param mapId
-     *            the map id for the error
-     * @param message
-     *            the message about the error
-     * @return an AddATudeError message to eventually be sent to the client
-     */
-    private static AddATudeError makeError(int mapId, String message) {
-        AddATudeError toReturn = null;
-        try {
-            toReturn = new AddATudeError(mapId, message);
-        } catch (AddATudeException e) {
-            System.err.println(
-                    "Problem making error message with message: " + message);
-        }
-        return toReturn;
-    }
-
-    /**
-     * This is a helper function for making a location response message. This
-     * cleans up some code in the main looping function because it limits the
-     * number of try-catch blocks needed.
-     * 
-     * @param mapId
-     *            the map id for the error
-     * @return an AddATudeLocationResponse message to eventually be sent to the
-     *         client
-     */
-    private static AddATudeLocationResponse makeResponse(int mapId) {
-        AddATudeLocationResponse toReturn = null;
-        /**
-         * As long as the user sent a new location or request operation with
-         * valid fields, they will always get a response message back. The
-         * insertion of the new location was already done above, so we just need
-         * to worry about the response. We assume that we've reached all error
-         * messages already, so this won't override any.
-         */
-        try {
-            /**
-             * Make a response with the original mapId and the name in the
-             * table.
-             */
-            toReturn = new AddATudeLocationResponse(mapId,
-                    AddATudeServer.nameMap.get(mapId));
-            /**
-             * No easy function for this in AddATudeLocationResponse, so add the
-             * location record to the response one by one.
-             */
-            for (LocationRecord lr : AddATudeServer.locationMap.get(mapId)) {
-                toReturn.addLocationRecord(lr);
-            }
-        } catch (AddATudeException e) {
-            System.err.println(e.getMessage());
-        }
-        return toReturn;
-    }
-
     /**
      * This is a wrapper function for MessageInput's purge function that cleans
      * up the InputStream from a failed message that left stuff in the stream.
@@ -479,135 +444,12 @@ class ClientHandler implements Runnable {
         return toReturn;
     }
 
-    /**
-     * This function checks if a particular mapId exists in our map of
-     * locationRecords
-     * 
-     * @param mapId
-     *            the mapId to check existence
-     * @return a boolean representing whether or not the mapId is valid
-     */
-    private static boolean existingMapID(int mapId) {
-        ArrayList<LocationRecord> mapList = AddATudeServer.locationMap
-                .get(mapId);
-        return !(null == mapList);
-    }
-
-    /**
-     * This function checks if a particular userId exists in our map of user
-     * names
-     * 
-     * @param userId
-     *            the userId to check existence
-     * @return a boolean representing whether or not the userId is valid
-     */
-    private static boolean existingUserID(int userId) {
-        String userList = AddATudeServer.usernameMap.get(userId);
-        return !(null == userList);
-    }
-
-    /**
-     * This function updates the map containing user locations for a particular
-     * map. This should only be called if there is a valid new location message
-     * that needs to update the map. It also updates the location with the
-     * Google Maps manager.
-     * 
-     * @param mapId
-     *            the map to insert the new locationRecord to
-     * @param locationRecord
-     *            the locationRecord that needs inserting/updating
-     */
-    private static void updateMap(int mapId, LocationRecord locationRecord) {
-        /** Get the map list to use for updating. */
-        ArrayList<LocationRecord> mapList = AddATudeServer.locationMap
-                .get(mapId);
-
-        /**
-         * Attempt to rewrite the locationRecord's location name to include the
-         * user's user name.
-         */
-        try {
-            locationRecord.setLocationName(
-                    AddATudeServer.usernameMap.get(locationRecord.getUserId())
-                            + ": " + locationRecord.getLocationName());
-        } catch (AddATudeException e) {
-            System.err.println(
-                    "Trouble doing userId stuff for the location name.");
-        }
-
-        /** Attempt to update the user's location in the map. */
-        boolean found = false;
-        for (int i = 0; i < mapList.size() && !found; ++i) {
-            if (mapList.get(i).getUserId() == locationRecord.getUserId()) {
-                /**
-                 * Notify the client about a duplicate. Since there is a
-                 * duplicate, we need to alert the client that a location was
-                 * deleted.
-                 */
-                try {
-                    AddATudeServer.notifiServer
-                            .notifyDeletion(mapList.get(i).getUserId(),
-                                    Double.parseDouble(
-                                            mapList.get(i).getLongitude()),
-                            Double.parseDouble(mapList.get(i).getLatitude()),
-                            mapList.get(i).getLocationName(),
-                            mapList.get(i).getLocationDescription());
-                } catch (NumberFormatException e) {
-                    System.err.println(
-                            "LocationRecord's string longitude or latitude "
-                                    + "could not be converted to a double.");
-                } catch (IOException e) {
-                    System.err.println(
-                            "Could not send notification of location deletion.");
-                }
-
-                AddATudeServer.mapManager
-                        .deleteLocation(mapList.get(i).getLocationName());
-                mapList.set(i, locationRecord);
-                found = true;
-            }
-        }
-        /** If the location wasn't found, add it to the map. */
-
-        if (!found) {
-            mapList.add(locationRecord);
-        }
-
-        /**
-         * Tell the client about an addition to the location. This happens
-         * regardless of there being a duplicate, because there is always a
-         * location being added. (As long as there isn't an error.)
-         */
-        try {
-            AddATudeServer.notifiServer.notifyAddition(
-                    locationRecord.getUserId(),
-                    Double.parseDouble(locationRecord.getLongitude()),
-                    Double.parseDouble(locationRecord.getLatitude()),
-                    locationRecord.getLocationName(),
-                    locationRecord.getLocationDescription());
-        } catch (NumberFormatException e) {
-            System.err.println(
-                    "LocationRecord's string longitude or latitude could not "
-                            + "be converted to a double.");
-        } catch (IOException e) {
-            System.err.println(
-                    "Could not send notification of location addition.");
-        }
-
-        /** Add the location to Google Maps. */
-        AddATudeServer.mapManager.addLocation(new Location(
-                locationRecord.getLocationName(), locationRecord.getLongitude(),
-                locationRecord.getLatitude(),
-                locationRecord.getLocationDescription(), Location.Color.GREEN));
-
-    }
-
     /**
      * This function just overrides the run function to run our particular
      * handleClient function.
      */
     @Override
     public void run() {
-        handleClient(clientSocket, logger);
+        handleClient(clientSocket, service);
     }
 }
\ No newline at end of file
@@ -19,8 +19,6 @@ import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.SortedMap;
@@ -40,34 +38,98 @@ import myn.notifi.app.NoTiFiServer;
  * @version 1 December 2015
  * @author Austin Sandlin
  */
-public class AddATudeServerAIO {
-    /** Server socket variable. */
-    private static AsynchronousServerSocketChannel serverChannel;
+public class AddATudeServerAIO implements AddATudeTransport {
     /** Final variable for the marker file. */
     private static final String MARKER_FILE = "markers.js";
     /** Final variable for the log file. */
     private static final String LOG_FILE = "connections.log";
-    /** Logger for the logging of things in the client handler. */
-    public static Logger logger = Logger.getLogger(LOG_FILE);
-
-    public static NoTiFiServer notifiServer;
-
-    /** Map manager for google. */
-    public static MapManager mapManager;
 
     /** Final variable for server timeout. */
     public static final int TIMEOUT = 50000;
 
-    /** Maps for linking information and storing it for the client handler. */
-    public static SortedMap<Integer, String> nameMap = Collections
-            .synchronizedSortedMap(new TreeMap<Integer, String>());
+    /** Size of each pooled read buffer. */
+    public static final int READ_BUFFER_SIZE = 1024;
+    /** Number of read buffers cut from each pool slab. */
+    public static final int BUFFERS_PER_SLAB = 256;
+    /** Most slabs the pool allocates, which bounds its memory. */
+    public static final int MAX_SLABS = 64;
 
-    public static SortedMap<Integer, ArrayList<LocationRecord>> locationMap = Collections
-            .synchronizedSortedMap(
-                    new TreeMap<Integer, ArrayList<LocationRecord>>());
+    /** Server socket variable. */
+    private final AsynchronousServerSocketChannel serverChannel;
+    /** The engine that handles the clients' messages. */
+    private final LocationService service;
+    /** The pool that every client's read buffers are borrowed from. */
+    private final BufferPool bufferPool;
+    /** The limit on the replies held for each client. */
+    private final WriteLimit writeLimit;
 
-    public static SortedMap<Integer, String> usernameMap = Collections
-            .synchronizedSortedMap(new TreeMap<Integer, String>());
+    /**
+     * Constructs a server that accepts clients on the given channel and hands
+     * their messages to the given service.
+     * 
+     * @param serverChannel
+     *            the channel to accept clients on
+     * @param service
+     *            the engine that handles the clients' messages
+     */
+    public AddATudeServerAIO(AsynchronousServerSocketChannel serverChannel,
+            LocationService service) {
+        this(serverChannel, service, new BufferPool(READ_BUFFER_SIZE,
+                BUFFERS_PER_SLAB, MAX_SLABS, false), new WriteLimit());
+    }
+
+    /**
+     * Constructs a server that accepts clients on the given channel, hands
+     * their messages to the given service, borrows read buffers from the
+     * given pool, and holds no more replies for each client than the given
+     * limit allows.
+     * 
+     * @param serverChannel
+     *            the channel to accept clients on
+     * @param service
+     *            the engine that handles the clients' messages
+     * @param bufferPool
+     *            the pool that read buffers are borrowed from, which must
+     *            hand out heap buffers so messages are decoded from them
+     * @param writeLimit
+     *            the limit on the replies held for each client
+     */
+    public AddATudeServerAIO(AsynchronousServerSocketChannel serverChannel,
+            LocationService service, BufferPool bufferPool,
+            WriteLimit writeLimit) {
+        this.serverChannel = serverChannel;
+        this.service = service;
+        this.bufferPool = bufferPool;
+        this.writeLimit = writeLimit;
+    }
+
+    /**
+     * Returns the pool that read buffers are borrowed from, for its numbers.
+     * 
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the limit on the replies held for each client, for its numbers.
+     * 
+     * @return the write limit
+     */
+    public WriteLimit getWriteLimit() {
+        return writeLimit;
+    }
+
+    /**
+     * Starts accepting clients. The accepts and everything after them run on
+     * the channel group's threads.
+     */
+    @Override
+    public void start() {
+        serverChannel.accept(null, makeAcceptCompletionHandler(serverChannel,
+                service, bufferPool, writeLimit));
+    }
 
     /**
      * Main function for the server.
@@ -79,8 +141,9 @@ public class AddATudeServerAIO {
      */
     public static void main(String[] args) throws IOException {
         /** Check parameters! */
-        if (args.length != 2) {
-            System.err.println("Parameter(s): <Server Port> <Password File>");
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Parameter(s): <Server Port> <Password File> "
+                    + "[<Multicast Group>:<Port>[@<Interface>]]");
             return;
         }
 
@@ -94,6 +157,7 @@ public class AddATudeServerAIO {
         }
 
         /** Read the user names from the password file. */
+        SortedMap<Integer, String> usernameMap = new TreeMap<Integer, String>();
         try {
             Scanner passwordFile = new Scanner(new File(args[1]),
                     MessageOutput.ENCODING);
@@ -114,20 +178,18 @@ public class AddATudeServerAIO {
         }
 
         /** Instantiate the google map stuff with the proper file. */
-        mapManager = new MemoryMapManager();
-        mapManager.register(new GoogleMapMaker(MARKER_FILE, mapManager));
+        IndexedMapManager mapManager = new IndexedMapManager();
+        MarkerWriter markerWriter = new MarkerWriter(MARKER_FILE, mapManager);
+        mapManager.register(markerWriter);
 
         /** Setup the logger handlers for writing to the file. */
+        Logger logger = Logger.getLogger(LOG_FILE);
         FileHandler fileHandler = new FileHandler(LOG_FILE);
         fileHandler.setFormatter(new SimpleFormatter());
         logger.addHandler(fileHandler);
 
-        /** Hard coded mapId and class name, since we weren't given any... */
-        nameMap.put(345, "Class Map");
-        /** Make a blank ArrayList for the map with mapId and locations. */
-        locationMap.put(345, new ArrayList<LocationRecord>());
-
         /** Set the server socket and allow it to be restarted instantly. */
+        AsynchronousServerSocketChannel serverChannel = null;
         try {
             serverChannel = AsynchronousServerSocketChannel.open()
                     .bind(new InetSocketAddress(serverPort));
@@ -138,14 +200,42 @@ public class AddATudeServerAIO {
         }
 
         /** Create a NoTiFiServer to handle any UDP packets for updates. */
-        notifiServer = new NoTiFiServer(serverPort,
+        NoTiFiServer notifiServer = new NoTiFiServer(serverPort,
                 ((InetSocketAddress) serverChannel.getLocalAddress())
                         .getAddress(),
                 logger);
 
+        /** Publish notifications to the multicast group too, if given. */
+        if (args.length == 3) {
+            try {
+                notifiServer.enableMulticast(args[2]);
+            } catch (IOException e) {
+                System.err.println("Unable to use multicast group: "
+                        + e.getMessage());
+                System.exit(0);
+            }
+        }
+
+        /** Make the engine that the client handlers all share. */
+        LocationService service = new LocationService(usernameMap,
+                notifiServer, mapManager, logger);
+
+        /** Hard coded mapId and class name, since we weren't given any... */
+        try {
+            service.addMap(345, "Class Map");
+        } catch (AddATudeException e) {
+            System.err.println("Unable to make the map: " + e.getMessage());
+            System.exit(0);
+        }
+
         /** Accept any incoming client connection. */
-        serverChannel.accept(null,
-                makeAcceptCompletionHandler(serverChannel, logger));
+        AddATudeServerAIO server = new AddATudeServerAIO(serverChannel,
+                service);
+        server.start();
+
+        /** Log the server's numbers every so often. */
+        new ServerReport(logger, notifiServer, markerWriter,
+                server.getBufferPool(), server.getWriteLimit()).start();
 
         try {
             Thread.currentThread().join();
@@ -159,13 +249,19 @@ public class AddATudeServerAIO {
      * 
      * @param serverChannel
      *            the serversocketchannel to call accept on
-     * @param logger
-     *            to log important stuff
+     * @param service
+     *            the engine that handles the clients' messages
+     * @param bufferPool
+     *            the pool that read buffers are borrowed from
+     * @param writeLimit
+     *            the limit on the replies held for each client
      * @return the completion handler
      */
     public static CompletionHandler<AsynchronousSocketChannel, Void> makeAcceptCompletionHandler(
             final AsynchronousServerSocketChannel serverChannel,
-            final Logger logger) {
+            final LocationService service, final BufferPool bufferPool,
+            final WriteLimit writeLimit) {
+        final Logger logger = service.getLogger();
         return new CompletionHandler<AsynchronousSocketChannel, Void>() {
 
             @Override
@@ -173,7 +269,8 @@ public class AddATudeServerAIO {
                     Void attachment) {
                 serverChannel.accept(null, this);
                 AddATudeAIODispatcher aioDispatcher = new AddATudeAIODispatcher(
-                        new AddATudeAIOHandler(), logger);
+                        new AddATudeAIOHandler(service), bufferPool,
+                        writeLimit, logger);
                 try {
                     logger.log(Level.INFO, "Handling client "
                             + clientChannel.getRemoteAddress());
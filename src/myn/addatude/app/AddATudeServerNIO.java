@@ -0,0 +1,615 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class serves as a server for the AddATude protocol that runs a few
+ * Selector event loops.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import mapservice.*;
+import myn.addatude.protocol.*;
+import myn.notifi.app.NoTiFiServer;
+
+/**
+ * This class serves as a server that follows the AddATude protocol. One thread
+ * accepts clients and deals them out to a fixed number of event loops, each
+ * with its own Selector. A client stays on the same loop for as long as it is
+ * connected, and its buffers and handler are made once and reused for every
+ * read and write.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class AddATudeServerNIO implements AddATudeTransport {
+    /** Final variable for the marker file. */
+    private static final String MARKER_FILE = "markers.js";
+    /** Final variable for the log file. */
+    private static final String LOG_FILE = "connections.log";
+
+    /** Server socket variable. */
+    private final ServerSocketChannel serverChannel;
+    /** The event loops that clients are dealt out to. */
+    private final EventLoop[] eventLoops;
+    /** The engine that handles the clients' messages. */
+    private final LocationService service;
+    /** The limit on the replies held for each client. */
+    private final WriteLimit writeLimit;
+    /** Whether the server has been closed. */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a server that accepts clients on the given channel and hands
+     * their messages to the given service.
+     * 
+     * @param serverChannel
+     *            the channel to accept clients on
+     * @param eventLoopCount
+     *            the number of event loops, or 0 for one per core
+     * @param service
+     *            the engine that handles the clients' messages
+     * @throws IOException
+     *             if a Selector can't be opened
+     */
+    public AddATudeServerNIO(ServerSocketChannel serverChannel,
+            int eventLoopCount, LocationService service) throws IOException {
+        this(serverChannel, eventLoopCount, service, new WriteLimit());
+    }
+
+    /**
+     * Constructs a server that accepts clients on the given channel, hands
+     * their messages to the given service, and holds no more replies for each
+     * client than the given limit allows.
+     * 
+     * @param serverChannel
+     *            the channel to accept clients on
+     * @param eventLoopCount
+     *            the number of event loops, or 0 for one per core
+     * @param service
+     *            the engine that handles the clients' messages
+     * @param writeLimit
+     *            the limit on the replies held for each client
+     * @throws IOException
+     *             if a Selector can't be opened
+     */
+    public AddATudeServerNIO(ServerSocketChannel serverChannel,
+            int eventLoopCount, LocationService service, WriteLimit writeLimit)
+            throws IOException {
+        if (eventLoopCount <= 0) {
+            eventLoopCount = Runtime.getRuntime().availableProcessors();
+        }
+        this.serverChannel = serverChannel;
+        this.service = service;
+        this.writeLimit = writeLimit;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; ++i) {
+            eventLoops[i] = new EventLoop(service, writeLimit, i);
+        }
+    }
+
+    /**
+     * Returns the limit on the replies held for each client, for its numbers.
+     * 
+     * @return the write limit
+     */
+    public WriteLimit getWriteLimit() {
+        return writeLimit;
+    }
+
+    /**
+     * Starts the event loops and the thread that accepts clients. Clients are
+     * dealt out to the loops in turn.
+     */
+    @Override
+    public void start() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        Thread acceptor = new Thread("AddATude acceptor") {
+            public void run() {
+                int next = 0;
+                while (!closed) {
+                    try {
+                        /** Block on waiting for the client connection. */
+                        SocketChannel clientChannel = serverChannel.accept();
+                        service.getLogger().log(Level.INFO, "Handling client "
+                                + clientChannel.getRemoteAddress());
+                        eventLoops[next].register(clientChannel);
+                        next = (next + 1) % eventLoops.length;
+                    } catch (IOException e) {
+                        if (closed) {
+                            return;
+                        }
+                        System.err.println(e.getMessage());
+                    }
+                }
+            }
+        };
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting clients, and closes every client and event loop. The
+     * service is left running, for whatever else uses it. Closing again does
+     * nothing.
+     * 
+     * @throws IOException
+     *             if the server channel can't be closed
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        serverChannel.close();
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.close();
+        }
+    }
+
+    /**
+     * Main function for the server.
+     * 
+     * @param args
+     *            input arguments
+     * @throws IOException
+     *             if something bad happens
+     */
+    public static void main(String[] args) throws IOException {
+        /** Check parameters! */
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Parameter(s): <Server Port> <Password File> "
+                    + "[<Event Loops> "
+                    + "[<Multicast Group>:<Port>[@<Interface>]]]");
+            return;
+        }
+
+        /** Read and set the server port. */
+        int serverPort = 0;
+        try {
+            serverPort = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            System.err.println("Port is not a valid integer.");
+            System.exit(0);
+        }
+
+        /** Read the number of event loops, if given. */
+        int eventLoopCount = 0;
+        if (args.length >= 3) {
+            try {
+                eventLoopCount = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                System.err.println("Event loops is not a valid integer.");
+                System.exit(0);
+            }
+        }
+
+        /** Read the user names from the password file. */
+        SortedMap<Integer, String> usernameMap = new TreeMap<Integer, String>();
+        try {
+            Scanner passwordFile = new Scanner(new File(args[1]),
+                    MessageOutput.ENCODING);
+            passwordFile.useDelimiter(":");
+            while (passwordFile.hasNextInt()) {
+                /** Read in the userId and then the user name. */
+                usernameMap.put(passwordFile.nextInt(), passwordFile.next());
+                /** Skip password for user. */
+                passwordFile.nextLine();
+            }
+            passwordFile.close();
+        } catch (FileNotFoundException e) {
+            System.err.println("Password file not found.");
+            System.exit(0);
+        } catch (NoSuchElementException e) {
+            System.err.println("Expected something, but found nothing.");
+            System.exit(0);
+        }
+
+        /** Instantiate the google map stuff with the proper file. */
+        IndexedMapManager mapManager = new IndexedMapManager();
+        MarkerWriter markerWriter = new MarkerWriter(MARKER_FILE, mapManager);
+        mapManager.register(markerWriter);
+
+        /** Setup the logger handlers for writing to the file. */
+        Logger logger = Logger.getLogger(LOG_FILE);
+        FileHandler fileHandler = new FileHandler(LOG_FILE);
+        fileHandler.setFormatter(new SimpleFormatter());
+        logger.addHandler(fileHandler);
+
+        /** Set the server socket and allow it to be restarted instantly. */
+        ServerSocketChannel serverChannel = null;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(serverPort));
+        } catch (IOException e) {
+            System.err.println("Unable to make server socket.");
+            System.exit(0);
+        }
+
+        /** Create a NoTiFiServer to handle any UDP packets for updates. */
+        NoTiFiServer notifiServer = new NoTiFiServer(serverPort,
+                ((InetSocketAddress) serverChannel.getLocalAddress())
+                        .getAddress(),
+                logger);
+
+        /** Publish notifications to the multicast group too, if given. */
+        if (args.length == 4) {
+            try {
+                notifiServer.enableMulticast(args[3]);
+            } catch (IOException e) {
+                System.err.println("Unable to use multicast group: "
+                        + e.getMessage());
+                System.exit(0);
+            }
+        }
+
+        /** Make the engine that the event loops all share. */
+        LocationService service = new LocationService(usernameMap,
+                notifiServer, mapManager, logger);
+
+        /** Hard coded mapId and class name, since we weren't given any... */
+        try {
+            service.addMap(345, "Class Map");
+        } catch (AddATudeException e) {
+            System.err.println("Unable to make the map: " + e.getMessage());
+            System.exit(0);
+        }
+
+        AddATudeServerNIO server = new AddATudeServerNIO(serverChannel,
+                eventLoopCount, service);
+        server.start();
+
+        /** Log the server's numbers every so often. */
+        new ServerReport(logger, notifiServer, markerWriter,
+                server.getWriteLimit()).start();
+    }
+}
+
+/**
+ * This class is one event loop. It owns a Selector and every client that is
+ * registered with it, and it does all of their reading and writing on its own
+ * thread.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+class EventLoop extends Thread {
+    /** The selector for this loop's clients. */
+    private final Selector selector;
+    /** Clients that were accepted but haven't joined the selector yet. */
+    private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+    /** Protocol-specific handler, shared by this loop's clients. */
+    private final AddATudeAIOHandler handler;
+    /** Server logger */
+    private final Logger logger;
+    /** The limit on the replies held for each client. */
+    private final WriteLimit writeLimit;
+    /**
+     * The direct buffer every read on this loop goes into. Reads happen one
+     * at a time on this thread, so one buffer serves all of the loop's
+     * clients.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer
+            .allocateDirect(AddATudeServerAIO.READ_BUFFER_SIZE);
+    /** Whether the loop has been told to stop. */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs an event loop.
+     * 
+     * @param service
+     *            the engine that handles the clients' messages
+     * @param writeLimit
+     *            the limit on the replies held for each client
+     * @param index
+     *            the number of the loop, used in the thread's name
+     * @throws IOException
+     *             if the Selector can't be opened
+     */
+    public EventLoop(LocationService service, WriteLimit writeLimit,
+            int index) throws IOException {
+        super("AddATude event loop " + index);
+        this.selector = Selector.open();
+        this.handler = new AddATudeAIOHandler(service);
+        this.logger = service.getLogger();
+        this.writeLimit = writeLimit;
+    }
+
+    /**
+     * Hands a newly accepted client to this loop. This can be called from any
+     * thread.
+     * 
+     * @param clientChannel
+     *            the client's channel
+     */
+    public void register(SocketChannel clientChannel) {
+        pending.add(clientChannel);
+        selector.wakeup();
+    }
+
+    /**
+     * Tells the loop to stop. It closes its clients and its selector on its
+     * own thread, once it wakes up. This can be called from any thread.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Loops until closed, waiting for clients to be ready and serving them.
+     */
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "select failed", e);
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+
+            /** Join any clients that were handed to us. */
+            SocketChannel clientChannel;
+            while ((clientChannel = pending.poll()) != null) {
+                try {
+                    clientChannel.configureBlocking(false);
+                    SelectionKey key = clientChannel.register(selector,
+                            SelectionKey.OP_READ);
+                    key.attach(new Connection(clientChannel, key, handler,
+                            writeLimit, logger));
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "register failed", e);
+                    Connection.closeQuietly(clientChannel, logger);
+                }
+            }
+
+            /** Serve whichever clients are ready. */
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    connection.handleRead(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.handleWrite();
+                }
+            }
+        }
+
+        /** Close every client, including any that never joined. */
+        for (SelectionKey key : selector.keys()) {
+            Connection.closeQuietly((SocketChannel) key.channel(), logger);
+        }
+        SocketChannel clientChannel;
+        while ((clientChannel = pending.poll()) != null) {
+            Connection.closeQuietly(clientChannel, logger);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "selector close failed", e);
+        }
+    }
+}
+
+/**
+ * This class is one client on an event loop. It keeps any partial message the
+ * client has sent and the replies still waiting to be written, and it is only
+ * ever used from its loop's thread.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+class Connection {
+    /** The client's channel. */
+    private final SocketChannel clientChannel;
+    /** The channel's key in the loop's selector. */
+    private final SelectionKey key;
+    /** Protocol-specific handler */
+    private final AddATudeAIOHandler handler;
+    /** Server logger */
+    private final Logger logger;
+    /** The client's address, for logging. */
+    private final InetSocketAddress socketAddress;
+    /** Splits the bytes read into messages, and holds what's left over. */
+    private final FrameDecoder decoder = new FrameDecoder();
+    /** The limit on the replies held for the client. */
+    private final WriteLimit writeLimit;
+    /** Replies waiting to be written, in order. */
+    private final WriteQueue writeQueue;
+    /** Whether the decoder's last message is waiting for room in the queue. */
+    private boolean frameWaiting = false;
+
+    /**
+     * Constructs a connection for a client.
+     * 
+     * @param clientChannel
+     *            the client's channel
+     * @param key
+     *            the channel's key in the loop's selector
+     * @param handler
+     *            protocol-specific handler
+     * @param writeLimit
+     *            the limit on the replies held for the client
+     * @param logger
+     *            server logger
+     * @throws IOException
+     *             if the client's address can't be read
+     */
+    public Connection(SocketChannel clientChannel, SelectionKey key,
+            AddATudeAIOHandler handler, WriteLimit writeLimit, Logger logger)
+            throws IOException {
+        this.clientChannel = clientChannel;
+        this.key = key;
+        this.handler = handler;
+        this.writeLimit = writeLimit;
+        this.writeQueue = new WriteQueue(writeLimit);
+        this.logger = logger;
+        this.socketAddress = (InetSocketAddress) clientChannel
+                .getRemoteAddress();
+    }
+
+    /**
+     * Reads what the client has sent, handles every whole message in it, and
+     * starts writing the replies.
+     * 
+     * @param readBuffer
+     *            the loop's buffer to read into
+     */
+    public void handleRead(ByteBuffer readBuffer) {
+        int bytesRead;
+        try {
+            readBuffer.clear();
+            bytesRead = clientChannel.read(readBuffer);
+            readBuffer.flip();
+            decoder.append(readBuffer);
+        } catch (IOException | AddATudeException e) {
+            logger.log(Level.WARNING, "read failed", e);
+            close();
+            return;
+        }
+        /** If other end closed, we will */
+        if (bytesRead == -1) {
+            logger.log(Level.INFO, "***client terminated");
+            close();
+            return;
+        }
+
+        if (handleFrames()) {
+            handleWrite();
+        }
+    }
+
+    /**
+     * Handles each whole message read so far, decoding it where it sits,
+     * until the write queue is full. A message left over when the queue fills
+     * waits for the queue to be written, and the client isn't read from
+     * meanwhile.
+     * 
+     * @return false if the client was disconnected for going past the limit
+     */
+    private boolean handleFrames() {
+        while (frameWaiting || decoder.nextFrame()) {
+            if (writeQueue.isFull()) {
+                frameWaiting = true;
+                if (writeLimit.countExceeded()) {
+                    logger.warning("Write queue over limit. Closing "
+                            + clientChannel);
+                    close();
+                    return false;
+                }
+                return true;
+            }
+            frameWaiting = false;
+            ByteBuffer reply = handler.handleMessage(decoder.getFrameArray(),
+                    decoder.getFrameOffset(), decoder.getFrameLength(),
+                    socketAddress);
+            if (reply.hasRemaining()) {
+                writeQueue.add(reply);
+            }
+        }
+        /** Don't hold on to a buffer that grew for a large message. */
+        decoder.release();
+        return true;
+    }
+
+    /**
+     * Writes as many waiting replies as the channel will take, handling any
+     * message that was waiting for room, and asks to be told when the channel
+     * can take more if any are left. The client is only read from while no
+     * message is waiting.
+     */
+    public void handleWrite() {
+        try {
+            flush();
+            while (frameWaiting && !writeQueue.isFull()) {
+                if (!handleFrames()) {
+                    return;
+                }
+                flush();
+            }
+            key.interestOps((frameWaiting ? 0 : SelectionKey.OP_READ)
+                    | (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "write failed", e);
+            close();
+        }
+    }
+
+    /**
+     * Writes waiting replies with gathering writes until they're all written
+     * or the channel won't take any more.
+     * 
+     * @throws IOException
+     *             if the write fails
+     */
+    private void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            long bytesWritten = clientChannel.write(writeQueue.getBuffers(),
+                    writeQueue.getOffset(), writeQueue.getLength());
+            writeQueue.removeWritten(bytesWritten);
+            if (bytesWritten == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes the client's channel and leaves the selector.
+     */
+    private void close() {
+        key.cancel();
+        closeQuietly(clientChannel, logger);
+    }
+
+    /**
+     * Closes a channel, logging if that fails.
+     * 
+     * @param clientChannel
+     *            the channel to close
+     * @param logger
+     *            server logger
+     */
+    static void closeQuietly(SocketChannel clientChannel, Logger logger) {
+        try {
+            clientChannel.close();
+        } catch (IOException e) {
+            logger.warning("Attempted to close " + clientChannel
+                    + " and failed");
+        }
+    }
+}
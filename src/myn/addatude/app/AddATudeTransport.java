@@ -0,0 +1,35 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This interface is a front end that brings clients to a LocationService.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.io.IOException;
+
+/**
+ * This interface is a front end that brings clients to a LocationService. A
+ * transport accepts connections, decodes the messages clients send, hands
+ * them to the service, and sends back what the service returns. Transports
+ * hold no location state of their own, so any number of them can run over
+ * the same service.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public interface AddATudeTransport {
+
+    /**
+     * Starts accepting clients. This returns once the transport is running.
+     * 
+     * @throws IOException
+     *             if the transport can't start
+     */
+    void start() throws IOException;
+}
@@ -0,0 +1,233 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a pool of buffers cut from a few large slabs.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a pool of buffers, all the same size, cut from a few large
+ * slabs. Connections borrow a buffer only while a read is in flight and give
+ * it back when the read is done, so memory is reused instead of being
+ * allocated per connection and left for the garbage collector. Slabs are
+ * added as needed up to a limit. Past that, borrowers get a buffer of their
+ * own, which is counted as a miss, so the pool never goes past the limit. The
+ * slabs are direct memory by default, or heap arrays for borrowers that
+ * decode straight from the buffer's array. This class is thread safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class BufferPool {
+
+    /** The size of each buffer, in bytes. */
+    private final int bufferSize;
+
+    /** The number of buffers cut from each slab. */
+    private final int buffersPerSlab;
+
+    /** The most slabs that will be allocated. */
+    private final int maxSlabs;
+
+    /** Whether the slabs are direct memory rather than heap arrays. */
+    private final boolean direct;
+
+    /** The arrays of the heap slabs, to tell pooled buffers from misses. */
+    private final Set<byte[]> heapSlabs = Collections
+            .newSetFromMap(new ConcurrentHashMap<byte[], Boolean>());
+
+    /** The number of slabs allocated so far. */
+    private int slabs = 0;
+
+    /** The pooled buffers that aren't borrowed. */
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** The number of borrows that got a pooled buffer. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of borrows that got a buffer of their own instead. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** The number of buffers borrowed and not yet given back. */
+    private final AtomicLong outstanding = new AtomicLong();
+
+    /**
+     * Constructs an empty pool of direct buffers. No memory is allocated until
+     * the first borrow.
+     * 
+     * @param bufferSize
+     *            the size of each buffer, in bytes
+     * @param buffersPerSlab
+     *            the number of buffers cut from each slab
+     * @param maxSlabs
+     *            the most slabs that will be allocated
+     */
+    public BufferPool(int bufferSize, int buffersPerSlab, int maxSlabs) {
+        this(bufferSize, buffersPerSlab, maxSlabs, true);
+    }
+
+    /**
+     * Constructs an empty pool. No memory is allocated until the first
+     * borrow.
+     * 
+     * @param bufferSize
+     *            the size of each buffer, in bytes
+     * @param buffersPerSlab
+     *            the number of buffers cut from each slab
+     * @param maxSlabs
+     *            the most slabs that will be allocated
+     * @param direct
+     *            whether the slabs are direct memory rather than heap arrays
+     */
+    public BufferPool(int bufferSize, int buffersPerSlab, int maxSlabs,
+            boolean direct) {
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = buffersPerSlab;
+        this.maxSlabs = maxSlabs;
+        this.direct = direct;
+    }
+
+    /**
+     * Borrows a cleared buffer. It must be given back with release().
+     * 
+     * @return a pooled buffer, or a heap buffer of its own if the pool is out
+     */
+    public ByteBuffer acquire() {
+        outstanding.incrementAndGet();
+        ByteBuffer buffer = free.poll();
+        if (buffer == null && addSlab()) {
+            buffer = free.poll();
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocate(bufferSize);
+        }
+        hits.incrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer borrowed with acquire(). It must not be used after.
+     * 
+     * @param buffer
+     *            the buffer to give back
+     */
+    public void release(ByteBuffer buffer) {
+        outstanding.decrementAndGet();
+        /** Buffers that came from misses are left to the collector. */
+        if (direct ? buffer.isDirect() : heapSlabs.contains(buffer.array())) {
+            free.add(buffer);
+        }
+    }
+
+    /**
+     * Allocates another slab and cuts it into free buffers, if the limit
+     * hasn't been reached.
+     * 
+     * @return whether a slab was added
+     */
+    private synchronized boolean addSlab() {
+        if (slabs >= maxSlabs) {
+            return false;
+        }
+        ByteBuffer slab;
+        if (direct) {
+            slab = ByteBuffer.allocateDirect(bufferSize * buffersPerSlab);
+        } else {
+            slab = ByteBuffer.allocate(bufferSize * buffersPerSlab);
+            heapSlabs.add(slab.array());
+        }
+        for (int i = 0; i < buffersPerSlab; ++i) {
+            slab.limit((i + 1) * bufferSize);
+            slab.position(i * bufferSize);
+            free.add(slab.slice());
+        }
+        ++slabs;
+        return true;
+    }
+
+    /**
+     * Returns the size of each buffer.
+     * 
+     * @return the buffer size, in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of borrows that got a pooled buffer.
+     * 
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of borrows that got a buffer of their own instead.
+     * 
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the share of borrows that got a pooled buffer.
+     * 
+     * @return the hit rate, from 0 to 1, or 1 if nothing was borrowed
+     */
+    public double getHitRate() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 1 : (double) hit / total;
+    }
+
+    /**
+     * Returns the number of buffers borrowed and not yet given back.
+     * 
+     * @return the number of outstanding buffers
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns the memory the pool has allocated for its slabs.
+     * 
+     * @return the size of all slabs, in bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) slabs * buffersPerSlab * bufferSize;
+    }
+
+    /**
+     * Returns the pool's numbers, for logging.
+     * 
+     * @return a summary of the pool
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "Buffer pool: hit rate %.4f (%d hits, %d misses), "
+                        + "%d outstanding, %d bytes allocated",
+                getHitRate(), getHits(), getMisses(), getOutstanding(),
+                getAllocatedBytes());
+    }
+}
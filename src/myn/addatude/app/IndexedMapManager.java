@@ -0,0 +1,346 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class holds the Google Maps markers, indexed by name and by userId.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mapservice.Location;
+import mapservice.MapManager;
+import mapservice.MapObserver;
+
+/**
+ * This class holds the Google Maps markers, in place of MemoryMapManager.
+ * Markers are found by name, and the ones added for a user by that user's
+ * userId too, so a user's marker can be replaced in one step without knowing
+ * its old name. Adding or deleting takes the same time no matter how many
+ * markers there are.
+ * 
+ * Observers are handed an immutable snapshot of the markers rather than the
+ * set being changed, so they can read it on any thread while it's changed.
+ * Like LocationMap, the snapshot is only built when it's asked for after a
+ * change, so a run of changes costs one snapshot instead of one each.
+ * Observers are told about changes after the lock is let go. Finding the
+ * markers near a point looks through a snapshot too. This class is thread
+ * safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class IndexedMapManager implements MapManager {
+
+    /** The Earth's mean radius, in km. */
+    public static final double EARTH_RADIUS = 6371.0;
+
+    /** The markers, by name, in the order they were added. */
+    private final Map<String, Entry> byName = new LinkedHashMap<String, Entry>();
+
+    /** The names of the markers added for users, by userId. */
+    private final Map<Integer, String> byUser = new HashMap<Integer, String>();
+
+    /** The observers told about every change. */
+    private final List<MapObserver> observers = new CopyOnWriteArrayList<MapObserver>();
+
+    /** The number of changes, which goes up by one with each. */
+    private volatile long version;
+
+    /** The latest snapshot that was built. Replaced, never changed. */
+    private volatile Snapshot snapshot = new Snapshot(0, new Location[0]);
+
+    /**
+     * A marker, and the user it was added for.
+     */
+    private static final class Entry {
+
+        /** The marker. */
+        private final Location location;
+
+        /** The user the marker was added for, or null for none. */
+        private final Integer userId;
+
+        /**
+         * Constructs an entry.
+         * 
+         * @param location
+         *            the marker
+         * @param userId
+         *            the user the marker was added for, or null for none
+         */
+        private Entry(Location location, Integer userId) {
+            this.location = location;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * One version of the markers, as a set that can't be changed. The markers
+     * are kept in an array, since they all have different names already, so
+     * making one is a copy and nothing more. It does not change once it has
+     * been made.
+     */
+    private static final class Snapshot extends AbstractSet<Location> {
+
+        /** The number of changes the snapshot includes. */
+        private final long version;
+
+        /** The markers. */
+        private final Location[] locations;
+
+        /**
+         * Constructs a snapshot.
+         * 
+         * @param version
+         *            the number of changes the snapshot includes
+         * @param locations
+         *            the markers, which the snapshot takes ownership of
+         */
+        private Snapshot(long version, Location[] locations) {
+            this.version = version;
+            this.locations = locations;
+        }
+
+        /**
+         * Returns an iterator over the markers, which can't remove them.
+         */
+        @Override
+        public Iterator<Location> iterator() {
+            return Arrays.asList(locations).iterator();
+        }
+
+        /**
+         * Returns the number of markers.
+         */
+        @Override
+        public int size() {
+            return locations.length;
+        }
+    }
+
+    /**
+     * Adds a marker, replacing the one with the same name if there is one.
+     * 
+     * @param location
+     *            the marker
+     */
+    @Override
+    public void addLocation(Location location) {
+        synchronized (this) {
+            put(location, null);
+        }
+        update();
+    }
+
+    /**
+     * Adds a marker for a user, replacing the user's last marker and the one
+     * with the same name, if there are any.
+     * 
+     * @param userId
+     *            the user
+     * @param location
+     *            the marker
+     */
+    public void addLocation(int userId, Location location) {
+        synchronized (this) {
+            String name = byUser.get(userId);
+            if (name != null) {
+                byName.remove(name);
+            }
+            put(location, userId);
+        }
+        update();
+    }
+
+    /**
+     * Puts a marker in the indexes. This is called while holding the lock.
+     * 
+     * @param location
+     *            the marker
+     * @param userId
+     *            the user the marker is for, or null for none
+     */
+    private void put(Location location, Integer userId) {
+        Entry replaced = byName.remove(location.getName());
+        if (replaced != null && replaced.userId != null) {
+            byUser.remove(replaced.userId);
+        }
+        byName.put(location.getName(), new Entry(location, userId));
+        if (userId != null) {
+            byUser.put(userId, location.getName());
+        }
+        ++version;
+    }
+
+    /**
+     * Returns the markers as they are now. The set can't be changed, and
+     * doesn't change when the markers do.
+     * 
+     * @return a snapshot of the markers
+     */
+    @Override
+    public Set<Location> getLocations() {
+        Snapshot current = snapshot;
+        if (current.version == version) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot.version != version) {
+                Location[] locations = new Location[byName.size()];
+                int i = 0;
+                for (Entry entry : byName.values()) {
+                    locations[i++] = entry.location;
+                }
+                snapshot = new Snapshot(version, locations);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns the markers within a distance of a point, in the order they were
+     * added. The markers are looked through in a snapshot, so this doesn't
+     * hold up changes. Distances are great circle distances on a sphere the
+     * Earth's mean radius, which is close enough for markers on a map. A
+     * marker whose coordinates aren't numbers is never within it.
+     * 
+     * @param latitude
+     *            the latitude of the point, in degrees
+     * @param longitude
+     *            the longitude of the point, in degrees
+     * @param radius
+     *            the distance, in km
+     * @return the markers within the distance, which the caller may change
+     */
+    @Override
+    public List<Location> getLocations(double latitude, double longitude,
+            double radius) {
+        Snapshot current = (Snapshot) getLocations();
+        List<Location> found = new ArrayList<Location>();
+        for (Location location : current.locations) {
+            try {
+                double markerLatitude = Double
+                        .parseDouble(location.getLatitude());
+                double markerLongitude = Double
+                        .parseDouble(location.getLongitude());
+                if (distance(latitude, longitude, markerLatitude,
+                        markerLongitude) <= radius) {
+                    found.add(location);
+                }
+            } catch (NumberFormatException e) {
+                /** Not a place on the map, so not near anything. */
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the great circle distance between two points, by the haversine
+     * formula, which stays accurate for points close together.
+     * 
+     * @param latitude1
+     *            the latitude of the first point, in degrees
+     * @param longitude1
+     *            the longitude of the first point, in degrees
+     * @param latitude2
+     *            the latitude of the second point, in degrees
+     * @param longitude2
+     *            the longitude of the second point, in degrees
+     * @return the distance, in km
+     */
+    private static double distance(double latitude1, double longitude1,
+            double latitude2, double longitude2) {
+        double sinLatitude = Math
+                .sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math
+                .sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude
+                + Math.cos(Math.toRadians(latitude1))
+                        * Math.cos(Math.toRadians(latitude2)) * sinLongitude
+                        * sinLongitude;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Deletes the marker with a name, if there is one.
+     * 
+     * @param name
+     *            the marker's name
+     */
+    @Override
+    public void deleteLocation(String name) {
+        synchronized (this) {
+            Entry removed = byName.remove(name);
+            if (removed == null) {
+                return;
+            }
+            if (removed.userId != null) {
+                byUser.remove(removed.userId);
+            }
+            ++version;
+        }
+        update();
+    }
+
+    /**
+     * Deletes a user's marker, if there is one.
+     * 
+     * @param userId
+     *            the user
+     */
+    public void deleteLocation(int userId) {
+        synchronized (this) {
+            String name = byUser.remove(userId);
+            if (name == null) {
+                return;
+            }
+            byName.remove(name);
+            ++version;
+        }
+        update();
+    }
+
+    /**
+     * Returns the number of markers.
+     * 
+     * @return the number of markers
+     */
+    public synchronized int size() {
+        return byName.size();
+    }
+
+    /**
+     * Adds an observer to tell about every change.
+     * 
+     * @param observer
+     *            the observer
+     */
+    @Override
+    public void register(MapObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Tells the observers that the markers changed.
+     */
+    private void update() {
+        for (MapObserver observer : observers) {
+            observer.update();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class holds the locations for one map as versioned snapshots.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.util.Collections;
+import java.util.List;
+
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationResponse;
+import myn.addatude.protocol.LocationRecord;
+
+/**
+ * This class holds the locations for one map. Updates go into a LocationStore
+ * indexed by userId and bump the map's version. Readers are handed an
+ * immutable snapshot of the locations along with the response message for
+ * it, already encoded. A snapshot is only built when a reader asks for a
+ * version that doesn't have one yet, so updates with no reader between them
+ * cost one snapshot instead of one each. Every NEW is answered with the whole
+ * map, though, so each NEW still builds one, and its cost grows with the map.
+ * That is the protocol's cost, not the store's. Readers of a current snapshot
+ * never wait on a lock or see a list that is being changed.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationMap {
+
+    /** The ID of the map. */
+    private final int mapId;
+
+    /** The name of the map. */
+    private final String mapName;
+
+    /** The locations, changed only while holding this object's lock. */
+    private final LocationStore store = new LocationStore();
+
+    /** The version of the store, which goes up by one with every update. */
+    private volatile long version;
+
+    /** The latest snapshot that was built. Replaced, never changed. */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructs an empty map.
+     * 
+     * @param mapId
+     *            the ID of the map
+     * @param mapName
+     *            the name of the map
+     * @throws AddATudeException
+     *             if the map ID or name can't go in a response message
+     */
+    public LocationMap(int mapId, String mapName) throws AddATudeException {
+        this.mapId = mapId;
+        this.mapName = mapName;
+        this.snapshot = makeSnapshot(0,
+                Collections.<LocationRecord> emptyList());
+    }
+
+    /**
+     * Returns the ID of the map.
+     * 
+     * @return the map ID
+     */
+    public int getMapId() {
+        return mapId;
+    }
+
+    /**
+     * Returns the name of the map.
+     * 
+     * @return the map name
+     */
+    public String getMapName() {
+        return mapName;
+    }
+
+    /**
+     * Returns the latest version of the map.
+     * 
+     * @return the current version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a snapshot of the latest version of the map. If the snapshot has
+     * already been built, this never blocks.
+     * 
+     * @return the current snapshot
+     * @throws AddATudeException
+     *             if the response message can't be made
+     */
+    public Snapshot getSnapshot() throws AddATudeException {
+        Snapshot current = snapshot;
+        if (current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot.getVersion() != version) {
+                snapshot = makeSnapshot(version, store.toList());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Puts a user's location in the map, replacing the location that user had
+     * before. This takes the same time no matter how big the map is. The
+     * record should not be changed after it is handed to this function, since
+     * snapshots share it.
+     * 
+     * @param locationRecord
+     *            the new location
+     * @return the location that was replaced, or null if the user had none
+     */
+    public synchronized LocationRecord update(LocationRecord locationRecord) {
+        LocationRecord replaced = store.put(locationRecord);
+        ++version;
+        return replaced;
+    }
+
+    /**
+     * Removes a user's location from the map.
+     * 
+     * @param userId
+     *            the user whose location is removed
+     * @return the location that was removed, or null if the user had none
+     */
+    public synchronized LocationRecord remove(int userId) {
+        LocationRecord removed = store.remove(userId);
+        if (removed != null) {
+            ++version;
+        }
+        return removed;
+    }
+
+    /**
+     * Builds a snapshot and encodes its response message.
+     * 
+     * @param version
+     *            the version of the snapshot
+     * @param records
+     *            the locations, which the snapshot takes ownership of
+     * @return the new snapshot
+     * @throws AddATudeException
+     *             if the response message can't be made
+     */
+    private Snapshot makeSnapshot(long version, List<LocationRecord> records)
+            throws AddATudeException {
+        AddATudeLocationResponse response = new AddATudeLocationResponse(mapId,
+                mapName);
+        for (LocationRecord record : records) {
+            response.addLocationRecord(record);
+        }
+        response.cacheEncoding();
+        return new Snapshot(version, Collections.unmodifiableList(records),
+                response);
+    }
+
+    /**
+     * This class is one version of a map's locations. It does not change once
+     * it has been made.
+     * 
+     * @version 1 December 2015
+     * @author Austin Sandlin
+     */
+    public static final class Snapshot {
+
+        /** The version, which goes up by one with every update. */
+        private final long version;
+
+        /** The locations in the map, in the order they were added. */
+        private final List<LocationRecord> locationRecords;
+
+        /** The response message for these locations, already encoded. */
+        private final AddATudeLocationResponse response;
+
+        /**
+         * Constructs a snapshot.
+         * 
+         * @param version
+         *            the version of the snapshot
+         * @param locationRecords
+         *            the locations in the map
+         * @param response
+         *            the response message for the locations
+         */
+        private Snapshot(long version, List<LocationRecord> locationRecords,
+                AddATudeLocationResponse response) {
+            this.version = version;
+            this.locationRecords = locationRecords;
+            this.response = response;
+        }
+
+        /**
+         * Returns the version of the snapshot.
+         * 
+         * @return the version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the locations in the map.
+         * 
+         * @return an unmodifiable list of the locations
+         */
+        public List<LocationRecord> getLocationRecords() {
+            return locationRecords;
+        }
+
+        /**
+         * Returns the response message for the locations. The message is
+         * shared by every reader of the snapshot, so it must not be changed.
+         * 
+         * @return the response message
+         */
+        public AddATudeLocationResponse getResponse() {
+            return response;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is the AddATude engine that every server transport runs over.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+import mapservice.Location;
+import myn.addatude.protocol.AddATudeError;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationResponse;
+import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeNewLocation;
+import myn.addatude.protocol.LocationRecord;
+import myn.notifi.app.NoTiFiServer;
+
+/**
+ * This class is the AddATude engine. It holds the maps, the users, and the
+ * hookups to NoTiFi and Google Maps, and it turns each decoded message into
+ * the message to send back. It has no static state and doesn't know how bytes
+ * reach it, so a transport only has to decode messages, hand them to
+ * handle(), and encode what comes back. Several transports can share one
+ * service in the same JVM.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationService {
+
+    /** Maps each mapId to its locations, which are read without locking. */
+    private final SortedMap<Integer, LocationMap> locationMap = new ConcurrentSkipListMap<Integer, LocationMap>();
+
+    /** Maps each userId to the user's name. */
+    private final Map<Integer, String> usernameMap;
+
+    /** The NoTiFi server to tell about location changes. */
+    private final NoTiFiServer notifiServer;
+
+    /** Map manager for google, which finds each user's marker by userId. */
+    private final IndexedMapManager mapManager;
+
+    /** Logger for the logging of things for clients. */
+    private final Logger logger;
+
+    /**
+     * Constructs a service with no maps.
+     * 
+     * @param usernameMap
+     *            the user names, keyed by userId, which are copied
+     * @param notifiServer
+     *            the NoTiFi server to tell about location changes
+     * @param mapManager
+     *            the Google Maps manager to keep up to date
+     * @param logger
+     *            the logger for client activity
+     */
+    public LocationService(Map<Integer, String> usernameMap,
+            NoTiFiServer notifiServer, IndexedMapManager mapManager,
+            Logger logger) {
+        this.usernameMap = new ConcurrentHashMap<Integer, String>(usernameMap);
+        this.notifiServer = notifiServer;
+        this.mapManager = mapManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Adds an empty map to the service.
+     * 
+     * @param mapId
+     *            the ID of the map
+     * @param mapName
+     *            the name of the map
+     * @throws AddATudeException
+     *             if the map ID or name can't go in a response message
+     */
+    public void addMap(int mapId, String mapName) throws AddATudeException {
+        locationMap.put(mapId, new LocationMap(mapId, mapName));
+    }
+
+    /**
+     * Returns a map in the service.
+     * 
+     * @param mapId
+     *            the ID of the map
+     * @return the map, or null if there is no such map
+     */
+    public LocationMap getMap(int mapId) {
+        return locationMap.get(mapId);
+    }
+
+    /**
+     * Returns the logger for client activity.
+     * 
+     * @return the logger
+     */
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * This function does the bulk of the work for a message. It checks the
+     * map and user, updates the map for a new location, and makes the
+     * response or error to send back.
+     * 
+     * @param messageIn
+     *            the message a client sent
+     * @param client
+     *            the client's address, used for logging
+     * @return the message to send back to the client
+     */
+    public AddATudeMessage handle(AddATudeMessage messageIn,
+            InetSocketAddress client) {
+        /**
+         * If the mapId for the input message doesn't exist, we need to report
+         * that to the client.
+         */
+        LocationMap map = locationMap.get(messageIn.getMapId());
+        if (map == null) {
+            return makeError(messageIn.getMapId(),
+                    "No such map: " + messageIn.getMapId(), client);
+        }
+
+        AddATudeMessage messageOut = null;
+        switch (messageIn.getOperation()) {
+        case AddATudeMessage.NEW_OPERATION:
+            /**
+             * Since we know it's a new operation at this point, then we can
+             * make a LocationRecord for ease of use.
+             */
+            LocationRecord location = ((AddATudeNewLocation) messageIn)
+                    .getLocationRecord();
+
+            /**
+             * Next, we need to check if the user exists in our map. If the
+             * user exists, we can update the map with the right information.
+             */
+            if (existingUserID(location.getUserId())) {
+                /**
+                 * Update the location map with the user's new location and
+                 * make a response to send back.
+                 */
+                updateMap(map, location);
+                messageOut = makeResponse(map);
+
+                /** Log the update to position message. */
+                logger.info(client.getAddress() + " " + client.getPort() + " "
+                        + location.getLocationName() + "-"
+                        + location.getLocationDescription() + " at "
+                        + location.getLongitude() + ","
+                        + location.getLatitude());
+            } else {
+                /** If the user doesn't exist, report that to the client. */
+                messageOut = makeError(messageIn.getMapId(),
+                        "No such user: " + location.getUserId(), client);
+            }
+            break;
+        case AddATudeMessage.REQUEST_OPERATION:
+            /** Make a response to send back. */
+            messageOut = makeResponse(map);
+            break;
+        default:
+            /**
+             * If the operation isn't a new operation or a request, then we
+             * have an error message to write.
+             */
+            messageOut = makeError(messageIn.getMapId(),
+                    "Unexpected message type: " + messageIn.getOperation(),
+                    client);
+        }
+        return messageOut;
+    }
+
+    /**
+     * This is a helper function for making an error message, which is also
+     * logged. Transports use it for messages that couldn't be decoded.
+     * 
+     * @param mapId
+     *            the map id for the error
+     * @param message
+     *            the message about the error
+     * @param client
+     *            the client's address, used for logging
+     * @return an AddATudeError message to eventually be sent to the client
+     */
+    public AddATudeError makeError(int mapId, String message,
+            InetSocketAddress client) {
+        AddATudeError toReturn = null;
+        try {
+            toReturn = new AddATudeError(mapId, message);
+        } catch (AddATudeException e) {
+            System.err.println(
+                    "Problem making error message with message: " + message);
+        }
+        logger.info(client.getAddress() + " " + client.getPort() + " "
+                + message);
+        return toReturn;
+    }
+
+    /**
+     * This is a helper function for making a location response message. The
+     * current snapshot of the map already has its response encoded, so there
+     * is nothing to build or lock here unless the map changed since the last
+     * one. Right after a NEW it always has, so each NEW builds a response with
+     * every location in the map, as the protocol asks.
+     * 
+     * @param map
+     *            the map to respond with
+     * @return an AddATudeLocationResponse message to eventually be sent to the
+     *         client
+     */
+    private AddATudeLocationResponse makeResponse(LocationMap map) {
+        AddATudeLocationResponse toReturn = null;
+        try {
+            toReturn = map.getSnapshot().getResponse();
+        } catch (AddATudeException e) {
+            System.err.println(e.getMessage());
+        }
+        return toReturn;
+    }
+
+    /**
+     * This function checks if a particular userId exists in our map of user
+     * names
+     * 
+     * @param userId
+     *            the userId to check existence
+     * @return a boolean representing whether or not the userId is valid
+     */
+    private boolean existingUserID(int userId) {
+        return usernameMap.containsKey(userId);
+    }
+
+    /**
+     * This function updates the map containing user locations. This should
+     * only be called if there is a valid new location message that needs to
+     * update the map. It also tells NoTiFi clients and the Google Maps manager
+     * about the change. NoTiFi can't carry every record AddATude can, so a
+     * name or description too long for it is cut short, and a userId too big
+     * for it isn't sent at all.
+     * 
+     * @param map
+     *            the map to insert the new locationRecord to
+     * @param locationRecord
+     *            the locationRecord that needs inserting/updating
+     */
+    private void updateMap(LocationMap map, LocationRecord locationRecord) {
+        /**
+         * Attempt to rewrite the locationRecord's location name to include the
+         * user's user name.
+         */
+        try {
+            locationRecord.setLocationName(
+                    usernameMap.get(locationRecord.getUserId()) + ": "
+                            + locationRecord.getLocationName());
+        } catch (AddATudeException e) {
+            System.err.println(
+                    "Trouble doing userId stuff for the location name.");
+        }
+
+        /**
+         * Save the record's wire bytes now that it's final, so that every
+         * response it goes into can copy them instead of encoding it again.
+         */
+        try {
+            locationRecord.cacheEncoding();
+        } catch (AddATudeException e) {
+            System.err.println("Could not cache the location's encoding.");
+        }
+
+        /**
+         * Put the user's location in the map, which finds any old location by
+         * userId. The notifications go out after, so the map isn't held up by
+         * them.
+         */
+        LocationRecord replaced = map.update(locationRecord);
+
+        if (locationRecord.getUserId() > NoTiFiServer.MAX_USER_ID) {
+            /**
+             * NoTiFi only has 2 bytes for the userId, so a user past that
+             * can't be told about at all. The user is still on the map.
+             */
+            logger.info("No notification for userId "
+                    + locationRecord.getUserId() + ", which is over "
+                    + NoTiFiServer.MAX_USER_ID);
+        } else if (replaced != null) {
+            /**
+             * The user already had a location, so tell the clients it moved.
+             * The name and description are only sent if they changed.
+             */
+            try {
+                notifiServer.notifyMove(locationRecord.getUserId(),
+                        locationRecord.getLongitudeValue(),
+                        locationRecord.getLatitudeValue(),
+                        changed(fit(replaced.getLocationName()),
+                                fit(locationRecord.getLocationName())),
+                        changed(fit(replaced.getLocationDescription()),
+                                fit(locationRecord.getLocationDescription())));
+            } catch (IOException e) {
+                System.err.println(
+                        "Could not send notification of location move.");
+            }
+        } else {
+            /** Tell the clients about a location for a new user. */
+            try {
+                notifiServer.notifyAddition(locationRecord.getUserId(),
+                        locationRecord.getLongitudeValue(),
+                        locationRecord.getLatitudeValue(),
+                        fit(locationRecord.getLocationName()),
+                        fit(locationRecord.getLocationDescription()));
+            } catch (IOException e) {
+                System.err.println(
+                        "Could not send notification of location addition.");
+            }
+        }
+
+        /**
+         * Add the location to Google Maps, in place of the user's old one,
+         * which the map manager finds by userId.
+         */
+        mapManager.addLocation(locationRecord.getUserId(),
+                new Location(locationRecord.getLocationName(),
+                        locationRecord.getLongitude(),
+                        locationRecord.getLatitude(),
+                        locationRecord.getLocationDescription(),
+                        Location.Color.GREEN));
+    }
+
+    /**
+     * This function cuts a name or description short to what a NoTiFi
+     * notification can carry. AddATude has no such limit, so the map keeps
+     * the whole thing, and NoTiFi clients see the start of it.
+     * 
+     * @param text
+     *            the name or description
+     * @return the text, cut to at most NoTiFiServer.MAX_TEXT_LENGTH characters
+     */
+    private static String fit(String text) {
+        return text.length() > NoTiFiServer.MAX_TEXT_LENGTH
+                ? text.substring(0, NoTiFiServer.MAX_TEXT_LENGTH) : text;
+    }
+
+    /**
+     * This function returns a new value if it's different from the old one,
+     * for a location move that only carries what changed.
+     * 
+     * @param oldValue
+     *            the old value
+     * @param newValue
+     *            the new value
+     * @return the new value, or null if it's the same as the old one
+     */
+    private static String changed(String oldValue, String newValue) {
+        return newValue.equals(oldValue) ? null : newValue;
+    }
+}
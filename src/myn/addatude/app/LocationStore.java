@@ -0,0 +1,87 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class stores one location per user, indexed by userId.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import myn.addatude.protocol.LocationRecord;
+
+/**
+ * This class stores one location per user. Locations are found by userId in
+ * constant time, so putting or removing a user's location costs the same no
+ * matter how many users the map has. Iterating goes in the order users were
+ * first added, and a user who moves keeps their place, the same as the old
+ * list did. This class is not thread safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationStore {
+
+    /** The locations, keyed by userId and kept in the order they were added. */
+    private final Map<Integer, LocationRecord> locations = new LinkedHashMap<Integer, LocationRecord>();
+
+    /**
+     * Puts a user's location in the store, replacing the location that user
+     * had before.
+     * 
+     * @param locationRecord
+     *            the new location
+     * @return the location that was replaced, or null if the user had none
+     */
+    public LocationRecord put(LocationRecord locationRecord) {
+        return locations.put(locationRecord.getUserId(), locationRecord);
+    }
+
+    /**
+     * Removes a user's location from the store.
+     * 
+     * @param userId
+     *            the user whose location is removed
+     * @return the location that was removed, or null if the user had none
+     */
+    public LocationRecord remove(int userId) {
+        return locations.remove(userId);
+    }
+
+    /**
+     * Returns a user's location.
+     * 
+     * @param userId
+     *            the user to look up
+     * @return the user's location, or null if the user has none
+     */
+    public LocationRecord get(int userId) {
+        return locations.get(userId);
+    }
+
+    /**
+     * Returns the number of locations in the store.
+     * 
+     * @return the number of locations
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * Returns a copy of the locations in the store, in order.
+     * 
+     * @return a new list of the locations
+     */
+    public List<LocationRecord> toList() {
+        return new ArrayList<LocationRecord>(locations.values());
+    }
+}
@@ -0,0 +1,306 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class writes the Google Maps marker file in the background, at most
+ * once in a while, however often the map changes.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mapservice.GoogleMapMaker;
+import mapservice.Location;
+import mapservice.MapManager;
+import mapservice.MapObserver;
+
+/**
+ * This class writes the Google Maps marker file, like GoogleMapMaker, but
+ * not on the thread that changed the map. A change only marks the file as
+ * out of date and, if no write is waiting, sets one up on a background
+ * thread. The write happens right away if the last one was long enough ago,
+ * and otherwise once the interval since it is up, so however many changes
+ * come in, the file is written at most once an interval, with all of them.
+ * 
+ * The markers are written to a temporary file next to the marker file, which
+ * is then renamed over it, so a browser never reads half a file. This class
+ * counts the changes and writes, and times the writes. It is thread safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class MarkerWriter implements MapObserver {
+
+    /** The default least time between writes, in ms. */
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    /** The end of a temporary file's name. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The character encoding of the file. */
+    private static final String CHARSET = "UTF-8";
+
+    /** The marker file. */
+    private final File file;
+
+    /** The temporary file the markers are written to first. */
+    private final File tempFile;
+
+    /** The map to write the markers of. */
+    private final MapManager manager;
+
+    /** The least time between writes, in ns. */
+    private final long interval;
+
+    /** The thread the file is written on. */
+    private final Timer timer = new Timer("Marker writer", true);
+
+    /** Whether a write is waiting to happen. */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** When the last write started, from System.nanoTime(). */
+    private volatile long lastWrite;
+
+    /** The number of changes to the map. */
+    private final AtomicLong changes = new AtomicLong();
+
+    /** The number of times the file was written. */
+    private final AtomicLong writes = new AtomicLong();
+
+    /** The number of writes that failed. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /** How long the last write took, in ns. */
+    private volatile long lastTime;
+
+    /** How long all the writes took, in ns. */
+    private final AtomicLong totalTime = new AtomicLong();
+
+    /** How long the longest write took, in ns. */
+    private volatile long maxTime;
+
+    /**
+     * Constructs a writer with the default interval, and writes the file as
+     * the map is now.
+     * 
+     * @param fileName
+     *            the name of the marker file
+     * @param manager
+     *            the map to write the markers of
+     */
+    public MarkerWriter(String fileName, MapManager manager) {
+        this(fileName, manager, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructs a writer, and writes the file as the map is now.
+     * 
+     * @param fileName
+     *            the name of the marker file
+     * @param manager
+     *            the map to write the markers of
+     * @param intervalMillis
+     *            the least time between writes, in ms
+     * @throws IllegalArgumentException
+     *             if the file name or map is null, or the interval is
+     *             negative
+     */
+    public MarkerWriter(String fileName, MapManager manager,
+            long intervalMillis) throws IllegalArgumentException {
+        if (fileName == null || manager == null) {
+            throw new IllegalArgumentException(
+                    "File name and map manager may not be null.");
+        }
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Negative interval.");
+        }
+        this.file = new File(fileName).getAbsoluteFile();
+        this.tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        this.manager = manager;
+        this.interval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.lastWrite = System.nanoTime() - interval;
+        schedule();
+    }
+
+    /**
+     * Takes note that the map changed, and sets up a write if none is
+     * waiting. This returns without writing anything.
+     */
+    @Override
+    public void update() {
+        changes.incrementAndGet();
+        schedule();
+    }
+
+    /**
+     * Sets up a write, for as soon as the interval since the last one is up,
+     * unless one is already waiting.
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long wait = lastWrite + interval - System.nanoTime();
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, Math.max(0, TimeUnit.NANOSECONDS.toMillis(wait)));
+    }
+
+    /**
+     * Writes the markers to the temporary file and renames it over the marker
+     * file. Changes made while this runs set up the next write, and so does a
+     * write that fails.
+     */
+    private void write() {
+        scheduled.set(false);
+        long start = System.nanoTime();
+        lastWrite = start;
+        List<Location> locations;
+        try {
+            locations = new ArrayList<Location>(manager.getLocations());
+        } catch (ConcurrentModificationException e) {
+            /** The map changed while it was copied, so try again later. */
+            failures.incrementAndGet();
+            schedule();
+            return;
+        }
+
+        StringBuilder markers = new StringBuilder("var markers = [\n");
+        for (Location location : locations) {
+            markers.append(GoogleMapMaker.locationJS(location));
+        }
+        markers.append("];");
+        try {
+            Writer out = new OutputStreamWriter(
+                    new FileOutputStream(tempFile), CHARSET);
+            try {
+                out.write(markers.toString());
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            /** The changes still aren't in the file, so try again later. */
+            System.err.println("Could not write marker file.");
+            failures.incrementAndGet();
+            schedule();
+            return;
+        }
+
+        long time = System.nanoTime() - start;
+        writes.incrementAndGet();
+        lastTime = time;
+        totalTime.addAndGet(time);
+        maxTime = Math.max(maxTime, time);
+    }
+
+    /**
+     * Stops writing the file. A change that hasn't been written yet is
+     * dropped.
+     */
+    public void stop() {
+        timer.cancel();
+    }
+
+    /**
+     * Returns the number of changes to the map.
+     * 
+     * @return the number of changes
+     */
+    public long getChanges() {
+        return changes.get();
+    }
+
+    /**
+     * Returns the number of times the file was written.
+     * 
+     * @return the number of writes
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * Returns the number of writes saved by putting changes together, which
+     * is how many more writes GoogleMapMaker would have made.
+     * 
+     * @return the number of writes saved
+     */
+    public long getSaved() {
+        return Math.max(0, changes.get() + 1 - writes.get() - failures.get());
+    }
+
+    /**
+     * Returns the number of writes that failed.
+     * 
+     * @return the number of failures
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns how long the last write took.
+     * 
+     * @return the time, in ns
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Returns how long the longest write took.
+     * 
+     * @return the time, in ns
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Returns the writer's numbers, for logging.
+     * 
+     * @return a summary of the writer
+     */
+    @Override
+    public String toString() {
+        long written = writes.get();
+        return String.format(
+                "Markers: %d changes, %d writes, %d saved, %d failed, "
+                        + "%.2f ms last, %.2f ms average, %.2f ms longest",
+                getChanges(), written, getSaved(), getFailures(),
+                lastTime / 1e6,
+                written == 0 ? 0 : totalTime.get() / 1e6 / written,
+                maxTime / 1e6);
+    }
+}
@@ -0,0 +1,99 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class logs an AddATude server's numbers every so often.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiServer;
+
+/**
+ * This class logs an AddATude server's numbers every so often. Every server
+ * has a NoTiFi server and a MarkerWriter, so their numbers are always
+ * logged: the notifications sent and waiting, the ones sent to make up for
+ * drops, multicast if it's on, the leases, the numbered streams, the
+ * snapshots for new clients, and the marker file's writes. A transport's own
+ * numbers, like its buffer pool, are passed in and logged first.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class ServerReport extends TimerTask {
+
+    /** How often the server's numbers are logged, in ms. */
+    public static final long REPORT_PERIOD = 60000;
+
+    /** Where the numbers are logged. */
+    private final Logger logger;
+
+    /** The server's NoTiFi server. */
+    private final NoTiFiServer notifiServer;
+
+    /** Writes the server's marker file. */
+    private final MarkerWriter markerWriter;
+
+    /** The transport's own numbers, logged by their toString(). */
+    private final Object[] transportNumbers;
+
+    /**
+     * Constructs a report for a server.
+     * 
+     * @param logger
+     *            where the numbers are logged
+     * @param notifiServer
+     *            the server's NoTiFi server
+     * @param markerWriter
+     *            writes the server's marker file
+     * @param transportNumbers
+     *            the transport's own numbers, logged by their toString()
+     */
+    public ServerReport(Logger logger, NoTiFiServer notifiServer,
+            MarkerWriter markerWriter, Object... transportNumbers) {
+        this.logger = logger;
+        this.notifiServer = notifiServer;
+        this.markerWriter = markerWriter;
+        this.transportNumbers = transportNumbers;
+    }
+
+    /**
+     * Starts logging the numbers every report period, on a daemon thread so
+     * it doesn't keep the server running.
+     */
+    public void start() {
+        new Timer("AddATude report", true).schedule(this, REPORT_PERIOD,
+                REPORT_PERIOD);
+    }
+
+    /**
+     * Logs the numbers once.
+     */
+    @Override
+    public void run() {
+        for (Object numbers : transportNumbers) {
+            logger.info(numbers.toString());
+        }
+        if (notifiServer.getFanOut() != null) {
+            logger.info(notifiServer.getFanOut().toString());
+            logger.info(notifiServer.getEventQueue().toString());
+        }
+        logger.info("NoTiFi resyncs: " + notifiServer.getResyncs() + ", "
+                + notifiServer.getResyncRecords() + " notifications");
+        if (notifiServer.getMulticastPublisher() != null) {
+            logger.info(notifiServer.getMulticastPublisher().toString());
+        }
+        logger.info(notifiServer.getLeases().toString());
+        logger.info(notifiServer.getStreams().toString());
+        logger.info(notifiServer.getSnapshots().toString());
+        logger.info(markerWriter.toString());
+    }
+}
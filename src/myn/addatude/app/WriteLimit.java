@@ -0,0 +1,144 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class limits how much a server holds for a client that isn't reading.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class limits how many replies a server holds for one client before
+ * that client has read them, and says what to do with a client that keeps
+ * asking past the limit. Such a client is either left alone until it catches
+ * up, with no more of its requests read meanwhile, or disconnected. One limit
+ * is shared by every client of a server, and it counts how often each of
+ * those happens. This class is thread safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class WriteLimit {
+
+    /** The default most bytes of replies held for one client. */
+    public static final long DEFAULT_MAX_BYTES = 1 << 20;
+
+    /** The default most replies held for one client. */
+    public static final int DEFAULT_MAX_BUFFERS = 64;
+
+    /** The most bytes of replies held for one client. */
+    private final long maxBytes;
+
+    /** The most replies held for one client. */
+    private final int maxBuffers;
+
+    /** Whether clients past the limit are disconnected instead of paused. */
+    private final boolean disconnect;
+
+    /** The number of times a client was paused. */
+    private final AtomicLong pauses = new AtomicLong();
+
+    /** The number of clients that were disconnected. */
+    private final AtomicLong disconnects = new AtomicLong();
+
+    /**
+     * Constructs a limit with the default sizes that pauses clients.
+     */
+    public WriteLimit() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_BUFFERS, false);
+    }
+
+    /**
+     * Constructs a limit.
+     * 
+     * @param maxBytes
+     *            the most bytes of replies held for one client
+     * @param maxBuffers
+     *            the most replies held for one client
+     * @param disconnect
+     *            whether clients past the limit are disconnected instead of
+     *            paused
+     */
+    public WriteLimit(long maxBytes, int maxBuffers, boolean disconnect) {
+        if (maxBytes <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("Limits must be positive.");
+        }
+        this.maxBytes = maxBytes;
+        this.maxBuffers = maxBuffers;
+        this.disconnect = disconnect;
+    }
+
+    /**
+     * Returns the most bytes of replies held for one client.
+     * 
+     * @return the byte limit
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the most replies held for one client.
+     * 
+     * @return the reply limit
+     */
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * Returns whether clients past the limit are disconnected instead of
+     * paused.
+     * 
+     * @return true to disconnect, false to pause
+     */
+    public boolean isDisconnect() {
+        return disconnect;
+    }
+
+    /**
+     * Counts a client past the limit, as a pause or a disconnect.
+     * 
+     * @return whether the client should be disconnected
+     */
+    public boolean countExceeded() {
+        (disconnect ? disconnects : pauses).incrementAndGet();
+        return disconnect;
+    }
+
+    /**
+     * Returns the number of times a client was paused.
+     * 
+     * @return the number of pauses
+     */
+    public long getPauses() {
+        return pauses.get();
+    }
+
+    /**
+     * Returns the number of clients that were disconnected.
+     * 
+     * @return the number of disconnects
+     */
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    /**
+     * Returns the limit's numbers, for logging.
+     * 
+     * @return a summary of the limit
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "Write limit: %d bytes, %d replies, %d pauses, %d disconnects",
+                maxBytes, maxBuffers, getPauses(), getDisconnects());
+    }
+}
@@ -0,0 +1,146 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a bounded ring of replies waiting to be written to a client.
+ *
+ ************************************************/
+
+package myn.addatude.app;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a bounded ring of replies waiting to be written to one
+ * client. The waiting replies can be handed to a gathering write straight
+ * from the ring, with no copying, and written ones are dropped from the front
+ * in one step. The queue is full once it holds as many bytes or replies as
+ * its WriteLimit allows. It always takes at least one reply, so a single
+ * reply bigger than the limit still goes out. This class is not thread safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class WriteQueue {
+
+    /** The limit on what the queue holds. */
+    private final WriteLimit limit;
+
+    /** The ring of replies. */
+    private final ByteBuffer[] ring;
+
+    /** The position of the first waiting reply in the ring. */
+    private int head = 0;
+
+    /** The number of waiting replies. */
+    private int size = 0;
+
+    /** The number of bytes waiting to be written. */
+    private long queuedBytes = 0;
+
+    /**
+     * Constructs an empty queue.
+     * 
+     * @param limit
+     *            the limit on what the queue holds
+     */
+    public WriteQueue(WriteLimit limit) {
+        this.limit = limit;
+        this.ring = new ByteBuffer[limit.getMaxBuffers()];
+    }
+
+    /**
+     * Adds a reply to the back of the queue. Check isFull() first.
+     * 
+     * @param reply
+     *            the reply to write, from its position to its limit
+     * @throws IllegalStateException
+     *             if there's no room for another reply
+     */
+    public void add(ByteBuffer reply) {
+        if (size == ring.length) {
+            throw new IllegalStateException("Write queue is full.");
+        }
+        ring[(head + size) % ring.length] = reply;
+        ++size;
+        queuedBytes += reply.remaining();
+    }
+
+    /**
+     * Returns whether the queue holds as much as its limit allows.
+     * 
+     * @return whether the queue is full
+     */
+    public boolean isFull() {
+        return size == ring.length || queuedBytes >= limit.getMaxBytes();
+    }
+
+    /**
+     * Returns whether there's nothing waiting to be written.
+     * 
+     * @return whether the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written.
+     * 
+     * @return the number of bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the array to hand to a gathering write. The replies to write
+     * are getLength() of them, starting at getOffset().
+     * 
+     * @return the ring
+     */
+    public ByteBuffer[] getBuffers() {
+        return ring;
+    }
+
+    /**
+     * Returns where the replies to write start in getBuffers().
+     * 
+     * @return the position of the first waiting reply
+     */
+    public int getOffset() {
+        return head;
+    }
+
+    /**
+     * Returns how many replies to write from getBuffers(). When the waiting
+     * replies wrap around the end of the ring, only the ones up to the end
+     * are counted, and the rest are written next time.
+     * 
+     * @return the number of replies to write
+     */
+    public int getLength() {
+        return Math.min(size, ring.length - head);
+    }
+
+    /**
+     * Drops the replies that have been written from the front of the queue.
+     * 
+     * @param bytesWritten
+     *            the number of bytes the last write took
+     */
+    public void removeWritten(long bytesWritten) {
+        queuedBytes -= bytesWritten;
+        while (size > 0 && !ring[head].hasRemaining()) {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            --size;
+        }
+        if (size == 0) {
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a benchmark of the whole LocationService.handle() path for
+ * NEW and ALL as the map grows.
+ *
+ ************************************************/
+
+package myn.addatude.app.bench;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import myn.addatude.app.IndexedMapManager;
+import myn.addatude.app.LocationService;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationRequest;
+import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeNewLocation;
+import myn.addatude.protocol.LocationRecord;
+import myn.notifi.app.NoTiFiServer;
+
+/**
+ * This class is a benchmark of LocationService.handle() as the map grows.
+ * LocationStoreBenchmark times only the userId index, which stays flat. A
+ * NEW is answered with a RESPONSE holding every location in the map, though,
+ * so handle() builds a new snapshot and encodes it for each NEW, and that
+ * grows with the map. That cost is the protocol's, not the store's. An ALL
+ * after it reuses the snapshot, so it stays flat. The NoTiFi server has no
+ * clients, so notifications are queued and dropped.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationServiceBenchmark {
+
+    /** The map sizes to measure. */
+    private static final int[] SIZES = { 1000, 10000, 100000 };
+
+    /** The number of locations encoded per timed round, across all NEWs. */
+    private static final int RECORDS_PER_ROUND = 2000000;
+
+    /** The number of ALLs per timed round. */
+    private static final int REQUESTS = 20000;
+
+    /** The number of rounds to run, the first half of which are warmup. */
+    private static final int ROUNDS = 6;
+
+    /** The ID of the map. */
+    private static final int MAP_ID = 345;
+
+    /**
+     * Runs NEWs and ALLs at each map size and prints the cost of each.
+     * 
+     * @param args
+     *            unused
+     * @throws AddATudeException
+     *             if a message can't be made
+     */
+    public static void main(String[] args) throws AddATudeException {
+        Logger logger = Logger
+                .getLogger(LocationServiceBenchmark.class.getName());
+        logger.setUseParentHandlers(false);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetSocketAddress client = new InetSocketAddress(loopback, 0);
+        long sink = 0;
+        for (int size : SIZES) {
+            /**
+             * Make a service with one location per user. The map is filled
+             * straight through its index, since filling it with NEWs would
+             * build a snapshot for each.
+             */
+            Map<Integer, String> users = new HashMap<Integer, String>();
+            for (int userId = 0; userId < size; ++userId) {
+                users.put(userId, "user" + userId);
+            }
+            NoTiFiServer notifiServer = new NoTiFiServer(0, loopback,
+                    logger);
+            LocationService service = new LocationService(users,
+                    notifiServer, new IndexedMapManager(), logger);
+            service.addMap(MAP_ID, "Class Map");
+            for (int userId = 0; userId < size; ++userId) {
+                LocationRecord record = makeRecord(userId);
+                record.cacheEncoding();
+                service.getMap(MAP_ID).update(record);
+            }
+            AddATudeMessage request = new AddATudeLocationRequest(MAP_ID);
+            int updates = Math.max(10, RECORDS_PER_ROUND / size);
+            Random random = new Random(size);
+
+            for (int round = 0; round < ROUNDS; ++round) {
+                /** Each NEW changes its record, so make them fresh. */
+                AddATudeMessage[] news = new AddATudeMessage[updates];
+                for (int i = 0; i < updates; ++i) {
+                    news[i] = makeNew(random.nextInt(size));
+                }
+                long start = System.nanoTime();
+                for (AddATudeMessage message : news) {
+                    sink += service.handle(message, client).getMapId();
+                }
+                long newTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    sink += service.handle(request, client).getMapId();
+                }
+                long allTime = System.nanoTime() - start;
+
+                if (round >= ROUNDS / 2) {
+                    System.out.printf("%7d users   NEW: %9.1f us/message"
+                            + "   ALL: %6.1f ns/message%n", size,
+                            newTime / 1e3 / updates,
+                            (double) allTime / REQUESTS);
+                }
+            }
+            notifiServer.close();
+        }
+        /** Print the sink so the work can't be optimized away. */
+        System.out.println("(checksum " + sink + ")");
+        System.exit(0);
+    }
+
+    /**
+     * Makes a NEW for a user.
+     * 
+     * @param userId
+     *            the user
+     * @return a new NEW message
+     * @throws AddATudeException
+     *             if the message can't be made
+     */
+    private static AddATudeMessage makeNew(int userId)
+            throws AddATudeException {
+        return new AddATudeNewLocation(MAP_ID, makeRecord(userId));
+    }
+
+    /**
+     * Makes a location for a user.
+     * 
+     * @param userId
+     *            the user
+     * @return a new location
+     * @throws AddATudeException
+     *             if the location can't be made
+     */
+    private static LocationRecord makeRecord(int userId)
+            throws AddATudeException {
+        return new LocationRecord(userId, "-97.1146", "31.5493", "BU",
+                "Baylor");
+    }
+}
@@ -0,0 +1,130 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a microbenchmark comparing the old list scan for a user's
+ * location with LocationMap's userId index as the map grows.
+ *
+ ************************************************/
+
+package myn.addatude.app.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import myn.addatude.app.LocationMap;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.LocationRecord;
+
+/**
+ * This class is a microbenchmark comparing the old list scan for a user's
+ * location with LocationMap's userId index as the map grows. Each NEW looks
+ * for the user's old location and replaces it. The old path walked the list
+ * to find it, so its cost grows with the number of users, while the index
+ * should stay flat. This is only the store; LocationServiceBenchmark times
+ * the whole NEW, response and all.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationStoreBenchmark {
+
+    /** The map sizes to measure. */
+    private static final int[] SIZES = { 1000, 10000, 100000 };
+
+    /** The number of updates per timed round. */
+    private static final int UPDATES = 20000;
+
+    /** The number of rounds to run, the first half of which are warmup. */
+    private static final int ROUNDS = 6;
+
+    /**
+     * Runs the old and new paths at each map size and prints the cost per
+     * update of each.
+     * 
+     * @param args
+     *            unused
+     * @throws AddATudeException
+     *             if a location can't be made
+     */
+    public static void main(String[] args) throws AddATudeException {
+        long sink = 0;
+        for (int size : SIZES) {
+            /** Make one location per user, plus the updates to apply. */
+            List<LocationRecord> list = new ArrayList<LocationRecord>();
+            LocationMap map = new LocationMap(345, "Class Map");
+            for (int userId = 0; userId < size; ++userId) {
+                LocationRecord record = makeRecord(userId);
+                list.add(record);
+                map.update(record);
+            }
+            Random random = new Random(size);
+            LocationRecord[] updates = new LocationRecord[UPDATES];
+            for (int i = 0; i < UPDATES; ++i) {
+                updates[i] = makeRecord(random.nextInt(size));
+            }
+
+            for (int round = 0; round < ROUNDS; ++round) {
+                long start = System.nanoTime();
+                for (LocationRecord update : updates) {
+                    sink += scanUpdate(list, update);
+                }
+                long scanTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (LocationRecord update : updates) {
+                    sink += map.update(update).getUserId();
+                }
+                long indexTime = System.nanoTime() - start;
+
+                if (round >= ROUNDS / 2) {
+                    System.out.printf("%7d users   list scan: %9.1f ns/update"
+                            + "   userId index: %6.1f ns/update%n", size,
+                            (double) scanTime / UPDATES,
+                            (double) indexTime / UPDATES);
+                }
+            }
+        }
+        /** Print the sink so the work can't be optimized away. */
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * The old path: walk the list for the user's location and replace it.
+     * 
+     * @param list
+     *            the locations
+     * @param update
+     *            the new location
+     * @return the userId of the replaced location, or -1 if there was none
+     */
+    private static int scanUpdate(List<LocationRecord> list,
+            LocationRecord update) {
+        for (int i = 0; i < list.size(); ++i) {
+            if (list.get(i).getUserId() == update.getUserId()) {
+                return list.set(i, update).getUserId();
+            }
+        }
+        list.add(update);
+        return -1;
+    }
+
+    /**
+     * Makes a location for a user.
+     * 
+     * @param userId
+     *            the user
+     * @return a new location
+     * @throws AddATudeException
+     *             if the location can't be made
+     */
+    private static LocationRecord makeRecord(int userId)
+            throws AddATudeException {
+        return new LocationRecord(userId, "-97.1146", "31.5493", "BU",
+                "Baylor");
+    }
+}
@@ -0,0 +1,148 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a microbenchmark comparing MemoryMapManager with
+ * IndexedMapManager as the map grows.
+ *
+ ************************************************/
+
+package myn.addatude.app.bench;
+
+import java.util.Random;
+
+import mapservice.Location;
+import mapservice.MapManager;
+import mapservice.MapObserver;
+import mapservice.MemoryMapManager;
+import myn.addatude.app.IndexedMapManager;
+
+/**
+ * This class is a microbenchmark comparing MemoryMapManager with
+ * IndexedMapManager as the map grows. Each NEW replaces a user's marker:
+ * MemoryMapManager has to delete the old marker by name and add the new one,
+ * and IndexedMapManager, which LocationService uses, replaces it by userId.
+ * An observer reads every marker once in a while, the way MarkerWriter does
+ * once an interval, which for IndexedMapManager means building a snapshot.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class MapManagerBenchmark {
+
+    /** The map sizes to measure. */
+    private static final int[] SIZES = { 1000, 10000, 100000 };
+
+    /** The number of updates per timed round. */
+    private static final int UPDATES = 200000;
+
+    /** The number of updates between the observer reading every marker. */
+    private static final int READ_EVERY = 1000;
+
+    /** The number of rounds to run, the first half of which are warmup. */
+    private static final int ROUNDS = 6;
+
+    /** Counts what the observer reads, so it can't be optimized away. */
+    private static long sink = 0;
+
+    /**
+     * An observer that reads every marker once every so many changes.
+     */
+    private static final class Reader implements MapObserver {
+
+        /** The map to read. */
+        private final MapManager manager;
+
+        /** The number of changes seen. */
+        private int changes = 0;
+
+        /**
+         * Constructs a reader.
+         * 
+         * @param manager
+         *            the map to read
+         */
+        private Reader(MapManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void update() {
+            if (++changes % READ_EVERY == 0) {
+                for (Location location : manager.getLocations()) {
+                    sink += location.getName().length();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs both map managers at each map size and prints the cost per update
+     * of each.
+     * 
+     * @param args
+     *            unused
+     */
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            /** Make one marker per user in each, plus the updates to apply. */
+            MemoryMapManager memory = new MemoryMapManager();
+            IndexedMapManager indexed = new IndexedMapManager();
+            Location[] markers = new Location[size];
+            for (int userId = 0; userId < size; ++userId) {
+                markers[userId] = makeLocation(userId);
+                memory.addLocation(markers[userId]);
+                indexed.addLocation(userId, markers[userId]);
+            }
+            memory.register(new Reader(memory));
+            indexed.register(new Reader(indexed));
+            Random random = new Random(size);
+            int[] users = new int[UPDATES];
+            Location[] updates = new Location[UPDATES];
+            for (int i = 0; i < UPDATES; ++i) {
+                users[i] = random.nextInt(size);
+                updates[i] = makeLocation(users[i]);
+            }
+
+            for (int round = 0; round < ROUNDS; ++round) {
+                long start = System.nanoTime();
+                for (int i = 0; i < UPDATES; ++i) {
+                    memory.deleteLocation(markers[users[i]].getName());
+                    memory.addLocation(updates[i]);
+                }
+                long memoryTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < UPDATES; ++i) {
+                    indexed.addLocation(users[i], updates[i]);
+                }
+                long indexedTime = System.nanoTime() - start;
+
+                if (round >= ROUNDS / 2) {
+                    System.out.printf("%7d markers   MemoryMapManager: %7.1f "
+                            + "ns/update   IndexedMapManager: %7.1f "
+                            + "ns/update%n", size,
+                            (double) memoryTime / UPDATES,
+                            (double) indexedTime / UPDATES);
+                }
+            }
+        }
+        /** Print the sink so the work can't be optimized away. */
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Makes a marker for a user.
+     * 
+     * @param userId
+     *            the user
+     * @return a new marker
+     */
+    private static Location makeLocation(int userId) {
+        return new Location("user" + userId + ": BU", "-97.1146", "31.5493",
+                "Baylor", Location.Color.GREEN);
+    }
+}
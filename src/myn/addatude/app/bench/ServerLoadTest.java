@@ -0,0 +1,250 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a load test comparing AddATudeServer's fixed thread pool with
+ * its thread per client mode.
+ *
+ ************************************************/
+
+package myn.addatude.app.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import myn.addatude.app.AddATudeServer;
+import myn.addatude.app.LocationService;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.MessageOutput;
+
+/**
+ * This class is a load test comparing AddATudeServer's fixed thread pool with
+ * its thread per client mode. Like our mobile clients, most connections ask
+ * for the map once and then sit idle, while a few clients keep asking. Each
+ * mode gets the same idle clients first and then the busy ones. The test
+ * prints how many of the clients were served at all, and the p50 and p99
+ * latency of the busy clients' ALL requests.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class ServerLoadTest {
+
+    /** The number of threads in the fixed pool. */
+    private static final int POOL_SIZE = 16;
+
+    /** The number of clients that connect, ask once, and stay idle. */
+    private static final int IDLE_CLIENTS = 500;
+
+    /** The number of clients that keep asking for the map. */
+    private static final int BUSY_CLIENTS = 16;
+
+    /** The number of requests each busy client sends. */
+    private static final int REQUESTS = 500;
+
+    /** How long a client waits for a reply before giving up, in ms. */
+    private static final int REPLY_TIMEOUT = 2000;
+
+    /** The request every client sends. */
+    private static final String REQUEST = "ADDATUDEv1 345 ALL \r\n";
+
+    /**
+     * Runs both modes and prints the results.
+     * 
+     * @param args
+     *            unused
+     * @throws Exception
+     *             if a server can't be started
+     */
+    public static void main(String[] args) throws Exception {
+        run("fixed pool of " + POOL_SIZE, POOL_SIZE);
+        run("thread per client", 0);
+        /** The servers' threads never end on their own. */
+        System.exit(0);
+    }
+
+    /**
+     * Starts a server in the given mode and runs the clients against it.
+     * 
+     * @param label
+     *            the name of the mode, for printing
+     * @param threadPoolSize
+     *            the pool size to give the server
+     * @throws IOException
+     *             if the server can't be started
+     * @throws AddATudeException
+     *             if the map can't be made
+     * @throws InterruptedException
+     *             if interrupted while waiting on the clients
+     */
+    private static void run(String label, int threadPoolSize)
+            throws IOException, AddATudeException, InterruptedException {
+        Logger logger = Logger.getLogger(ServerLoadTest.class.getName());
+        logger.setUseParentHandlers(false);
+        LocationService service = new LocationService(
+                new TreeMap<Integer, String>(), null, null, logger);
+        service.addMap(345, "Class Map");
+
+        ServerSocket serverSocket = new ServerSocket(0, IDLE_CLIENTS * 2,
+                InetAddress.getLoopbackAddress());
+        new AddATudeServer(serverSocket, threadPoolSize, service).start();
+        int port = serverSocket.getLocalPort();
+
+        /**
+         * Connect the idle clients, each of which asks once. They all share
+         * one deadline for their replies.
+         */
+        final List<Socket> idle = new ArrayList<Socket>();
+        int idleServed = 0;
+        for (int i = 0; i < IDLE_CLIENTS; ++i) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            send(socket);
+            idle.add(socket);
+        }
+        long deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+        for (Socket socket : idle) {
+            long wait = Math.max(1, deadline - System.currentTimeMillis());
+            if (receive(socket, (int) wait)) {
+                ++idleServed;
+            }
+        }
+
+        /** Run the busy clients at the same time. */
+        final List<Long> latencies = Collections
+                .synchronizedList(new ArrayList<Long>());
+        final AtomicInteger busyServed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < BUSY_CLIENTS; ++i) {
+            final int serverPort = port;
+            Thread thread = new Thread() {
+                public void run() {
+                    try (Socket socket = new Socket(
+                            InetAddress.getLoopbackAddress(), serverPort)) {
+                        for (int r = 0; r < REQUESTS; ++r) {
+                            long latency = roundTrip(socket);
+                            if (latency < 0) {
+                                return;
+                            }
+                            latencies.add(latency);
+                        }
+                        busyServed.incrementAndGet();
+                    } catch (IOException e) {
+                        /** Counted as not served. */
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        /** The server is left running, since its threads can't be stopped. */
+        for (Socket socket : idle) {
+            socket.close();
+        }
+
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        System.out.printf(
+                "%-20s idle served %4d/%d   busy served %3d/%d   "
+                        + "p50 %8.1f us   p99 %8.1f us%n",
+                label, idleServed, IDLE_CLIENTS, busyServed.get(),
+                BUSY_CLIENTS, percentile(sorted, 50) / 1000.0,
+                percentile(sorted, 99) / 1000.0);
+    }
+
+    /**
+     * Sends one ALL request and waits for the reply.
+     * 
+     * @param socket
+     *            the client's socket
+     * @return the time the reply took in ns, or -1 if none came in time
+     */
+    private static long roundTrip(Socket socket) {
+        long start = System.nanoTime();
+        if (!send(socket) || !receive(socket, REPLY_TIMEOUT)) {
+            return -1;
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Sends one ALL request.
+     * 
+     * @param socket
+     *            the client's socket
+     * @return whether the request was sent
+     */
+    private static boolean send(Socket socket) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST.getBytes(MessageOutput.ENCODING));
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads up to the end of one reply.
+     * 
+     * @param socket
+     *            the client's socket
+     * @param timeout
+     *            how long to wait for the reply, in ms
+     * @return whether the whole reply came in time
+     */
+    private static boolean receive(Socket socket, int timeout) {
+        try {
+            socket.setSoTimeout(timeout);
+            InputStream in = socket.getInputStream();
+            int previous = -1;
+            int current;
+            while ((current = in.read()) != -1) {
+                if (previous == '\r' && current == '\n') {
+                    return true;
+                }
+                previous = current;
+            }
+        } catch (SocketTimeoutException e) {
+            /** No reply in time. */
+        } catch (IOException e) {
+            /** The server went away. */
+        }
+        return false;
+    }
+
+    /**
+     * Returns a percentile of some sorted values.
+     * 
+     * @param sorted
+     *            the values, in order
+     * @param percent
+     *            the percentile to return
+     * @return the value at that percentile, or 0 if there are none
+     */
+    private static long percentile(List<Long> sorted, int percent) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0));
+    }
+}
@@ -0,0 +1,318 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the AddATudeServerAIO class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import myn.addatude.app.AddATudeServerAIO;
+import myn.addatude.app.BufferPool;
+import myn.addatude.app.IndexedMapManager;
+import myn.addatude.app.LocationService;
+import myn.addatude.app.WriteLimit;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationRequest;
+import myn.addatude.protocol.AddATudeLocationResponse;
+import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeNewLocation;
+import myn.addatude.protocol.LocationRecord;
+import myn.addatude.protocol.MessageInput;
+import myn.addatude.protocol.MessageOutput;
+import myn.notifi.app.NoTiFiServer;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the AddATudeServerAIO class. Each test
+ * runs a server on loopback and talks to it over a plain socket, watching the
+ * pool the server borrows its read buffers from.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class AddATudeServerAIOTest {
+
+    /** The ID of the map used by every test. */
+    private static final int MAP_ID = 345;
+
+    /** The user every location is added for. */
+    private static final int USER = 1;
+
+    /** The loopback address, which the server and client use. */
+    private static final InetAddress LOOPBACK = InetAddress
+            .getLoopbackAddress();
+
+    /** How long the client waits for a reply, in ms. */
+    private static final int TIMEOUT = 2000;
+
+    /**
+     * A server under test, with what it needs to be closed.
+     */
+    private static final class Running {
+
+        /** The NoTiFi server the service tells about changes. */
+        private final NoTiFiServer notifiServer;
+
+        /** The channel the server accepts clients on. */
+        private final AsynchronousServerSocketChannel serverChannel;
+
+        /** The pool the server borrows read buffers from. */
+        private final BufferPool bufferPool;
+
+        /**
+         * Starts a server.
+         * 
+         * @param writeLimit
+         *            the limit on the replies held for each client
+         * @throws IOException
+         *             if the server can't be started
+         * @throws AddATudeException
+         *             if the map can't be made
+         */
+        private Running(WriteLimit writeLimit)
+                throws IOException, AddATudeException {
+            Logger logger = Logger
+                    .getLogger(AddATudeServerAIOTest.class.getName());
+            logger.setUseParentHandlers(false);
+            notifiServer = new NoTiFiServer(0, LOOPBACK, logger);
+            Map<Integer, String> users = new HashMap<Integer, String>();
+            users.put(USER, "user");
+            LocationService service = new LocationService(users,
+                    notifiServer, new IndexedMapManager(), logger);
+            service.addMap(MAP_ID, "Class Map");
+            serverChannel = AsynchronousServerSocketChannel.open()
+                    .bind(new InetSocketAddress(LOOPBACK, 0));
+            bufferPool = new BufferPool(AddATudeServerAIO.READ_BUFFER_SIZE,
+                    4, 1, false);
+            new AddATudeServerAIO(serverChannel, service, bufferPool,
+                    writeLimit).start();
+        }
+
+        /**
+         * Connects a client.
+         * 
+         * @return the client's socket
+         * @throws IOException
+         *             if the client can't connect
+         */
+        private Socket connect() throws IOException {
+            int port = ((InetSocketAddress) serverChannel.getLocalAddress())
+                    .getPort();
+            Socket socket = new Socket(LOOPBACK, port);
+            socket.setSoTimeout(TIMEOUT);
+            return socket;
+        }
+
+        /**
+         * Closes the server's channel and its NoTiFi server.
+         * 
+         * @throws IOException
+         *             if the channel can't be closed
+         */
+        private void close() throws IOException {
+            serverChannel.close();
+            notifiServer.close();
+        }
+    }
+
+    /**
+     * Encodes a message the way a client sends it.
+     * 
+     * @param message
+     *            the message
+     * @return the encoded message
+     * @throws AddATudeException
+     *             if the message can't be encoded
+     */
+    private static byte[] encode(AddATudeMessage message)
+            throws AddATudeException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.encode(new MessageOutput(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Makes a NEW message.
+     * 
+     * @param name
+     *            the location's name
+     * @return the message
+     * @throws AddATudeException
+     *             if the message can't be made
+     */
+    private static AddATudeMessage makeNew(String name)
+            throws AddATudeException {
+        return new AddATudeNewLocation(MAP_ID, new LocationRecord(USER,
+                "-97.1146", "31.5493", name, "Baylor"));
+    }
+
+    /**
+     * Returns the names of the locations in a reply, which must be a
+     * response.
+     * 
+     * @param in
+     *            where the client reads replies from
+     * @return the names
+     * @throws Exception
+     *             if no response can be read
+     */
+    private static String names(MessageInput in) throws Exception {
+        AddATudeMessage reply = AddATudeMessage.decode(in);
+        assertTrue(String.valueOf(reply),
+                reply instanceof AddATudeLocationResponse);
+        StringBuilder names = new StringBuilder();
+        for (LocationRecord record : ((AddATudeLocationResponse) reply)
+                .getLocationRecordList()) {
+            names.append(names.length() == 0 ? "" : ",")
+                    .append(record.getLocationName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Tests that requests are answered, and that a client waiting for its
+     * next request holds no buffer from the pool.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testIdleHoldsNoBuffer() throws Exception {
+        Running running = new Running(new WriteLimit());
+        Socket socket = running.connect();
+        Socket other = running.connect();
+        try {
+            OutputStream out = socket.getOutputStream();
+            MessageInput in = new MessageInput(socket.getInputStream());
+            out.write(encode(new AddATudeLocationRequest(MAP_ID)));
+            assertEquals("", names(in));
+            out.write(encode(makeNew("BU")));
+            assertEquals("user: BU", names(in));
+
+            /** More idle clients than the pool has buffers. */
+            Socket[] idle = new Socket[8];
+            for (int i = 0; i < idle.length; ++i) {
+                idle[i] = running.connect();
+            }
+            try {
+                other.getOutputStream().write(
+                        encode(new AddATudeLocationRequest(MAP_ID)));
+                assertEquals("user: BU", names(new MessageInput(other
+                        .getInputStream())));
+                assertEquals(0, running.bufferPool.getOutstanding());
+                assertEquals(0, running.bufferPool.getMisses());
+                assertTrue(running.bufferPool.getHits() >= 3);
+            } finally {
+                for (Socket s : idle) {
+                    s.close();
+                }
+            }
+        } finally {
+            other.close();
+            socket.close();
+            running.close();
+        }
+    }
+
+    /**
+     * Tests that messages split across reads, and several in one read, are
+     * put back together and each answered once, with no buffer held between
+     * them.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testSplitFrames() throws Exception {
+        Running running = new Running(new WriteLimit());
+        Socket socket = running.connect();
+        try {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            MessageInput in = new MessageInput(socket.getInputStream());
+
+            /** One message, a byte at a time. */
+            byte[] first = encode(makeNew("first"));
+            for (byte b : first) {
+                out.write(b);
+                out.flush();
+            }
+            assertEquals("user: first", names(in));
+
+            /** Two and a half messages, then the rest of the third. */
+            byte[] second = encode(makeNew("second"));
+            byte[] request = encode(new AddATudeLocationRequest(MAP_ID));
+            ByteArrayOutputStream three = new ByteArrayOutputStream();
+            three.write(second);
+            three.write(request);
+            three.write(request);
+            byte[] all = three.toByteArray();
+            int cut = second.length + request.length + request.length / 2;
+            out.write(Arrays.copyOf(all, cut));
+            out.flush();
+            Thread.sleep(100);
+            out.write(Arrays.copyOfRange(all, cut, all.length));
+            assertEquals("user: second", names(in));
+            assertEquals("user: second", names(in));
+            assertEquals("user: second", names(in));
+            assertEquals(0, socket.getInputStream().available());
+            assertEquals(0, running.bufferPool.getOutstanding());
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+
+    /**
+     * Tests that a client past a pausing limit still has every request
+     * answered once it reads, with the requests waiting kept by the decoder
+     * rather than in a buffer from the pool.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testPauseOverLimit() throws Exception {
+        WriteLimit limit = new WriteLimit(1, 1, false);
+        Running running = new Running(limit);
+        Socket socket = running.connect();
+        try {
+            byte[] request = encode(new AddATudeLocationRequest(MAP_ID));
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < 10; ++i) {
+                requests.write(request);
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+            MessageInput in = new MessageInput(socket.getInputStream());
+            for (int i = 0; i < 10; ++i) {
+                assertEquals("", names(in));
+            }
+            assertTrue(limit.getPauses() > 0);
+            assertEquals(0, limit.getDisconnects());
+            assertEquals(0, running.bufferPool.getOutstanding());
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the AddATudeServerNIO class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import myn.addatude.app.AddATudeServerNIO;
+import myn.addatude.app.IndexedMapManager;
+import myn.addatude.app.LocationService;
+import myn.addatude.app.WriteLimit;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationRequest;
+import myn.addatude.protocol.AddATudeLocationResponse;
+import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeNewLocation;
+import myn.addatude.protocol.LocationRecord;
+import myn.addatude.protocol.MessageInput;
+import myn.addatude.protocol.MessageOutput;
+import myn.notifi.app.NoTiFiServer;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the AddATudeServerNIO class. Each test
+ * runs a server with one event loop on loopback, so every read and write for
+ * a client goes through the same connection, and talks to it over a plain
+ * socket.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class AddATudeServerNIOTest {
+
+    /** The ID of the map used by every test. */
+    private static final int MAP_ID = 345;
+
+    /** The user every location is added for. */
+    private static final int USER = 1;
+
+    /** The loopback address, which the server and client use. */
+    private static final InetAddress LOOPBACK = InetAddress
+            .getLoopbackAddress();
+
+    /** How long the client waits for a reply, in ms. */
+    private static final int TIMEOUT = 2000;
+
+    /**
+     * A server under test, with what it needs to be closed.
+     */
+    private static final class Running {
+
+        /** The NoTiFi server the service tells about changes. */
+        private final NoTiFiServer notifiServer;
+
+        /** The server. */
+        private final AddATudeServerNIO server;
+
+        /** The port the server accepts clients on. */
+        private final int port;
+
+        /**
+         * Starts a server with one event loop.
+         * 
+         * @param writeLimit
+         *            the limit on the replies held for each client
+         * @throws IOException
+         *             if the server can't be started
+         * @throws AddATudeException
+         *             if the map can't be made
+         */
+        private Running(WriteLimit writeLimit)
+                throws IOException, AddATudeException {
+            Logger logger = Logger
+                    .getLogger(AddATudeServerNIOTest.class.getName());
+            logger.setUseParentHandlers(false);
+            notifiServer = new NoTiFiServer(0, LOOPBACK, logger);
+            Map<Integer, String> users = new HashMap<Integer, String>();
+            users.put(USER, "user");
+            LocationService service = new LocationService(users,
+                    notifiServer, new IndexedMapManager(), logger);
+            service.addMap(MAP_ID, "Class Map");
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(LOOPBACK, 0));
+            port = ((InetSocketAddress) serverChannel.getLocalAddress())
+                    .getPort();
+            server = new AddATudeServerNIO(serverChannel, 1, service,
+                    writeLimit);
+            server.start();
+        }
+
+        /**
+         * Connects a client.
+         * 
+         * @return the client's socket
+         * @throws IOException
+         *             if the client can't connect
+         */
+        private Socket connect() throws IOException {
+            Socket socket = new Socket(LOOPBACK, port);
+            socket.setSoTimeout(TIMEOUT);
+            return socket;
+        }
+
+        /**
+         * Closes the server and its NoTiFi server.
+         * 
+         * @throws IOException
+         *             if the server can't be closed
+         */
+        private void close() throws IOException {
+            server.close();
+            notifiServer.close();
+        }
+    }
+
+    /**
+     * Encodes a message the way a client sends it.
+     * 
+     * @param message
+     *            the message
+     * @return the encoded message
+     * @throws AddATudeException
+     *             if the message can't be encoded
+     */
+    private static byte[] encode(AddATudeMessage message)
+            throws AddATudeException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.encode(new MessageOutput(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Makes a NEW message.
+     * 
+     * @param name
+     *            the location's name
+     * @return the message
+     * @throws AddATudeException
+     *             if the message can't be made
+     */
+    private static AddATudeMessage makeNew(String name)
+            throws AddATudeException {
+        return new AddATudeNewLocation(MAP_ID, new LocationRecord(USER,
+                "-97.1146", "31.5493", name, "Baylor"));
+    }
+
+    /**
+     * Returns the names of the locations in a reply, which must be a
+     * response.
+     * 
+     * @param in
+     *            where the client reads replies from
+     * @return the names
+     * @throws Exception
+     *             if no response can be read
+     */
+    private static String names(MessageInput in) throws Exception {
+        AddATudeMessage reply = AddATudeMessage.decode(in);
+        assertTrue(String.valueOf(reply),
+                reply instanceof AddATudeLocationResponse);
+        StringBuilder names = new StringBuilder();
+        for (LocationRecord record : ((AddATudeLocationResponse) reply)
+                .getLocationRecordList()) {
+            names.append(names.length() == 0 ? "" : ",")
+                    .append(record.getLocationName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Tests that requests sent one at a time on one connection are each
+     * answered, in order.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Running running = new Running(new WriteLimit());
+        Socket socket = running.connect();
+        try {
+            OutputStream out = socket.getOutputStream();
+            MessageInput in = new MessageInput(socket.getInputStream());
+            out.write(encode(new AddATudeLocationRequest(MAP_ID)));
+            assertEquals("", names(in));
+            out.write(encode(makeNew("BU")));
+            assertEquals("user: BU", names(in));
+            out.write(encode(new AddATudeLocationRequest(MAP_ID)));
+            assertEquals("user: BU", names(in));
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+
+    /**
+     * Tests that messages split across reads, and several in one read, are
+     * put back together by the connection's decoder and each answered once.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testSplitFrames() throws Exception {
+        Running running = new Running(new WriteLimit());
+        Socket socket = running.connect();
+        try {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            MessageInput in = new MessageInput(socket.getInputStream());
+
+            /** One message, a byte at a time. */
+            byte[] first = encode(makeNew("first"));
+            for (byte b : first) {
+                out.write(b);
+                out.flush();
+            }
+            assertEquals("user: first", names(in));
+
+            /** Two and a half messages, then the rest of the third. */
+            byte[] second = encode(makeNew("second"));
+            byte[] request = encode(new AddATudeLocationRequest(MAP_ID));
+            ByteArrayOutputStream three = new ByteArrayOutputStream();
+            three.write(second);
+            three.write(request);
+            three.write(request);
+            byte[] all = three.toByteArray();
+            int cut = second.length + request.length + request.length / 2;
+            out.write(Arrays.copyOf(all, cut));
+            out.flush();
+            Thread.sleep(100);
+            out.write(Arrays.copyOfRange(all, cut, all.length));
+            assertEquals("user: second", names(in));
+            assertEquals("user: second", names(in));
+            assertEquals("user: second", names(in));
+            assertEquals(0, socket.getInputStream().available());
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+
+    /**
+     * Tests that a client past a pausing limit still has every request
+     * answered once it reads, and that the pause is counted.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testPauseOverLimit() throws Exception {
+        WriteLimit limit = new WriteLimit(1, 1, false);
+        Running running = new Running(limit);
+        Socket socket = running.connect();
+        try {
+            byte[] request = encode(new AddATudeLocationRequest(MAP_ID));
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < 10; ++i) {
+                requests.write(request);
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+            MessageInput in = new MessageInput(socket.getInputStream());
+            for (int i = 0; i < 10; ++i) {
+                assertEquals("", names(in));
+            }
+            assertTrue(limit.getPauses() > 0);
+            assertEquals(0, limit.getDisconnects());
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+
+    /**
+     * Tests that a client past a disconnecting limit is disconnected, and
+     * that the disconnect is counted.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testDisconnectOverLimit() throws Exception {
+        WriteLimit limit = new WriteLimit(1, 1, true);
+        Running running = new Running(limit);
+        Socket socket = running.connect();
+        try {
+            byte[] request = encode(new AddATudeLocationRequest(MAP_ID));
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < 10; ++i) {
+                requests.write(request);
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+
+            /** The server closes the connection, before it times out. */
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[1024];
+            try {
+                while (in.read(buffer) >= 0) {
+                }
+            } catch (SocketTimeoutException e) {
+                fail("The client wasn't disconnected.");
+            } catch (IOException e) {
+                /** Reset, since requests were left unread. */
+            }
+            assertEquals(1, limit.getDisconnects());
+            assertEquals(0, limit.getPauses());
+        } finally {
+            socket.close();
+            running.close();
+        }
+    }
+}
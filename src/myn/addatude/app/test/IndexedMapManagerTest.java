@@ -0,0 +1,97 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the IndexedMapManager class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mapservice.Location;
+import myn.addatude.app.IndexedMapManager;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the IndexedMapManager class. Waco is about
+ * 140 km from Dallas and 155 km from Austin.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class IndexedMapManagerTest {
+
+    /** Baylor, in Waco. */
+    private static final Location WACO = new Location("BU", "-97.1146",
+            "31.5493", "Baylor", Location.Color.GREEN);
+
+    /** Downtown Dallas. */
+    private static final Location DALLAS = new Location("Dallas", "-96.7970",
+            "32.7767", "Downtown", Location.Color.GREEN);
+
+    /** The Texas capitol, in Austin. */
+    private static final Location AUSTIN = new Location("Capitol", "-97.7431",
+            "30.2672", "Austin", Location.Color.GREEN);
+
+    /**
+     * Makes a map manager with Waco, Dallas and Austin, in that order.
+     * 
+     * @return the map manager
+     */
+    private static IndexedMapManager makeManager() {
+        IndexedMapManager manager = new IndexedMapManager();
+        manager.addLocation(1, WACO);
+        manager.addLocation(DALLAS);
+        manager.addLocation(2, AUSTIN);
+        return manager;
+    }
+
+    /**
+     * Tests that the markers within a distance are found, in the order they
+     * were added.
+     */
+    @Test
+    public void testGetLocationsWithin() {
+        IndexedMapManager manager = makeManager();
+        assertEquals(Arrays.asList(WACO),
+                manager.getLocations(31.5493, -97.1146, 0));
+        assertEquals(Arrays.asList(WACO),
+                manager.getLocations(31.5493, -97.1146, 100));
+        assertEquals(Arrays.asList(WACO, DALLAS),
+                manager.getLocations(31.5493, -97.1146, 150));
+        assertEquals(Arrays.asList(WACO, DALLAS, AUSTIN),
+                manager.getLocations(31.5493, -97.1146, 200));
+        assertEquals(Collections.emptyList(),
+                manager.getLocations(0, 0, 1000));
+    }
+
+    /**
+     * Tests that the markers found follow changes, and that the list found
+     * doesn't.
+     */
+    @Test
+    public void testGetLocationsAfterChanges() {
+        IndexedMapManager manager = makeManager();
+        List<Location> found = manager.getLocations(31.5493, -97.1146, 200);
+        manager.deleteLocation(1);
+        manager.deleteLocation("Dallas");
+        assertEquals(Arrays.asList(AUSTIN),
+                manager.getLocations(31.5493, -97.1146, 200));
+        assertEquals(Arrays.asList(WACO, DALLAS, AUSTIN), found);
+
+        /** A user's new marker replaces the old one. */
+        manager.addLocation(2, DALLAS);
+        assertEquals(Arrays.asList(DALLAS),
+                manager.getLocations(32.7767, -96.7970, 1000));
+    }
+}
@@ -0,0 +1,225 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the LocationService class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import myn.addatude.app.IndexedMapManager;
+import myn.addatude.app.LocationService;
+import myn.addatude.protocol.AddATudeException;
+import myn.addatude.protocol.AddATudeLocationResponse;
+import myn.addatude.protocol.AddATudeMessage;
+import myn.addatude.protocol.AddATudeNewLocation;
+import myn.addatude.protocol.LocationRecord;
+import myn.notifi.app.NoTiFiServer;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiLocationMove;
+import myn.notifi.protocol.NoTiFiMessage;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the LocationService class.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class LocationServiceTest {
+
+    /** The ID of the map used by every test. */
+    private static final int MAP_ID = 345;
+
+    /** A userId that NoTiFi can carry. */
+    private static final int SMALL_USER = 1;
+
+    /** A userId over the 2 bytes NoTiFi has for one. */
+    private static final int BIG_USER = 70000;
+
+    /** The loopback address, which the servers and clients use. */
+    private static final InetAddress LOOPBACK = InetAddress
+            .getLoopbackAddress();
+
+    /** How long to wait for a notification, in ms. */
+    private static final int TIMEOUT = 2000;
+
+    /**
+     * Makes a logger that logs nowhere.
+     * 
+     * @return the logger
+     */
+    private static Logger makeLogger() {
+        Logger logger = Logger.getLogger(LocationServiceTest.class.getName());
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+
+    /**
+     * Makes a service with one map and two users, one with a userId NoTiFi
+     * can carry and one without.
+     * 
+     * @param notifiServer
+     *            the NoTiFi server to tell about location changes
+     * @return the service
+     * @throws AddATudeException
+     *             if the map can't be made
+     */
+    private static LocationService makeService(NoTiFiServer notifiServer)
+            throws AddATudeException {
+        Map<Integer, String> users = new HashMap<Integer, String>();
+        users.put(SMALL_USER, "small");
+        users.put(BIG_USER, "big");
+        LocationService service = new LocationService(users, notifiServer,
+                new IndexedMapManager(), makeLogger());
+        service.addMap(MAP_ID, "Class Map");
+        return service;
+    }
+
+    /**
+     * Makes a NEW message.
+     * 
+     * @param userId
+     *            the user
+     * @param name
+     *            the location's name
+     * @param description
+     *            the location's description
+     * @return the message
+     * @throws AddATudeException
+     *             if the message can't be made
+     */
+    private static AddATudeMessage makeNew(int userId, String name,
+            String description) throws AddATudeException {
+        return new AddATudeNewLocation(MAP_ID, new LocationRecord(userId,
+                "-97.1146", "31.5493", name, description));
+    }
+
+    /**
+     * Makes a string of the given length.
+     * 
+     * @param c
+     *            the character to repeat
+     * @param length
+     *            the length
+     * @return the string
+     */
+    private static String repeat(char c, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * Receives the next notification, taking the only one out of a batch.
+     * 
+     * @param client
+     *            the client's socket
+     * @return the notification
+     * @throws IOException
+     *             if none arrives in time
+     */
+    private static NoTiFiMessage receive(DatagramSocket client)
+            throws IOException {
+        DatagramPacket packet = new DatagramPacket(
+                new byte[NoTiFiBatch.MAX_LENGTH], NoTiFiBatch.MAX_LENGTH);
+        client.receive(packet);
+        NoTiFiMessage message = NoTiFiMessage.decode(
+                Arrays.copyOf(packet.getData(), packet.getLength()));
+        if (message instanceof NoTiFiBatch) {
+            assertEquals(1, ((NoTiFiBatch) message).getMessages().size());
+            return ((NoTiFiBatch) message).getMessages().get(0);
+        }
+        return message;
+    }
+
+    /**
+     * Tests that a NEW whose name and description are too long for NoTiFi, and
+     * one whose userId is, are both answered with the whole map, and that
+     * NoTiFi clients are sent the names cut short and nothing for the big
+     * userId.
+     * 
+     * @throws IOException
+     *             if the sockets can't be used
+     * @throws AddATudeException
+     *             if a message can't be made
+     */
+    @Test
+    public void testOverNoTiFiLimits() throws IOException, AddATudeException {
+        NoTiFiServer notifiServer = new NoTiFiServer(0, LOOPBACK,
+                makeLogger());
+        notifiServer.setBatching(0, NoTiFiBatch.MAX_LENGTH);
+        LocationService service = makeService(notifiServer);
+        DatagramSocket client = new DatagramSocket(0, LOOPBACK);
+        InetSocketAddress clientAddress = (InetSocketAddress) client
+                .getLocalSocketAddress();
+        notifiServer.getClientList().register(clientAddress, 0);
+        try {
+            client.setSoTimeout(TIMEOUT);
+            InetSocketAddress from = new InetSocketAddress(LOOPBACK, 1);
+            String longName = repeat('n', 300);
+            String longDescription = repeat('d', 300);
+
+            /** The long NEW is answered, and sent to NoTiFi cut short. */
+            AddATudeMessage reply = service.handle(
+                    makeNew(SMALL_USER, longName, longDescription), from);
+            assertTrue(reply instanceof AddATudeLocationResponse);
+            LocationRecord stored = ((AddATudeLocationResponse) reply)
+                    .getLocationRecordList().get(0);
+            assertEquals("small: " + longName, stored.getLocationName());
+            assertEquals(longDescription, stored.getLocationDescription());
+            NoTiFiLocationAddition addition = (NoTiFiLocationAddition) receive(
+                    client);
+            assertEquals(("small: " + longName).substring(0,
+                    NoTiFiServer.MAX_TEXT_LENGTH),
+                    addition.getLocationRecord().getLocationName());
+            assertEquals(longDescription.substring(0,
+                    NoTiFiServer.MAX_TEXT_LENGTH),
+                    addition.getLocationRecord().getLocationDescription());
+
+            /** The big userId is answered, and not sent to NoTiFi. */
+            reply = service.handle(makeNew(BIG_USER, "BU", "Baylor"), from);
+            assertTrue(reply instanceof AddATudeLocationResponse);
+            assertEquals(2, ((AddATudeLocationResponse) reply)
+                    .getLocationRecordList().size());
+            reply = service.handle(makeNew(BIG_USER, "UT", "Austin"), from);
+            assertTrue(reply instanceof AddATudeLocationResponse);
+
+            /**
+             * A move with a long new name goes out cut short too, and is the
+             * next thing the client gets, so nothing was sent for the big
+             * userId.
+             */
+            String otherName = repeat('m', 300);
+            reply = service.handle(
+                    makeNew(SMALL_USER, otherName, longDescription), from);
+            assertTrue(reply instanceof AddATudeLocationResponse);
+            NoTiFiLocationMove move = (NoTiFiLocationMove) receive(client);
+            assertEquals(SMALL_USER, move.getUserId());
+            assertEquals(("small: " + otherName).substring(0,
+                    NoTiFiServer.MAX_TEXT_LENGTH), move.getLocationName());
+            assertNull(move.getLocationDescription());
+        } finally {
+            client.close();
+            notifiServer.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the MarkerWriter class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import mapservice.Location;
+import myn.addatude.app.IndexedMapManager;
+import myn.addatude.app.MarkerWriter;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the MarkerWriter class. Each test writes
+ * its marker file in a directory of its own, and waits for the background
+ * writes by watching the writer's numbers.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class MarkerWriterTest {
+
+    /** The least time between writes, in ms. */
+    private static final long INTERVAL = 300;
+
+    /** The longest a test waits for a write, in ms. */
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * Makes a marker.
+     * 
+     * @param name
+     *            the marker's name
+     * @return the marker
+     */
+    private static Location marker(String name) {
+        return new Location(name, "-97.1146", "31.5493", "Baylor",
+                Location.Color.GREEN);
+    }
+
+    /**
+     * Waits until the writer has written the file some number of times.
+     * 
+     * @param writer
+     *            the writer
+     * @param writes
+     *            the number of writes to wait for
+     * @throws InterruptedException
+     *             if the wait is interrupted
+     */
+    private static void awaitWrites(MarkerWriter writer, long writes)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (writer.getWrites() < writes) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Only " + writer.getWrites() + " of " + writes
+                        + " writes happened.");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Reads a file as text.
+     * 
+     * @param file
+     *            the file
+     * @return the file's text
+     * @throws IOException
+     *             if the file can't be read
+     */
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     * 
+     * @param dir
+     *            the directory
+     */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Tests that many changes close together are written together, in one
+     * write after the interval, and counted as saved writes.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testDebounce() throws Exception {
+        File dir = Files.createTempDirectory("markers").toFile();
+        IndexedMapManager manager = new IndexedMapManager();
+        MarkerWriter writer = new MarkerWriter(
+                new File(dir, "markers.js").getPath(), manager, INTERVAL);
+        manager.register(writer);
+        try {
+            awaitWrites(writer, 1);
+            for (int i = 0; i < 20; ++i) {
+                manager.addLocation(marker("marker" + i));
+            }
+            assertEquals(20, writer.getChanges());
+            awaitWrites(writer, 2);
+
+            /** Nothing else is waiting to be written. */
+            Thread.sleep(2 * INTERVAL);
+            assertEquals(2, writer.getWrites());
+            assertEquals(0, writer.getFailures());
+            assertEquals(19, writer.getSaved());
+            assertTrue(writer.toString(),
+                    writer.toString().startsWith("Markers: 20 changes, "
+                            + "2 writes, 19 saved, 0 failed, "));
+            String markers = read(new File(dir, "markers.js"));
+            for (int i = 0; i < 20; ++i) {
+                assertTrue(markers.contains("marker" + i));
+            }
+        } finally {
+            writer.stop();
+            delete(dir);
+        }
+    }
+
+    /**
+     * Tests that the markers are written to a temporary file that is renamed
+     * over the old marker file, leaving no temporary file behind.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testRename() throws Exception {
+        File dir = Files.createTempDirectory("markers").toFile();
+        File file = new File(dir, "markers.js");
+        Files.write(file.toPath(), "old markers".getBytes("UTF-8"));
+        IndexedMapManager manager = new IndexedMapManager();
+        manager.addLocation(marker("BU"));
+        MarkerWriter writer = new MarkerWriter(file.getPath(), manager,
+                INTERVAL);
+        try {
+            awaitWrites(writer, 1);
+            String markers = read(file);
+            assertTrue(markers, markers.startsWith("var markers = [\n"));
+            assertTrue(markers, markers.endsWith("];"));
+            assertTrue(markers, markers.contains("BU"));
+            assertFalse(new File(dir, "markers.js.tmp").exists());
+            assertEquals(1, dir.list().length);
+        } finally {
+            writer.stop();
+            delete(dir);
+        }
+    }
+
+    /**
+     * Tests that a write that fails is tried again after the interval,
+     * without waiting for another change.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testRetryAfterFailure() throws Exception {
+        File dir = Files.createTempDirectory("markers").toFile();
+        File file = new File(dir, "markers.js");
+
+        /** The temporary file can't be written while a directory is there. */
+        File blocker = new File(dir, "markers.js.tmp");
+        assertTrue(blocker.mkdir());
+        IndexedMapManager manager = new IndexedMapManager();
+        manager.addLocation(marker("BU"));
+        MarkerWriter writer = new MarkerWriter(file.getPath(), manager,
+                INTERVAL);
+        try {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (writer.getFailures() == 0) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            assertEquals(0, writer.getWrites());
+            assertTrue(blocker.delete());
+
+            awaitWrites(writer, 1);
+            assertTrue(read(file).contains("BU"));
+            assertEquals(0, writer.getChanges());
+            assertEquals(0, writer.getSaved());
+        } finally {
+            writer.stop();
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the WriteLimit class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import myn.addatude.app.WriteLimit;
+import myn.addatude.app.WriteQueue;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the WriteLimit class. Each policy is taken
+ * past its limit the way a server does it, by filling a client's write queue
+ * and counting the client once the queue is full.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class WriteLimitTest {
+
+    /**
+     * Fills a queue for a client that never reads, and counts the client
+     * past the limit once the queue is full.
+     * 
+     * @param limit
+     *            the limit
+     * @return whether the client should be disconnected
+     */
+    private static boolean exceed(WriteLimit limit) {
+        WriteQueue queue = new WriteQueue(limit);
+        int added = 0;
+        while (!queue.isFull()) {
+            queue.add(ByteBuffer.wrap("OK".getBytes()));
+            ++added;
+        }
+        assertTrue(added <= limit.getMaxBuffers());
+        return limit.countExceeded();
+    }
+
+    /**
+     * Tests that the default limit pauses clients, with the default sizes.
+     */
+    @Test
+    public void testDefaults() {
+        WriteLimit limit = new WriteLimit();
+        assertEquals(WriteLimit.DEFAULT_MAX_BYTES, limit.getMaxBytes());
+        assertEquals(WriteLimit.DEFAULT_MAX_BUFFERS, limit.getMaxBuffers());
+        assertFalse(limit.isDisconnect());
+    }
+
+    /**
+     * Tests that a pausing limit says to stop reading rather than disconnect,
+     * and counts each pause.
+     */
+    @Test
+    public void testPause() {
+        WriteLimit limit = new WriteLimit(1000, 4, false);
+        assertFalse(exceed(limit));
+        assertFalse(exceed(limit));
+        assertEquals(2, limit.getPauses());
+        assertEquals(0, limit.getDisconnects());
+        assertEquals("Write limit: 1000 bytes, 4 replies, 2 pauses, "
+                + "0 disconnects", limit.toString());
+    }
+
+    /**
+     * Tests that a disconnecting limit says to disconnect, and counts each
+     * client disconnected.
+     */
+    @Test
+    public void testDisconnect() {
+        WriteLimit limit = new WriteLimit(5, 64, true);
+        assertTrue(exceed(limit));
+        assertEquals(0, limit.getPauses());
+        assertEquals(1, limit.getDisconnects());
+        assertEquals("Write limit: 5 bytes, 64 replies, 0 pauses, "
+                + "1 disconnects", limit.toString());
+    }
+
+    /**
+     * Tests that a limit that isn't positive is rejected.
+     */
+    @Test
+    public void testBadLimits() {
+        for (long[] sizes : new long[][] { { 0, 1 }, { 1, 0 }, { -1, 1 } }) {
+            try {
+                new WriteLimit(sizes[0], (int) sizes[1], false);
+                fail("Limit " + sizes[0] + ", " + sizes[1] + " was accepted.");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the WriteQueue class.
+ *
+ ************************************************/
+
+package myn.addatude.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import myn.addatude.app.WriteLimit;
+import myn.addatude.app.WriteQueue;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the WriteQueue class. Writes are done the
+ * way a gathering write to a slow client would do them, taking only so many
+ * bytes from the buffers the queue hands over.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class WriteQueueTest {
+
+    /** The bytes the fake client has taken, in order. */
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    /**
+     * Makes a reply.
+     * 
+     * @param text
+     *            the reply's text
+     * @return the reply
+     */
+    private static ByteBuffer reply(String text) {
+        return ByteBuffer.wrap(text.getBytes());
+    }
+
+    /**
+     * Writes up to some bytes from the queue, the way a gathering write does,
+     * and tells the queue how many were taken.
+     * 
+     * @param queue
+     *            the queue
+     * @param most
+     *            the most bytes the client takes
+     * @return the number of bytes written
+     */
+    private long write(WriteQueue queue, int most) {
+        ByteBuffer[] buffers = queue.getBuffers();
+        int end = queue.getOffset() + queue.getLength();
+        long taken = 0;
+        for (int i = queue.getOffset(); i < end && taken < most; ++i) {
+            while (buffers[i].hasRemaining() && taken < most) {
+                written.write(buffers[i].get());
+                ++taken;
+            }
+        }
+        queue.removeWritten(taken);
+        return taken;
+    }
+
+    /**
+     * Tests that the queue is full once it holds the most replies, and
+     * refuses another.
+     */
+    @Test
+    public void testFullByReplies() {
+        WriteQueue queue = new WriteQueue(new WriteLimit(1000, 3, false));
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 3; ++i) {
+            assertFalse(queue.isFull());
+            queue.add(reply("OK"));
+        }
+        assertTrue(queue.isFull());
+        assertEquals(6, queue.getQueuedBytes());
+        try {
+            queue.add(reply("OK"));
+            fail("Added past the most replies.");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    /**
+     * Tests that the queue is full once it holds the most bytes, and that it
+     * still takes one reply bigger than that.
+     */
+    @Test
+    public void testFullByBytes() {
+        WriteQueue queue = new WriteQueue(new WriteLimit(10, 8, false));
+        queue.add(reply("123456"));
+        assertFalse(queue.isFull());
+        queue.add(reply("789012"));
+        assertTrue(queue.isFull());
+
+        WriteQueue big = new WriteQueue(new WriteLimit(10, 8, false));
+        big.add(reply("a reply longer than the limit"));
+        assertTrue(big.isFull());
+        assertEquals(29, write(big, 100));
+        assertTrue(big.isEmpty());
+        assertFalse(big.isFull());
+    }
+
+    /**
+     * Tests that a write that stops partway through a reply drops only the
+     * replies written in full, and that the rest follows in order.
+     */
+    @Test
+    public void testPartialWrite() {
+        WriteQueue queue = new WriteQueue(new WriteLimit(1000, 4, false));
+        queue.add(reply("abc"));
+        queue.add(reply("defg"));
+        queue.add(reply("hi"));
+
+        assertEquals(5, write(queue, 5));
+        assertEquals(4, queue.getQueuedBytes());
+        assertEquals(1, queue.getOffset());
+        assertEquals(2, queue.getLength());
+
+        /** A write that takes nothing changes nothing. */
+        assertEquals(0, write(queue, 0));
+        assertEquals(4, queue.getQueuedBytes());
+        assertEquals(1, queue.getOffset());
+
+        assertEquals(4, write(queue, 100));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getQueuedBytes());
+        assertEquals(0, queue.getOffset());
+        assertEquals("abcdefghi", written.toString());
+    }
+
+    /**
+     * Tests that replies wrapping around the end of the ring are written in
+     * order, the ones up to the end first and the rest next time.
+     */
+    @Test
+    public void testWraparound() {
+        WriteQueue queue = new WriteQueue(new WriteLimit(1000, 3, false));
+        queue.add(reply("a"));
+        queue.add(reply("b"));
+        queue.add(reply("c"));
+        assertEquals(2, write(queue, 2));
+        queue.add(reply("d"));
+        queue.add(reply("e"));
+        assertTrue(queue.isFull());
+
+        /** Only c is before the end of the ring. */
+        assertEquals(2, queue.getOffset());
+        assertEquals(1, queue.getLength());
+        assertEquals(1, write(queue, 100));
+        assertEquals(0, queue.getOffset());
+        assertEquals(2, queue.getLength());
+
+        /** Room again at the back, which wraps once more. */
+        queue.add(reply("f"));
+        assertEquals(3, write(queue, 100));
+        assertTrue(queue.isEmpty());
+        assertEquals("abcdef", written.toString());
+
+        /** Going around many times keeps the order. */
+        StringBuilder expected = new StringBuilder("abcdef");
+        for (int i = 0; i < 20; ++i) {
+            String text = String.valueOf((char) ('g' + i));
+            queue.add(reply(text));
+            expected.append(text);
+            if (queue.isFull()) {
+                write(queue, 2);
+            }
+        }
+        while (!queue.isEmpty()) {
+            write(queue, 100);
+        }
+        assertEquals(expected.toString(), written.toString());
+    }
+}
@@ -68,9 +68,11 @@ public class AddATudeError extends AddATudeMessage {
      *            a MessageOutput stream to write to
      */
     public void encodeOperation(MessageOutput out) throws AddATudeException {
-        String toWrite = ERROR_OPERATION + ' ' + errorMessage.length() + ' '
-                + errorMessage;
-        out.write(toWrite);
+        out.write(ERROR_OPERATION);
+        out.write(' ');
+        out.writeUnsignedInt(errorMessage.length());
+        out.write(' ');
+        out.write(errorMessage);
     }
 
     /**
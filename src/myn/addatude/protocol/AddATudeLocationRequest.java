@@ -54,8 +54,8 @@ public class AddATudeLocationRequest extends AddATudeMessage {
      *            a MessageOutput stream to write to
      */
     public void encodeOperation(MessageOutput out) throws AddATudeException {
-        String toWrite = REQUEST_OPERATION + ' ';
-        out.write(toWrite);
+        out.write(REQUEST_OPERATION);
+        out.write(' ');
     }
 
     /**
@@ -13,7 +13,9 @@
 package myn.addatude.protocol;
 
 import java.io.EOFException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,6 +33,15 @@ public class AddATudeLocationResponse extends AddATudeMessage {
     /** A list for storing LocationRecords */
     List<LocationRecord> locationRecordList = new ArrayList<LocationRecord>();
 
+    /**
+     * The whole message's wire bytes, saved by cacheEncoding() and dropped
+     * whenever the response changes. Null when nothing is cached.
+     */
+    private volatile byte[] encoded;
+
+    /** The map ID that the cached bytes were encoded with. */
+    private volatile int encodedMapId;
+
     /**
      * This function constructs an AddATudeLocationResponse from a MessageInput
      * stream.
@@ -72,6 +83,45 @@ public class AddATudeLocationResponse extends AddATudeMessage {
         setMapName(mapName);
     }
 
+    /**
+     * This function serializes the message. If the message's bytes are cached,
+     * they are copied straight into the output instead.
+     * 
+     * @see myn.addatude.protocol.AddATudeMessage#encodeTo(MessageOutput)
+     * @param out
+     *            a MessageOutput stream to write to
+     */
+    @Override
+    public void encodeTo(MessageOutput out) throws AddATudeException {
+        byte[] cached = encoded;
+        if (cached != null && encodedMapId == mapId) {
+            out.write(cached, 0, cached.length);
+            return;
+        }
+        super.encodeTo(out);
+    }
+
+    /**
+     * Encodes the whole message once and keeps the bytes, so that later calls
+     * to encode() can copy them. This is meant for a response that is sent to
+     * many clients without changing. Adding a record or changing the map name
+     * drops the cached bytes.
+     * 
+     * @throws AddATudeException
+     *             if there is a problem in encoding the message
+     */
+    public void cacheEncoding() throws AddATudeException {
+        encoded = null;
+        MessageOutput out = new MessageOutput();
+        encodeTo(out);
+
+        ByteBuffer buffer = out.getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        encodedMapId = mapId;
+        encoded = bytes;
+    }
+
     /**
      * This function serializes the operation specific information and writes it
      * to the MessageOutput stream
@@ -80,22 +130,28 @@ public class AddATudeLocationResponse extends AddATudeMessage {
      *            a MessageOutput stream to write to
      */
     public void encodeOperation(MessageOutput out) throws AddATudeException {
-        String toWrite = RESPONSE_OPERATION + ' ' + mapName.length() + ' '
-                + mapName + locationRecordList.size() + ' ';
-        out.write(toWrite);
+        out.write(RESPONSE_OPERATION);
+        out.write(' ');
+        out.writeUnsignedInt(mapName.length());
+        out.write(' ');
+        out.write(mapName);
+        out.writeUnsignedInt(locationRecordList.size());
+        out.write(' ');
 
         for (int i = 0; i < locationRecordList.size(); ++i) {
-            locationRecordList.get(i).encode(out);
+            locationRecordList.get(i).encodeTo(out);
         }
     }
 
     /**
-     * This function returns the list of LocationRecords for the response.
+     * This function returns the list of LocationRecords for the response. The
+     * list can't be changed, so records are only added with
+     * addLocationRecord(), which drops the cached encoding.
      * 
-     * @return a list of LocationRecords
+     * @return an unmodifiable list of LocationRecords
      */
     public List<LocationRecord> getLocationRecordList() {
-        return locationRecordList;
+        return Collections.unmodifiableList(locationRecordList);
     }
 
     /**
@@ -106,6 +162,7 @@ public class AddATudeLocationResponse extends AddATudeMessage {
      *            a LocationRecord to add to the list of LocationRecords
      */
     public void addLocationRecord(LocationRecord location) {
+        encoded = null;
         locationRecordList.add(location);
     }
 
@@ -143,6 +200,7 @@ public class AddATudeLocationResponse extends AddATudeMessage {
                     null);
         }
         this.mapName = mapName;
+        this.encoded = null;
     }
 
     /**
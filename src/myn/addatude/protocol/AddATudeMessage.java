@@ -14,6 +14,7 @@ package myn.addatude.protocol;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class serializes and deserializes the message for all operations. It
@@ -125,11 +126,9 @@ public abstract class AddATudeMessage {
     }
 
     /**
-     * This function serializes a message. It first writes the header to the
-     * MessageOutput stream, then calls the abstract encodeOperation() function
-     * that's specific to each operation. The operation then serializes it's own
-     * information. After that one's done, this function then writes the EOLN
-     * sequence to the output stream.
+     * This function serializes a message and sends it. It encodes the whole
+     * message with encodeTo() and then flushes the MessageOutput stream, so
+     * the message goes out in a single write.
      * 
      * @param out
      *            a MessageOutput stream to write to.
@@ -137,13 +136,44 @@ public abstract class AddATudeMessage {
      *             if there is a problem in writing to the output stream.
      */
     public void encode(MessageOutput out) throws AddATudeException {
-        String toWrite = VERSION + ' ' + mapId + ' ';
-        out.write(toWrite);
+        encodeTo(out);
+        out.flush();
+    }
+
+    /**
+     * This function serializes a message without sending it. It first writes
+     * the header to the MessageOutput stream, then calls the abstract
+     * encodeOperation() function that's specific to each operation. The
+     * operation then serializes it's own information. After that one's done,
+     * this function then writes the EOLN sequence to the output stream.
+     * 
+     * @param out
+     *            a MessageOutput stream to write to.
+     * @throws AddATudeException
+     *             if there is a problem in writing to the output stream.
+     */
+    public void encodeTo(MessageOutput out) throws AddATudeException {
+        out.write(VERSION);
+        out.write(' ');
+        out.writeUnsignedInt(mapId);
+        out.write(' ');
 
         encodeOperation(out);
 
-        toWrite = EOLN;
-        out.write(toWrite);
+        out.write(EOLN);
+    }
+
+    /**
+     * This function serializes a message into the given ByteBuffer, starting
+     * at its position.
+     * 
+     * @param buffer
+     *            a ByteBuffer to write to.
+     * @throws AddATudeException
+     *             if the message doesn't fit in the buffer.
+     */
+    public void encodeTo(ByteBuffer buffer) throws AddATudeException {
+        encodeTo(new MessageOutput(buffer));
     }
 
     /**
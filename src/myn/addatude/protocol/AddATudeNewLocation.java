@@ -68,10 +68,10 @@ public class AddATudeNewLocation extends AddATudeMessage {
      *            a MessageOutput stream to write to
      */
     public void encodeOperation(MessageOutput out) throws AddATudeException {
-        String toWrite = NEW_OPERATION + ' ';
-        out.write(toWrite);
+        out.write(NEW_OPERATION);
+        out.write(' ');
 
-        location.encode(out);
+        location.encodeTo(out);
     }
 
     /**
@@ -0,0 +1,379 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class splits bytes read from a channel into AddATude messages.
+ *
+ ************************************************/
+
+package myn.addatude.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class splits bytes read from a channel into AddATude messages, each of
+ * which ends at an end of line. Bytes are read straight into this class's
+ * buffer, and each message is handed back as a slice of that buffer so it can
+ * be decoded in place. The search for the end of line picks up where it left
+ * off after every read, so no byte is looked at twice, and any number of
+ * messages that arrive in one read are all found. The buffer is only moved or
+ * grown when it fills up. A buffer that grew for a large message can be let
+ * go of once no partial message is waiting, so a connection only holds a big
+ * buffer while it needs one, and a steady connection keeps reusing its
+ * starting buffer without making a new one for every read.
+ * <p>
+ * Bytes read into someone else's buffer can instead be decoded in place from
+ * that buffer, set with setSource(). Only a message left partial at the end
+ * of it is copied into this class's buffer, which is made when first needed,
+ * so a connection that isn't partway through a message can hold no buffer at
+ * all.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class FrameDecoder {
+
+    /** The starting size of the buffer. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The largest message allowed, in bytes. */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1 << 20;
+
+    /** The starting size of the buffer. */
+    private final int capacity;
+
+    /** The bytes that have been read, or null if the buffer was let go. */
+    private byte[] bytes;
+
+    /** The buffer over the bytes that reads go into, or null with bytes. */
+    private ByteBuffer buffer;
+
+    /** The buffer being decoded in place, or null if there isn't one. */
+    private ByteBuffer source;
+
+    /** The largest message allowed, in bytes. */
+    private final int maxFrameLength;
+
+    /** The position of the first byte that isn't part of a found message. */
+    private int start = 0;
+
+    /** The position of the next byte to look at for an end of line. */
+    private int scan = 0;
+
+    /** Whether the byte before the scan position was the first EOLN char. */
+    private boolean sawFirstEOLN = false;
+
+    /** The array holding the last message found. */
+    private byte[] frameArray;
+
+    /** Whether the last message found is in the source. */
+    private boolean frameInSource = false;
+
+    /** The position of the last message found. */
+    private int frameOffset = 0;
+
+    /** The length of the last message found. */
+    private int frameLength = 0;
+
+    /**
+     * Constructs a FrameDecoder with the default sizes.
+     */
+    public FrameDecoder() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Constructs a FrameDecoder. Its buffer is made when first needed.
+     * 
+     * @param capacity
+     *            the starting size of the buffer
+     * @param maxFrameLength
+     *            the largest message allowed, in bytes
+     */
+    public FrameDecoder(int capacity, int maxFrameLength) {
+        this.capacity = capacity;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Returns the buffer to read the next bytes into. It always has room for
+     * at least one byte. After reading, call nextFrame() until it returns
+     * false before calling this again.
+     * 
+     * @return the buffer, positioned after the bytes already read
+     * @throws AddATudeException
+     *             if a message has grown past the largest allowed
+     */
+    public ByteBuffer getReadBuffer() throws AddATudeException {
+        if (buffer == null) {
+            bytes = new byte[capacity];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        if (buffer.hasRemaining()) {
+            return buffer;
+        }
+        int end = buffer.position();
+        int pending = end - start;
+        if (pending >= maxFrameLength) {
+            throw new AddATudeException("Message too long.", null);
+        }
+
+        /**
+         * The buffer is full. Move the partial message to the front if that
+         * frees up room, and grow the buffer only if it doesn't.
+         */
+        byte[] target = bytes;
+        if (start == 0) {
+            target = new byte[Math.min(bytes.length * 2, maxFrameLength)];
+        }
+        System.arraycopy(bytes, start, target, 0, pending);
+        scan -= start;
+        start = 0;
+        if (target != bytes) {
+            bytes = target;
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        buffer.limit(bytes.length);
+        buffer.position(pending);
+        return buffer;
+    }
+
+    /**
+     * Looks for the next whole message in the bytes read so far. If one is
+     * found, it can be fetched with getFrameArray(), getFrameOffset() and
+     * getFrameLength() until the next call to this function, getReadBuffer(),
+     * append(), setSource(), keepRest() or release(). Messages in this class's
+     * buffer come before those in the source.
+     * 
+     * @return whether a whole message was found
+     */
+    public boolean nextFrame() {
+        if (buffer != null && nextBufferFrame()) {
+            return true;
+        }
+        return source != null && nextSourceFrame();
+    }
+
+    /**
+     * Looks for the next whole message in this class's buffer.
+     * 
+     * @return whether a whole message was found
+     */
+    private boolean nextBufferFrame() {
+        int end = buffer.position();
+        while (scan < end) {
+            byte b = bytes[scan++];
+            if (sawFirstEOLN && b == AddATudeMessage.EOLN.charAt(1)) {
+                frameArray = bytes;
+                frameInSource = false;
+                frameOffset = start;
+                frameLength = scan - start;
+                start = scan;
+                sawFirstEOLN = false;
+                if (start == end) {
+                    /** Everything has been handed out, so start over. */
+                    start = 0;
+                    scan = 0;
+                    buffer.clear();
+                }
+                return true;
+            }
+            sawFirstEOLN = b == AddATudeMessage.EOLN.charAt(0);
+        }
+        return false;
+    }
+
+    /**
+     * Looks for the next whole message in the source, from its position. The
+     * source's position is moved past a message that is found.
+     * 
+     * @return whether a whole message was found
+     */
+    private boolean nextSourceFrame() {
+        byte[] array = source.array();
+        int first = source.arrayOffset() + source.position();
+        int end = source.arrayOffset() + source.limit();
+        boolean sawFirst = false;
+        for (int i = first; i < end; ++i) {
+            byte b = array[i];
+            if (sawFirst && b == AddATudeMessage.EOLN.charAt(1)) {
+                frameArray = array;
+                frameInSource = true;
+                frameOffset = first;
+                frameLength = i + 1 - first;
+                source.position(source.position() + frameLength);
+                return true;
+            }
+            sawFirst = b == AddATudeMessage.EOLN.charAt(0);
+        }
+        return false;
+    }
+
+    /**
+     * Sets the buffer to decode in place, from its position to its limit. If
+     * a partial message is waiting in this class's buffer, the bytes that
+     * finish it are copied over to it first. Call nextFrame() until it returns
+     * false afterward, then keepRest() before the source is used again.
+     * 
+     * @param src
+     *            the bytes that were read, which must be backed by an array
+     * @throws AddATudeException
+     *             if a message has grown past the largest allowed
+     */
+    public void setSource(ByteBuffer src) throws AddATudeException {
+        if (!src.hasArray()) {
+            throw new IllegalArgumentException("Source has no array.");
+        }
+        keepRest();
+        if (getPendingLength() > 0) {
+            int last = buffer.position() - 1;
+            boolean sawFirst = bytes[last] == AddATudeMessage.EOLN.charAt(0);
+            int cut = src.limit();
+            for (int i = src.position(); i < src.limit(); ++i) {
+                byte b = src.get(i);
+                if (sawFirst && b == AddATudeMessage.EOLN.charAt(1)) {
+                    cut = i + 1;
+                    break;
+                }
+                sawFirst = b == AddATudeMessage.EOLN.charAt(0);
+            }
+            int limit = src.limit();
+            src.limit(cut);
+            append(src);
+            src.limit(limit);
+        }
+        source = src;
+    }
+
+    /**
+     * Copies what's left of the source, a partial message and any message put
+     * back, into this class's buffer, and lets go of the source.
+     * 
+     * @throws AddATudeException
+     *             if a message has grown past the largest allowed
+     */
+    public void keepRest() throws AddATudeException {
+        if (source == null) {
+            return;
+        }
+        ByteBuffer rest = source;
+        source = null;
+        append(rest);
+    }
+
+    /**
+     * Puts back the last message found, so the next call to nextFrame() finds
+     * it again.
+     */
+    public void unread() {
+        if (frameInSource) {
+            source.position(frameOffset - source.arrayOffset());
+            return;
+        }
+        /** The buffer may have started over, with the bytes still in it. */
+        if (buffer.position() < frameOffset + frameLength) {
+            buffer.position(frameOffset + frameLength);
+        }
+        start = frameOffset;
+        scan = frameOffset;
+        sawFirstEOLN = false;
+    }
+
+    /**
+     * Copies bytes that were read somewhere else into the buffer, growing it
+     * if needed. Call nextFrame() until it returns false afterward.
+     * 
+     * @param src
+     *            the bytes that were read, which are all used up
+     * @throws AddATudeException
+     *             if a message has grown past the largest allowed
+     */
+    public void append(ByteBuffer src) throws AddATudeException {
+        while (src.hasRemaining()) {
+            ByteBuffer dst = getReadBuffer();
+            int length = Math.min(dst.remaining(), src.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + length);
+            dst.put(src);
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * Lets go of the buffer if it grew past its starting size and no partial
+     * message is waiting in it. A new buffer of the starting size is made the
+     * next time one is needed. A buffer that never grew is kept, so reads
+     * keep going into the same one.
+     */
+    public void release() {
+        if (bytes != null && bytes.length > capacity
+                && getPendingLength() == 0) {
+            bytes = null;
+            buffer = null;
+            start = 0;
+            scan = 0;
+            sawFirstEOLN = false;
+        }
+    }
+
+    /**
+     * Lets go of the buffer whatever its size, if no partial message is
+     * waiting in it or in the source. A decoder that is only handed sources
+     * then holds a buffer only while a message is partway read.
+     */
+    public void releaseAll() {
+        if (getPendingLength() == 0) {
+            bytes = null;
+            buffer = null;
+            start = 0;
+            scan = 0;
+            sawFirstEOLN = false;
+        }
+    }
+
+    /**
+     * Returns the array holding the last message found, which is the source's
+     * array if it was found there.
+     * 
+     * @return the array
+     */
+    public byte[] getFrameArray() {
+        return frameArray;
+    }
+
+    /**
+     * Returns the position of the last message found in its array.
+     * 
+     * @return the position of the message's first byte
+     */
+    public int getFrameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * Returns the length of the last message found, including its end of
+     * line.
+     * 
+     * @return the number of bytes in the message
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns the number of bytes read that aren't part of a found message,
+     * in this class's buffer and the source.
+     * 
+     * @return the number of bytes waiting for an end of line
+     */
+    public int getPendingLength() {
+        int pending = source == null ? 0 : source.remaining();
+        if (buffer == null) {
+            return pending;
+        }
+        return pending + buffer.position() - start;
+    }
+}
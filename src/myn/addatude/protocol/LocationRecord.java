@@ -13,6 +13,7 @@
 package myn.addatude.protocol;
 
 import java.io.EOFException;
+import java.nio.ByteBuffer;
 
 /**
  * This class serializes and deserializes a location's record. It also stores
@@ -39,6 +40,18 @@ public class LocationRecord {
      */
     private String latitude;
 
+    /** The value of the longitude, parsed once when it is set. */
+    private double longitudeValue;
+
+    /** The value of the latitude, parsed once when it is set. */
+    private double latitudeValue;
+
+    /**
+     * The record's wire bytes, saved by cacheEncoding() and dropped whenever
+     * a member changes. Null when nothing is cached.
+     */
+    private volatile byte[] encoded;
+
     /**
      * The string containing the location name.
      */
@@ -97,7 +110,9 @@ public class LocationRecord {
          */
         userId = in.readUnsignedInt();
         longitude = in.readSignedDouble();
+        longitudeValue = in.getSignedDoubleValue();
         latitude = in.readSignedDouble();
+        latitudeValue = in.getSignedDoubleValue();
 
         int nameLength = in.readUnsignedInt();
         locationName = in.readString(nameLength);
@@ -107,7 +122,8 @@ public class LocationRecord {
     }
 
     /**
-     * Modifies a MessageOutput stream, writing the LocationRecord to it.
+     * Modifies a MessageOutput stream, writing the LocationRecord to it and
+     * sending it.
      * 
      * @param out
      *            a MessageOutput stream with the LocationRecord's information
@@ -116,11 +132,60 @@ public class LocationRecord {
      *             thrown if there is an issue in writing to the stream
      */
     public void encode(MessageOutput out) throws AddATudeException {
-        String userID = Integer.toUnsignedString(userId);
-        String record = userID + ' ' + longitude + ' ' + latitude + ' '
-                + locationName.length() + ' ' + locationName
-                + locationDescription.length() + ' ' + locationDescription;
-        out.write(record);
+        encodeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the LocationRecord to a MessageOutput stream without sending it,
+     * so that it can be sent as part of a larger message.
+     * 
+     * @param out
+     *            a MessageOutput stream with the LocationRecord's information
+     *            added to it.
+     * @throws AddATudeException
+     *             thrown if there is an issue in writing to the stream
+     */
+    public void encodeTo(MessageOutput out) throws AddATudeException {
+        /** If the bytes are cached, copy them straight into the output. */
+        byte[] cached = encoded;
+        if (cached != null) {
+            out.write(cached, 0, cached.length);
+            return;
+        }
+
+        out.writeUnsignedInt(userId);
+        out.write(' ');
+        out.write(longitude);
+        out.write(' ');
+        out.write(latitude);
+        out.write(' ');
+        out.writeUnsignedInt(locationName.length());
+        out.write(' ');
+        out.write(locationName);
+        out.writeUnsignedInt(locationDescription.length());
+        out.write(' ');
+        out.write(locationDescription);
+    }
+
+    /**
+     * Encodes the LocationRecord once and keeps the bytes, so that later calls
+     * to encodeTo() can copy them instead of encoding each member again. This
+     * is meant for records that are stored and sent many times. Any setter
+     * drops the cached bytes.
+     * 
+     * @throws AddATudeException
+     *             thrown if there is an issue in encoding the record
+     */
+    public void cacheEncoding() throws AddATudeException {
+        encoded = null;
+        MessageOutput out = new MessageOutput();
+        encodeTo(out);
+
+        ByteBuffer buffer = out.getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        encoded = bytes;
     }
 
     /**
@@ -154,6 +219,15 @@ public class LocationRecord {
         return latitude;
     }
 
+    /**
+     * A getter function to return the value of the latitude.
+     * 
+     * @return the latitude as a double
+     */
+    public double getLatitudeValue() {
+        return latitudeValue;
+    }
+
     /**
      * A getter function to return the location description.
      * 
@@ -182,6 +256,15 @@ public class LocationRecord {
         return longitude;
     }
 
+    /**
+     * A getter function to return the value of the longitude.
+     * 
+     * @return the longitude as a double
+     */
+    public double getLongitudeValue() {
+        return longitudeValue;
+    }
+
     /**
      * A getter function to return the user ID.
      * 
@@ -217,14 +300,20 @@ public class LocationRecord {
      *            a string representation of the signed double representing the
      *            latitude.
      * @throws AddATudeException
-     *             thrown if latitude is null
+     *             thrown if latitude is null or not a signed double
      */
     public void setLatitude(String latitude) throws AddATudeException {
-        if (latitude == null || !MessageInput.isValidSignedDouble(longitude)) {
+        double value = Double.NaN;
+        if (latitude != null) {
+            value = MessageInput.parseSignedDouble(latitude);
+        }
+        if (Double.isNaN(value)) {
             throw new AddATudeException("Invalid or null latitude in setter..",
                     null);
         }
         this.latitude = latitude;
+        this.latitudeValue = value;
+        this.encoded = null;
     }
 
     /**
@@ -242,6 +331,7 @@ public class LocationRecord {
                     "Null location description passed in setter.", null);
         }
         this.locationDescription = locationDescription;
+        this.encoded = null;
     }
 
     /**
@@ -258,6 +348,7 @@ public class LocationRecord {
                     null);
         }
         this.locationName = locationName;
+        this.encoded = null;
     }
 
     /**
@@ -268,14 +359,20 @@ public class LocationRecord {
      *            a string representation of the signed double representing the
      *            latitude.
      * @throws AddATudeException
-     *             thrown if longitude is null
+     *             thrown if longitude is null or not a signed double
      */
     public void setLongitude(String longitude) throws AddATudeException {
-        if (longitude == null || !MessageInput.isValidSignedDouble(longitude)) {
+        double value = Double.NaN;
+        if (longitude != null) {
+            value = MessageInput.parseSignedDouble(longitude);
+        }
+        if (Double.isNaN(value)) {
             throw new AddATudeException("Invalid or null longitude in setter.",
                     null);
         }
         this.longitude = longitude;
+        this.longitudeValue = value;
+        this.encoded = null;
     }
 
     /**
@@ -292,6 +389,7 @@ public class LocationRecord {
                     null);
         }
         this.userId = userId;
+        this.encoded = null;
     }
 
     /**
@@ -304,4 +402,4 @@ public class LocationRecord {
                 + latitude + ", location name=" + locationName
                 + ", location description=" + locationDescription;
     }
-}
\ No newline at end of file
+}
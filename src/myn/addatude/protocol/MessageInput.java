@@ -15,10 +15,14 @@ package myn.addatude.protocol;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class functions as a wrapper to the InputStream class. It contains
- * several helper functions to read information from the InputStream.
+ * several helper functions to read information from the InputStream. Bytes are
+ * pulled from the stream in bulk into a reusable buffer, and each token is
+ * scanned for inside that buffer instead of being built one byte at a time.
  * 
  * @version 16 September 2015
  * @author Austin Sandlin
@@ -30,8 +34,48 @@ public class MessageInput {
     public final char DELIMITER = ' ';
     private final int EOF = -1;
 
-    /** A String to match the pattern of an unsigned double. */
-    private static final String UNSIGNED_DOUBLE_REGEX = "^[-+]?[0-9]*\\.?[0-9]+$";
+    /** The default number of bytes pulled from the stream per read. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The initial size of the scratch array for tokens that span reads. */
+    private static final int INITIAL_TOKEN_SIZE = 64;
+
+    /**
+     * The charset used to turn bytes into strings. Every byte maps straight to
+     * the char of the same value, just like casting each byte did.
+     */
+    private static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+    /**
+     * The most significant digits that can be gathered into a long and still
+     * be held exactly by a double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Powers of ten that a double holds exactly, indexed by exponent. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+            1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+            1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** The reusable buffer that bytes are read into from the stream. */
+    private byte[] buffer;
+    /** The position of the next unread byte in the buffer. */
+    private int position;
+    /** The position after the last valid byte in the buffer. */
+    private int limit;
+
+    /** Scratch array for holding tokens that cross a buffer refill. */
+    private byte[] scratch = new byte[INITIAL_TOKEN_SIZE];
+
+    /** The array holding the last token read (buffer or scratch). */
+    private byte[] tokenBytes;
+    /** The offset of the last token read in tokenBytes. */
+    private int tokenOffset;
+    /** The length of the last token read. */
+    private int tokenLength;
+
+    /** The value of the signed double last returned by readSignedDouble. */
+    private double signedDoubleValue;
 
     /**
      * Constructs a MessageInput with a given InputStream
@@ -40,7 +84,137 @@ public class MessageInput {
      *            an InputStream to form a wrapper for.
      */
     public MessageInput(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a MessageInput with a given InputStream and the size of the
+     * buffer to read the stream into.
+     * 
+     * @param in
+     *            an InputStream to form a wrapper for.
+     * @param bufferSize
+     *            the number of bytes to pull from the stream at a time
+     * @throws IllegalArgumentException
+     *             if the buffer size is less than one
+     */
+    public MessageInput(InputStream in, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be at least one byte.");
+        }
         this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Constructs a MessageInput that reads straight out of the given bytes
+     * without copying them. The end of the bytes is treated as the end of the
+     * stream.
+     * 
+     * @param bytes
+     *            the array holding the bytes to read
+     * @param offset
+     *            the position of the first byte to read
+     * @param length
+     *            the number of bytes to read
+     */
+    public MessageInput(byte[] bytes, int offset, int length) {
+        this.in = null;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * This function refills the buffer from the stream once everything in it
+     * has been read.
+     * 
+     * @return false if the end of the stream was reached
+     * @throws IOException
+     *             if there was an issue in reading from the InputStream
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int bytesRead = 0;
+        while (bytesRead == 0) {
+            bytesRead = in.read(buffer, 0, buffer.length);
+        }
+        if (bytesRead == EOF) {
+            return false;
+        }
+        position = 0;
+        limit = bytesRead;
+        return true;
+    }
+
+    /**
+     * This function makes sure the scratch array can hold the given number of
+     * bytes, keeping the bytes it already has.
+     * 
+     * @param capacity
+     *            the number of bytes the scratch array needs to hold
+     */
+    private void ensureScratch(int capacity) {
+        if (capacity > scratch.length) {
+            byte[] bigger = new byte[Math.max(capacity, scratch.length * 2)];
+            System.arraycopy(scratch, 0, bigger, 0, tokenLength);
+            scratch = bigger;
+        }
+    }
+
+    /**
+     * This function reads the bytes up to the next delimiter and consumes the
+     * delimiter. If the whole token is already in the buffer, it is left there
+     * rather than copied. Otherwise, it is gathered into the scratch array.
+     * 
+     * @return false if the end of the stream was reached before a delimiter
+     * @throws IOException
+     *             if there was an issue in reading from the InputStream
+     */
+    private boolean readToken() throws IOException {
+        tokenBytes = buffer;
+        tokenOffset = position;
+        tokenLength = 0;
+
+        boolean copied = false;
+        while (true) {
+            if (position == limit) {
+                /** Save what we have before the buffer gets overwritten. */
+                if (!copied && tokenLength > 0) {
+                    ensureScratch(tokenLength);
+                    System.arraycopy(buffer, tokenOffset, scratch, 0,
+                            tokenLength);
+                }
+                copied = true;
+                if (!fill()) {
+                    return false;
+                }
+            }
+
+            /** Scan the buffer for the delimiter. */
+            int start = position;
+            while (position < limit && buffer[position] != DELIMITER) {
+                ++position;
+            }
+            int count = position - start;
+
+            if (copied) {
+                ensureScratch(tokenLength + count);
+                System.arraycopy(buffer, start, scratch, tokenLength, count);
+                tokenBytes = scratch;
+                tokenOffset = 0;
+            }
+            tokenLength += count;
+
+            if (position < limit) {
+                /** Skip over the delimiter. */
+                ++position;
+                return true;
+            }
+        }
     }
 
     /**
@@ -51,14 +225,17 @@ public class MessageInput {
      *             if there was an issue in reading from the InputStream
      */
     public int read() throws IOException {
-        return in.read();
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position++] & 0xFF;
     }
 
     /**
-     * Reads from the InputStream, byte by byte, to obtain an a string
-     * representation of an unsigned integer. It throws an AddATudeException if
-     * the unsigned integer failed to parse or if it failed to encounter a space
-     * after the integer.
+     * Reads from the InputStream up to the next space to obtain an unsigned
+     * integer, parsing it straight from the bytes. It throws an
+     * AddATudeException if the unsigned integer failed to parse or if it failed
+     * to encounter a space after the integer.
      * 
      * @return an integer in an unsigned format.
      * @throws AddATudeException
@@ -67,42 +244,49 @@ public class MessageInput {
      *             if reaches end of file during reading
      */
     public int readUnsignedInt() throws AddATudeException, EOFException {
-        String sb = "";
-        int toReturn = 0;
-        int inByte = 0;
-
+        boolean found = false;
         try {
-
-            inByte = read();
-            while (inByte != DELIMITER && inByte != EOF) {
-                sb += ((char) inByte);
-                inByte = read();
-            }
+            found = readToken();
         } catch (IOException e) {
             throw new AddATudeException(
                     "Caught I/O exception during reading of unsigned int.", e);
         }
 
-        if (inByte == EOF) {
+        if (!found) {
             throw new EOFException(
-                    "Reached end of file during reading of signed double.");
-        } else if (inByte != DELIMITER) {
-            throw new AddATudeException(
-                    "Failed to finish reading signed double.", null);
+                    "Reached end of file during reading of unsigned int.");
         }
 
-        try {
-            toReturn = Integer.parseUnsignedInt(sb.toString());
-        } catch (NumberFormatException e) {
-            throw new AddATudeException("Failed to parse unsigned int.", e);
+        /** Allow a leading plus sign, just like Integer.parseUnsignedInt. */
+        int i = tokenOffset;
+        int end = tokenOffset + tokenLength;
+        if (i < end && tokenBytes[i] == '+') {
+            ++i;
+        }
+        if (i == end) {
+            throw new AddATudeException("Failed to parse unsigned int.", null);
         }
 
-        return toReturn;
+        long value = 0;
+        for (; i < end; ++i) {
+            int digit = tokenBytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new AddATudeException("Failed to parse unsigned int.",
+                        null);
+            }
+            value = value * 10 + digit;
+            if (value > 0xFFFFFFFFL) {
+                throw new AddATudeException("Failed to parse unsigned int.",
+                        null);
+            }
+        }
+
+        return (int) value;
     }
 
     /**
-     * Reads from the InputStream, byte by byte, to obtain an a string
-     * representation of a signed integer. It throws an AddATudeException if the
+     * Reads from the InputStream up to the next space to obtain a string
+     * representation of a signed double. It throws an AddATudeException if the
      * signed double failed to match the required regular expression or if it
      * failed to encounter a space after the double.
      * 
@@ -114,29 +298,23 @@ public class MessageInput {
      *             if reaches end of file during reading
      */
     public String readSignedDouble() throws AddATudeException, EOFException {
-        String toReturn = "";
-        int inByte = 0;
-
+        boolean found = false;
         try {
-            inByte = read();
-            while (inByte != DELIMITER && inByte != EOF) {
-                toReturn += ((char) inByte);
-                inByte = read();
-            }
+            found = readToken();
         } catch (IOException e) {
             throw new AddATudeException(
                     "Caught I/O exception during reading of signed double.", e);
         }
 
-        if (inByte == EOF) {
+        if (!found) {
             throw new EOFException(
                     "Reached end of file during reading of signed double.");
-        } else if (inByte != DELIMITER) {
-            throw new AddATudeException(
-                    "Failed to finish reading signed double.", null);
         }
 
-        if (!isValidSignedDouble(toReturn)) {
+        String toReturn = new String(tokenBytes, tokenOffset, tokenLength,
+                CHARSET);
+        signedDoubleValue = parseSignedDouble(toReturn);
+        if (Double.isNaN(signedDoubleValue)) {
             throw new AddATudeException("Improper unsigned double format.",
                     null);
         }
@@ -144,87 +322,178 @@ public class MessageInput {
         return toReturn;
     }
 
+    /**
+     * This function returns the value of the signed double last returned by
+     * readSignedDouble, so that it doesn't need to be parsed a second time.
+     * 
+     * @return the value of the last signed double read
+     */
+    double getSignedDoubleValue() {
+        return signedDoubleValue;
+    }
+
     /**
      * This function determines if a double matches the signed double format.
+     * That is an optional sign, then digits with at most one decimal point,
+     * ending in a digit.
      * 
      * @param sDouble
-     *            the string representation of a signed double matching the
-     *            regular expression.
+     *            the string representation of a signed double
      * @return boolean representing whether or not the string matches the
-     *         regular expression
+     *         signed double format
      */
     public static boolean isValidSignedDouble(String sDouble) {
-        boolean validity = false;
-        if (sDouble.matches(UNSIGNED_DOUBLE_REGEX)) {
-            validity = true;
+        return !Double.isNaN(parseSignedDouble(sDouble));
+    }
+
+    /**
+     * This function checks a string against the signed double format and
+     * parses it in the same pass. Up to fifteen significant digits and
+     * twenty-two decimal places, the digits are gathered into a long and
+     * divided by an exact power of ten, which gives the same correctly rounded
+     * result as Double.parseDouble. Longer strings are still checked here but
+     * handed to Double.parseDouble for the value.
+     * 
+     * @param sDouble
+     *            the string representation of a signed double
+     * @return the value of the signed double, or NaN if the string doesn't
+     *         match the signed double format
+     */
+    public static double parseSignedDouble(String sDouble) {
+        int length = sDouble.length();
+        int i = 0;
+
+        /** Read the optional sign. */
+        boolean negative = false;
+        if (i < length
+                && (sDouble.charAt(i) == '-' || sDouble.charAt(i) == '+')) {
+            negative = sDouble.charAt(i) == '-';
+            ++i;
+        }
+
+        long digits = 0;
+        int significantDigits = 0;
+        int decimalPlaces = 0;
+        boolean exact = true;
+        boolean seenPoint = false;
+        boolean endsInDigit = false;
+
+        for (; i < length; ++i) {
+            char c = sDouble.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (significantDigits < MAX_EXACT_DIGITS) {
+                    digits = digits * 10 + (c - '0');
+                    if (digits != 0) {
+                        ++significantDigits;
+                    }
+                    if (seenPoint) {
+                        ++decimalPlaces;
+                    }
+                } else {
+                    exact = false;
+                }
+                endsInDigit = true;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+                endsInDigit = false;
+            } else {
+                return Double.NaN;
+            }
+        }
+
+        if (!endsInDigit) {
+            return Double.NaN;
         }
-        return validity;
+
+        if (!exact || decimalPlaces >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(sDouble);
+        }
+
+        double value = digits / POWERS_OF_TEN[decimalPlaces];
+        return negative ? -value : value;
     }
 
     /**
-     * Reads a byte from the InputStream until a space is found, to obtain a
-     * string. It throws an IOException if it reaches the end of the file during
-     * reading the string.
+     * Reads from the InputStream until a space is found, to obtain a string. It
+     * throws an EOFException if it reaches the end of the file during reading
+     * the string.
      * 
-     * @return an integer in an unsigned format.
+     * @return the string read from the stream.
      * @throws AddATudeException
      *             thrown if the string doesn't match the protocol
      * @throws EOFException
      *             if reaches end of file during reading
      */
     public String readString() throws AddATudeException, EOFException {
-        String toReturn = "";
-        int inByte = 0;
-
+        boolean found = false;
         try {
-            inByte = read();
-            while (inByte != DELIMITER && inByte != EOF) {
-                toReturn += ((char) inByte);
-                inByte = read();
-            }
+            found = readToken();
         } catch (IOException e) {
             throw new AddATudeException(
                     "Caught I/O exception during reading of string.", e);
         }
 
-        if (inByte == EOF) {
+        if (!found) {
             throw new EOFException(
                     "Reached end of file during reading of a string.");
-        } else if (inByte != DELIMITER) {
-            throw new AddATudeException("Failed to finish reading string.",
-                    null);
         }
 
-        return toReturn;
+        return new String(tokenBytes, tokenOffset, tokenLength, CHARSET);
     }
 
     /**
-     * Reads a byte from the InputStream a given number of times, to obtain a
-     * string. It throws an IOException if it reaches the end of the file during
-     * reading the string.
+     * Reads a given number of bytes from the InputStream to obtain a string.
+     * The length is treated as unsigned. It throws an EOFException if it
+     * reaches the end of the file during reading the string.
      * 
      * @param length
      *            an integer representing the exact number of bytes to read from
      *            the stream.
-     * @return an integer in an unsigned format.
+     * @return the string read from the stream.
      * @throws AddATudeException
      *             if the string doesn't match the protocol
+     * @throws EOFException
+     *             if reaches end of file during reading
      */
-    public String readString(int length) throws AddATudeException {
-        String toReturn = "";
-        int inByte = 0;
+    public String readString(int length)
+            throws AddATudeException, EOFException {
+        long remaining = Integer.toUnsignedLong(length);
 
+        /** If the whole string is already buffered, build it in place. */
+        if (limit - position >= remaining) {
+            String toReturn = new String(buffer, position, (int) remaining,
+                    CHARSET);
+            position += (int) remaining;
+            return toReturn;
+        }
+
+        if (remaining > Integer.MAX_VALUE) {
+            throw new AddATudeException("String length too large.", null);
+        }
+
+        /** Otherwise, gather it into the scratch array as it arrives. */
+        tokenLength = 0;
         try {
-            for (int i = 0; Integer.compareUnsigned(i, length) < 0; ++i) {
-                inByte = read();
-                toReturn += ((char) inByte);
+            while (remaining > 0) {
+                if (position == limit && !fill()) {
+                    throw new EOFException(
+                            "Reached end of file during reading of a string.");
+                }
+                int count = (int) Math.min(remaining, limit - position);
+                ensureScratch(tokenLength + count);
+                System.arraycopy(buffer, position, scratch, tokenLength, count);
+                tokenLength += count;
+                position += count;
+                remaining -= count;
             }
+        } catch (EOFException e) {
+            throw e;
         } catch (IOException e) {
             throw new AddATudeException(
                     "Caught I/O exception during reading of string.", e);
         }
 
-        return toReturn;
+        return new String(scratch, 0, tokenLength, CHARSET);
     }
 
     /**
@@ -241,14 +510,18 @@ public class MessageInput {
      *             inputstream.
      */
     public void purge(String str) throws AddATudeException, EOFException {
+        /** Only the last few characters matter, so keep just those. */
         StringBuilder trash = new StringBuilder();
         int inByte = 0;
 
         try {
             do {
-                inByte = in.read();
+                inByte = read();
                 trash.append((char) inByte);
-            } while (!trash.toString().endsWith(str) && inByte != EOF);
+                if (trash.length() > str.length()) {
+                    trash.deleteCharAt(0);
+                }
+            } while (!str.contentEquals(trash) && inByte != EOF);
 
         } catch (IOException e) {
             throw new AddATudeException(
@@ -262,13 +535,18 @@ public class MessageInput {
     }
 
     /**
-     * Simple wrapper function for available.
+     * Simple wrapper function for available. This includes the bytes that have
+     * already been buffered.
      * 
      * @throws IOException
      *             if there's an issue checking the final.
      * @return the number of bytes available to read in the InputStream
      */
     public int available() throws IOException {
-        return in.available();
+        int buffered = limit - position;
+        if (in == null) {
+            return buffered;
+        }
+        return buffered + in.available();
     }
 }
@@ -13,9 +13,13 @@ package myn.addatude.protocol;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
- * This class functions as a basic wrapper to the OutputStream class.
+ * This class functions as a basic wrapper to the OutputStream class. Writes
+ * are gathered in a buffer and sent to the OutputStream in a single write when
+ * the message is flushed. It can also be used without a stream, to encode
+ * messages straight into a ByteBuffer.
  * 
  * @version 16 September 2015
  * @author Austin Sandlin
@@ -30,6 +34,21 @@ public class MessageOutput {
      */
     public static final String ENCODING = "ASCII";
 
+    /** The starting size of a buffer that this class owns. */
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /** The largest char that ASCII can represent. */
+    private static final char MAX_ASCII = 127;
+
+    /** The byte written in place of a char that ASCII can't represent. */
+    private static final byte UNMAPPABLE = '?';
+
+    /** The buffer that bytes are gathered in before they are sent. */
+    private ByteBuffer buffer;
+
+    /** Whether this class owns the buffer and may replace it to grow. */
+    private final boolean growable;
+
     /**
      * Constructs a MessageOutput with a given OutputStream.
      * 
@@ -38,22 +57,162 @@ public class MessageOutput {
      */
     public MessageOutput(OutputStream out) {
         this.out = out;
+        this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        this.growable = true;
+    }
+
+    /**
+     * Constructs a MessageOutput with no OutputStream. Everything written is
+     * kept in a buffer that grows as needed, and can be fetched with
+     * getBuffer().
+     */
+    public MessageOutput() {
+        this((OutputStream) null);
+    }
+
+    /**
+     * Constructs a MessageOutput that writes into the given ByteBuffer. The
+     * buffer is not grown, so writing more than it has room for is an error.
+     * 
+     * @param buffer
+     *            the ByteBuffer to write into, starting at its position
+     */
+    public MessageOutput(ByteBuffer buffer) {
+        this.out = null;
+        this.buffer = buffer;
+        this.growable = false;
     }
 
     /**
-     * Writes a byte array to the OutputStream.
+     * This function makes sure there is room in the buffer for the given number
+     * of bytes, growing the buffer if this class owns it.
+     * 
+     * @param length
+     *            the number of bytes about to be written
+     * @throws AddATudeException
+     *             if the buffer is full and can't be grown
+     */
+    private void ensureRemaining(int length) throws AddATudeException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        if (!growable) {
+            throw new AddATudeException("MessageOutput buffer overflow.",
+                    null);
+        }
+        int needed = buffer.position() + length;
+        ByteBuffer bigger = ByteBuffer
+                .allocate(Math.max(needed, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /**
+     * Writes a String's characters to the buffer in ASCII.
      * 
      * @param s
      *            a String to encode and then write to the OutputStream
      * @throws AddATudeException
-     *             thrown if there is a failure to write to the stream.
+     *             thrown if there is a failure to write to the buffer.
      */
     public void write(String s) throws AddATudeException {
+        int length = s.length();
+        ensureRemaining(length);
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            buffer.put(c <= MAX_ASCII ? (byte) c : UNMAPPABLE);
+        }
+    }
+
+    /**
+     * Writes a single ASCII character to the buffer.
+     * 
+     * @param c
+     *            the character to write
+     * @throws AddATudeException
+     *             thrown if there is a failure to write to the buffer.
+     */
+    public void write(char c) throws AddATudeException {
+        ensureRemaining(1);
+        buffer.put(c <= MAX_ASCII ? (byte) c : UNMAPPABLE);
+    }
+
+    /**
+     * Writes bytes that are already encoded to the buffer.
+     * 
+     * @param bytes
+     *            the array holding the bytes
+     * @param offset
+     *            the position of the first byte to write
+     * @param length
+     *            the number of bytes to write
+     * @throws AddATudeException
+     *             thrown if there is a failure to write to the buffer.
+     */
+    public void write(byte[] bytes, int offset, int length)
+            throws AddATudeException {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Writes the decimal digits of an unsigned integer to the buffer, without
+     * building a String for it.
+     * 
+     * @param value
+     *            an integer in unsigned format
+     * @throws AddATudeException
+     *             thrown if there is a failure to write to the buffer.
+     */
+    public void writeUnsignedInt(int value) throws AddATudeException {
+        long remaining = Integer.toUnsignedLong(value);
+        int digits = 1;
+        for (long i = remaining; i >= 10; i /= 10) {
+            ++digits;
+        }
+        ensureRemaining(digits);
+
+        /** Fill in the digits from the last to the first. */
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); --i) {
+            buffer.put(i, (byte) ('0' + remaining % 10));
+            remaining /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Sends everything in the buffer to the OutputStream in a single write and
+     * empties the buffer. If there is no OutputStream, this does nothing.
+     * 
+     * @throws AddATudeException
+     *             thrown if there is a failure to write to the stream.
+     */
+    public void flush() throws AddATudeException {
+        if (out == null || buffer.position() == 0) {
+            return;
+        }
         try {
-            out.write(s.getBytes(ENCODING));
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            out.flush();
         } catch (IOException e) {
             throw new AddATudeException("MessageOutput write failure.", e);
+        } finally {
+            buffer.clear();
         }
     }
 
+    /**
+     * Returns the bytes written so far, ready to be read from. The returned
+     * ByteBuffer shares its bytes with this class, so nothing is copied.
+     * 
+     * @return a ByteBuffer from the start of the buffer to the last byte
+     *         written
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer toReturn = buffer.duplicate();
+        toReturn.flip();
+        return toReturn;
+    }
 }
@@ -0,0 +1,91 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 0
+ * Class:       CSI 4321 - Data Communications
+ * Date:        16 September 2015
+ *
+ * This class is a microbenchmark comparing the old regular expression check
+ * and parse of a coordinate with MessageInput's single pass parser.
+ *
+ ************************************************/
+
+package myn.addatude.protocol.bench;
+
+import myn.addatude.protocol.MessageInput;
+
+/**
+ * This class is a microbenchmark comparing the old regular expression check
+ * and parse of a coordinate with MessageInput's single pass parser. Each
+ * record has a longitude and latitude, and the old path matched each one
+ * against the regular expression and then called Double.parseDouble on it.
+ * 
+ * @version 16 September 2015
+ * @author Austin Sandlin
+ */
+public class SignedDoubleBenchmark {
+
+    /** The regular expression that was used for validation. */
+    private static final String UNSIGNED_DOUBLE_REGEX = "^[-+]?[0-9]*\\.?[0-9]+$";
+
+    /** The number of records per timed round. */
+    private static final int RECORDS = 1000000;
+
+    /** The number of rounds to run, the first half of which are warmup. */
+    private static final int ROUNDS = 10;
+
+    /** Sample coordinates, in the shapes clients actually send. */
+    private static final String[] COORDINATES = { "-97.1146", "31.5493",
+            "-122.41941550", "37.77492950", "0.5", "-.25", "151.2093",
+            "-33.8688" };
+
+    /**
+     * Runs the old and new paths and prints the cost per record of each.
+     * 
+     * @param args
+     *            unused
+     */
+    public static void main(String[] args) {
+        double sink = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < RECORDS; ++i) {
+                sink += regexParse(COORDINATES[i % COORDINATES.length]);
+                sink += regexParse(COORDINATES[(i + 1) % COORDINATES.length]);
+            }
+            long regexTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < RECORDS; ++i) {
+                sink += MessageInput
+                        .parseSignedDouble(COORDINATES[i % COORDINATES.length]);
+                sink += MessageInput.parseSignedDouble(
+                        COORDINATES[(i + 1) % COORDINATES.length]);
+            }
+            long scanTime = System.nanoTime() - start;
+
+            if (round >= ROUNDS / 2) {
+                System.out.printf("regex+parseDouble: %6.1f ns/record   "
+                        + "single pass: %6.1f ns/record%n",
+                        (double) regexTime / RECORDS,
+                        (double) scanTime / RECORDS);
+            }
+        }
+        /** Print the sink so the work can't be optimized away. */
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * The old path: match the regular expression, then parse.
+     * 
+     * @param coordinate
+     *            the coordinate text
+     * @return the value of the coordinate
+     */
+    private static double regexParse(String coordinate) {
+        if (!coordinate.matches(UNSIGNED_DOUBLE_REGEX)) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(coordinate);
+    }
+}
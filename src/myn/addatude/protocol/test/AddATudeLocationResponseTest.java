@@ -205,6 +205,87 @@ public class AddATudeLocationResponseTest {
                 bOut.toByteArray());
     }
 
+    /**
+     * This function tests that a cached encoding gives the same bytes, and
+     * that changing the response drops the cache.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding or encoding
+     * @throws EOFException
+     *             thrown if decode fails to read eoln character
+     */
+    @Test
+    public void testCachedEncode() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "ADDATUDEv1 345 RESPONSE 6 Baylor"
+                + "1 1 1.2 3.4 2 BU6 Baylor\r\n";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)));
+
+        AddATudeLocationResponse locationResponse = (AddATudeLocationResponse) AddATudeMessage
+                .decode(in);
+        locationResponse.cacheEncoding();
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput out = new MessageOutput(bOut);
+        locationResponse.encode(out);
+        locationResponse.encode(out);
+        assertArrayEquals((input + input).getBytes(MessageOutput.ENCODING),
+                bOut.toByteArray());
+
+        locationResponse.setMapName("BU");
+        bOut.reset();
+        locationResponse.encode(out);
+        assertArrayEquals(
+                "ADDATUDEv1 345 RESPONSE 2 BU1 1 1.2 3.4 2 BU6 Baylor\r\n"
+                        .getBytes(MessageOutput.ENCODING),
+                bOut.toByteArray());
+    }
+
+    /**
+     * This function tests that the list of records can't be changed from
+     * outside, so a cached encoding can't go out of date behind the
+     * response's back.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding or encoding
+     * @throws EOFException
+     *             thrown if decode fails to read eoln character
+     */
+    @Test
+    public void testUnmodifiableList() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "ADDATUDEv1 345 RESPONSE 6 Baylor"
+                + "1 1 1.2 3.4 2 BU6 Baylor\r\n";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)));
+
+        AddATudeLocationResponse locationResponse = (AddATudeLocationResponse) AddATudeMessage
+                .decode(in);
+        locationResponse.cacheEncoding();
+        try {
+            locationResponse.getLocationRecordList()
+                    .add(new LocationRecord(2, "5.6", "7.8", "TCU", "TCU"));
+            fail("The list was changed.");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            locationResponse.getLocationRecordList().clear();
+            fail("The list was changed.");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        locationResponse.encode(new MessageOutput(bOut));
+        assertArrayEquals(input.getBytes(MessageOutput.ENCODING),
+                bOut.toByteArray());
+        assertEquals(1, locationResponse.getLocationRecordList().size());
+    }
+
     /**
      * This function tests the ability to encode multiple
      * AddATudeLocationResponse's back to back.
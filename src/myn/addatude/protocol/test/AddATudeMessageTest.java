@@ -16,7 +16,12 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import myn.addatude.protocol.*;
 
@@ -262,4 +267,79 @@ public class AddATudeMessageTest {
                         + " location description=Baylor"),
                 addatudeMessage.toString());
     }
+
+    /**
+     * This function tests that a whole message is sent to the stream in a
+     * single write.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the encoding
+     */
+    @Test
+    public void testEncodeSingleWrite()
+            throws UnsupportedEncodingException, AddATudeException {
+        final List<byte[]> writes = new ArrayList<byte[]>();
+        OutputStream stream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.add(new byte[] { (byte) b });
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(Arrays.copyOfRange(b, off, off + len));
+            }
+        };
+
+        AddATudeLocationResponse locationResponse = new AddATudeLocationResponse(
+                345, "Baylor");
+        locationResponse.addLocationRecord(
+                new LocationRecord(1, "1.2", "3.4", "BU", "Baylor"));
+        locationResponse.addLocationRecord(
+                new LocationRecord(2, "-5.6", "7.8", "TX", "Waco"));
+        locationResponse.encode(new MessageOutput(stream));
+
+        assertEquals(1, writes.size());
+        assertArrayEquals(("ADDATUDEv1 345 RESPONSE 6 Baylor2 "
+                + "1 1.2 3.4 2 BU6 Baylor2 -5.6 7.8 2 TX4 Waco\r\n")
+                        .getBytes(MessageOutput.ENCODING),
+                writes.get(0));
+    }
+
+    /**
+     * This function tests encoding a message into a ByteBuffer.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the encoding
+     */
+    @Test
+    public void testEncodeToByteBuffer()
+            throws UnsupportedEncodingException, AddATudeException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new AddATudeError(4294967, "bad").encodeTo(buffer);
+        new AddATudeLocationRequest(345).encodeTo(buffer);
+
+        byte[] encoded = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(encoded);
+        assertArrayEquals(("ADDATUDEv1 4294967 ERROR 3 bad\r\n"
+                + "ADDATUDEv1 345 ALL \r\n").getBytes(MessageOutput.ENCODING),
+                encoded);
+    }
+
+    /**
+     * This function tests encoding a message into a ByteBuffer that is too
+     * small. We expect an AddATudeException
+     * 
+     * @throws AddATudeException
+     *             if there is a problem in the encoding
+     */
+    @Test(expected = AddATudeException.class)
+    public void testEncodeToSmallByteBuffer() throws AddATudeException {
+        new AddATudeLocationRequest(345).encodeTo(ByteBuffer.allocate(10));
+    }
 }
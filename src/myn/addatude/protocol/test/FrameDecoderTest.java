@@ -0,0 +1,389 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the FrameDecoder class.
+ *
+ ************************************************/
+
+package myn.addatude.protocol.test;
+
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import myn.addatude.protocol.*;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the FrameDecoder class.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class FrameDecoderTest {
+
+    /**
+     * Reads the given text into the decoder, as one read from a channel.
+     * 
+     * @param decoder
+     *            the decoder to read into
+     * @param text
+     *            the text that was read
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if the decoder's buffer can't take the text
+     */
+    private static void read(FrameDecoder decoder, String text)
+            throws UnsupportedEncodingException, AddATudeException {
+        byte[] bytes = text.getBytes(MessageOutput.ENCODING);
+        int offset = 0;
+        while (offset < bytes.length) {
+            int length = Math.min(decoder.getReadBuffer().remaining(),
+                    bytes.length - offset);
+            decoder.getReadBuffer().put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Returns the last message the decoder found, as text.
+     * 
+     * @param decoder
+     *            the decoder
+     * @return the message
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     */
+    private static String frame(FrameDecoder decoder)
+            throws UnsupportedEncodingException {
+        return new String(decoder.getFrameArray(), decoder.getFrameOffset(),
+                decoder.getFrameLength(), MessageOutput.ENCODING);
+    }
+
+    /**
+     * This function tests finding several messages in one read.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     * @throws EOFException
+     *             thrown if decode fails to read eoln character
+     */
+    @Test
+    public void testPipelinedFrames() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        FrameDecoder decoder = new FrameDecoder();
+        read(decoder, "ADDATUDEv1 345 ALL \r\nADDATUDEv1 3 ALL \r\nADD");
+
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 345 ALL \r\n", frame(decoder));
+        AddATudeMessage msg = AddATudeMessage
+                .decode(new MessageInput(decoder.getFrameArray(),
+                        decoder.getFrameOffset(), decoder.getFrameLength()));
+        assertEquals(345, msg.getMapId());
+
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+        assertEquals(3, decoder.getPendingLength());
+    }
+
+    /**
+     * This function tests a message whose end of line is split across reads.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testSplitFrame()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder();
+        read(decoder, "ADDATUDEv1 345 AL");
+        assertFalse(decoder.nextFrame());
+        read(decoder, "L \r");
+        assertFalse(decoder.nextFrame());
+        read(decoder, "\n");
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 345 ALL \r\n", frame(decoder));
+        assertEquals(0, decoder.getPendingLength());
+    }
+
+    /**
+     * This function tests a message bigger than the starting buffer, with a
+     * lone carriage return inside it.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testLargeFrame()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 1024);
+        read(decoder, "ADDATUDEv1 345 ALL \r\nADD");
+        assertTrue(decoder.nextFrame());
+
+        StringBuilder large = new StringBuilder("ATUDEv1 345 ERROR 600 ");
+        for (int i = 0; i < 600; ++i) {
+            large.append(i == 300 ? '\r' : 'x');
+        }
+        large.append("\r\n");
+        read(decoder, large.toString());
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADD" + large, frame(decoder));
+        assertFalse(decoder.nextFrame());
+    }
+
+    /**
+     * This function tests a message that passes the largest allowed. We expect
+     * an AddATudeException
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test(expected = AddATudeException.class)
+    public void testTooLongFrame()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 16);
+        read(decoder, "ADDATUDEv1 345 ALL ");
+    }
+
+    /**
+     * This function tests appending bytes read elsewhere, and letting go of
+     * the buffer only once no partial message is waiting.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testAppendAndRelease()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 1024);
+        decoder.append(ByteBuffer.wrap("ADDATUDEv1 345 ALL \r\nADD"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 345 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+
+        decoder.release();
+        assertEquals(3, decoder.getPendingLength());
+        decoder.append(ByteBuffer.wrap("ATUDEv1 3 ALL \r\n"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+
+        decoder.release();
+        assertEquals(0, decoder.getPendingLength());
+        assertFalse(decoder.nextFrame());
+        decoder.append(ByteBuffer.wrap("ADDATUDEv1 4 ALL \r\n"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+    }
+
+    /**
+     * This function tests that letting go of the buffer keeps the starting
+     * one for the next read, and only drops one that grew.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testReleaseKeepsStartingBuffer()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(32, 1024);
+        decoder.append(ByteBuffer.wrap("ADDATUDEv1 345 ALL \r\n"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        byte[] starting = decoder.getFrameArray();
+        decoder.release();
+        decoder.append(ByteBuffer.wrap("ADDATUDEv1 3 ALL \r\n"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertSame(starting, decoder.getFrameArray());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+
+        decoder.append(ByteBuffer.wrap(("ADDATUDEv1 345 ERROR 30 "
+                + "xxxxxxxxxxxxxxxxxxxxxxxxxxxxxx\r\n")
+                        .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertTrue(decoder.getFrameArray().length > 32);
+        decoder.release();
+        decoder.append(ByteBuffer.wrap("ADDATUDEv1 4 ALL \r\n"
+                .getBytes(MessageOutput.ENCODING)));
+        assertTrue(decoder.nextFrame());
+        assertEquals(32, decoder.getFrameArray().length);
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+    }
+
+    /**
+     * Wraps text in a buffer the way a pool hands one out, as a slice of a
+     * larger array.
+     * 
+     * @param text
+     *            the text that was read
+     * @return the buffer, flipped for decoding
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     */
+    private static ByteBuffer slice(String text)
+            throws UnsupportedEncodingException {
+        byte[] bytes = text.getBytes(MessageOutput.ENCODING);
+        ByteBuffer slab = ByteBuffer.allocate(bytes.length + 16);
+        slab.position(8);
+        ByteBuffer buffer = slab.slice();
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This function tests decoding in place from a source, with only the
+     * partial message at its end copied, and nothing held once it is done.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testSource()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 1024);
+        ByteBuffer first = slice("ADDATUDEv1 345 ALL \r\nADDATUDEv1 3 A");
+        decoder.setSource(first);
+        assertTrue(decoder.nextFrame());
+        assertSame(first.array(), decoder.getFrameArray());
+        assertEquals(8, decoder.getFrameOffset());
+        assertEquals("ADDATUDEv1 345 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+
+        /** The partial message is copied, so the source can be reused. */
+        decoder.keepRest();
+        assertEquals(14, decoder.getPendingLength());
+        first.clear();
+        first.put(new byte[first.capacity()]);
+
+        /** The end of line is split across sources. */
+        decoder.setSource(slice("LL \r"));
+        assertFalse(decoder.nextFrame());
+        decoder.keepRest();
+        ByteBuffer second = slice("\nADDATUDEv1 4 ALL \r\n");
+        decoder.setSource(second);
+        assertTrue(decoder.nextFrame());
+        assertNotSame(second.array(), decoder.getFrameArray());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+        assertTrue(decoder.nextFrame());
+        assertSame(second.array(), decoder.getFrameArray());
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+        assertEquals(0, decoder.getPendingLength());
+    }
+
+    /**
+     * This function tests that a decoder only handed sources holds a buffer
+     * only while a partial message is waiting.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testReleaseAll()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 1024);
+        decoder.setSource(slice("ADDATUDEv1 345 ALL \r\nADD"));
+        assertTrue(decoder.nextFrame());
+        assertFalse(decoder.nextFrame());
+        decoder.releaseAll();
+        assertEquals(3, decoder.getPendingLength());
+        decoder.keepRest();
+        decoder.releaseAll();
+        assertEquals(3, decoder.getPendingLength());
+
+        decoder.setSource(slice("ATUDEv1 3 ALL \r\n"));
+        assertTrue(decoder.nextFrame());
+        byte[] partial = decoder.getFrameArray();
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+        decoder.keepRest();
+        decoder.releaseAll();
+        assertEquals(0, decoder.getPendingLength());
+
+        /** The buffer was let go, so a new partial message gets a new one. */
+        decoder.setSource(slice("ADD"));
+        decoder.keepRest();
+        decoder.setSource(slice("ATUDEv1 4 ALL \r\n"));
+        assertTrue(decoder.nextFrame());
+        assertNotSame(partial, decoder.getFrameArray());
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+    }
+
+    /**
+     * This function tests that a message put back is found again, whether it
+     * was in the source or the decoder's buffer, and that one put back in the
+     * source is kept with the partial message after it.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test
+    public void testUnread()
+            throws UnsupportedEncodingException, AddATudeException {
+        FrameDecoder decoder = new FrameDecoder(8, 1024);
+        decoder.setSource(slice("ADDATUDEv1 3 A"));
+        decoder.keepRest();
+        decoder.setSource(slice("LL \r\nADDATUDEv1 4 ALL \r\nADD"));
+
+        /** From the decoder's buffer, which was started over. */
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+        decoder.unread();
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 3 ALL \r\n", frame(decoder));
+
+        /** From the source, then kept when the source is let go. */
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+        decoder.unread();
+        decoder.keepRest();
+        assertEquals(22, decoder.getPendingLength());
+        assertTrue(decoder.nextFrame());
+        assertEquals("ADDATUDEv1 4 ALL \r\n", frame(decoder));
+        assertFalse(decoder.nextFrame());
+        assertEquals(3, decoder.getPendingLength());
+    }
+
+    /**
+     * This function tests that a source that isn't backed by an array is
+     * rejected. We expect an IllegalArgumentException
+     * 
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDirectSource() throws AddATudeException {
+        new FrameDecoder().setSource(ByteBuffer.allocateDirect(8));
+    }
+}
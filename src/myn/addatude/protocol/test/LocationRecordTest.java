@@ -69,6 +69,38 @@ public class LocationRecordTest {
         assertEquals("3.4", msg.getLatitude());
     }
 
+    /**
+     * This function tests that the coordinates are parsed along with being
+     * set.
+     * 
+     * @throws AddATudeException
+     *             thrown if the coordinate format differs from protocol.
+     */
+    @Test
+    public void testGetCoordinateValues() throws AddATudeException {
+        LocationRecord msg = new LocationRecord(1, "-97.1146", ".5", "BU",
+                "Baylor");
+        assertEquals(-97.1146, msg.getLongitudeValue(), 0.0);
+        assertEquals(0.5, msg.getLatitudeValue(), 0.0);
+
+        msg.setLatitude("31.5493");
+        assertEquals(31.5493, msg.getLatitudeValue(), 0.0);
+    }
+
+    /**
+     * This function tests setting a latitude that isn't a signed double. We
+     * expect an AddATudeException
+     * 
+     * @throws AddATudeException
+     *             thrown if the latitude format differs from protocol.
+     */
+    @Test(expected = AddATudeException.class)
+    public void testSetBadLatitude() throws AddATudeException {
+        LocationRecord msg = new LocationRecord(1, "1.2", "3.4", "BU",
+                "Baylor");
+        msg.setLatitude("3.4.5");
+    }
+
     /**
      * This function tests the return of getLocationName().
      * 
@@ -307,6 +339,36 @@ public class LocationRecordTest {
                 bOut.toByteArray());
     }
 
+    /**
+     * Test that a cached encoding matches the normal encoding and is dropped
+     * when a member changes.
+     * 
+     * @throws AddATudeException
+     *             thrown if there is an issue with LocationRecord's
+     *             construction
+     * @throws UnsupportedEncodingException
+     *             thrown if the ASCII encoding isn't supported
+     */
+    @Test
+    public void testCachedEncode()
+            throws AddATudeException, UnsupportedEncodingException {
+        LocationRecord msg = new LocationRecord(1, "1.2", "3.4", "BU",
+                "Baylor");
+        msg.cacheEncoding();
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput out = new MessageOutput(bOut);
+        msg.encode(out);
+        assertArrayEquals("1 1.2 3.4 2 BU6 Baylor".getBytes("ASCII"),
+                bOut.toByteArray());
+
+        msg.setLocationName("TX");
+        bOut.reset();
+        msg.encode(out);
+        assertArrayEquals("1 1.2 3.4 2 TX6 Baylor".getBytes("ASCII"),
+                bOut.toByteArray());
+    }
+
     /**
      * Test that LocationRecord's toString function prints what's expected.
      * 
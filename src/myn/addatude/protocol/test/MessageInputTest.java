@@ -0,0 +1,163 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 0
+ * Class:       CSI 4321 - Data Communications
+ * Date:        16 September 2015
+ *
+ * This class is a JUnit 4 test for the MessageInput class.
+ *
+ ************************************************/
+
+package myn.addatude.protocol.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.UnsupportedEncodingException;
+
+import myn.addatude.protocol.*;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the MessageInput class.
+ * 
+ * @version 16 September 2015
+ * @author Austin Sandlin
+ */
+public class MessageInputTest {
+
+    /**
+     * This function tests reading tokens that cross the end of a small buffer.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the reading
+     * @throws EOFException
+     *             thrown if the stream ends early
+     */
+    @Test
+    public void testTokensAcrossBuffer() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "ADDATUDEv1 4294967295 -12.5 11 Baylor Bear!";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)), 3);
+
+        assertEquals("ADDATUDEv1", in.readString());
+        assertEquals(0xFFFFFFFF, in.readUnsignedInt());
+        assertEquals("-12.5", in.readSignedDouble());
+        assertEquals("Baylor Bear", in.readString(in.readUnsignedInt()));
+        assertEquals("!", in.readString(1));
+    }
+
+    /**
+     * This function tests reading straight out of a byte array.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the decoding
+     * @throws EOFException
+     *             thrown if the stream ends early
+     */
+    @Test
+    public void testByteArrayDecode() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        byte[] input = "xxADDATUDEv1 345 ALL \r\nxx"
+                .getBytes(MessageOutput.ENCODING);
+        MessageInput in = new MessageInput(input, 2, input.length - 4);
+
+        AddATudeMessage msg = AddATudeMessage.decode(in);
+        assertEquals(AddATudeMessage.REQUEST_OPERATION, msg.getOperation());
+        assertEquals(345, msg.getMapId());
+    }
+
+    /**
+     * This function tests an unsigned int that is too large. We expect an
+     * AddATudeException
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the reading
+     * @throws EOFException
+     *             thrown if the stream ends early
+     */
+    @Test(expected = AddATudeException.class)
+    public void testUnsignedIntOverflow() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "4294967296 ";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)));
+
+        in.readUnsignedInt();
+    }
+
+    /**
+     * This function tests a string that is cut short by the end of the stream.
+     * We expect an EOFException
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the reading
+     * @throws EOFException
+     *             thrown if the stream ends early
+     */
+    @Test(expected = EOFException.class)
+    public void testShortString() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "Bay";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)), 2);
+
+        in.readString(6);
+    }
+
+    /**
+     * This function tests that purge leaves the stream at the next message.
+     * 
+     * @throws UnsupportedEncodingException
+     *             if the encoding isn't supported
+     * @throws AddATudeException
+     *             if there is a problem in the reading
+     * @throws EOFException
+     *             thrown if the stream ends early
+     */
+    @Test
+    public void testPurge() throws UnsupportedEncodingException,
+            AddATudeException, EOFException {
+        String input = "junk\r junk\r\nADDATUDEv1 ";
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                input.getBytes(MessageOutput.ENCODING)), 4);
+
+        in.purge(AddATudeMessage.EOLN);
+        assertEquals(AddATudeMessage.VERSION, in.readString());
+    }
+
+    /**
+     * This function tests that the single pass parser accepts the same strings
+     * as the signed double format and gives the same values as
+     * Double.parseDouble.
+     */
+    @Test
+    public void testParseSignedDouble() {
+        String[] valid = { "0", "-0", "+1", "1.2", "-97.1146", ".5", "-.25",
+                "0.1", "0.30000000000000004", "123456789012345678",
+                "1.0000000000000000000000001", "00000.000000000000000000000001" };
+        for (String s : valid) {
+            assertTrue(s, MessageInput.isValidSignedDouble(s));
+            assertEquals(s, Double.valueOf(Double.parseDouble(s)),
+                    Double.valueOf(MessageInput.parseSignedDouble(s)));
+        }
+
+        String[] invalid = { "", "-", "+", ".", "1.", "1.2.3", "1e5", "--1",
+                " 1", "1 ", "NaN", "Infinity", "0x10", "1,5" };
+        for (String s : invalid) {
+            assertFalse(s, MessageInput.isValidSignedDouble(s));
+        }
+    }
+}
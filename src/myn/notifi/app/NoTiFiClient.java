@@ -20,6 +20,8 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Scanner;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import myn.notifi.protocol.*;
 
@@ -45,6 +47,9 @@ public class NoTiFiClient extends NoTiFiMessageHandler {
     /** The client's message id. */
     public static int msgId;
 
+    /** The region to be notified about, or null for everywhere. */
+    public static NoTiFiRegion region;
+
     /**
      * This is just the main function that prepares all the command line stuff.
      * 
@@ -53,8 +58,10 @@ public class NoTiFiClient extends NoTiFiMessageHandler {
      */
     public static void main(String[] args) {
         /** Checks the number of parameters to determine proper use. */
-        if (args.length != 3) {
-            System.err.println("Parameter(s): <Server> <Port> <Local>");
+        if (args.length != 3 && args.length != 7) {
+            System.err.println("Parameter(s): <Server> <Port> <Local> "
+                    + "[<MinLongitude> <MinLatitude> <MaxLongitude> "
+                    + "<MaxLatitude>]");
             System.exit(0);
         }
 
@@ -90,6 +97,19 @@ public class NoTiFiClient extends NoTiFiMessageHandler {
         /** Client obtains a random value for the message ID. */
         msgId = (int) (Math.random() * MAX_MESSAGE_ID_EXCLUSIVE);
 
+        /** Attempts to construct the region to be notified about, if any. */
+        if (args.length == 7) {
+            try {
+                region = new NoTiFiRegion(msgId, Double.parseDouble(args[3]),
+                        Double.parseDouble(args[4]),
+                        Double.parseDouble(args[5]),
+                        Double.parseDouble(args[6]));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Problem parsing region values.");
+                System.exit(0);
+            }
+        }
+
         /** Start the client's server handler part of the thread. */
         Thread thread = new Thread(
                 new ServerHandler(serverAddress, serverPort, localAddress));
@@ -114,8 +134,21 @@ class ServerHandler extends NoTiFiMessageHandler implements Runnable {
     /** Stores the number of response attempts to be made by the client. */
     public static final int MAX_RESPONSE_ATTEMPTS = 2;
 
+    /**
+     * How often the registration is sent again to renew its lease, in ms, so
+     * a couple can be lost before the server lets it run out.
+     */
+    public static final long RENEW_PERIOD = NoTiFiLeases.DEFAULT_LEASE_TIME
+            / 3;
+
     public static boolean doneListening;
 
+    /** Sends the registration again until the client quits. */
+    private final Timer renewer = new Timer("NoTiFi renewer", true);
+
+    /** Puts the numbered notifications back in order. */
+    private final NoTiFiReceiver receiver = new NoTiFiReceiver();
+
     /** An InetAddress that stores the address of the server. */
     private InetAddress serverAddress;
 
@@ -154,8 +187,18 @@ class ServerHandler extends NoTiFiMessageHandler implements Runnable {
         /** Function to create connection. */
         makeConnection();
 
+        /** Keep the registration's lease from running out. */
+        renewer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                renewConnection();
+            }
+        }, RENEW_PERIOD, RENEW_PERIOD);
+
         /** Make a thread to listen to and print location updates. */
-        Thread thread = new Thread(new MessageHandler());
+        Thread thread = new Thread(
+                new MessageHandler(socket, serverAddress, serverPort,
+                        receiver));
         thread.start();
 
         /** Poll the keyboard for the text: "quit". */
@@ -173,6 +216,7 @@ class ServerHandler extends NoTiFiMessageHandler implements Runnable {
                 doneListening = true;
             }
         }
+        renewer.cancel();
 
         /**
          * Send a specific error message to trigger the thread's dormant receive
@@ -218,6 +262,46 @@ class ServerHandler extends NoTiFiMessageHandler implements Runnable {
             System.out.println(NoTiFiClient.REGISTER_PROBLEM_ERROR);
             System.exit(0);
         }
+
+        /** Then narrow the notifications down to the region, if any. */
+        if (NoTiFiClient.region != null
+                && !expectACK(NoTiFiClient.region)) {
+            System.out.println(NoTiFiClient.REGISTER_PROBLEM_ERROR);
+            System.exit(0);
+        }
+
+        /**
+         * Ask for reliable delivery. The server doesn't ack receipts, so if
+         * this one is lost, the next renewal will ask again.
+         */
+        try {
+            sendMessage(receiver.getReceipt(NoTiFiClient.msgId),
+                    serverAddress, serverPort);
+        } catch (IOException e) {
+            System.err.println("Failed to ask for reliable delivery.");
+        }
+    }
+
+    /**
+     * This function sends the register message again to renew the lease on
+     * the registration, followed by the region if there is one and a receipt,
+     * in case the lease ran out and the server forgot them. The server acks
+     * the first two like the first ones, but the acks aren't waited for; if
+     * one is lost, the next renewal will do.
+     */
+    public void renewConnection() {
+        try {
+            sendMessage(new NoTiFiRegister(NoTiFiClient.msgId,
+                    (Inet4Address) socket.getLocalAddress(),
+                    socket.getLocalPort()), serverAddress, serverPort);
+            if (NoTiFiClient.region != null) {
+                sendMessage(NoTiFiClient.region, serverAddress, serverPort);
+            }
+            sendMessage(receiver.getReceipt(NoTiFiClient.msgId),
+                    serverAddress, serverPort);
+        } catch (IOException e) {
+            System.err.println("Failed to renew registration.");
+        }
     }
 
     /**
@@ -361,6 +445,47 @@ class MessageHandler extends NoTiFiMessageHandler implements Runnable {
     /** This variable is for unblocking the receive socket. */
     private final int UNBLOCKING_TIMEOUT = 100;
 
+    /**
+     * How long to wait before saying which numbered notifications arrived, in
+     * ms, so one receipt covers several. It has to be well under the time the
+     * server waits before sending them again.
+     */
+    private static final long RECEIPT_DELAY = 100;
+
+    /** An InetAddress that stores the address of the server. */
+    private InetAddress serverAddress;
+
+    /** An int that stores the value of the server's port. */
+    private int serverPort;
+
+    /** Puts the numbered notifications back in order. */
+    private NoTiFiReceiver receiver;
+
+    /** When the next receipt is due, in ms, or 0 if none is. */
+    private long receiptDue = 0;
+
+    /**
+     * Simple constructor for the class that initializes the address and port
+     * variables, for sending receipts, and the receiver the notifications
+     * are put back in order with.
+     * 
+     * @param socket
+     *            the client's socket
+     * @param serverAddress
+     *            the address of the server
+     * @param serverPort
+     *            the address of the port
+     * @param receiver
+     *            puts the numbered notifications back in order
+     */
+    public MessageHandler(DatagramSocket socket, InetAddress serverAddress,
+            int serverPort, NoTiFiReceiver receiver) {
+        super(socket);
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+        this.receiver = receiver;
+    }
+
     /**
      * This is the overridden run function for thread stuff. It sets the socket
      * timeout to zero (possibly fixing it from the register setup). It then
@@ -393,46 +518,136 @@ class MessageHandler extends NoTiFiMessageHandler implements Runnable {
                         NoTiFiClient.PARSING_PROBLEM_ERROR + e.getMessage());
             }
 
-            if (receivedMessage != null) {
+            if (receivedMessage == null) {
+                /** Nothing arrived. */
+            } else if (receivedMessage.getCode() == NoTiFiSequenced.CODE) {
                 /**
-                 * Simply switch on the message code and do stuff accordingly
+                 * Print whatever is now in order. Ask for a missing one right
+                 * away, and otherwise say what arrived after a short wait.
                  */
-                switch (receivedMessage.getCode()) {
-                case NoTiFiLocationAddition.CODE:
-                    LocationRecord locationAddition = ((NoTiFiLocationAddition) receivedMessage)
-                            .getLocationRecord();
-                    System.out.println("Location Addition: (" + "Latitude: "
-                            + locationAddition.getLatitude() + ", Longitude: "
-                            + locationAddition.getLongitude() + ", Name: "
-                            + locationAddition.getLocationName()
-                            + ", Description: "
-                            + locationAddition.getLocationDescription() + ")");
-                    break;
-                case NoTiFiLocationDeletion.CODE:
-                    LocationRecord locationDeletion = ((NoTiFiLocationDeletion) receivedMessage)
-                            .getLocationRecord();
-                    System.out.println("Location Deletion: (" + "Latitude: "
-                            + locationDeletion.getLatitude() + ", Longitude: "
-                            + locationDeletion.getLongitude() + ", Name: "
-                            + locationDeletion.getLocationName()
-                            + ", Description: "
-                            + locationDeletion.getLocationDescription() + ")");
-                    break;
-                case NoTiFiError.CODE:
-                    System.out.println(
-                            ((NoTiFiError) receivedMessage).getErrorMessage());
-                    break;
-                default:
-                    if (receivedMessage.getCode() != NoTiFiACK.CODE
-                            || !ServerHandler.doneListening) {
-                        System.out.println(
-                                NoTiFiClient.UNEXPECTED_MESSAGE_TYPE_ERROR);
-                    }
-
+                for (NoTiFiMessage message : receiver
+                        .accept((NoTiFiSequenced) receivedMessage)) {
+                    handleMessage(message);
+                }
+                if (receiver.hasNewGap()) {
+                    sendReceipt();
+                } else if (receiptDue == 0) {
+                    receiptDue = System.currentTimeMillis() + RECEIPT_DELAY;
                 }
+            } else if (isLost(receivedMessage)) {
+                /** The missing ones are gone, so go on without them. */
+                handleMessage(receivedMessage);
+                for (NoTiFiMessage message : receiver.skip()) {
+                    handleMessage(message);
+                }
+                sendReceipt();
             } else {
+                handleMessage(receivedMessage);
+            }
 
+            if (receiptDue != 0 && System.currentTimeMillis() >= receiptDue) {
+                sendReceipt();
             }
         }
     }
+
+    /**
+     * This function checks whether a message is the server saying that missing
+     * notifications are too old to be sent again.
+     * 
+     * @param message
+     *            the message received
+     * @return whether it is a lost error
+     */
+    private static boolean isLost(NoTiFiMessage message) {
+        return message.getCode() == NoTiFiError.CODE
+                && NoTiFiReceipt.LOST_ERROR
+                        .equals(((NoTiFiError) message).getErrorMessage());
+    }
+
+    /**
+     * This function tells the server which numbered notifications arrived and
+     * which are missing. While some are missing, another receipt is due a
+     * little later, in case the ones sent again are lost too.
+     */
+    private void sendReceipt() {
+        try {
+            sendMessage(receiver.getReceipt(NoTiFiClient.msgId),
+                    serverAddress, serverPort);
+        } catch (IOException e) {
+            System.err.println("Failed to send receipt.");
+        }
+        receiptDue = receiver.hasGaps()
+                ? System.currentTimeMillis() + 2 * RECEIPT_DELAY : 0;
+    }
+
+    /**
+     * This function prints a message received from the server.
+     * 
+     * @param message
+     *            the message received
+     */
+    private void handleMessage(NoTiFiMessage message) {
+        /**
+         * Simply switch on the message code and do stuff accordingly
+         */
+        switch (message.getCode()) {
+        case NoTiFiLocationAddition.CODE:
+            LocationRecord locationAddition = ((NoTiFiLocationAddition) message)
+                    .getLocationRecord();
+            System.out.println("Location Addition: (" + "Latitude: "
+                    + locationAddition.getLatitude() + ", Longitude: "
+                    + locationAddition.getLongitude() + ", Name: "
+                    + locationAddition.getLocationName()
+                    + ", Description: "
+                    + locationAddition.getLocationDescription() + ")");
+            break;
+        case NoTiFiLocationDeletion.CODE:
+            LocationRecord locationDeletion = ((NoTiFiLocationDeletion) message)
+                    .getLocationRecord();
+            System.out.println("Location Deletion: (" + "Latitude: "
+                    + locationDeletion.getLatitude() + ", Longitude: "
+                    + locationDeletion.getLongitude() + ", Name: "
+                    + locationDeletion.getLocationName()
+                    + ", Description: "
+                    + locationDeletion.getLocationDescription() + ")");
+            break;
+        case NoTiFiLocationMove.CODE:
+            NoTiFiLocationMove locationMove = (NoTiFiLocationMove) message;
+            /** Only the name and description that changed are printed. */
+            System.out.println("Location Moved: (" + "User ID: "
+                    + locationMove.getUserId() + ", Latitude: "
+                    + locationMove.getLatitude() + ", Longitude: "
+                    + locationMove.getLongitude()
+                    + (locationMove.getLocationName() == null ? ""
+                            : ", Name: " + locationMove.getLocationName())
+                    + (locationMove.getLocationDescription() == null ? ""
+                            : ", Description: "
+                                    + locationMove.getLocationDescription())
+                    + ")");
+            break;
+        case NoTiFiBatch.CODE:
+            /** A batch is handled as its messages, one after another. */
+            for (NoTiFiMessage batched : ((NoTiFiBatch) message)
+                    .getMessages()) {
+                handleMessage(batched);
+            }
+            break;
+        case NoTiFiError.CODE:
+            System.out.println(((NoTiFiError) message).getErrorMessage());
+            break;
+        default:
+            /**
+             * Acks for renewals carry our message ID, as does the one sent to
+             * unblock the socket when quitting, so neither is unexpected.
+             */
+            if (message.getCode() != NoTiFiACK.CODE
+                    || (message.getMsgId() != NoTiFiClient.msgId
+                            && !ServerHandler.doneListening)) {
+                System.out.println(
+                        NoTiFiClient.UNEXPECTED_MESSAGE_TYPE_ERROR);
+            }
+
+        }
+    }
 }
@@ -0,0 +1,317 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a bounded, lock-free queue of NoTiFi notifications.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import myn.notifi.protocol.NoTiFiMessage;
+
+/**
+ * This class is a bounded, lock-free queue of NoTiFi notifications waiting to
+ * be sent. Any number of threads can add to it and take from it at once, and
+ * none of them ever waits on a lock. It is a ring of slots, each with a
+ * sequence number that says whether the slot is ready to be filled or to be
+ * emptied. When the queue is full, its overflow policy says whether the new
+ * notification or the oldest waiting one is dropped. Either way, the queue
+ * only counts the drop, and NoTiFiServer watches that count to send clients
+ * the latest locations once it catches up. The queue counts what it takes in
+ * and drops, and how long notifications wait in it.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiEventQueue {
+
+    /**
+     * What to do with a notification when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Drop the new notification. */
+        DROP_NEWEST,
+        /** Drop the oldest waiting notification to make room. */
+        DROP_OLDEST
+    }
+
+    /**
+     * This class is one notification waiting in the queue.
+     */
+    public static final class Event {
+
+        /** The notification to send. */
+        private final NoTiFiMessage message;
+
+        /** When the notification was added, from System.nanoTime(). */
+        private final long enqueuedNanos;
+
+        /**
+         * Constructs an event for a notification added now.
+         * 
+         * @param message
+         *            the notification to send
+         */
+        Event(NoTiFiMessage message) {
+            this.message = message;
+            this.enqueuedNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the notification to send.
+         * 
+         * @return the notification
+         */
+        public NoTiFiMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns when the notification was added.
+         * 
+         * @return the time, from System.nanoTime()
+         */
+        public long getEnqueuedNanos() {
+            return enqueuedNanos;
+        }
+    }
+
+    /** The slots of the ring. */
+    private final AtomicReferenceArray<Event> slots;
+
+    /** Each slot's sequence number. */
+    private final AtomicLongArray sequences;
+
+    /** The number of slots less one, for finding a position's slot. */
+    private final int mask;
+
+    /** What to do with a notification when the queue is full. */
+    private final OverflowPolicy policy;
+
+    /** The position of the next notification to take. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** The position of the next notification to add. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The number of notifications added. */
+    private final AtomicLong enqueued = new AtomicLong();
+
+    /** The number of notifications dropped because the queue was full. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The number of notifications taken whose age was recorded. */
+    private final AtomicLong aged = new AtomicLong();
+
+    /** The total time the recorded notifications waited, in ns. */
+    private final AtomicLong totalAgeNanos = new AtomicLong();
+
+    /** The longest time a notification waited, in ns. */
+    private final AtomicLong maxAgeNanos = new AtomicLong();
+
+    /**
+     * Constructs an empty queue.
+     * 
+     * @param capacity
+     *            the most notifications to hold, rounded up to a power of two
+     * @param policy
+     *            what to do with a notification when the queue is full
+     */
+    public NoTiFiEventQueue(int capacity, OverflowPolicy policy) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<Event>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a notification to the back of the queue. If the queue is full,
+     * either this notification or the oldest one is dropped, by the queue's
+     * policy.
+     * 
+     * @param message
+     *            the notification to send
+     * @return whether the notification was added
+     */
+    public boolean offer(NoTiFiMessage message) {
+        Event event = new Event(message);
+        while (!tryOffer(event)) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            /**
+             * Make room by dropping the oldest, and try again. If it was
+             * taken first, there's room anyway.
+             */
+            if (tryPoll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes the notification at the front of the queue, and records how long
+     * it waited.
+     * 
+     * @return the oldest notification, or null if the queue is empty
+     */
+    public Event poll() {
+        Event event = tryPoll();
+        if (event != null) {
+            long age = System.nanoTime() - event.getEnqueuedNanos();
+            aged.incrementAndGet();
+            totalAgeNanos.addAndGet(age);
+            long max;
+            while (age > (max = maxAgeNanos.get())
+                    && !maxAgeNanos.compareAndSet(max, age)) {
+                /** Another thread raised it first, so look again. */
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Puts an event in the next free slot, if there is one.
+     * 
+     * @param event
+     *            the event to add
+     * @return false if the queue is full
+     */
+    private boolean tryOffer(Event event) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                /** The slot is free. Claim it, then fill it. */
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(slot, event);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                /** The slot hasn't been emptied since the last time around. */
+                return false;
+            } else {
+                /** Another thread claimed it first. */
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the event in the oldest filled slot, if there is one.
+     * 
+     * @return the event, or null if the queue is empty
+     */
+    private Event tryPoll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - (position + 1);
+            if (difference == 0) {
+                /** The slot is filled. Claim it, then empty it. */
+                if (head.compareAndSet(position, position + 1)) {
+                    Event event = slots.get(slot);
+                    slots.set(slot, null);
+                    sequences.set(slot, position + mask + 1);
+                    return event;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                /** The slot hasn't been filled yet. */
+                return null;
+            } else {
+                /** Another thread claimed it first. */
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the most notifications the queue holds.
+     * 
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns about how many notifications are waiting. It can be off while
+     * other threads are adding or taking.
+     * 
+     * @return the depth of the queue
+     */
+    public int getDepth() {
+        long depth = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(depth, getCapacity()));
+    }
+
+    /**
+     * Returns the number of notifications added.
+     * 
+     * @return the number added
+     */
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    /**
+     * Returns the number of notifications dropped because the queue was full.
+     * 
+     * @return the number dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns how long the notifications taken so far waited, on average.
+     * 
+     * @return the average age, in ns, or 0 if none were taken
+     */
+    public long getAverageAgeNanos() {
+        long count = aged.get();
+        return count == 0 ? 0 : totalAgeNanos.get() / count;
+    }
+
+    /**
+     * Returns the longest a notification waited.
+     * 
+     * @return the longest age, in ns
+     */
+    public long getMaxAgeNanos() {
+        return maxAgeNanos.get();
+    }
+
+    /**
+     * Returns the queue's numbers, for logging.
+     * 
+     * @return a summary of the queue
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "NoTiFi queue: depth %d/%d, %d added, %d dropped (%s), "
+                        + "average age %d us, max age %d us",
+                getDepth(), getCapacity(), getEnqueued(), getDropped(),
+                policy, getAverageAgeNanos() / 1000, getMaxAgeNanos() / 1000);
+    }
+}
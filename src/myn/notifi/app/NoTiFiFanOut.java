@@ -0,0 +1,352 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class sends one NoTiFi message to every registered client.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiMessage;
+
+/**
+ * This class sends one NoTiFi message to every registered client. The message
+ * is encoded once into a reused buffer, and only its message ID byte is
+ * changed for each client.
+ * Datagrams go out through non-blocking DatagramChannels, one per sender. The
+ * calling thread is always the first sender, and when there are enough
+ * clients the rest of them are split among the other senders' threads. A
+ * datagram the channel can't take right away gets a short wait for room, and
+ * is dropped if there still isn't any. The time each message takes to reach
+ * every client is tracked. Messages go out one at a time, in the order they
+ * were given, so every client sees them in that order.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiFanOut {
+
+    /** The fewest clients for each sender before more senders are used. */
+    public static final int CLIENTS_PER_SENDER = 256;
+
+    /** How long to wait for room in a full channel, in ms. */
+    private static final long SEND_WAIT = 10;
+
+    /** The size of each channel's send buffer, in bytes. */
+    private static final int SEND_BUFFER_SIZE = 1 << 20;
+
+    /** The senders, the first of which runs on the calling thread. */
+    private final Sender[] senders;
+
+    /** The threads for every sender but the first. */
+    private final ExecutorService executor;
+
+    /** The logger from the AddATudeServer */
+    private final Logger logger;
+
+    /** The buffer each message is encoded into, reused for every message. */
+    private final ByteBuffer encoded = ByteBuffer
+            .allocate(NoTiFiBatch.MAX_LENGTH);
+
+    /** The number of messages sent. */
+    private long messages = 0;
+
+    /** The number of datagrams sent. */
+    private long datagrams = 0;
+
+    /** The number of datagrams dropped. */
+    private long drops = 0;
+
+    /** The total time spent sending messages, in ns. */
+    private long totalNanos = 0;
+
+    /** The longest time spent sending one message, in ns. */
+    private long maxNanos = 0;
+
+    /**
+     * Constructs a fan-out with the given number of senders, each with its own
+     * channel on the given address.
+     * 
+     * @param localAddress
+     *            the address to send from
+     * @param senderCount
+     *            the number of senders, at least one
+     * @param logger
+     *            the java logger for logging
+     * @throws IOException
+     *             if a channel can't be opened
+     */
+    public NoTiFiFanOut(InetAddress localAddress, int senderCount,
+            Logger logger) throws IOException {
+        this.logger = logger;
+        this.senders = new Sender[Math.max(senderCount, 1)];
+        for (int i = 0; i < senders.length; ++i) {
+            senders[i] = new Sender(localAddress);
+        }
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(senders.length - 1, 1), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "NoTiFi sender");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Sends a message to every given client, with each client's own message
+     * ID, and returns once it has been handed to every channel.
+     * 
+     * @param message
+     *            the message to send, whose own message ID is ignored
+     * @param addresses
+     *            the clients' addresses
+     * @param msgIds
+     *            the clients' message IDs, in the same order
+     * @throws IOException
+     *             if the message can't be encoded
+     */
+    public synchronized void send(NoTiFiMessage message,
+            final List<InetSocketAddress> addresses,
+            final List<Integer> msgIds) throws IOException {
+        long start = System.nanoTime();
+        encoded.clear();
+        try {
+            message.encodeTo(encoded);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message too long to send.");
+        }
+        encoded.flip();
+
+        /** Split the clients among as many senders as they need. */
+        final int clients = addresses.size();
+        int used = Math.min(senders.length,
+                Math.max(clients / CLIENTS_PER_SENDER, 1));
+        final int share = (clients + used - 1) / used;
+        final CountDownLatch done = new CountDownLatch(used - 1);
+        final long[] sent = new long[used];
+        for (int i = 1; i < used; ++i) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sent[index] = senders[index].send(encoded, addresses,
+                                msgIds, index * share,
+                                Math.min((index + 1) * share, clients));
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        sent[0] = senders[0].send(encoded, addresses, msgIds, 0,
+                Math.min(share, clients));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        /** Track how it went. */
+        long elapsed = System.nanoTime() - start;
+        long delivered = 0;
+        for (long count : sent) {
+            delivered += count;
+        }
+        ++messages;
+        datagrams += delivered;
+        drops += clients - delivered;
+        totalNanos += elapsed;
+        maxNanos = Math.max(maxNanos, elapsed);
+        logger.fine("NoTiFi fan-out of code " + message.getCode() + " to "
+                + clients + " clients took " + elapsed / 1000 + " us");
+    }
+
+    /**
+     * Stops the sender threads and closes the channels. Nothing can be sent
+     * after this.
+     */
+    public synchronized void close() {
+        executor.shutdown();
+        for (Sender sender : senders) {
+            sender.close();
+        }
+    }
+
+    /**
+     * Returns the number of messages sent.
+     * 
+     * @return the number of messages
+     */
+    public synchronized long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Returns the number of datagrams sent.
+     * 
+     * @return the number of datagrams
+     */
+    public synchronized long getDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because a channel was full or
+     * failed.
+     * 
+     * @return the number of drops
+     */
+    public synchronized long getDrops() {
+        return drops;
+    }
+
+    /**
+     * Returns the average time a message took to reach every client.
+     * 
+     * @return the average time, in ns, or 0 if nothing was sent
+     */
+    public synchronized long getAverageNanos() {
+        return messages == 0 ? 0 : totalNanos / messages;
+    }
+
+    /**
+     * Returns the longest time a message took to reach every client.
+     * 
+     * @return the longest time, in ns
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the fan-out's numbers, for logging.
+     * 
+     * @return a summary of the fan-out
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "NoTiFi fan-out: %d messages, %d datagrams, %d drops, "
+                        + "average %d us, max %d us",
+                messages, datagrams, drops, getAverageNanos() / 1000,
+                maxNanos / 1000);
+    }
+
+    /**
+     * This class is one sender, with its own channel and its own copy of the
+     * message, so senders never share anything while sending.
+     */
+    private class Sender {
+
+        /** The channel to send from. */
+        private final DatagramChannel channel;
+
+        /** The selector used to wait for room in the channel. */
+        private final Selector selector;
+
+        /**
+         * This sender's copy of the message. It's direct, so the channel
+         * doesn't copy it again into a temporary direct buffer on every send.
+         */
+        private final ByteBuffer buffer = ByteBuffer
+                .allocateDirect(NoTiFiBatch.MAX_LENGTH);
+
+        /**
+         * Opens a non-blocking channel on the given address.
+         * 
+         * @param localAddress
+         *            the address to send from
+         * @throws IOException
+         *             if the channel can't be opened
+         */
+        Sender(InetAddress localAddress) throws IOException {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_SNDBUF,
+                    SEND_BUFFER_SIZE);
+            channel.bind(new InetSocketAddress(localAddress, 0));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Sends the message to some of the clients.
+         * 
+         * @param encoded
+         *            the encoded message, which is copied and isn't changed
+         * @param addresses
+         *            the clients' addresses
+         * @param msgIds
+         *            the clients' message IDs
+         * @param from
+         *            the first client to send to
+         * @param to
+         *            one past the last client to send to
+         * @return the number of datagrams sent
+         */
+        long send(ByteBuffer encoded, List<InetSocketAddress> addresses,
+                List<Integer> msgIds, int from, int to) {
+            buffer.clear();
+            buffer.put(encoded.array(), 0, encoded.limit());
+            buffer.flip();
+            long sent = 0;
+            for (int i = from; i < to; ++i) {
+                buffer.put(NoTiFiMessage.MSG_ID_OFFSET,
+                        (byte) msgIds.get(i).intValue());
+                buffer.rewind();
+                try {
+                    if (channel.send(buffer, addresses.get(i)) == 0) {
+                        /** The channel is full, so give it a moment. */
+                        selector.select(SEND_WAIT);
+                        selector.selectedKeys().clear();
+                        if (channel.send(buffer, addresses.get(i)) == 0) {
+                            continue;
+                        }
+                    }
+                    ++sent;
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "NoTiFi send to "
+                            + addresses.get(i) + " failed", e);
+                }
+            }
+            return sent;
+        }
+
+        /**
+         * Closes the channel and the selector.
+         */
+        void close() {
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close NoTiFi sender", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class keeps a lease for each registered NoTiFi client, and
+ * deregisters clients whose leases run out.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+/**
+ * This class keeps a lease for each registered NoTiFi client. A client that
+ * registers gets a lease, and each time it registers again the lease starts
+ * over. A client that goes away without deregistering stops renewing, and is
+ * deregistered once its lease runs out, so it isn't sent to forever. Its
+ * region and numbered stream go with it, the same as when it deregisters.
+ * 
+ * Leases are kept on a timer wheel: a ring with a slot per tick of the lease
+ * time, where each client sits in the slot of the tick its lease runs out
+ * on. Starting, renewing and ending a lease only move a client between
+ * slots, and each tick only looks at the one slot that is due, so the cost
+ * doesn't grow with the number of clients. Leases run out up to one tick
+ * late. This class is thread safe.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiLeases {
+
+    /** The default time a lease lasts without being renewed, in ms. */
+    public static final long DEFAULT_LEASE_TIME = 60000;
+
+    /** The default time between ticks of the wheel, in ms. */
+    public static final long DEFAULT_TICK = 1000;
+
+    /** The clients the leases are for. */
+    private final NoTiFiRegistry registry;
+
+    /** The clients' regions, dropped when their leases run out. */
+    private final NoTiFiRegionIndex regions;
+
+    /** The clients' numbered streams, closed when their leases run out. */
+    private final NoTiFiSequencer streams;
+
+    /** The java logger for logging expired leases. */
+    private final Logger logger;
+
+    /** The slots of the wheel, each holding the clients due on its tick. */
+    private final List<Set<InetSocketAddress>> wheel;
+
+    /** The tick each client's lease runs out on. */
+    private final Map<InetSocketAddress, Long> deadlines = new HashMap<InetSocketAddress, Long>();
+
+    /** The number of ticks a lease lasts. */
+    private final int leaseTicks;
+
+    /** The number of ticks so far. */
+    private long now = 0;
+
+    /** The number of leases renewed. */
+    private long renewed = 0;
+
+    /** The number of leases that ran out. */
+    private long expired = 0;
+
+    /** Runs the ticks. */
+    private final Timer timer = new Timer("NoTiFi leases", true);
+
+    /**
+     * Constructs the leases for a registry, and starts the wheel turning.
+     * 
+     * @param registry
+     *            the clients the leases are for
+     * @param regions
+     *            the clients' regions, dropped when their leases run out
+     * @param streams
+     *            the clients' numbered streams, closed when their leases run
+     *            out
+     * @param leaseTime
+     *            how long a lease lasts without being renewed, in ms
+     * @param tick
+     *            the time between ticks of the wheel, in ms
+     * @param logger
+     *            the java logger for logging expired leases
+     * @throws IllegalArgumentException
+     *             if either time isn't positive
+     */
+    public NoTiFiLeases(NoTiFiRegistry registry, NoTiFiRegionIndex regions,
+            NoTiFiSequencer streams, long leaseTime, long tick, Logger logger)
+            throws IllegalArgumentException {
+        if (leaseTime <= 0 || tick <= 0) {
+            throw new IllegalArgumentException(
+                    "Lease time and tick must be positive.");
+        }
+        this.registry = registry;
+        this.regions = regions;
+        this.streams = streams;
+        this.logger = logger;
+        leaseTicks = (int) Math.max(1, (leaseTime + tick - 1) / tick);
+        /** One slot past the lease, so a new deadline never lands on now. */
+        wheel = new ArrayList<Set<InetSocketAddress>>(leaseTicks + 1);
+        for (int i = 0; i <= leaseTicks; ++i) {
+            wheel.add(new HashSet<InetSocketAddress>());
+        }
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tick, tick);
+    }
+
+    /**
+     * Starts a client's lease over, or starts one if it has none.
+     * 
+     * @param address
+     *            the client's address
+     */
+    public synchronized void renew(InetSocketAddress address) {
+        Long old = deadlines.get(address);
+        if (old != null) {
+            slot(old).remove(address);
+            ++renewed;
+        }
+        long deadline = now + leaseTicks;
+        deadlines.put(address, deadline);
+        slot(deadline).add(address);
+    }
+
+    /**
+     * Ends a client's lease, as when it deregisters.
+     * 
+     * @param address
+     *            the client's address
+     */
+    public synchronized void cancel(InetSocketAddress address) {
+        Long old = deadlines.remove(address);
+        if (old != null) {
+            slot(old).remove(address);
+        }
+    }
+
+    /**
+     * Turns the wheel one tick, and deregisters the clients whose leases ran
+     * out on it. The timer calls this every tick; a test can construct the
+     * leases with a tick too long to come and call it by hand.
+     */
+    public void tick() {
+        List<InetSocketAddress> due = new ArrayList<InetSocketAddress>();
+        /**
+         * Deregister while holding the lock, so a renewal can't slip in
+         * between the lease running out and the client being dropped.
+         */
+        synchronized (this) {
+            Set<InetSocketAddress> slot = slot(++now);
+            for (InetSocketAddress address : slot) {
+                deadlines.remove(address);
+                regions.remove(address);
+                streams.close(address);
+                if (registry.deregister(address)) {
+                    due.add(address);
+                }
+            }
+            expired += slot.size();
+            slot.clear();
+        }
+        for (InetSocketAddress address : due) {
+            logger.info(address.getAddress() + " " + address.getPort()
+                    + " NoTiFi lease expired");
+        }
+    }
+
+    /**
+     * Returns the slot of the wheel for a tick.
+     * 
+     * @param tick
+     *            the tick
+     * @return the clients due on that tick
+     */
+    private Set<InetSocketAddress> slot(long tick) {
+        return wheel.get((int) (tick % wheel.size()));
+    }
+
+    /**
+     * Stops the wheel. Leases no longer run out after this.
+     */
+    public void stop() {
+        timer.cancel();
+    }
+
+    /**
+     * Returns the number of clients with a lease.
+     * 
+     * @return the number of active leases
+     */
+    public synchronized int getActive() {
+        return deadlines.size();
+    }
+
+    /**
+     * Returns the number of times a lease was started over.
+     * 
+     * @return the number of renewals
+     */
+    public synchronized long getRenewed() {
+        return renewed;
+    }
+
+    /**
+     * Returns the number of leases that ran out.
+     * 
+     * @return the number of expired leases
+     */
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Returns the leases' numbers, for logging.
+     * 
+     * @return a summary of the leases
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "NoTiFi leases: %d active, %d renewed, %d expired",
+                deadlines.size(), renewed, expired);
+    }
+}
@@ -16,7 +16,10 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
+import myn.notifi.protocol.NoTiFiBatch;
 import myn.notifi.protocol.NoTiFiMessage;
 
 /**
@@ -28,17 +31,58 @@ import myn.notifi.protocol.NoTiFiMessage;
  */
 public class NoTiFiMessageHandler {
     /**
-     * A static DatagramSocket so that any class that requires send and receive
-     * functionality only has one socket (as required).
+     * The DatagramSocket this handler sends and receives on. The handlers of
+     * one client or server are all given the same one, so each only has one
+     * socket (as required), and two of them never share one.
      */
-    protected static DatagramSocket socket;
+    protected DatagramSocket socket;
 
-    /** A constant to represent the maximum message size in bytes. */
-    private final int MAX_MESSAGE_BYTES = 1024;
+    /**
+     * A constant to represent the maximum message size in bytes, which is
+     * large enough for a full batch.
+     */
+    private final int MAX_MESSAGE_BYTES = NoTiFiBatch.MAX_LENGTH;
+
+    /** The bytes every packet is received into. */
+    private final byte[] receiveBytes = new byte[MAX_MESSAGE_BYTES];
+
+    /** The packet every packet is received into. */
+    private final DatagramPacket receivedPacket = new DatagramPacket(
+            receiveBytes, MAX_MESSAGE_BYTES);
+
+    /** The buffer over the received bytes that messages are decoded from. */
+    private final ByteBuffer receiveBuffer = ByteBuffer.wrap(receiveBytes);
+
+    /** The bytes every message is encoded into to be sent. */
+    private final byte[] sendBytes = new byte[MAX_MESSAGE_BYTES];
+
+    /** The packet every message is sent in. */
+    private final DatagramPacket sendPacket = new DatagramPacket(sendBytes,
+            MAX_MESSAGE_BYTES);
+
+    /** The buffer over the bytes that messages are encoded into. */
+    private final ByteBuffer sendBuffer = ByteBuffer.wrap(sendBytes);
+
+    /**
+     * Constructs a handler whose socket is made later, by the subclass.
+     */
+    public NoTiFiMessageHandler() {
+    }
+
+    /**
+     * Constructs a handler that sends and receives on the given socket.
+     * 
+     * @param socket
+     *            the socket, shared with the other handlers of its owner
+     */
+    public NoTiFiMessageHandler(DatagramSocket socket) {
+        this.socket = socket;
+    }
 
     /**
      * This function takes a NoTiFiMessage and sends it to the specified
-     * location using the class's socket.
+     * location using the class's socket. The message is encoded into the same
+     * buffer and sent in the same packet every time.
      * 
      * @param message
      *            a message to send
@@ -49,24 +93,27 @@ public class NoTiFiMessageHandler {
      * @throws IOException
      *             if there was a problem with encoding or sending
      */
-    public void sendMessage(NoTiFiMessage message, InetAddress serverAddress,
-            int serverPort) throws IOException {
-        /**
-         * Create the datagram packet to send, consisting of the information
-         * from the registration message.
-         */
-        byte[] bytesToSend = message.encode();
-
-        DatagramPacket sendPacket = new DatagramPacket(bytesToSend,
-                bytesToSend.length, serverAddress, serverPort);
+    public synchronized void sendMessage(NoTiFiMessage message,
+            InetAddress serverAddress, int serverPort) throws IOException {
+        /** Encode the message, and point the packet at it. */
+        sendBuffer.clear();
+        try {
+            message.encodeTo(sendBuffer);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message too long to send.");
+        }
+        sendPacket.setData(sendBytes, 0, sendBuffer.position());
+        sendPacket.setAddress(serverAddress);
+        sendPacket.setPort(serverPort);
 
         /** Send the register message and try to get an ACK back. */
         socket.send(sendPacket);
     }
 
     /**
-     * This function takes in a packet and deciphers it, making sure to trim the
-     * excess zero padding since the send byte array is relatively large..
+     * This function takes in a packet and deciphers it, straight out of the
+     * packet's bytes. Only the received length is decoded, so the excess zero
+     * padding of the receive array is never looked at.
      * 
      * @param packet
      *            the packet to trim and decode
@@ -78,33 +125,31 @@ public class NoTiFiMessageHandler {
      */
     public NoTiFiMessage getMessage(DatagramPacket packet)
             throws IllegalArgumentException, IOException {
-        /**
-         * Pull the byte array, trim the excess zeros from the message, and
-         * decode the message.
-         */
-        byte[] receivedBytes = packet.getData();
-        byte[] trimmedBytes = new byte[packet.getLength()];
-        System.arraycopy(receivedBytes, 0, trimmedBytes, 0, packet.getLength());
-
-        NoTiFiMessage receiveMessage = NoTiFiMessage.decode(trimmedBytes);
+        /** A packet from receivePacket() is decoded from the reused buffer. */
+        ByteBuffer buffer = receiveBuffer;
+        if (packet == receivedPacket) {
+            receiveBuffer.clear();
+            receiveBuffer.limit(packet.getLength());
+        } else {
+            buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(),
+                    packet.getLength());
+        }
 
-        return receiveMessage;
+        return NoTiFiMessage.decode(buffer);
     }
 
     /**
-     * This function simply receives and returns a packet from the socket.
+     * This function simply receives and returns a packet from the socket. The
+     * same packet and bytes are used for every receive, so the packet is only
+     * good until the next call.
      * 
      * @return the DatagramPacket
      * @throws IOException
      *             if there was a problem with receive
      */
     public DatagramPacket receivePacket() throws IOException {
-        /**
-         * Create a datagram packet to store the received datagram from the
-         * socket.
-         */
-        DatagramPacket receivedPacket = new DatagramPacket(
-                new byte[MAX_MESSAGE_BYTES], MAX_MESSAGE_BYTES);
+        /** The last receive shrank the packet's length, so reset it. */
+        receivedPacket.setLength(MAX_MESSAGE_BYTES);
 
         socket.receive(receivedPacket);
 
@@ -13,9 +13,12 @@
 package myn.notifi.app;
 
 import java.io.IOException;
+import java.net.DatagramSocket;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
@@ -53,8 +56,8 @@ public class NoTiFiMulticastClient extends NoTiFiMessageHandler {
      */
     public static void main(String[] args) {
         /** Checks the number of parameters to determine proper use. */
-        if (args.length != 2) {
-            System.err.println("Parameter(s): <Server> <Port>");
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Parameter(s): <Server> <Port> [<Interface>]");
             System.exit(0);
         }
 
@@ -77,12 +80,31 @@ public class NoTiFiMulticastClient extends NoTiFiMessageHandler {
             System.exit(0);
         }
 
+        /**
+         * Attempts to find the interface to join the group on, from the
+         * address of one of its own, such as 127.0.0.1 for a group kept on
+         * loopback. Without one the system picks the interface.
+         */
+        NetworkInterface networkInterface = null;
+        if (args.length == 3) {
+            try {
+                networkInterface = NetworkInterface
+                        .getByInetAddress(InetAddress.getByName(args[2]));
+            } catch (IOException e) {
+            }
+            if (networkInterface == null) {
+                System.err.println(
+                        "Problem finding an interface with given address.");
+                System.exit(0);
+            }
+        }
+
         /** Client obtains a random value for the message ID. */
         msgId = (int) (Math.random() * MAX_MESSAGE_ID_EXCLUSIVE);
 
         /** Start the client's server handler part of the thread. */
-        Thread thread = new Thread(
-                new MulticastServerHandler(serverAddress, serverPort));
+        Thread thread = new Thread(new MulticastServerHandler(serverAddress,
+                serverPort, networkInterface));
         thread.start();
     }
 
@@ -107,7 +129,8 @@ class MulticastServerHandler extends NoTiFiMessageHandler implements Runnable {
     /** An int that stores the value of the server's port. */
     private int serverPort;
 
-    /**  */
+    /** The interface to join the group on, or null for the system's choice. */
+    private NetworkInterface networkInterface;
 
     /**
      * Simple constructor for the class that initializes the address and port
@@ -117,10 +140,15 @@ class MulticastServerHandler extends NoTiFiMessageHandler implements Runnable {
      *            the address of the server
      * @param serverPort
      *            the address of the port
+     * @param networkInterface
+     *            the interface to join the group on, or null for the system's
+     *            choice
      */
-    public MulticastServerHandler(InetAddress serverAddress, int serverPort) {
+    public MulticastServerHandler(InetAddress serverAddress, int serverPort,
+            NetworkInterface networkInterface) {
         this.multicastAddress = serverAddress;
         this.serverPort = serverPort;
+        this.networkInterface = networkInterface;
 
         try {
             socket = new MulticastSocket(this.serverPort);
@@ -137,19 +165,24 @@ class MulticastServerHandler extends NoTiFiMessageHandler implements Runnable {
     public void run() {
         /** Create connection. */
         try {
-            ((MulticastSocket) socket).joinGroup(multicastAddress);
+            ((MulticastSocket) socket).joinGroup(
+                    new InetSocketAddress(multicastAddress, serverPort),
+                    networkInterface);
         } catch (IOException e) {
             System.err.println("Failed to join multicast group.");
             System.exit(0);
         }
 
-        /** Make a thread to listen to and print location updates. */
-        Thread thread = new Thread(new MulticastMessageHandler());
+        /**
+         * Make a thread to listen to and print location updates. It's told
+         * it isn't done first, in case an earlier client in this JVM was.
+         */
+        doneListening = false;
+        Thread thread = new Thread(new MulticastMessageHandler(socket));
         thread.start();
 
         /** Poll the keyboard for the text: "quit". */
         Scanner keyboard = new Scanner(System.in);
-        doneListening = false;
         while (!doneListening) {
             /**
              * If we get quit, close the scanner, note that we're done, and let
@@ -163,7 +196,9 @@ class MulticastServerHandler extends NoTiFiMessageHandler implements Runnable {
 
         /** Close connection. */
         try {
-            ((MulticastSocket) socket).leaveGroup(multicastAddress);
+            ((MulticastSocket) socket).leaveGroup(
+                    new InetSocketAddress(multicastAddress, serverPort),
+                    networkInterface);
         } catch (IOException e) {
             System.err.println("Failed to leave multicast group.");
             System.exit(0);
@@ -183,6 +218,16 @@ class MulticastMessageHandler extends NoTiFiMessageHandler implements Runnable {
     /** This variable is for unblocking the receive socket. */
     private final int UNBLOCKING_TIMEOUT = 100;
 
+    /**
+     * Simple constructor for the class that listens on the client's socket.
+     * 
+     * @param socket
+     *            the client's multicast socket
+     */
+    public MulticastMessageHandler(DatagramSocket socket) {
+        super(socket);
+    }
+
     /**
      * This is the overridden run function for thread stuff. It sets the socket
      * timeout to zero (possibly fixing it from the register setup). It then
@@ -216,40 +261,70 @@ class MulticastMessageHandler extends NoTiFiMessageHandler implements Runnable {
             }
 
             if (receivedMessage != null) {
-                /**
-                 * Simply switch on the message code and do stuff accordingly
-                 */
-                switch (receivedMessage.getCode()) {
-                case NoTiFiLocationAddition.CODE:
-                    LocationRecord locationAddition = ((NoTiFiLocationAddition) receivedMessage)
-                            .getLocationRecord();
-                    System.out.println("Location Addition: (" + "Latitude: "
-                            + locationAddition.getLatitude() + ", Longitude: "
-                            + locationAddition.getLongitude() + ", Name: "
-                            + locationAddition.getLocationName()
-                            + ", Description: "
-                            + locationAddition.getLocationDescription() + ")");
-                    break;
-                case NoTiFiLocationDeletion.CODE:
-                    LocationRecord locationDeletion = ((NoTiFiLocationDeletion) receivedMessage)
-                            .getLocationRecord();
-                    System.out.println("Location Deletion: (" + "Latitude: "
-                            + locationDeletion.getLatitude() + ", Longitude: "
-                            + locationDeletion.getLongitude() + ", Name: "
-                            + locationDeletion.getLocationName()
-                            + ", Description: "
-                            + locationDeletion.getLocationDescription() + ")");
-                    break;
-                case NoTiFiError.CODE:
-                    System.out.println(
-                            ((NoTiFiError) receivedMessage).getErrorMessage());
-                    break;
-                default:
-                    System.out.println(
-                            NoTiFiMulticastClient.UNEXPECTED_MESSAGE_TYPE_ERROR);
-
-                }
+                handleMessage(receivedMessage);
             }
         }
     }
+
+    /**
+     * This function prints a message received from the server.
+     * 
+     * @param message
+     *            the message received
+     */
+    private void handleMessage(NoTiFiMessage message) {
+        /**
+         * Simply switch on the message code and do stuff accordingly
+         */
+        switch (message.getCode()) {
+        case NoTiFiLocationAddition.CODE:
+            LocationRecord locationAddition = ((NoTiFiLocationAddition) message)
+                    .getLocationRecord();
+            System.out.println("Location Addition: (" + "Latitude: "
+                    + locationAddition.getLatitude() + ", Longitude: "
+                    + locationAddition.getLongitude() + ", Name: "
+                    + locationAddition.getLocationName()
+                    + ", Description: "
+                    + locationAddition.getLocationDescription() + ")");
+            break;
+        case NoTiFiLocationDeletion.CODE:
+            LocationRecord locationDeletion = ((NoTiFiLocationDeletion) message)
+                    .getLocationRecord();
+            System.out.println("Location Deletion: (" + "Latitude: "
+                    + locationDeletion.getLatitude() + ", Longitude: "
+                    + locationDeletion.getLongitude() + ", Name: "
+                    + locationDeletion.getLocationName()
+                    + ", Description: "
+                    + locationDeletion.getLocationDescription() + ")");
+            break;
+        case NoTiFiLocationMove.CODE:
+            NoTiFiLocationMove locationMove = (NoTiFiLocationMove) message;
+            /** Only the name and description that changed are printed. */
+            System.out.println("Location Moved: (" + "User ID: "
+                    + locationMove.getUserId() + ", Latitude: "
+                    + locationMove.getLatitude() + ", Longitude: "
+                    + locationMove.getLongitude()
+                    + (locationMove.getLocationName() == null ? ""
+                            : ", Name: " + locationMove.getLocationName())
+                    + (locationMove.getLocationDescription() == null ? ""
+                            : ", Description: "
+                                    + locationMove.getLocationDescription())
+                    + ")");
+            break;
+        case NoTiFiBatch.CODE:
+            /** A batch is handled as its messages, one after another. */
+            for (NoTiFiMessage batched : ((NoTiFiBatch) message)
+                    .getMessages()) {
+                handleMessage(batched);
+            }
+            break;
+        case NoTiFiError.CODE:
+            System.out.println(((NoTiFiError) message).getErrorMessage());
+            break;
+        default:
+            System.out.println(
+                    NoTiFiMulticastClient.UNEXPECTED_MESSAGE_TYPE_ERROR);
+
+        }
+    }
 }
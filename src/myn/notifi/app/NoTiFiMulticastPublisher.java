@@ -0,0 +1,159 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class publishes NoTiFi notifications to a multicast group.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiMessage;
+
+/**
+ * This class publishes NoTiFi notifications to a multicast group, for
+ * NoTiFiMulticastClients to pick up. Each notification is sent once, however
+ * many clients have joined the group, so its cost doesn't grow with them.
+ * Multicast clients don't register, so the notifications carry a message ID
+ * of zero. Notifications are looped back to the sending host, so a group can
+ * be tested with clients on the same machine.
+ * 
+ * @author Austin Sandlin
+ * @version 3 December 2015
+ */
+public class NoTiFiMulticastPublisher {
+
+    /** How many hops the notifications may take. One keeps them local. */
+    public static final int DEFAULT_TTL = 1;
+
+    /** The group to publish to. */
+    private final InetSocketAddress group;
+
+    /** The channel to publish from. */
+    private final DatagramChannel channel;
+
+    /** The direct buffer each notification is encoded into and sent from. */
+    private final ByteBuffer buffer = ByteBuffer
+            .allocateDirect(NoTiFiBatch.MAX_LENGTH);
+
+    /** The number of notifications published. */
+    private long published = 0;
+
+    /**
+     * Opens a channel for publishing to the given group. If a local address
+     * is given, notifications go out on its interface, which lets a group be
+     * used on loopback alone. Otherwise the system picks the interface.
+     * 
+     * @param group
+     *            the multicast group and port to publish to
+     * @param localAddress
+     *            the address whose interface to publish on, or null or the
+     *            wildcard address for the system's choice
+     * @throws IOException
+     *             if the group isn't multicast or the channel can't be opened
+     *             for its address family
+     */
+    public NoTiFiMulticastPublisher(InetSocketAddress group,
+            InetAddress localAddress) throws IOException {
+        if (group.getAddress() == null
+                || !group.getAddress().isMulticastAddress()) {
+            throw new IOException(group + " is not a multicast group.");
+        }
+        this.group = group;
+        /** The channel's family has to match the group's to send to it. */
+        try {
+            channel = DatagramChannel
+                    .open(group.getAddress() instanceof Inet6Address
+                            ? StandardProtocolFamily.INET6
+                            : StandardProtocolFamily.INET);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException(group + " needs IPv6, which isn't here.");
+        }
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL,
+                DEFAULT_TTL);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        if (localAddress != null && !localAddress.isAnyLocalAddress()) {
+            NetworkInterface networkInterface = NetworkInterface
+                    .getByInetAddress(localAddress);
+            if (networkInterface != null) {
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF,
+                        networkInterface);
+            }
+        }
+    }
+
+    /**
+     * Publishes a notification to the group.
+     * 
+     * @param message
+     *            the notification, which should have a message ID of zero
+     * @throws IOException
+     *             if the message can't be encoded or sent
+     */
+    public synchronized void publish(NoTiFiMessage message)
+            throws IOException {
+        buffer.clear();
+        try {
+            message.encodeTo(buffer);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message too long to send.");
+        }
+        buffer.flip();
+        channel.send(buffer, group);
+        ++published;
+    }
+
+    /**
+     * Closes the channel. Nothing can be published after this.
+     * 
+     * @throws IOException
+     *             if the channel can't be closed
+     */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the group notifications are published to.
+     * 
+     * @return the multicast group and port
+     */
+    public InetSocketAddress getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns the number of notifications published.
+     * 
+     * @return the number published
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * Returns the publisher's numbers, for logging.
+     * 
+     * @return a summary of the publisher
+     */
+    @Override
+    public synchronized String toString() {
+        return "NoTiFi multicast to " + group + ": " + published
+                + " published";
+    }
+}
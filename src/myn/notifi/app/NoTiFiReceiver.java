@@ -0,0 +1,200 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class puts a NoTiFi client's sequenced notifications back in order,
+ * and writes the receipts that ask for the missing ones.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiReceipt;
+import myn.notifi.protocol.NoTiFiSequenced;
+
+/**
+ * This class puts a NoTiFi client's sequenced notifications back in order,
+ * and writes the receipts that ask for the missing ones. A notification that
+ * arrives early waits until the ones before it arrive, and one that arrives
+ * twice is dropped, so the notifications come out exactly once, in the order
+ * the server sent them. This class is thread safe.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiReceiver {
+
+    /** The sequence number up to which every notification arrived. */
+    private int received = 0;
+
+    /** The notifications that arrived early, by sequence number. */
+    private final TreeMap<Integer, NoTiFiMessage> waiting = new TreeMap<Integer, NoTiFiMessage>();
+
+    /** Whether a gap opened since the last receipt. */
+    private boolean newGap = false;
+
+    /** Whether to take the next notification to arrive as the next one. */
+    private boolean resync = false;
+
+    /** The number of notifications that came out in order. */
+    private long delivered = 0;
+
+    /** The number of notifications that arrived twice. */
+    private long duplicates = 0;
+
+    /** The number of notifications given up on as lost. */
+    private long skipped = 0;
+
+    /**
+     * Takes in a sequenced notification.
+     * 
+     * @param message
+     *            the sequenced notification
+     * @return the notifications that can now come out, in order, which may
+     *         be none
+     */
+    public synchronized List<NoTiFiMessage> accept(NoTiFiSequenced message) {
+        List<NoTiFiMessage> ready = new ArrayList<NoTiFiMessage>();
+        int sequence = message.getSequence();
+        if (resync && sequence > received) {
+            skipped += sequence - received - 1;
+            received = sequence - 1;
+            resync = false;
+        }
+        if (sequence <= received || waiting.containsKey(sequence)) {
+            ++duplicates;
+            return ready;
+        }
+        /** The one just before is missing, so a gap just opened. */
+        if (sequence > received + 1 && !waiting.containsKey(sequence - 1)) {
+            newGap = true;
+        }
+        waiting.put(sequence, message.getMessage());
+        drain(ready);
+        return ready;
+    }
+
+    /**
+     * Moves the waiting notifications that are next in line out.
+     * 
+     * @param ready
+     *            where to add them, in order
+     */
+    private void drain(List<NoTiFiMessage> ready) {
+        while (!waiting.isEmpty() && waiting.firstKey() == received + 1) {
+            ready.add(waiting.pollFirstEntry().getValue());
+            ++received;
+            ++delivered;
+        }
+    }
+
+    /**
+     * Gives up on the missing notifications, after the server says they were
+     * lost. The earliest one waiting becomes the next one, or if none are
+     * waiting, the next one to arrive does.
+     * 
+     * @return the notifications that can now come out, in order, which may
+     *         be none
+     */
+    public synchronized List<NoTiFiMessage> skip() {
+        List<NoTiFiMessage> ready = new ArrayList<NoTiFiMessage>();
+        if (waiting.isEmpty()) {
+            resync = true;
+        } else {
+            skipped += waiting.firstKey() - received - 1;
+            received = waiting.firstKey() - 1;
+            drain(ready);
+        }
+        return ready;
+    }
+
+    /**
+     * Returns whether any notifications are known to be missing.
+     * 
+     * @return whether some arrived early
+     */
+    public synchronized boolean hasGaps() {
+        return !waiting.isEmpty();
+    }
+
+    /**
+     * Returns whether a notification is known to be missing that no receipt
+     * has asked for yet, so a receipt should go out now.
+     * 
+     * @return whether there is a new gap
+     */
+    public synchronized boolean hasNewGap() {
+        return newGap;
+    }
+
+    /**
+     * Makes a receipt saying which notifications arrived and which are
+     * missing.
+     * 
+     * @param msgId
+     *            the client's message ID
+     * @return the receipt
+     */
+    public synchronized NoTiFiReceipt getReceipt(int msgId) {
+        NoTiFiReceipt receipt = new NoTiFiReceipt(msgId, received);
+        int expected = received + 1;
+        for (Map.Entry<Integer, NoTiFiMessage> entry : waiting.entrySet()) {
+            int sequence = entry.getKey();
+            if (sequence > expected) {
+                if (receipt.getMissing()
+                        .size() >= 2 * NoTiFiReceipt.MAX_RANGES) {
+                    break;
+                }
+                receipt.addMissing(expected, sequence - 1);
+            }
+            expected = sequence + 1;
+        }
+        newGap = false;
+        return receipt;
+    }
+
+    /**
+     * Returns the sequence number up to which every notification arrived.
+     * 
+     * @return the sequence number, or 0 if none have
+     */
+    public synchronized int getReceived() {
+        return received;
+    }
+
+    /**
+     * Returns the number of notifications that came out in order.
+     * 
+     * @return the number delivered
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Returns the number of notifications that arrived twice.
+     * 
+     * @return the number of duplicates
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of notifications given up on as lost.
+     * 
+     * @return the number skipped
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,311 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a spatial index over the regions NoTiFi clients want to be
+ * notified about.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import myn.notifi.protocol.NoTiFiRegion;
+
+/**
+ * This class is a spatial index over the regions NoTiFi clients want to be
+ * notified about, for finding the clients whose region holds a location. The
+ * map is cut into a grid of square cells, and each region is listed in every
+ * cell it touches, so a location only has to be checked against the regions
+ * in its own cell instead of against every region. A region that touches too
+ * many cells, like one covering a whole country, is kept in a short list
+ * checked for every location instead. Clients without a region aren't in the
+ * index, and are notified of everything. This class is thread safe.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegionIndex {
+
+    /** The default width of a cell, in degrees, which is about 11 km. */
+    public static final double DEFAULT_CELL_SIZE = 0.1;
+
+    /** The most cells a region is listed in before it is kept aside. */
+    public static final int MAX_CELLS = 1024;
+
+    /** The width of a cell, in degrees. */
+    private final double cellSize;
+
+    /** The regions touching each cell, by the cell's key. */
+    private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+
+    /** The regions that touch too many cells to list. */
+    private final List<Entry> wide = new ArrayList<Entry>();
+
+    /** Each client's region, by address. */
+    private final Map<InetSocketAddress, Entry> entries = new HashMap<InetSocketAddress, Entry>();
+
+    /** The addresses of the clients with a region, for looking up unlocked. */
+    private final Set<InetSocketAddress> filtered = Collections
+            .newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+    /** Counts every change to which clients have a region. */
+    private volatile long version = 0;
+
+    /**
+     * A client's region, and where it is listed.
+     */
+    private static final class Entry {
+
+        /** The client's address. */
+        private final InetSocketAddress address;
+
+        /** The client's region. */
+        private final NoTiFiRegion region;
+
+        /** The keys of the cells it is listed in, or null if it's wide. */
+        private final long[] keys;
+
+        /**
+         * Constructs an entry.
+         * 
+         * @param address
+         *            the client's address
+         * @param region
+         *            the client's region
+         * @param keys
+         *            the keys of the cells it is listed in, or null
+         */
+        private Entry(InetSocketAddress address, NoTiFiRegion region,
+                long[] keys) {
+            this.address = address;
+            this.region = region;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Constructs an empty index with the default cell size.
+     */
+    public NoTiFiRegionIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs an empty index.
+     * 
+     * @param cellSize
+     *            the width of a cell, in degrees
+     * @throws IllegalArgumentException
+     *             if the cell size isn't positive
+     */
+    public NoTiFiRegionIndex(double cellSize) throws IllegalArgumentException {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Sets a client's region, replacing any it had.
+     * 
+     * @param address
+     *            the client's address
+     * @param region
+     *            the region to notify the client about
+     */
+    public synchronized void put(InetSocketAddress address,
+            NoTiFiRegion region) {
+        unlist(entries.remove(address));
+
+        long minX = cell(region.getMinLongitude());
+        long maxX = cell(region.getMaxLongitude());
+        long minY = cell(region.getMinLatitude());
+        long maxY = cell(region.getMaxLatitude());
+        /** Counted in doubles, so a huge region can't overflow it. */
+        double count = ((double) maxX - minX + 1)
+                * ((double) maxY - minY + 1);
+
+        Entry entry;
+        if (count > MAX_CELLS) {
+            entry = new Entry(address, region, null);
+            wide.add(entry);
+        } else {
+            long[] keys = new long[(int) count];
+            int i = 0;
+            for (long x = minX; x <= maxX; ++x) {
+                for (long y = minY; y <= maxY; ++y) {
+                    keys[i++] = key(x, y);
+                }
+            }
+            entry = new Entry(address, region, keys);
+            for (long key : keys) {
+                List<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>(2);
+                    cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+        entries.put(address, entry);
+        if (filtered.add(address)) {
+            ++version;
+        }
+    }
+
+    /**
+     * Removes a client's region, so it is notified of everything again.
+     * 
+     * @param address
+     *            the client's address
+     * @return whether the client had a region
+     */
+    public synchronized boolean remove(InetSocketAddress address) {
+        Entry entry = entries.remove(address);
+        if (entry == null) {
+            return false;
+        }
+        unlist(entry);
+        filtered.remove(address);
+        ++version;
+        return true;
+    }
+
+    /**
+     * Takes an entry out of the cells or the wide list.
+     * 
+     * @param entry
+     *            the entry, or null for nothing
+     */
+    private void unlist(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.keys == null) {
+            wide.remove(entry);
+            return;
+        }
+        for (long key : entry.keys) {
+            List<Entry> cell = cells.get(key);
+            cell.remove(entry);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Adds the address of every client whose region holds a location to a
+     * collection.
+     * 
+     * @param longitude
+     *            the longitude of the location
+     * @param latitude
+     *            the latitude of the location
+     * @param out
+     *            where to add the addresses
+     */
+    public synchronized void match(double longitude, double latitude,
+            Collection<InetSocketAddress> out) {
+        List<Entry> cell = cells
+                .get(key(cell(longitude), cell(latitude)));
+        if (cell != null) {
+            for (Entry entry : cell) {
+                if (entry.region.contains(longitude, latitude)) {
+                    out.add(entry.address);
+                }
+            }
+        }
+        for (Entry entry : wide) {
+            if (entry.region.contains(longitude, latitude)) {
+                out.add(entry.address);
+            }
+        }
+    }
+
+    /**
+     * Returns a client's region.
+     * 
+     * @param address
+     *            the client's address
+     * @return the region, or null if the client is notified of everything
+     */
+    public NoTiFiRegion get(InetSocketAddress address) {
+        if (!filtered.contains(address)) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(address);
+            return entry == null ? null : entry.region;
+        }
+    }
+
+    /**
+     * Returns whether a client has a region. This doesn't wait on changes to
+     * the index.
+     * 
+     * @param address
+     *            the client's address
+     * @return whether the client is only notified of its region
+     */
+    public boolean isFiltered(InetSocketAddress address) {
+        return filtered.contains(address);
+    }
+
+    /**
+     * Returns a count of the changes to which clients have a region, so a
+     * list of the clients without one can be kept until it changes. A new
+     * region for a client that already had one doesn't count.
+     * 
+     * @return the count
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of clients with a region.
+     * 
+     * @return the number of regions
+     */
+    public int size() {
+        return filtered.size();
+    }
+
+    /**
+     * Returns the column or row of the cell holding a coordinate.
+     * 
+     * @param degrees
+     *            the longitude or latitude
+     * @return the column or row
+     */
+    private long cell(double degrees) {
+        return (long) Math.floor(degrees / cellSize);
+    }
+
+    /**
+     * Returns the key of a cell.
+     * 
+     * @param x
+     *            the cell's column
+     * @param y
+     *            the cell's row
+     * @return the key
+     */
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,220 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class keeps the clients that are registered for NoTiFi notifications.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the clients that are registered for NoTiFi notifications,
+ * by address, with the message ID each one registered with. Clients are kept
+ * in a concurrent hash map, so registering, deregistering and looking up a
+ * client take constant time and don't wait on each other. Sending to every
+ * client works from a snapshot, which is only rebuilt after the clients have
+ * changed, so back to back notifications share one. This class is thread
+ * safe.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegistry {
+
+    /** The registered clients, by address, with their message IDs. */
+    private final Map<InetSocketAddress, Integer> clients = new ConcurrentHashMap<InetSocketAddress, Integer>();
+
+    /** Counts every change to the clients. */
+    private final AtomicLong version = new AtomicLong();
+
+    /** The last snapshot taken, which may be out of date. */
+    private volatile Snapshot snapshot = new Snapshot(0,
+            new ArrayList<InetSocketAddress>(), new ArrayList<Integer>());
+
+    /**
+     * Registers a client, unless it is already registered.
+     * 
+     * @param address
+     *            the client's address
+     * @param msgId
+     *            the message ID the client registered with
+     * @return true if the client was registered, or false if it already was
+     */
+    public boolean register(InetSocketAddress address, int msgId) {
+        if (clients.putIfAbsent(address, msgId) != null) {
+            return false;
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Renews a registered client with the message ID it registered with
+     * again, which may be new.
+     * 
+     * @param address
+     *            the client's address
+     * @param msgId
+     *            the message ID the client registered with again
+     * @return true if the client was renewed, or false if it isn't registered
+     */
+    public boolean renew(InetSocketAddress address, int msgId) {
+        Integer old = clients.replace(address, msgId);
+        if (old == null) {
+            return false;
+        }
+        if (old != msgId) {
+            version.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Deregisters a client.
+     * 
+     * @param address
+     *            the client's address
+     * @return true if the client was deregistered, or false if it wasn't
+     *         registered
+     */
+    public boolean deregister(InetSocketAddress address) {
+        if (clients.remove(address) == null) {
+            return false;
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the message ID a client registered with.
+     * 
+     * @param address
+     *            the client's address
+     * @return the message ID, or null if the client isn't registered
+     */
+    public Integer get(InetSocketAddress address) {
+        return clients.get(address);
+    }
+
+    /**
+     * Returns the number of registered clients.
+     * 
+     * @return the number of clients
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Returns the registered clients as of about now. The snapshot is reused
+     * until the clients change.
+     * 
+     * @return a snapshot of the clients
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current.version == version.get()) {
+            return current;
+        }
+        return takeSnapshot();
+    }
+
+    /**
+     * Takes a new snapshot of the clients, unless another thread just did.
+     * 
+     * @return the new snapshot
+     */
+    private synchronized Snapshot takeSnapshot() {
+        long taken = version.get();
+        if (snapshot.version == taken) {
+            return snapshot;
+        }
+        /**
+         * Clients that change while copying may or may not be in the copy,
+         * which is fine, since the version read first makes the next call
+         * copy again.
+         */
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(
+                clients.size());
+        List<Integer> msgIds = new ArrayList<Integer>(clients.size());
+        for (Map.Entry<InetSocketAddress, Integer> client : clients
+                .entrySet()) {
+            addresses.add(client.getKey());
+            msgIds.add(client.getValue());
+        }
+        snapshot = new Snapshot(taken, addresses, msgIds);
+        return snapshot;
+    }
+
+    /**
+     * This class is the registered clients at one moment. It never changes.
+     */
+    public static final class Snapshot {
+
+        /** The registry's version when this was taken. */
+        private final long version;
+
+        /** The clients' addresses. */
+        private final List<InetSocketAddress> addresses;
+
+        /** The clients' message IDs, in the same order. */
+        private final List<Integer> msgIds;
+
+        /**
+         * Constructs a snapshot.
+         * 
+         * @param version
+         *            the registry's version
+         * @param addresses
+         *            the clients' addresses
+         * @param msgIds
+         *            the clients' message IDs, in the same order
+         */
+        private Snapshot(long version, List<InetSocketAddress> addresses,
+                List<Integer> msgIds) {
+            this.version = version;
+            this.addresses = Collections.unmodifiableList(addresses);
+            this.msgIds = Collections.unmodifiableList(msgIds);
+        }
+
+        /**
+         * Returns the clients' addresses.
+         * 
+         * @return the addresses
+         */
+        public List<InetSocketAddress> getAddresses() {
+            return addresses;
+        }
+
+        /**
+         * Returns the clients' message IDs, in the same order as the
+         * addresses.
+         * 
+         * @return the message IDs
+         */
+        public List<Integer> getMsgIds() {
+            return msgIds;
+        }
+
+        /**
+         * Returns the number of clients.
+         * 
+         * @return the number of clients
+         */
+        public int size() {
+            return addresses.size();
+        }
+    }
+}
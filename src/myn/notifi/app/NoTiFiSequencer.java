@@ -0,0 +1,346 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class numbers the notifications sent to NoTiFi clients that asked for
+ * reliable delivery, and keeps the latest ones to send again.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiReceipt;
+import myn.notifi.protocol.NoTiFiSequenced;
+
+/**
+ * This class numbers the notifications sent to NoTiFi clients that asked for
+ * reliable delivery, and keeps the latest ones to send again. A client asks
+ * by sending a receipt, and from then on each notification it is sent is
+ * wrapped with its own next sequence number. Its receipts say which ones it
+ * has, which are then let go, and which it missed, which are sent again.
+ * Notifications nobody has said they got are also sent again after a while,
+ * in case the last one was lost, or the receipt was.
+ * 
+ * Each client keeps at most a fixed number of notifications, so a client that
+ * stops answering can't use up memory. The notifications themselves are
+ * shared with every other client sent them. A client that asks for one that
+ * was already let go is told it was lost, and has to get the locations some
+ * other way. This class is thread safe.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiSequencer {
+
+    /** The default most notifications kept for each client. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** The default time before unanswered notifications are sent again, ms. */
+    public static final long DEFAULT_RETRANSMIT_TIMEOUT = 500;
+
+    /** The most notifications sent again to one client at a time. */
+    private static final int MAX_RETRANSMIT = 64;
+
+    /** The most notifications kept for each client. */
+    private final int capacity;
+
+    /** The numbered stream of each client that asked for one. */
+    private final Map<InetSocketAddress, Stream> streams = new ConcurrentHashMap<InetSocketAddress, Stream>();
+
+    /** The number of notifications numbered. */
+    private final AtomicLong sequenced = new AtomicLong();
+
+    /** The number of notifications sent again. */
+    private final AtomicLong retransmitted = new AtomicLong();
+
+    /** The number of notifications asked for after they were let go. */
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * One client's numbered notifications. Its methods are called while
+     * holding its lock.
+     */
+    private static final class Stream {
+
+        /** The sequence number of the next notification. */
+        private int next;
+
+        /** The sequence number up to which the client has every one. */
+        private int received;
+
+        /** The kept notifications, the last of which is next - 1. */
+        private final ArrayDeque<NoTiFiMessage> kept = new ArrayDeque<NoTiFiMessage>();
+
+        /** When a notification was last sent, from System.nanoTime(). */
+        private long lastSent = System.nanoTime();
+
+        /**
+         * Constructs a stream for a client that has every notification up to
+         * a sequence number.
+         * 
+         * @param received
+         *            the sequence number, or 0 for none
+         */
+        private Stream(int received) {
+            this.received = received;
+            this.next = received + 1;
+        }
+
+        /**
+         * Returns the sequence number of the oldest kept notification.
+         * 
+         * @return the sequence number, or next if none are kept
+         */
+        private int first() {
+            return next - kept.size();
+        }
+
+        /**
+         * Returns a kept notification, numbered.
+         * 
+         * @param sequence
+         *            the notification's sequence number
+         * @return the numbered notification
+         */
+        private NoTiFiSequenced get(int sequence) {
+            Iterator<NoTiFiMessage> it = kept.iterator();
+            for (int i = first(); i < sequence; ++i) {
+                it.next();
+            }
+            return new NoTiFiSequenced(0, sequence, it.next());
+        }
+
+        /**
+         * Lets go of the notifications the client has every one of.
+         * 
+         * @param received
+         *            the sequence number up to which the client has every
+         *            one
+         */
+        private void release(int received) {
+            this.received = Math.max(this.received,
+                    Math.min(received, next - 1));
+            while (!kept.isEmpty() && first() <= this.received) {
+                kept.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Constructs a sequencer with the default capacity.
+     */
+    public NoTiFiSequencer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a sequencer.
+     * 
+     * @param capacity
+     *            the most notifications kept for each client
+     * @throws IllegalArgumentException
+     *             if the capacity isn't positive
+     */
+    public NoTiFiSequencer(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns whether a client asked for reliable delivery. This doesn't wait
+     * on anything.
+     * 
+     * @param address
+     *            the client's address
+     * @return whether the client's notifications are numbered
+     */
+    public boolean isReliable(InetSocketAddress address) {
+        return streams.containsKey(address);
+    }
+
+    /**
+     * Numbers a notification for a client and keeps it, letting go of the
+     * oldest one if the client already has too many kept.
+     * 
+     * @param address
+     *            the client's address
+     * @param message
+     *            a location addition, deletion, move or batch
+     * @return the numbered notification, or null if the client didn't ask
+     *         for reliable delivery
+     */
+    public NoTiFiSequenced sequence(InetSocketAddress address,
+            NoTiFiMessage message) {
+        Stream stream = streams.get(address);
+        if (stream == null) {
+            return null;
+        }
+        synchronized (stream) {
+            stream.kept.addLast(message);
+            if (stream.kept.size() > capacity) {
+                stream.kept.removeFirst();
+            }
+            stream.lastSent = System.nanoTime();
+            sequenced.incrementAndGet();
+            return new NoTiFiSequenced(0, stream.next++, message);
+        }
+    }
+
+    /**
+     * Takes in a client's receipt. The first one a client sends starts its
+     * stream after the last notification it says it has, so a client can
+     * pick up where it left off. After that, the ones it has are let go, and
+     * the ones it missed are added to a list to send again.
+     * 
+     * @param address
+     *            the client's address
+     * @param receipt
+     *            the client's receipt
+     * @param resend
+     *            where to add the notifications to send again, in order
+     * @return false if the client missed some that were already let go
+     */
+    public boolean receive(InetSocketAddress address, NoTiFiReceipt receipt,
+            List<NoTiFiSequenced> resend) {
+        Stream stream = streams.get(address);
+        if (stream == null) {
+            Stream opened = new Stream(receipt.getReceived());
+            stream = streams.putIfAbsent(address, opened);
+            if (stream == null) {
+                return true;
+            }
+        }
+        boolean complete = true;
+        synchronized (stream) {
+            stream.release(receipt.getReceived());
+            List<Integer> missing = receipt.getMissing();
+            for (int i = 0; i < missing.size(); i += 2) {
+                int first = missing.get(i);
+                int last = Math.min(missing.get(i + 1), stream.next - 1);
+                for (int sequence = first; sequence <= last; ++sequence) {
+                    if (sequence < stream.first()) {
+                        complete = false;
+                        lost.incrementAndGet();
+                    } else {
+                        resend.add(stream.get(sequence));
+                        retransmitted.incrementAndGet();
+                    }
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Returns the notifications to send again because nobody has said they
+     * arrived in a while, and counts them as sent.
+     * 
+     * @param timeoutMillis
+     *            how long since the last was sent before sending them again,
+     *            in ms
+     * @return the notifications to send again, in order, by client
+     */
+    public Map<InetSocketAddress, List<NoTiFiSequenced>> due(
+            long timeoutMillis) {
+        Map<InetSocketAddress, List<NoTiFiSequenced>> due = new HashMap<InetSocketAddress, List<NoTiFiSequenced>>();
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Map.Entry<InetSocketAddress, Stream> entry : streams
+                .entrySet()) {
+            Stream stream = entry.getValue();
+            synchronized (stream) {
+                if (stream.kept.isEmpty()
+                        || now - stream.lastSent < timeout) {
+                    continue;
+                }
+                List<NoTiFiSequenced> resend = new ArrayList<NoTiFiSequenced>();
+                int from = Math.max(stream.first(), stream.received + 1);
+                int to = Math.min(stream.next, from + MAX_RETRANSMIT);
+                for (int sequence = from; sequence < to; ++sequence) {
+                    resend.add(stream.get(sequence));
+                }
+                stream.lastSent = now;
+                retransmitted.addAndGet(resend.size());
+                due.put(entry.getKey(), resend);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Forgets a client's stream, as when it deregisters.
+     * 
+     * @param address
+     *            the client's address
+     * @return whether the client had a stream
+     */
+    public boolean close(InetSocketAddress address) {
+        return streams.remove(address) != null;
+    }
+
+    /**
+     * Returns the number of clients that asked for reliable delivery.
+     * 
+     * @return the number of streams
+     */
+    public int size() {
+        return streams.size();
+    }
+
+    /**
+     * Returns the number of notifications numbered.
+     * 
+     * @return the number sequenced
+     */
+    public long getSequenced() {
+        return sequenced.get();
+    }
+
+    /**
+     * Returns the number of notifications sent again.
+     * 
+     * @return the number retransmitted
+     */
+    public long getRetransmitted() {
+        return retransmitted.get();
+    }
+
+    /**
+     * Returns the number of notifications asked for after they were let go.
+     * 
+     * @return the number lost
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    /**
+     * Returns the sequencer's numbers, for logging.
+     * 
+     * @return a summary of the sequencer
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "NoTiFi sequencer: %d streams, %d sequenced, "
+                        + "%d retransmitted, %d lost",
+                size(), getSequenced(), getRetransmitted(), getLost());
+    }
+}
@@ -18,10 +18,22 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import myn.notifi.protocol.*;
@@ -35,27 +47,149 @@ import myn.notifi.protocol.*;
  */
 public class NoTiFiServer extends NoTiFiMessageHandler {
 
-    static Comparator<InetSocketAddress> socketAddressComparator = new Comparator<InetSocketAddress>() {
-        @Override
-        public int compare(InetSocketAddress o1, InetSocketAddress o2) {
-            if(o1.equals(o2)) {
-                return 0;
-            }
-            return -1;
-        }           
-    };
-    
     /**
-     * This is a static map for storing all the clients. They are stored by
-     * message id and InetSocketAddress. The InetSocketAddress stores both
-     * address and port, so the map works great.
+     * This is the registry for storing all the clients. They are stored by
+     * InetSocketAddress with their message id. The InetSocketAddress stores
+     * both address and port, so it works great as a key.
+     */
+    private final NoTiFiRegistry clientList = new NoTiFiRegistry();
+
+    /**
+     * This is the index of the regions clients asked to be notified about.
+     * Clients that aren't in it are notified of everything.
+     */
+    private final NoTiFiRegionIndex clientRegions = new NoTiFiRegionIndex();
+
+    /**
+     * This is the set of numbered streams, one for each client that asked for
+     * reliable delivery. Other clients are sent notifications as they are.
+     */
+    private final NoTiFiSequencer clientStreams = new NoTiFiSequencer();
+
+    /**
+     * This is the sender of the locations there already are, to clients that
+     * just registered. The dispatcher thread sends them, a few at a time.
      */
-    public static SortedMap<InetSocketAddress, Integer> clientList = Collections
-            .synchronizedSortedMap(new TreeMap<InetSocketAddress, Integer>(socketAddressComparator));
-    
+    private final NoTiFiSnapshots clientSnapshots = new NoTiFiSnapshots(
+            clientList, clientRegions);
+
+    /** The largest userId a notification can carry, which is 2 bytes. */
+    public static final int MAX_USER_ID = 0xFFFF;
+
+    /** The longest name or description a notification can carry. */
+    public static final int MAX_TEXT_LENGTH = 255;
+
     /** The logger from the AddATudeServer */
     public Logger logger;
 
+    /** The most threads used to send notifications. */
+    private static final int MAX_SENDERS = 4;
+
+    /** Sends each notification to every client. */
+    private NoTiFiFanOut fanOut;
+
+    /** The default most notifications waiting to be sent. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    /** The longest the dispatcher sleeps before looking again, in ms. */
+    private static final long DISPATCHER_NAP = 100;
+
+    /** Notifications waiting to be sent. */
+    private final NoTiFiEventQueue events;
+
+    /** The thread that sends the waiting notifications. */
+    private final Thread dispatcher;
+
+    /** Whether the dispatcher is about to sleep, and needs waking. */
+    private volatile boolean dispatcherWaiting = false;
+
+    /** Sends numbered notifications again when nobody says they arrived. */
+    private final Timer retransmitter = new Timer("NoTiFi retransmit", true);
+
+    /** The thread that handles register, deregister and region messages. */
+    private final Thread clientHandler;
+
+    /** Whether the server has been closed. */
+    private volatile boolean closed = false;
+
+    /** The address of the server, whose interface multicast goes out on. */
+    private final InetAddress localAddress;
+
+    /** Publishes each notification to a multicast group, or null if none. */
+    private volatile NoTiFiMulticastPublisher multicastPublisher;
+
+    /** Whether notifications are also sent to each registered client. */
+    private volatile boolean unicast = true;
+
+    /** How long notifications are gathered into one batch by default, in ms. */
+    public static final long DEFAULT_BATCH_WINDOW = 5;
+
+    /** How long notifications are gathered into one batch, in ns, or 0. */
+    private volatile long batchWindow = TimeUnit.MILLISECONDS
+            .toNanos(DEFAULT_BATCH_WINDOW);
+
+    /** The longest a batch may grow, in bytes. */
+    private volatile int batchMaxLength = NoTiFiBatch.MAX_LENGTH;
+
+    /** A notification taken from the queue that didn't fit the last batch. */
+    private NoTiFiEventQueue.Event carried;
+
+    /** The leases of the registered clients. */
+    private final NoTiFiLeases leases;
+
+    /** The registered clients the unfiltered lists were made from. */
+    private NoTiFiRegistry.Snapshot unfilteredFrom;
+
+    /** The regions' version the unfiltered lists were made from. */
+    private long unfilteredVersion;
+
+    /** The clients without a region, kept by the dispatcher only. */
+    private List<InetSocketAddress> unfiltered;
+
+    /** Their message IDs, in the same order. */
+    private List<Integer> unfilteredIds;
+
+    /** The last location sent for each user, kept by the dispatcher only. */
+    private final Map<Integer, LocationRecord> lastSent = new HashMap<Integer, LocationRecord>();
+
+    /**
+     * The latest location of each user, kept as notifications are queued. If
+     * the queue drops any, the dispatcher brings the clients from lastSent up
+     * to this, the latest location for each user winning.
+     */
+    private final ConcurrentMap<Integer, LocationRecord> latest = new ConcurrentHashMap<Integer, LocationRecord>();
+
+    /** The drops the dispatcher has made up for. Only used by it. */
+    private long resyncedDrops = 0;
+
+    /** The number of times the dispatcher made up for drops. */
+    private final AtomicLong resyncs = new AtomicLong();
+
+    /** The number of notifications sent to make up for drops. */
+    private final AtomicLong resyncRecords = new AtomicLong();
+
+    /** Sends a batch of a snapshot to one client, numbered if it asked. */
+    private final NoTiFiSnapshots.Sender snapshotSender = new NoTiFiSnapshots.Sender() {
+        @Override
+        public void send(InetSocketAddress address, int msgId,
+                NoTiFiMessage message) throws IOException {
+            deliver(message, Collections.singletonList(address),
+                    Collections.singletonList(msgId));
+        }
+    };
+
+    /** A record a client with a region isn't sent. */
+    private static final byte SKIP = 0;
+
+    /** A record a client with a region is sent as it is. */
+    private static final byte SAME = 1;
+
+    /** A move a client with a region is sent as an addition. */
+    private static final byte AS_ADDITION = 2;
+
+    /** A move a client with a region is sent as a deletion. */
+    private static final byte AS_DELETION = 3;
+
     /**
      * This constructor starts the server with the port and address passed in.
      * It also is given a logger to use. This logger should be a static one so
@@ -69,6 +203,59 @@ public class NoTiFiServer extends NoTiFiMessageHandler {
      *            the java logger for logging
      */
     public NoTiFiServer(int localPort, InetAddress inetAddress, Logger logger) {
+        this(localPort, inetAddress, logger, DEFAULT_QUEUE_CAPACITY,
+                NoTiFiEventQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * This constructor starts the server with the port and address passed in,
+     * and holds at most the given number of notifications waiting to be sent.
+     * When more are waiting, the overflow policy drops one, but it isn't lost
+     * for good. Once the queue empties, the clients are sent what it takes to
+     * bring each user they were told about to that user's latest location.
+     * Those go out like any other notification, so they are numbered for
+     * clients that asked for reliable delivery, and snapshots for new clients
+     * are right again after.
+     * 
+     * @param localPort
+     *            the port of the server
+     * @param inetAddress
+     *            the address of the server
+     * @param logger
+     *            the java logger for logging
+     * @param queueCapacity
+     *            the most notifications waiting to be sent
+     * @param overflowPolicy
+     *            what to do with a notification when too many are waiting
+     */
+    public NoTiFiServer(int localPort, InetAddress inetAddress, Logger logger,
+            int queueCapacity, NoTiFiEventQueue.OverflowPolicy overflowPolicy) {
+        this(localPort, inetAddress, logger, queueCapacity, overflowPolicy,
+                NoTiFiLeases.DEFAULT_LEASE_TIME);
+    }
+
+    /**
+     * This constructor starts the server with the port and address passed in,
+     * holds at most the given number of notifications waiting to be sent, and
+     * deregisters clients that haven't registered again within the lease
+     * time.
+     * 
+     * @param localPort
+     *            the port of the server
+     * @param inetAddress
+     *            the address of the server
+     * @param logger
+     *            the java logger for logging
+     * @param queueCapacity
+     *            the most notifications waiting to be sent
+     * @param overflowPolicy
+     *            what to do with a notification when too many are waiting
+     * @param leaseTime
+     *            how long a registration lasts without being renewed, in ms
+     */
+    public NoTiFiServer(int localPort, InetAddress inetAddress, Logger logger,
+            int queueCapacity, NoTiFiEventQueue.OverflowPolicy overflowPolicy,
+            long leaseTime) {
         /** Attempt to create the socket with given address and port. */
         try {
             socket = new DatagramSocket(localPort, inetAddress);
@@ -78,15 +265,102 @@ public class NoTiFiServer extends NoTiFiMessageHandler {
         }
         /** Hook up the logger */
         this.logger = logger;
+        this.localAddress = inetAddress;
+
+        /** Make the senders for notifications. */
+        try {
+            fanOut = new NoTiFiFanOut(inetAddress, Math.min(MAX_SENDERS,
+                    Runtime.getRuntime().availableProcessors()), logger);
+        } catch (IOException e) {
+            System.err.println("Failed to open channels for notifications.");
+        }
+
+        /** Spawn the thread that sends notifications as they're queued. */
+        events = new NoTiFiEventQueue(queueCapacity, overflowPolicy);
+        dispatcher = new Thread("NoTiFi dispatcher") {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        /** Start the wheel that expires clients that stop renewing. */
+        leases = new NoTiFiLeases(clientList, clientRegions, clientStreams,
+                leaseTime, Math.min(NoTiFiLeases.DEFAULT_TICK, leaseTime),
+                logger);
+
+        /** Send numbered notifications again when nobody says they arrived. */
+        if (fanOut != null) {
+            long period = NoTiFiSequencer.DEFAULT_RETRANSMIT_TIMEOUT / 2;
+            retransmitter.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    retransmit();
+                }
+            }, period, period);
+        }
 
         /** Spawn the thread for handling register and deregister messages. */
-        Thread thread = new Thread(new ClientHandler(logger));
-        thread.start();
+        clientHandler = new Thread(new ClientHandler(socket, logger,
+                clientList, leases, clientRegions, clientStreams,
+                clientSnapshots));
+        clientHandler.start();
+    }
+
+    /**
+     * This function stops the server. The dispatcher, the lease wheel and the
+     * retransmit timer are stopped, and the socket and the senders' channels
+     * are closed, which stops the thread handling register messages too.
+     * Notifications still waiting aren't sent. Closing it again does nothing.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        retransmitter.cancel();
+        leases.stop();
+
+        /** Wake the dispatcher so it sees it's closed, and let it finish. */
+        LockSupport.unpark(dispatcher);
+        join(dispatcher);
+        if (fanOut != null) {
+            fanOut.close();
+        }
+        NoTiFiMulticastPublisher publisher = multicastPublisher;
+        if (publisher != null) {
+            try {
+                publisher.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close multicast", e);
+            }
+        }
+        if (socket != null) {
+            socket.close();
+            join(clientHandler);
+        }
+    }
+
+    /**
+     * This function waits for one of the server's threads to end.
+     * 
+     * @param thread
+     *            the thread
+     */
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
      * This function notifies all clients currently stored in our map of a
-     * location addition.
+     * location addition. The notification is queued, and sent by the dispatcher
+     * thread after this returns.
      * 
      * @param userId
      *            the userId of the location record
@@ -99,28 +373,28 @@ public class NoTiFiServer extends NoTiFiMessageHandler {
      * @param description
      *            the description of the location record
      * @throws IOException
-     *             if there is a problem with sending a message through the
-     *             socket
+     *             if notifications can't be sent at all
+     * @throws IllegalArgumentException
+     *             if the userId is over MAX_USER_ID, or the name or
+     *             description is longer than MAX_TEXT_LENGTH
      */
-    public synchronized void notifyAddition(int userId, double longitude,
+    public void notifyAddition(int userId, double longitude,
             double latitude, String name, String description)
-                    throws IOException {
+                    throws IOException, IllegalArgumentException {
         /**
-         * For each client in the map, create a location addition record and
-         * send it to the client's socket.
+         * Create one location addition record, and send it to every client in
+         * the map with the client's message id.
          */
-        for (InetSocketAddress key : clientList.keySet()) {
-            NoTiFiLocationAddition addition = new NoTiFiLocationAddition(
-                    clientList.get(key), new LocationRecord(userId, longitude,
-                            latitude, name, description));
-
-            sendMessage(addition, key.getAddress(), key.getPort());
-        }
+        LocationRecord record = new LocationRecord(userId, longitude, latitude,
+                name, description);
+        latest.put(userId, record);
+        notifyClients(new NoTiFiLocationAddition(0, record));
     }
 
     /**
      * This function notifies all clients currently stored in our map of a
-     * location deletion.
+     * location deletion. The notification is queued, and sent by the dispatcher
+     * thread after this returns.
      * 
      * @param userId
      *            the userId of the location record
@@ -133,30 +407,820 @@ public class NoTiFiServer extends NoTiFiMessageHandler {
      * @param description
      *            the description of the location record
      * @throws IOException
-     *             if there is a problem with sending a message through the
-     *             socket
+     *             if notifications can't be sent at all
+     * @throws IllegalArgumentException
+     *             if the userId is over MAX_USER_ID, or the name or
+     *             description is longer than MAX_TEXT_LENGTH
      */
-    public synchronized void notifyDeletion(int userId, double longitude,
+    public void notifyDeletion(int userId, double longitude,
             double latitude, String name, String description)
-                    throws IOException {
+                    throws IOException, IllegalArgumentException {
         /**
-         * For each client in the map, create a location deletion record and
-         * send it to the client's socket.
+         * Create one location deletion record, and send it to every client in
+         * the map with the client's message id.
          */
-        for (InetSocketAddress key : clientList.keySet()) {
-            NoTiFiLocationDeletion deletion = new NoTiFiLocationDeletion(
-                    clientList.get(key), new LocationRecord(userId, longitude,
-                            latitude, name, description));
+        LocationRecord record = new LocationRecord(userId, longitude, latitude,
+                name, description);
+        latest.remove(userId);
+        notifyClients(new NoTiFiLocationDeletion(0, record));
+    }
 
-            sendMessage(deletion, key.getAddress(), key.getPort());
+    /**
+     * This function notifies all clients currently stored in our map that a
+     * user's location was replaced in place. Only the new coordinates are
+     * always sent; the name and description are sent only if they changed.
+     * The notification is queued, and sent by the dispatcher thread after
+     * this returns.
+     * 
+     * @param userId
+     *            the userId of the location record
+     * @param longitude
+     *            the new longitude of the location record
+     * @param latitude
+     *            the new latitude of the location record
+     * @param name
+     *            the new name of the location record, or null if unchanged
+     * @param description
+     *            the new description of the location record, or null if
+     *            unchanged
+     * @throws IOException
+     *             if notifications can't be sent at all
+     * @throws IllegalArgumentException
+     *             if the userId is over MAX_USER_ID, or the name or
+     *             description is longer than MAX_TEXT_LENGTH
+     */
+    public void notifyMove(int userId, double longitude, double latitude,
+            String name, String description)
+                    throws IOException, IllegalArgumentException {
+        NoTiFiLocationMove move = new NoTiFiLocationMove(0, userId,
+                longitude, latitude, name, description);
+        /** Fill in what didn't change from the latest location. */
+        LocationRecord old;
+        while ((old = latest.get(userId)) != null && !latest.replace(userId,
+                old, new LocationRecord(userId, longitude, latitude,
+                        name != null ? name : old.getLocationName(),
+                        description != null ? description
+                                : old.getLocationDescription()))) {
+            /** Another thread changed it first, so look again. */
         }
+        notifyClients(move);
+    }
+
+    /**
+     * This function queues a message to be sent to every client, and returns
+     * without waiting for it to be sent.
+     * 
+     * @param message
+     *            the message to send
+     * @throws IOException
+     *             if notifications can't be sent at all
+     */
+    private void notifyClients(NoTiFiMessage message) throws IOException {
+        if (fanOut == null && multicastPublisher == null) {
+            throw new IOException("No channels for notifications.");
+        }
+        events.offer(message);
+        if (dispatcherWaiting) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * This function is the dispatcher thread's loop. It sends each queued
+     * message in turn, gathering any that follow it closely into one batch,
+     * and sleeps while there are none, until the server is closed.
+     */
+    private void dispatch() {
+        while (!closed) {
+            /** Wake up in time to send more of the snapshots, if any. */
+            long nap = TimeUnit.MILLISECONDS.toNanos(DISPATCHER_NAP);
+            long next = sendSnapshots();
+            if (next >= 0) {
+                nap = Math.min(nap, next);
+            }
+            NoTiFiEventQueue.Event event = poll(nap);
+            try {
+                if (event != null) {
+                    sendToClients(gather(event.getMessage()));
+                }
+                resync();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not send notification", e);
+            }
+        }
+    }
+
+    /**
+     * This function makes up for notifications the queue dropped, once it's
+     * empty. Each user whose last sent location isn't the latest one is sent
+     * again: an addition if the clients weren't told about the user, a move
+     * if they were told about an old location, and a deletion if the user is
+     * gone. This is called by the dispatcher thread only.
+     * 
+     * @throws IOException
+     *             if there is a problem with encoding the notifications
+     */
+    private void resync() throws IOException {
+        long dropped = events.getDropped();
+        if (dropped == resyncedDrops || carried != null
+                || events.getDepth() > 0) {
+            return;
+        }
+        resyncedDrops = dropped;
+        List<NoTiFiMessage> fixes = new ArrayList<NoTiFiMessage>();
+        for (Map.Entry<Integer, LocationRecord> entry : latest.entrySet()) {
+            LocationRecord record = entry.getValue();
+            LocationRecord sent = lastSent.get(entry.getKey());
+            if (sent == null) {
+                fixes.add(new NoTiFiLocationAddition(0, record));
+            } else if (!sent.equals(record)) {
+                fixes.add(new NoTiFiLocationMove(0, record.getUserId(),
+                        record.getLongitude(), record.getLatitude(),
+                        record.getLocationName()
+                                .equals(sent.getLocationName()) ? null
+                                        : record.getLocationName(),
+                        record.getLocationDescription()
+                                .equals(sent.getLocationDescription()) ? null
+                                        : record.getLocationDescription()));
+            }
+        }
+        for (Map.Entry<Integer, LocationRecord> entry : lastSent.entrySet()) {
+            if (!latest.containsKey(entry.getKey())) {
+                fixes.add(new NoTiFiLocationDeletion(0, entry.getValue()));
+            }
+        }
+        resyncs.incrementAndGet();
+        resyncRecords.addAndGet(fixes.size());
+
+        /** Send them batched, the way the dropped ones would have been. */
+        NoTiFiBatch batch = new NoTiFiBatch(0);
+        for (NoTiFiMessage fix : fixes) {
+            if (!batch.getMessages().isEmpty() && !batch.canAdd(fix,
+                    batchMaxLength - NoTiFiSequenced.OVERHEAD)) {
+                sendToClients(batch.getMessages().size() == 1
+                        ? batch.getMessages().get(0) : batch);
+                batch = new NoTiFiBatch(0);
+            }
+            batch.addMessage(fix);
+        }
+        if (!batch.getMessages().isEmpty()) {
+            sendToClients(batch.getMessages().size() == 1
+                    ? batch.getMessages().get(0) : batch);
+        }
+    }
+
+    /**
+     * This function sends the clients that just registered as much of the
+     * locations there already are as the snapshots' rate allows. It's called
+     * by the dispatcher thread between notifications, so the locations are
+     * the ones the other clients have been notified of.
+     * 
+     * @return how long until more can be sent, in ns, or -1 if no snapshots
+     *         are being sent
+     */
+    private long sendSnapshots() {
+        if (fanOut == null) {
+            return -1;
+        }
+        try {
+            return clientSnapshots.send(lastSent,
+                    batchMaxLength - NoTiFiSequenced.OVERHEAD, snapshotSender);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not send snapshot", e);
+            return -1;
+        }
+    }
+
+    /**
+     * This function gathers the messages queued within the batch window after
+     * the first one into a batch, until the window ends or the batch is full.
+     * A message that doesn't fit is kept for the next batch, so the order is
+     * never changed.
+     * 
+     * @param first
+     *            the first message, an addition, deletion or move
+     * @return the first message alone if nothing followed it, or the batch
+     */
+    private NoTiFiMessage gather(NoTiFiMessage first) {
+        long window = batchWindow;
+        int maxLength = batchMaxLength;
+        if (window <= 0) {
+            return first;
+        }
+        long deadline = System.nanoTime() + window;
+        NoTiFiBatch batch = null;
+        while (true) {
+            NoTiFiEventQueue.Event event = poll(deadline - System.nanoTime());
+            if (event == null) {
+                break;
+            }
+            if (batch == null) {
+                batch = new NoTiFiBatch(0);
+                batch.addMessage(first);
+            }
+            if (!batch.canAdd(event.getMessage(),
+                    maxLength - NoTiFiSequenced.OVERHEAD)) {
+                carried = event;
+                break;
+            }
+            batch.addMessage(event.getMessage());
+        }
+        return batch == null ? first : batch;
+    }
+
+    /**
+     * This function takes the next queued message, sleeping until one is
+     * queued or the time is up.
+     * 
+     * @param timeout
+     *            the longest to wait, in ns
+     * @return the next message, or null if none was queued in time
+     */
+    private NoTiFiEventQueue.Event poll(long timeout) {
+        NoTiFiEventQueue.Event event = carried;
+        if (event != null) {
+            carried = null;
+            return event;
+        }
+        long deadline = System.nanoTime() + timeout;
+        while ((event = events.poll()) == null) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            /**
+             * Say we're about to sleep before looking one last time, so a
+             * message queued in between either gets seen here or wakes us.
+             */
+            dispatcherWaiting = true;
+            event = events.poll();
+            if (event == null) {
+                LockSupport.parkNanos(left);
+            }
+            dispatcherWaiting = false;
+            if (event != null) {
+                break;
+            }
+        }
+        return event;
+    }
+
+    /**
+     * This function sends a message to every client currently stored in our
+     * map, each with its own message id.
+     * 
+     * @param message
+     *            the message to send
+     * @throws IOException
+     *             if there is a problem with encoding the message
+     */
+    private void sendToClients(NoTiFiMessage message) throws IOException {
+        /** Publish once to the group, for however many are listening. */
+        NoTiFiMulticastPublisher publisher = multicastPublisher;
+        if (publisher != null) {
+            publisher.publish(message);
+        }
+        List<NoTiFiMessage> records = message instanceof NoTiFiBatch
+                ? ((NoTiFiBatch) message).getMessages()
+                : Collections.singletonList(message);
+        LocationRecord[] from = new LocationRecord[records.size()];
+        LocationRecord[] to = new LocationRecord[records.size()];
+        if (!unicast || fanOut == null) {
+            plan(records, null, from, to);
+            return;
+        }
+
+        /** Send from a snapshot, so registering isn't held up. */
+        NoTiFiRegistry.Snapshot clients = clientList.getSnapshot();
+        if (clientRegions.size() == 0) {
+            plan(records, null, from, to);
+            deliver(message, clients.getAddresses(), clients.getMsgIds());
+            return;
+        }
+
+        /** Everyone without a region gets the message as it is. */
+        findUnfiltered(clients);
+        if (!unfiltered.isEmpty()) {
+            deliver(message, unfiltered, unfilteredIds);
+        }
+
+        /**
+         * Everyone with a region gets the records inside it. Clients that get
+         * the same records are grouped, so each group is encoded only once.
+         */
+        Map<InetSocketAddress, byte[]> plans = new HashMap<InetSocketAddress, byte[]>();
+        plan(records, plans, from, to);
+        Map<ByteBuffer, List<InetSocketAddress>> groups = new HashMap<ByteBuffer, List<InetSocketAddress>>();
+        for (Map.Entry<InetSocketAddress, byte[]> entry : plans.entrySet()) {
+            ByteBuffer key = ByteBuffer.wrap(entry.getValue());
+            List<InetSocketAddress> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<InetSocketAddress>();
+                groups.put(key, group);
+            }
+            group.add(entry.getKey());
+        }
+        for (Map.Entry<ByteBuffer, List<InetSocketAddress>> entry : groups
+                .entrySet()) {
+            List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+            List<Integer> msgIds = new ArrayList<Integer>();
+            for (InetSocketAddress address : entry.getValue()) {
+                Integer msgId = clientList.get(address);
+                if (msgId == null) {
+                    /** It went away without deregistering; forget it. */
+                    clientRegions.remove(address);
+                } else {
+                    addresses.add(address);
+                    msgIds.add(msgId);
+                }
+            }
+            if (!addresses.isEmpty()) {
+                for (NoTiFiMessage part : pick(message, records,
+                        entry.getKey().array(), from, to)) {
+                    deliver(part, addresses, msgIds);
+                }
+            }
+        }
+    }
+
+    /**
+     * This function finds the registered clients without a region, which are
+     * sent every notification as it is. They are only looked for again after
+     * the clients or the regions have changed, so back to back notifications
+     * don't each look through every client.
+     * 
+     * @param clients
+     *            the registered clients
+     */
+    private void findUnfiltered(NoTiFiRegistry.Snapshot clients) {
+        /** Read first, so a change while looking makes the next call look. */
+        long version = clientRegions.getVersion();
+        if (clients == unfilteredFrom && version == unfilteredVersion) {
+            return;
+        }
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        List<Integer> msgIds = new ArrayList<Integer>();
+        for (int i = 0; i < clients.size(); ++i) {
+            InetSocketAddress address = clients.getAddresses().get(i);
+            if (!clientRegions.isFiltered(address)) {
+                addresses.add(address);
+                msgIds.add(clients.getMsgIds().get(i));
+            }
+        }
+        unfiltered = addresses;
+        unfilteredIds = msgIds;
+        unfilteredFrom = clients;
+        unfilteredVersion = version;
+    }
+
+    /**
+     * This function sends a message to the given clients. Clients that asked
+     * for reliable delivery are each sent it numbered with their own sequence
+     * number, and the rest are sent it as it is, all at once.
+     * 
+     * @param message
+     *            the message to send
+     * @param addresses
+     *            the clients' addresses
+     * @param msgIds
+     *            the clients' message IDs, in the same order
+     * @throws IOException
+     *             if there is a problem with encoding the message
+     */
+    private void deliver(NoTiFiMessage message,
+            List<InetSocketAddress> addresses, List<Integer> msgIds)
+                    throws IOException {
+        if (clientStreams.size() == 0) {
+            fanOut.send(message, addresses, msgIds);
+            return;
+        }
+        List<InetSocketAddress> plain = new ArrayList<InetSocketAddress>();
+        List<Integer> plainIds = new ArrayList<Integer>();
+        for (int i = 0; i < addresses.size(); ++i) {
+            InetSocketAddress address = addresses.get(i);
+            NoTiFiSequenced numbered = clientStreams.sequence(address, message);
+            if (numbered == null) {
+                plain.add(address);
+                plainIds.add(msgIds.get(i));
+            } else {
+                fanOut.send(numbered, Collections.singletonList(address),
+                        Collections.singletonList(msgIds.get(i)));
+            }
+        }
+        if (!plain.isEmpty()) {
+            fanOut.send(message, plain, plainIds);
+        }
+    }
+
+    /**
+     * This function sends numbered notifications again to the clients that
+     * haven't said they arrived in a while, and forgets the streams of
+     * clients that went away without deregistering.
+     */
+    private void retransmit() {
+        for (Map.Entry<InetSocketAddress, List<NoTiFiSequenced>> entry : clientStreams
+                .due(NoTiFiSequencer.DEFAULT_RETRANSMIT_TIMEOUT).entrySet()) {
+            InetSocketAddress address = entry.getKey();
+            Integer msgId = clientList.get(address);
+            if (msgId == null) {
+                clientStreams.close(address);
+                continue;
+            }
+            try {
+                for (NoTiFiSequenced numbered : entry.getValue()) {
+                    fanOut.send(numbered, Collections.singletonList(address),
+                            Collections.singletonList(msgId));
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not send notification", e);
+            }
+        }
+    }
+
+    /**
+     * This function works out which records each client with a region is
+     * sent, and keeps track of where each user's location was last sent. A
+     * move is matched against both where the location was and where it went,
+     * so a client whose region it left is sent a deletion, and one whose
+     * region it entered is sent an addition.
+     * 
+     * @param records
+     *            the additions, deletions and moves being sent, in order
+     * @param plans
+     *            where to put what each client with a region is sent of each
+     *            record, or null to only keep track of the locations
+     * @param from
+     *            where to put the location each deletion or move takes away,
+     *            if it is known
+     * @param to
+     *            where to put the location each addition or move leaves,
+     *            if it is known
+     */
+    private void plan(List<NoTiFiMessage> records,
+            Map<InetSocketAddress, byte[]> plans, LocationRecord[] from,
+            LocationRecord[] to) {
+        Set<InetSocketAddress> matched = new HashSet<InetSocketAddress>();
+        for (int i = 0; i < records.size(); ++i) {
+            NoTiFiMessage record = records.get(i);
+            if (record instanceof NoTiFiLocationMove) {
+                NoTiFiLocationMove move = (NoTiFiLocationMove) record;
+                from[i] = lastSent.get(move.getUserId());
+                if (from[i] != null) {
+                    to[i] = new LocationRecord(move.getUserId(),
+                            move.getLongitude(), move.getLatitude(),
+                            move.getLocationName() != null
+                                    ? move.getLocationName()
+                                    : from[i].getLocationName(),
+                            move.getLocationDescription() != null
+                                    ? move.getLocationDescription()
+                                    : from[i].getLocationDescription());
+                    lastSent.put(move.getUserId(), to[i]);
+                }
+                if (plans == null) {
+                    continue;
+                }
+                if (from[i] != null) {
+                    matched.clear();
+                    clientRegions.match(from[i].getLongitude(),
+                            from[i].getLatitude(), matched);
+                    for (InetSocketAddress address : matched) {
+                        planFor(plans, address,
+                                records.size())[i] = AS_DELETION;
+                    }
+                }
+                matched.clear();
+                clientRegions.match(move.getLongitude(), move.getLatitude(),
+                        matched);
+                for (InetSocketAddress address : matched) {
+                    byte[] plan = planFor(plans, address, records.size());
+                    /**
+                     * A client that had the old location gets the move, and
+                     * so does every client when the old one isn't known.
+                     */
+                    plan[i] = plan[i] == AS_DELETION || from[i] == null
+                            ? SAME : AS_ADDITION;
+                }
+            } else {
+                LocationRecord location;
+                if (record instanceof NoTiFiLocationAddition) {
+                    location = to[i] = ((NoTiFiLocationAddition) record)
+                            .getLocationRecord();
+                    lastSent.put(location.getUserId(), location);
+                } else {
+                    location = from[i] = ((NoTiFiLocationDeletion) record)
+                            .getLocationRecord();
+                    lastSent.remove(location.getUserId());
+                }
+                if (plans == null) {
+                    continue;
+                }
+                matched.clear();
+                clientRegions.match(location.getLongitude(),
+                        location.getLatitude(), matched);
+                for (InetSocketAddress address : matched) {
+                    planFor(plans, address, records.size())[i] = SAME;
+                }
+            }
+        }
+    }
+
+    /**
+     * This function returns what a client is sent of each record, making it
+     * the first time the client is matched.
+     * 
+     * @param plans
+     *            what each client with a region is sent of each record
+     * @param address
+     *            the client's address
+     * @param length
+     *            the number of records
+     * @return what the client is sent of each record
+     */
+    private static byte[] planFor(Map<InetSocketAddress, byte[]> plans,
+            InetSocketAddress address, int length) {
+        byte[] plan = plans.get(address);
+        if (plan == null) {
+            plan = new byte[length];
+            plans.put(address, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * This function makes the messages for a group of clients with a region,
+     * batching the records they are sent like the original message was.
+     * 
+     * @param message
+     *            the message being sent
+     * @param records
+     *            the records in it, in order
+     * @param plan
+     *            what the group is sent of each record
+     * @param from
+     *            the location each deletion or move takes away
+     * @param to
+     *            the location each addition or move leaves
+     * @return the messages to send, in order
+     */
+    private List<NoTiFiMessage> pick(NoTiFiMessage message,
+            List<NoTiFiMessage> records, byte[] plan, LocationRecord[] from,
+            LocationRecord[] to) {
+        List<NoTiFiMessage> picked = new ArrayList<NoTiFiMessage>();
+        boolean unchanged = true;
+        for (int i = 0; i < plan.length; ++i) {
+            unchanged &= plan[i] == SAME;
+            switch (plan[i]) {
+            case SAME:
+                picked.add(records.get(i));
+                break;
+            case AS_ADDITION:
+                picked.add(new NoTiFiLocationAddition(0, to[i]));
+                break;
+            case AS_DELETION:
+                picked.add(new NoTiFiLocationDeletion(0, from[i]));
+                break;
+            default:
+                break;
+            }
+        }
+        if (unchanged) {
+            return Collections.singletonList(message);
+        }
+        if (picked.size() < 2) {
+            return picked;
+        }
+        List<NoTiFiMessage> batches = new ArrayList<NoTiFiMessage>();
+        NoTiFiBatch batch = new NoTiFiBatch(0);
+        for (NoTiFiMessage record : picked) {
+            if (!batch.canAdd(record,
+                    batchMaxLength - NoTiFiSequenced.OVERHEAD)) {
+                batches.add(batch);
+                batch = new NoTiFiBatch(0);
+            }
+            batch.addMessage(record);
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    /**
+     * This function makes the server publish every notification to a
+     * multicast group. The notifications go out on the interface of the given
+     * address, or of the server's address if none is given. They can also
+     * still be sent to each registered client.
+     * 
+     * @param group
+     *            the multicast group and port to publish to
+     * @param interfaceAddress
+     *            the address whose interface to publish on, or null
+     * @param unicast
+     *            whether to also send to each registered client
+     * @throws IOException
+     *             if the group isn't multicast or can't be published to
+     */
+    public void enableMulticast(InetSocketAddress group,
+            InetAddress interfaceAddress, boolean unicast) throws IOException {
+        multicastPublisher = new NoTiFiMulticastPublisher(group,
+                interfaceAddress != null ? interfaceAddress : localAddress);
+        this.unicast = unicast;
+    }
+
+    /**
+     * This function makes the server publish every notification to a
+     * multicast group written as address:port, or address:port@interface to
+     * publish on the interface of the given address, such as 127.0.0.1 to
+     * keep the group on loopback. Notifications are still sent to each
+     * registered client too.
+     * 
+     * @param text
+     *            the group, port and optional interface address
+     * @throws IOException
+     *             if the text can't be read, or the group can't be published
+     *             to
+     */
+    public void enableMulticast(String text) throws IOException {
+        InetAddress interfaceAddress = null;
+        int at = text.indexOf('@');
+        if (at >= 0) {
+            interfaceAddress = InetAddress.getByName(text.substring(at + 1));
+            text = text.substring(0, at);
+        }
+        int colon = text.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException(
+                    "Multicast group should be <Address>:<Port>.");
+        }
+        InetSocketAddress group;
+        try {
+            group = new InetSocketAddress(
+                    InetAddress.getByName(text.substring(0, colon)),
+                    Integer.parseInt(text.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(
+                    "Multicast group should be <Address>:<Port>.");
+        }
+        enableMulticast(group, interfaceAddress, true);
+    }
+
+    /**
+     * This function sets how notifications are gathered into batches. The
+     * first notification of a batch waits up to the window for others to join
+     * it, and the batch is sent early once the next one wouldn't fit in the
+     * given length. A window of 0 sends every notification on its own.
+     * 
+     * @param windowMillis
+     *            how long to gather notifications, in ms, or 0
+     * @param maxLength
+     *            the longest a batch may grow, in bytes
+     * @throws IllegalArgumentException
+     *             if the window is negative, or the length is past what
+     *             clients can receive
+     */
+    public void setBatching(long windowMillis, int maxLength)
+            throws IllegalArgumentException {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Negative batch window.");
+        }
+        if (maxLength > NoTiFiBatch.MAX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Batch length over " + NoTiFiBatch.MAX_LENGTH + ".");
+        }
+        batchMaxLength = maxLength;
+        batchWindow = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * This function returns how long notifications are gathered into a batch.
+     * 
+     * @return the window, in ms, or 0 if notifications aren't batched
+     */
+    public long getBatchWindow() {
+        return TimeUnit.NANOSECONDS.toMillis(batchWindow);
+    }
+
+    /**
+     * This function returns the longest a batch may grow.
+     * 
+     * @return the length, in bytes
+     */
+    public int getBatchMaxLength() {
+        return batchMaxLength;
+    }
+
+    /**
+     * This function returns what publishes to the multicast group, for its
+     * numbers.
+     * 
+     * @return the publisher, or null if multicast isn't enabled
+     */
+    public NoTiFiMulticastPublisher getMulticastPublisher() {
+        return multicastPublisher;
+    }
+
+    /**
+     * This function returns what sends notifications, for its numbers.
+     * 
+     * @return the fan-out, or null if its channels couldn't be opened
+     */
+    public NoTiFiFanOut getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * This function returns the port the server takes register, deregister,
+     * region and receipt messages on.
+     * 
+     * @return the port
+     */
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * This function returns the registry of the clients, which can also be
+     * registered with directly, as if they had sent a register message.
+     * 
+     * @return the registry
+     */
+    public NoTiFiRegistry getClientList() {
+        return clientList;
+    }
+
+    /**
+     * This function returns the leases of the registered clients, for their
+     * numbers.
+     * 
+     * @return the leases
+     */
+    public NoTiFiLeases getLeases() {
+        return leases;
+    }
+
+    /**
+     * This function returns the index of the regions clients asked to be
+     * notified about.
+     * 
+     * @return the regions
+     */
+    public NoTiFiRegionIndex getRegions() {
+        return clientRegions;
+    }
+
+    /**
+     * This function returns the numbered streams of the clients that asked for
+     * reliable delivery, for their numbers.
+     * 
+     * @return the streams
+     */
+    public NoTiFiSequencer getStreams() {
+        return clientStreams;
+    }
+
+    /**
+     * This function returns the sender of the locations there already are to
+     * new clients, for its numbers.
+     * 
+     * @return the snapshots
+     */
+    public NoTiFiSnapshots getSnapshots() {
+        return clientSnapshots;
+    }
+
+    /**
+     * This function returns the notifications waiting to be sent, for their
+     * numbers.
+     * 
+     * @return the queue
+     */
+    public NoTiFiEventQueue getEventQueue() {
+        return events;
+    }
+
+    /**
+     * This function returns the number of times notifications were sent again
+     * to make up for ones the queue dropped.
+     * 
+     * @return the number of resyncs
+     */
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    /**
+     * This function returns the number of notifications sent to make up for
+     * ones the queue dropped.
+     * 
+     * @return the number of notifications
+     */
+    public long getResyncRecords() {
+        return resyncRecords.get();
     }
 }
 
 /**
- * This class is a thread for the NoTiFiServer that handles register and
- * deregister messages. It also logs the fact that a register or deregister
- * message has been sent.
+ * This class is a thread for the NoTiFiServer that handles register,
+ * deregister and region messages. It also logs the fact that one of them has
+ * been sent.
  * 
  * @author Austin Sandlin
  * @version 11/10/15
@@ -166,22 +1230,58 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
     /** The java logger for logging UDP messages. */
     private Logger logger;
 
+    /** The server's registry of the clients. */
+    private NoTiFiRegistry clientList;
+
+    /** The leases of the registered clients. */
+    private NoTiFiLeases leases;
+
+    /** The server's index of the regions clients asked for. */
+    private NoTiFiRegionIndex clientRegions;
+
+    /** The server's numbered streams, for reliable delivery. */
+    private NoTiFiSequencer clientStreams;
+
+    /** The server's sender of locations to new clients. */
+    private NoTiFiSnapshots clientSnapshots;
+
     /** Final strings for errors. */
     private final String UNEXPECTED_MESSAGE_TYPE_ERROR = "Unexpected message type: ";
     private final String PARSING_PROBLEM_ERROR = "Unable to parse message";
     private final String MULTICAST_ERROR = "Bad address";
-    private final String ALREADY_REGISTERED_ERROR = "Already registered";
     private final String MISMATCH_ADDRESS_OR_PORT_ERROR = "Incorrect port";
     private final String UNKNOWN_CLIENT_ERROR = "Unknown client";
 
     /**
-     * Constructor for creating the thread. Basically just passes the logger.
+     * Constructor for creating the thread. Basically just passes the server's
+     * socket, the logger and the server's state for its clients.
      * 
+     * @param socket
+     *            the server's socket
      * @param logger
      *            the java logger for logging
+     * @param clientList
+     *            the registry of the clients
+     * @param leases
+     *            the leases of the registered clients
+     * @param clientRegions
+     *            the regions clients asked for
+     * @param clientStreams
+     *            the numbered streams, for reliable delivery
+     * @param clientSnapshots
+     *            the sender of locations to new clients
      */
-    public ClientHandler(Logger logger) {
+    public ClientHandler(DatagramSocket socket, Logger logger,
+            NoTiFiRegistry clientList, NoTiFiLeases leases,
+            NoTiFiRegionIndex clientRegions, NoTiFiSequencer clientStreams,
+            NoTiFiSnapshots clientSnapshots) {
+        super(socket);
         this.logger = logger;
+        this.clientList = clientList;
+        this.leases = leases;
+        this.clientRegions = clientRegions;
+        this.clientStreams = clientStreams;
+        this.clientSnapshots = clientSnapshots;
     }
 
     /**
@@ -197,6 +1297,10 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
             packet = receivePacket();
             loggerString = packet.getAddress() + " " + packet.getPort() + " ";
         } catch (IOException e1) {
+            /** The server closed the socket, so there's nothing to do. */
+            if (socket.isClosed()) {
+                return;
+            }
             System.err.println("Error during receiving of UDP client message.");
             System.exit(0);
         }
@@ -204,6 +1308,8 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
         /** Make the NoTiFiMessage that was received, and one to send. */
         NoTiFiMessage responseMessage = null;
         NoTiFiMessage receivedMessage = null;
+        /** The client to send the locations to once it's answered, if any. */
+        InetSocketAddress snapshotFor = null;
         try {
             receivedMessage = getMessage(packet);
         } catch (IllegalArgumentException e) {
@@ -232,25 +1338,31 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
                      * If the address and port equal the address and port from
                      * the packet, respond with an ACK message and add the
                      * client to our map. Also, log that a register message was
-                     * received. There is a chance that the user is already in
-                     * the map. In that case, make an error to send back instead
-                     * of an ack. If the address and port in the register
+                     * received. If the user is already in the map, it is
+                     * renewing its lease, so start the lease over and ack
+                     * that instead. If the address and port in the register
                      * message don't match the ones from the packet, make an
                      * error instead.
                      */
                     if (registerMessage.getPort() == packet.getPort()) {
-                        if (NoTiFiServer.clientList.get(saddr) == null) {
-                            responseMessage = new NoTiFiACK(
-                                    receivedMessage.getMsgId());
-                            NoTiFiServer.clientList.put(saddr,
-                                    registerMessage.getMsgId());
+                        responseMessage = new NoTiFiACK(
+                                receivedMessage.getMsgId());
+                        if (clientList.register(saddr,
+                                registerMessage.getMsgId())) {
+                            /**
+                             * A new registration starts out unfiltered and
+                             * unnumbered.
+                             */
+                            clientRegions.remove(saddr);
+                            clientStreams.close(saddr);
+                            snapshotFor = saddr;
                             loggerString += "NoTiFiRegister message received";
                         } else {
-                            responseMessage = new NoTiFiError(
-                                    registerMessage.getMsgId(),
-                                    ALREADY_REGISTERED_ERROR);
-                            loggerString += ALREADY_REGISTERED_ERROR;
+                            clientList.renew(saddr,
+                                    registerMessage.getMsgId());
+                            loggerString += "NoTiFiRegister renewal received";
                         }
+                        leases.renew(saddr);
                     } else {
                         responseMessage = new NoTiFiError(
                                 receivedMessage.getMsgId(),
@@ -273,20 +1385,78 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
                  */
                 NoTiFiDeregister deregisterMessage = (NoTiFiDeregister) receivedMessage;
                 
-                if (NoTiFiServer.clientList.get(saddr) != null) {
+                leases.cancel(saddr);
+                clientRegions.remove(saddr);
+                clientStreams.close(saddr);
+                if (clientList.deregister(saddr)) {
                     responseMessage = new NoTiFiACK(receivedMessage.getMsgId());
-                    NoTiFiServer.clientList.remove(saddr);
                     loggerString += "NoTiFiDeregister message received";
                 } else {
                     responseMessage = new NoTiFiError(
                             deregisterMessage.getMsgId(), UNKNOWN_CLIENT_ERROR);
                     loggerString += UNKNOWN_CLIENT_ERROR;
                 }
+            } else if (receivedMessage.getCode() == NoTiFiRegion.CODE) {
+                /**
+                 * A registered client can ask to only be notified of a
+                 * region. Ack it and put the region in the index, or make an
+                 * error if the client isn't registered.
+                 */
+                if (clientList.get(saddr) != null) {
+                    /**
+                     * A new region means new locations to send, but the same
+                     * one sent again to renew it doesn't.
+                     */
+                    if (!receivedMessage
+                            .equals(clientRegions.get(saddr))) {
+                        snapshotFor = saddr;
+                    }
+                    clientRegions.put(saddr,
+                            (NoTiFiRegion) receivedMessage);
+                    responseMessage = new NoTiFiACK(receivedMessage.getMsgId());
+                    loggerString += "NoTiFiRegion message received";
+                } else {
+                    responseMessage = new NoTiFiError(
+                            receivedMessage.getMsgId(), UNKNOWN_CLIENT_ERROR);
+                    loggerString += UNKNOWN_CLIENT_ERROR;
+                }
+            } else if (receivedMessage.getCode() == NoTiFiReceipt.CODE) {
+                /**
+                 * A registered client sends receipts for reliable delivery.
+                 * Send it what it missed right away, and only answer if some
+                 * of it is too old to send again, since receipts come often.
+                 */
+                Integer msgId = clientList.get(saddr);
+                if (msgId != null) {
+                    List<NoTiFiSequenced> resend = new ArrayList<NoTiFiSequenced>();
+                    boolean complete = clientStreams.receive(saddr,
+                            (NoTiFiReceipt) receivedMessage, resend);
+                    for (NoTiFiSequenced numbered : resend) {
+                        numbered.setMsgId(msgId);
+                        try {
+                            sendMessage(numbered, packet.getAddress(),
+                                    packet.getPort());
+                        } catch (IOException e) {
+                            System.err.println(
+                                    "Could not send notification again.");
+                        }
+                    }
+                    if (complete) {
+                        return;
+                    }
+                    responseMessage = new NoTiFiError(msgId,
+                            NoTiFiReceipt.LOST_ERROR);
+                    loggerString += NoTiFiReceipt.LOST_ERROR;
+                } else {
+                    responseMessage = new NoTiFiError(
+                            receivedMessage.getMsgId(), UNKNOWN_CLIENT_ERROR);
+                    loggerString += UNKNOWN_CLIENT_ERROR;
+                }
             } else {
                 /**
                  * If we get an ACK, Error, LocationAddition, or
                  * LocationDeletion, make an error to return. We only handle
-                 * register and deregister.
+                 * register, deregister, region and receipt.
                  */
                 responseMessage = new NoTiFiError(receivedMessage.getMsgId(),
                         UNEXPECTED_MESSAGE_TYPE_ERROR
@@ -307,16 +1477,21 @@ class ClientHandler extends NoTiFiMessageHandler implements Runnable {
                     "Could not send acknowledgment message for deregister "
                             + "message.");
         }
+
+        /** Then send it the locations there already are, if it needs them. */
+        if (snapshotFor != null) {
+            clientSnapshots.request(snapshotFor);
+        }
     }
 
     /**
      * Overridden function for threads. Just constantly loops the handling of
-     * clients.
+     * clients, until the server closes the socket.
      */
     @Override
     public void run() {
-        while (true) {
+        while (!socket.isClosed()) {
             handleClients();
         }
     }
-}
\ No newline at end of file
+}
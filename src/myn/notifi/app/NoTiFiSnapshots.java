@@ -0,0 +1,361 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class sends newly registered NoTiFi clients the locations there
+ * already are, a few datagrams at a time.
+ *
+ ************************************************/
+
+package myn.notifi.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiRegion;
+
+/**
+ * This class sends newly registered NoTiFi clients the locations there
+ * already are, as batches of additions, so a client doesn't have to ask the
+ * AddATude server for all of them before it can follow the notifications.
+ * Snapshots are asked for from any thread, but only sent by the thread that
+ * sends the notifications, between them, so a snapshot always agrees with
+ * the notifications around it. A location is read when its batch is sent,
+ * so one deleted or moved in the meantime is sent as it is then, or not at
+ * all.
+ * 
+ * Every snapshot being sent shares one rate, taking turns a datagram at a
+ * time, so a lot of clients registering at once, as after an outage, can't
+ * crowd out the notifications. A client that deregisters or lets its lease
+ * run out is dropped, and one that registers again or changes its region
+ * starts over. Only the locations in a client's region are sent to it.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiSnapshots {
+
+    /** The default most datagrams of snapshots sent each second. */
+    public static final int DEFAULT_RATE = 1000;
+
+    /** The default most datagrams of snapshots sent at once, after a lull. */
+    public static final int DEFAULT_BURST = 16;
+
+    /**
+     * Something that sends a batch of a snapshot to a client.
+     */
+    public interface Sender {
+
+        /**
+         * Sends a batch of a snapshot to a client.
+         * 
+         * @param address
+         *            the client's address
+         * @param msgId
+         *            the client's message ID
+         * @param message
+         *            an addition, or a batch of them
+         * @throws IOException
+         *             if the message can't be sent
+         */
+        void send(InetSocketAddress address, int msgId, NoTiFiMessage message)
+                throws IOException;
+    }
+
+    /** The clients that are registered, and their message IDs. */
+    private final NoTiFiRegistry registry;
+
+    /** The clients' regions. */
+    private final NoTiFiRegionIndex regions;
+
+    /** The datagrams allowed each ns. */
+    private final double rate;
+
+    /** The most datagrams allowed at once. */
+    private final double burst;
+
+    /** The datagrams allowed right now. Only used by the sending thread. */
+    private double tokens;
+
+    /** When the tokens were last added to, from System.nanoTime(). */
+    private long refilled = System.nanoTime();
+
+    /** The clients that asked for a snapshot since the last were started. */
+    private final Set<InetSocketAddress> requested = Collections
+            .newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+    /** The snapshots being sent, by client. Only used by the sending thread. */
+    private final Map<InetSocketAddress, Transfer> transfers = new HashMap<InetSocketAddress, Transfer>();
+
+    /** The snapshots being sent, in turn. Only used by the sending thread. */
+    private final ArrayDeque<Transfer> turns = new ArrayDeque<Transfer>();
+
+    /** The number of snapshots started. */
+    private final AtomicLong started = new AtomicLong();
+
+    /** The number of snapshots sent all the way through. */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** The number of datagrams of snapshots sent. */
+    private final AtomicLong datagrams = new AtomicLong();
+
+    /** The number of locations sent in snapshots. */
+    private final AtomicLong records = new AtomicLong();
+
+    /**
+     * One client's snapshot, partway sent.
+     */
+    private static final class Transfer {
+
+        /** The client's address. */
+        private final InetSocketAddress address;
+
+        /** The userIds of the locations when the snapshot started. */
+        private final int[] userIds;
+
+        /** The index of the next userId to send. */
+        private int next = 0;
+
+        /**
+         * Constructs a snapshot of the locations for a client.
+         * 
+         * @param address
+         *            the client's address
+         * @param locations
+         *            the locations, by userId
+         */
+        private Transfer(InetSocketAddress address,
+                Map<Integer, LocationRecord> locations) {
+            this.address = address;
+            this.userIds = new int[locations.size()];
+            int i = 0;
+            for (int userId : locations.keySet()) {
+                userIds[i++] = userId;
+            }
+        }
+    }
+
+    /**
+     * Constructs a sender of snapshots with the default rate.
+     * 
+     * @param registry
+     *            the clients that are registered
+     * @param regions
+     *            the clients' regions
+     */
+    public NoTiFiSnapshots(NoTiFiRegistry registry,
+            NoTiFiRegionIndex regions) {
+        this(registry, regions, DEFAULT_RATE, DEFAULT_BURST);
+    }
+
+    /**
+     * Constructs a sender of snapshots.
+     * 
+     * @param registry
+     *            the clients that are registered
+     * @param regions
+     *            the clients' regions
+     * @param rate
+     *            the most datagrams sent each second
+     * @param burst
+     *            the most datagrams sent at once, after a lull
+     * @throws IllegalArgumentException
+     *             if the rate or burst isn't positive
+     */
+    public NoTiFiSnapshots(NoTiFiRegistry registry, NoTiFiRegionIndex regions,
+            int rate, int burst) throws IllegalArgumentException {
+        if (rate <= 0 || burst <= 0) {
+            throw new IllegalArgumentException(
+                    "Rate and burst must be positive.");
+        }
+        this.registry = registry;
+        this.regions = regions;
+        this.rate = rate / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * Asks for a client to be sent a snapshot, starting over if one is being
+     * sent already. It starts the next time the sending thread sends.
+     * 
+     * @param address
+     *            the client's address
+     */
+    public void request(InetSocketAddress address) {
+        requested.add(address);
+    }
+
+    /**
+     * Starts the snapshots asked for, and sends as many datagrams of the
+     * snapshots being sent as the rate allows. This must only be called by
+     * the thread that sends the notifications, which is the one that changes
+     * the locations.
+     * 
+     * @param locations
+     *            the locations, by userId, as the clients have been notified
+     * @param maxLength
+     *            the longest a batch may be, in bytes
+     * @param sender
+     *            sends each batch
+     * @return how long until the next datagram can be sent, in ns, or -1 if
+     *         no snapshots are being sent
+     * @throws IOException
+     *             if a batch can't be sent
+     */
+    public long send(Map<Integer, LocationRecord> locations, int maxLength,
+            Sender sender) throws IOException {
+        if (!requested.isEmpty()) {
+            for (Iterator<InetSocketAddress> it = requested.iterator(); it
+                    .hasNext();) {
+                InetSocketAddress address = it.next();
+                it.remove();
+                Transfer transfer = new Transfer(address, locations);
+                Transfer replaced = transfers.put(address, transfer);
+                if (replaced != null) {
+                    turns.remove(replaced);
+                }
+                turns.addLast(transfer);
+                started.incrementAndGet();
+            }
+        }
+        if (turns.isEmpty()) {
+            return -1;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilled) * rate);
+        refilled = now;
+        while (tokens >= 1 && !turns.isEmpty()) {
+            Transfer transfer = turns.pollFirst();
+            Integer msgId = registry.get(transfer.address);
+            NoTiFiMessage message = msgId == null ? null
+                    : next(transfer, locations, maxLength);
+            if (message == null) {
+                transfers.remove(transfer.address);
+                if (msgId != null) {
+                    completed.incrementAndGet();
+                }
+                continue;
+            }
+            tokens -= 1;
+            turns.addLast(transfer);
+            datagrams.incrementAndGet();
+            sender.send(transfer.address, msgId, message);
+        }
+        if (turns.isEmpty()) {
+            return -1;
+        }
+        return tokens >= 1 ? 0 : (long) ((1 - tokens) / rate);
+    }
+
+    /**
+     * Makes the next batch of a snapshot, skipping the locations that are
+     * gone or outside the client's region.
+     * 
+     * @param transfer
+     *            the snapshot
+     * @param locations
+     *            the locations, by userId
+     * @param maxLength
+     *            the longest the batch may be, in bytes
+     * @return an addition, a batch of them, or null if the snapshot is done
+     */
+    private NoTiFiMessage next(Transfer transfer,
+            Map<Integer, LocationRecord> locations, int maxLength) {
+        NoTiFiRegion region = regions.get(transfer.address);
+        NoTiFiLocationAddition first = null;
+        NoTiFiBatch batch = null;
+        for (; transfer.next < transfer.userIds.length; ++transfer.next) {
+            LocationRecord record = locations
+                    .get(transfer.userIds[transfer.next]);
+            if (record == null || region != null && !region
+                    .contains(record.getLongitude(), record.getLatitude())) {
+                continue;
+            }
+            NoTiFiLocationAddition addition = new NoTiFiLocationAddition(0,
+                    record);
+            if (first == null) {
+                first = addition;
+                continue;
+            }
+            if (batch == null) {
+                batch = new NoTiFiBatch(0);
+                batch.addMessage(first);
+            }
+            if (!batch.canAdd(addition, maxLength)) {
+                break;
+            }
+            batch.addMessage(addition);
+        }
+        if (first == null) {
+            return null;
+        }
+        records.addAndGet(batch == null ? 1 : batch.getMessages().size());
+        return batch == null ? first : batch;
+    }
+
+    /**
+     * Returns the number of snapshots started.
+     * 
+     * @return the number started
+     */
+    public long getStarted() {
+        return started.get();
+    }
+
+    /**
+     * Returns the number of snapshots sent all the way through.
+     * 
+     * @return the number completed
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of datagrams of snapshots sent.
+     * 
+     * @return the number of datagrams
+     */
+    public long getDatagrams() {
+        return datagrams.get();
+    }
+
+    /**
+     * Returns the number of locations sent in snapshots.
+     * 
+     * @return the number of locations
+     */
+    public long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * Returns the snapshots' numbers, for logging.
+     * 
+     * @return a summary of the snapshots
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "NoTiFi snapshots: %d started, %d completed, %d datagrams, "
+                        + "%d locations",
+                getStarted(), getCompleted(), getDatagrams(), getRecords());
+    }
+}
@@ -0,0 +1,166 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a benchmark comparing NoTiFi notifications sent one per
+ * datagram with notifications gathered into batches, under a burst.
+ *
+ ************************************************/
+
+package myn.notifi.app.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiEventQueue;
+import myn.notifi.app.NoTiFiServer;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiMessage;
+
+/**
+ * This class is a benchmark comparing NoTiFi notifications sent one per
+ * datagram with notifications gathered into batches. A burst of additions
+ * and deletions, like a client moving many locations at once, is queued on
+ * a NoTiFiServer as fast as it can take them, and a set of subscribers on
+ * loopback count what arrives. For each batch window, the benchmark prints
+ * the datagrams sent per second, the records delivered per second, and the
+ * records that never arrived.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiBatchBenchmark {
+
+    /** The number of subscribers. */
+    private static final int SUBSCRIBERS = 20;
+
+    /** The number of notifications in each burst. */
+    private static final int BURST = 10000;
+
+    /** The batch windows to try, in ms, where 0 turns batching off. */
+    private static final long[] WINDOWS = { 0, 1, 5 };
+
+    /** The number of bursts per window, the first of which is warmup. */
+    private static final int ROUNDS = 3;
+
+    /** How long to wait for the last records to arrive, in ms. */
+    private static final long DRAIN_TIMEOUT = 5000;
+
+    /**
+     * Runs a burst for each window and prints the results.
+     * 
+     * @param args
+     *            unused
+     * @throws IOException
+     *             if the subscribers' channels can't be opened
+     */
+    public static void main(String[] args) throws IOException {
+        Logger logger = Logger.getLogger(NoTiFiBatchBenchmark.class.getName());
+        logger.setUseParentHandlers(false);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        NoTiFiServer server = new NoTiFiServer(0, loopback, logger, BURST * 2,
+                NoTiFiEventQueue.OverflowPolicy.DROP_NEWEST);
+
+        /** Each subscriber is a channel of its own, all read by one thread. */
+        Selector selector = Selector.open();
+        for (int i = 0; i < SUBSCRIBERS; ++i) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 << 20);
+            channel.bind(new InetSocketAddress(loopback, 0));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            server.getClientList().register(
+                    (InetSocketAddress) channel.getLocalAddress(), i);
+        }
+
+        for (long window : WINDOWS) {
+            server.setBatching(window, NoTiFiBatch.MAX_LENGTH);
+            for (int round = 0; round < ROUNDS; ++round) {
+                long datagramsBefore = server.getFanOut().getDatagrams();
+                long[] received = new long[2];
+                long start = System.nanoTime();
+                for (int n = 0; n < BURST; ++n) {
+                    String name = "Location " + n;
+                    if (n % 2 == 0) {
+                        server.notifyDeletion(n, 1.5, 2.5, name, "Before");
+                    } else {
+                        server.notifyAddition(n, 1.5, 2.5, name, "After");
+                    }
+                }
+                long expected = (long) BURST * SUBSCRIBERS;
+                long last = drain(selector, received, expected);
+                long sent = server.getFanOut().getDatagrams() - datagramsBefore;
+                double seconds = (last - start) / 1e9;
+
+                if (round > 0) {
+                    System.out.printf("window %d ms: %7d datagrams in "
+                            + "%7.1f ms   %10.0f datagrams/s   %10.0f "
+                            + "records/s   %5.1f records/datagram   "
+                            + "lost %d%n",
+                            window, sent, seconds * 1000, sent / seconds,
+                            received[1] / seconds,
+                            (double) received[1] / Math.max(1, received[0]),
+                            expected - received[1]);
+                }
+            }
+        }
+        server.close();
+        System.exit(0);
+    }
+
+    /**
+     * Reads the subscribers' channels until the expected records have all
+     * arrived, or none have arrived for a while.
+     * 
+     * @param selector
+     *            the selector the channels are registered with
+     * @param received
+     *            where to count the datagrams and records read
+     * @param expected
+     *            the number of records to wait for
+     * @return when the last datagram was read, in ns
+     * @throws IOException
+     *             if a channel can't be read
+     */
+    private static long drain(Selector selector, long[] received,
+            long expected) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(NoTiFiBatch.MAX_LENGTH);
+        long last = System.nanoTime();
+        while (received[1] < expected) {
+            if (selector.select(DRAIN_TIMEOUT) == 0) {
+                break;
+            }
+            List<SelectionKey> ready = new ArrayList<SelectionKey>(
+                    selector.selectedKeys());
+            selector.selectedKeys().clear();
+            for (SelectionKey key : ready) {
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                buffer.clear();
+                while (channel.receive(buffer) != null) {
+                    NoTiFiMessage message = NoTiFiMessage.decode(Arrays
+                            .copyOf(buffer.array(), buffer.position()));
+                    ++received[0];
+                    received[1] += message instanceof NoTiFiBatch
+                            ? ((NoTiFiBatch) message).getMessages().size()
+                            : 1;
+                    buffer.clear();
+                }
+            }
+            last = System.nanoTime();
+        }
+        return last;
+    }
+}
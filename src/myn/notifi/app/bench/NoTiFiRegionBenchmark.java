@@ -0,0 +1,231 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a benchmark of matching NoTiFi notifications against the
+ * regions subscribers asked for, as the number of subscribers grows, alone
+ * and as part of sending them.
+ *
+ ************************************************/
+
+package myn.notifi.app.bench;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiEventQueue;
+import myn.notifi.app.NoTiFiRegionIndex;
+import myn.notifi.app.NoTiFiServer;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiRegion;
+
+/**
+ * This class is a benchmark of matching NoTiFi notifications against the
+ * regions subscribers asked for. Subscribers are spread over an area about
+ * the size of Texas, each asking for a box about the size of a city, and
+ * locations are matched against them both with the index and by checking
+ * every region in turn. For each number of subscribers, the benchmark prints
+ * the time per location each way, and how many subscribers a location is
+ * sent to on average, against every one of them without regions. Matching is
+ * only part of what a NoTiFiServer does for a location, so the benchmark
+ * then registers the same subscribers with a server and prints the time per
+ * location from queuing it to sending it, which is what the dispatcher
+ * thread pays.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegionBenchmark {
+
+    /** The numbers of subscribers to try. */
+    private static final int[] SUBSCRIBERS = { 1000, 10000, 100000 };
+
+    /** The number of locations matched for each number of subscribers. */
+    private static final int LOCATIONS = 20000;
+
+    /** The smallest longitude of the area. */
+    private static final double MIN_LONGITUDE = -106;
+
+    /** The smallest latitude of the area. */
+    private static final double MIN_LATITUDE = 26;
+
+    /** The width and height of the area, in degrees. */
+    private static final double AREA = 10;
+
+    /** The largest width and height of a region, in degrees. */
+    private static final double REGION = 0.3;
+
+    /** Where the last location is sent, far from every other region. */
+    private static final double SENTINEL = 0.5;
+
+    /** How long to wait for the last location to be sent, in ms. */
+    private static final int TIMEOUT = 300000;
+
+    /**
+     * Runs the benchmark and prints the results.
+     * 
+     * @param args
+     *            unused
+     * @throws IOException
+     *             if the server or the sentinel's socket can't be used
+     */
+    public static void main(String[] args) throws IOException {
+        Logger logger = Logger
+                .getLogger(NoTiFiRegionBenchmark.class.getName());
+        logger.setUseParentHandlers(false);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        NoTiFiServer server = new NoTiFiServer(0, loopback, logger,
+                LOCATIONS * 2, NoTiFiEventQueue.OverflowPolicy.DROP_NEWEST);
+        server.setBatching(0, NoTiFiBatch.MAX_LENGTH);
+
+        Random random = new Random(4321);
+        double[] longitudes = new double[LOCATIONS];
+        double[] latitudes = new double[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; ++i) {
+            longitudes[i] = MIN_LONGITUDE + random.nextDouble() * AREA;
+            latitudes[i] = MIN_LATITUDE + random.nextDouble() * AREA;
+        }
+
+        for (int subscribers : SUBSCRIBERS) {
+            NoTiFiRegionIndex index = new NoTiFiRegionIndex();
+            List<NoTiFiRegion> regions = new ArrayList<NoTiFiRegion>();
+            for (int i = 0; i < subscribers; ++i) {
+                double longitude = MIN_LONGITUDE + random.nextDouble() * AREA;
+                double latitude = MIN_LATITUDE + random.nextDouble() * AREA;
+                NoTiFiRegion region = new NoTiFiRegion(0, longitude, latitude,
+                        longitude + random.nextDouble() * REGION,
+                        latitude + random.nextDouble() * REGION);
+                regions.add(region);
+                index.put(InetSocketAddress.createUnresolved(
+                        "subscriber" + i, 1), region);
+            }
+            List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+            for (int i = 0; i < subscribers; ++i) {
+                /** Loopback addresses nobody listens on, which is fine. */
+                addresses.add(new InetSocketAddress(
+                        InetAddress.getByAddress(new byte[] { 127, 1,
+                                (byte) (i >> 8), (byte) i }),
+                        (i >> 16) + 9));
+            }
+
+            /** Run each twice, the first time as warmup. */
+            long indexed = 0;
+            long scanned = 0;
+            long matches = 0;
+            for (int round = 0; round < 2; ++round) {
+                List<InetSocketAddress> matched = new ArrayList<InetSocketAddress>();
+                matches = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < LOCATIONS; ++i) {
+                    matched.clear();
+                    index.match(longitudes[i], latitudes[i], matched);
+                    matches += matched.size();
+                }
+                indexed = System.nanoTime() - start;
+
+                long found = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < LOCATIONS; ++i) {
+                    for (NoTiFiRegion region : regions) {
+                        if (region.contains(longitudes[i], latitudes[i])) {
+                            ++found;
+                        }
+                    }
+                }
+                scanned = System.nanoTime() - start;
+                if (found != matches) {
+                    throw new IllegalStateException(
+                            "Index found " + matches + ", scan " + found);
+                }
+            }
+
+            double perMatch = (double) matches / LOCATIONS;
+            System.out.printf("%6d subscribers: index %8.0f ns/location   "
+                    + "scan %10.0f ns/location   %6.2f sent to per "
+                    + "location (%.4f%% of %d)%n",
+                    subscribers, (double) indexed / LOCATIONS,
+                    (double) scanned / LOCATIONS, perMatch,
+                    100 * perMatch / subscribers, subscribers);
+
+            long sent = timeServer(server, addresses, regions, longitudes,
+                    latitudes);
+            System.out.printf("%6d subscribers: server %7.0f ns/location "
+                    + "from queued to sent%n", subscribers,
+                    (double) sent / LOCATIONS);
+            for (InetSocketAddress address : addresses) {
+                server.getClientList().deregister(address);
+                server.getRegions().remove(address);
+            }
+        }
+        server.close();
+        System.exit(0);
+    }
+
+    /**
+     * Registers subscribers with their regions, and times the server sending
+     * them every location, twice, the first time as warmup. A sentinel
+     * subscriber is sent one more location after them, which no one else
+     * is, so when it arrives the server is done.
+     * 
+     * @param server
+     *            the server
+     * @param addresses
+     *            the subscribers' addresses
+     * @param regions
+     *            the subscribers' regions, in the same order
+     * @param longitudes
+     *            the longitudes of the locations
+     * @param latitudes
+     *            the latitudes of the locations
+     * @return how long the second time took, in ns
+     * @throws IOException
+     *             if the sentinel's socket can't be used
+     */
+    private static long timeServer(NoTiFiServer server,
+            List<InetSocketAddress> addresses, List<NoTiFiRegion> regions,
+            double[] longitudes, double[] latitudes) throws IOException {
+        for (int i = 0; i < addresses.size(); ++i) {
+            server.getClientList().register(addresses.get(i), 0);
+            server.getRegions().put(addresses.get(i), regions.get(i));
+        }
+        DatagramSocket sentinel = new DatagramSocket(0,
+                InetAddress.getLoopbackAddress());
+        InetSocketAddress sentinelAddress = (InetSocketAddress) sentinel
+                .getLocalSocketAddress();
+        server.getClientList().register(sentinelAddress, 0);
+        server.getRegions().put(sentinelAddress,
+                new NoTiFiRegion(0, 0, 0, 2 * SENTINEL, 2 * SENTINEL));
+        sentinel.setSoTimeout(TIMEOUT);
+        byte[] buffer = new byte[NoTiFiBatch.MAX_LENGTH];
+
+        long elapsed = 0;
+        try {
+            for (int round = 0; round < 2; ++round) {
+                long start = System.nanoTime();
+                for (int i = 0; i < longitudes.length; ++i) {
+                    server.notifyAddition(i, longitudes[i], latitudes[i],
+                            "Location " + i, "Added");
+                }
+                server.notifyAddition(longitudes.length, SENTINEL, SENTINEL,
+                        "Sentinel", "Last");
+                sentinel.receive(new DatagramPacket(buffer, buffer.length));
+                elapsed = System.nanoTime() - start;
+            }
+        } finally {
+            server.getClientList().deregister(sentinelAddress);
+            server.getRegions().remove(sentinelAddress);
+            sentinel.close();
+        }
+        return elapsed;
+    }
+}
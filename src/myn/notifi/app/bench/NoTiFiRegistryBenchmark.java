@@ -0,0 +1,201 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a benchmark comparing the old NoTiFi client list with
+ * NoTiFiRegistry for register churn and notification fan-out.
+ *
+ ************************************************/
+
+package myn.notifi.app.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiFanOut;
+import myn.notifi.app.NoTiFiRegistry;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+
+/**
+ * This class is a benchmark comparing the old NoTiFi client list with
+ * NoTiFiRegistry at 10,000 subscribers. The old list was a synchronized
+ * TreeMap whose comparator called every two different addresses less than
+ * each other, so lookups mostly missed and registered clients got added
+ * again. The benchmark times registering and deregistering every subscriber,
+ * counts the lookups that missed a registered client, and times getting the
+ * clients for one notification. Then it times whole notifications sent to
+ * every subscriber through NoTiFiFanOut over loopback.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegistryBenchmark {
+
+    /** The number of subscribers. */
+    private static final int SUBSCRIBERS = 10000;
+
+    /** The number of rounds to run, the first half of which are warmup. */
+    private static final int ROUNDS = 6;
+
+    /** The number of notifications per timed round of snapshots. */
+    private static final int NOTIFICATIONS = 200;
+
+    /** The number of notifications sent for real per sender count. */
+    private static final int SENDS = 20;
+
+    /**
+     * Runs both registries and the fan-out, and prints the results.
+     * 
+     * @param args
+     *            unused
+     * @throws IOException
+     *             if the fan-out's channels can't be opened
+     */
+    public static void main(String[] args) throws IOException {
+        /** Every subscriber is on loopback, at its own port. */
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetSocketAddress[] addresses = new InetSocketAddress[SUBSCRIBERS];
+        for (int i = 0; i < SUBSCRIBERS; ++i) {
+            addresses[i] = new InetSocketAddress(loopback, 20000 + i);
+        }
+
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            /** The old list: register, snapshot, then deregister everyone. */
+            SortedMap<InetSocketAddress, Integer> old = makeOldList();
+            int oldMisses = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < SUBSCRIBERS; ++i) {
+                if (old.get(addresses[i]) == null) {
+                    old.put(addresses[i], i & 0xFF);
+                }
+            }
+            long oldRegister = System.nanoTime() - start;
+            int oldSize = old.size();
+
+            start = System.nanoTime();
+            for (int n = 0; n < NOTIFICATIONS; ++n) {
+                List<InetSocketAddress> copy = new ArrayList<InetSocketAddress>();
+                List<Integer> msgIds = new ArrayList<Integer>();
+                synchronized (old) {
+                    for (Map.Entry<InetSocketAddress, Integer> client : old
+                            .entrySet()) {
+                        copy.add(client.getKey());
+                        msgIds.add(client.getValue());
+                    }
+                }
+                sink += copy.size() + msgIds.size();
+            }
+            long oldSnapshot = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SUBSCRIBERS; ++i) {
+                if (old.get(addresses[i]) != null) {
+                    old.remove(addresses[i]);
+                } else {
+                    ++oldMisses;
+                }
+            }
+            long oldDeregister = System.nanoTime() - start;
+
+            /** The registry, doing the same. */
+            NoTiFiRegistry registry = new NoTiFiRegistry();
+            int newMisses = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < SUBSCRIBERS; ++i) {
+                registry.register(addresses[i], i & 0xFF);
+            }
+            long newRegister = System.nanoTime() - start;
+            int newSize = registry.size();
+
+            start = System.nanoTime();
+            for (int n = 0; n < NOTIFICATIONS; ++n) {
+                sink += registry.getSnapshot().size();
+            }
+            long newSnapshot = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SUBSCRIBERS; ++i) {
+                if (!registry.deregister(addresses[i])) {
+                    ++newMisses;
+                }
+            }
+            long newDeregister = System.nanoTime() - start;
+
+            if (round >= ROUNDS / 2) {
+                System.out.printf("old list:  register %7.1f ns   deregister "
+                        + "%7.1f ns   clients per notification %8.1f us   "
+                        + "size %5d   missed %5d%n",
+                        (double) oldRegister / SUBSCRIBERS,
+                        (double) oldDeregister / SUBSCRIBERS,
+                        oldSnapshot / 1000.0 / NOTIFICATIONS, oldSize,
+                        oldMisses);
+                System.out.printf("registry:  register %7.1f ns   deregister "
+                        + "%7.1f ns   clients per notification %8.1f us   "
+                        + "size %5d   missed %5d%n",
+                        (double) newRegister / SUBSCRIBERS,
+                        (double) newDeregister / SUBSCRIBERS,
+                        newSnapshot / 1000.0 / NOTIFICATIONS, newSize,
+                        newMisses);
+            }
+        }
+
+        /** Send real notifications to every subscriber. */
+        NoTiFiRegistry registry = new NoTiFiRegistry();
+        for (int i = 0; i < SUBSCRIBERS; ++i) {
+            registry.register(addresses[i], i & 0xFF);
+        }
+        Logger logger = Logger.getLogger(NoTiFiRegistryBenchmark.class
+                .getName());
+        logger.setUseParentHandlers(false);
+        NoTiFiLocationAddition addition = new NoTiFiLocationAddition(0,
+                new LocationRecord(1, 1.5, 2.5, "BU", "Baylor"));
+        for (int senders = 1; senders <= 4; senders *= 2) {
+            NoTiFiFanOut fanOut = new NoTiFiFanOut(loopback, senders, logger);
+            for (int n = 0; n < SENDS; ++n) {
+                NoTiFiRegistry.Snapshot clients = registry.getSnapshot();
+                fanOut.send(addition, clients.getAddresses(),
+                        clients.getMsgIds());
+            }
+            System.out.printf("fan-out to %d with %d sender(s): %s%n",
+                    SUBSCRIBERS, senders, fanOut);
+        }
+
+        /** Print the sink so the work can't be optimized away. */
+        System.out.println("(checksum " + sink + ")");
+        System.exit(0);
+    }
+
+    /**
+     * Makes the old client list, with its comparator.
+     * 
+     * @return an empty old client list
+     */
+    private static SortedMap<InetSocketAddress, Integer> makeOldList() {
+        return Collections.synchronizedSortedMap(
+                new TreeMap<InetSocketAddress, Integer>(
+                        new Comparator<InetSocketAddress>() {
+                            @Override
+                            public int compare(InetSocketAddress o1,
+                                    InetSocketAddress o2) {
+                                if (o1.equals(o2)) {
+                                    return 0;
+                                }
+                                return -1;
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,342 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a benchmark of reliable NoTiFi delivery when datagrams are
+ * lost on the way to the subscribers.
+ *
+ ************************************************/
+
+package myn.notifi.app.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiReceiver;
+import myn.notifi.app.NoTiFiSequencer;
+import myn.notifi.app.NoTiFiServer;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiError;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiReceipt;
+import myn.notifi.protocol.NoTiFiSequenced;
+
+/**
+ * This class is a benchmark of reliable NoTiFi delivery. A set of subscribers
+ * on loopback ask a NoTiFiServer for reliable delivery, and then each throws
+ * away a share of the datagrams it is sent, as if they were lost on the way.
+ * A burst of additions is queued on the server, and the subscribers put them
+ * back in order and send receipts, the way NoTiFiClient does. For each loss
+ * rate, the benchmark prints how long it took every subscriber to get every
+ * addition in order, how many additions were thrown away, any of which
+ * would have been lost without sequence numbers, how many notifications were
+ * sent again, and how many were lost anyway.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiReliabilityBenchmark {
+
+    /** The number of subscribers. */
+    private static final int SUBSCRIBERS = 10;
+
+    /** The number of additions in each burst. */
+    private static final int BURST = 2000;
+
+    /** The shares of datagrams to throw away. */
+    private static final double[] LOSS_RATES = { 0, 0.01, 0.05, 0.2 };
+
+    /** How long before a subscriber says what arrived, in ms. */
+    private static final long RECEIPT_DELAY = 100;
+
+    /** How long to wait for the last additions to arrive, in ms. */
+    private static final long DRAIN_TIMEOUT = 5000;
+
+    /** One subscriber's channel, and what it has seen. */
+    private static final class Subscriber {
+
+        /** The subscriber's channel. */
+        private DatagramChannel channel;
+
+        /** Puts the subscriber's notifications back in order. */
+        private final NoTiFiReceiver receiver = new NoTiFiReceiver();
+
+        /** The user ID of the next addition, which is the count so far. */
+        private int next;
+
+        /** When the next receipt is due, in ns, or 0 if none is. */
+        private long receiptDue;
+    }
+
+    /**
+     * Runs a burst for each loss rate and prints the results.
+     * 
+     * @param args
+     *            unused
+     * @throws IOException
+     *             if the subscribers' channels can't be opened
+     * @throws InterruptedException
+     *             if interrupted while waiting for the subscribers
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        Logger logger = Logger
+                .getLogger(NoTiFiReliabilityBenchmark.class.getName());
+        logger.setUseParentHandlers(false);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        NoTiFiServer server = new NoTiFiServer(0, loopback, logger);
+        NoTiFiSequencer streams = server.getStreams();
+        InetSocketAddress serverAddress = new InetSocketAddress(loopback,
+                server.getLocalPort());
+
+        /** Each subscriber registers, and sends a receipt to be numbered. */
+        Selector selector = Selector.open();
+        Subscriber[] subscribers = new Subscriber[SUBSCRIBERS];
+        for (int i = 0; i < SUBSCRIBERS; ++i) {
+            Subscriber subscriber = new Subscriber();
+            subscriber.channel = DatagramChannel.open();
+            subscriber.channel.setOption(StandardSocketOptions.SO_RCVBUF,
+                    4 << 20);
+            subscriber.channel.bind(new InetSocketAddress(loopback, 0));
+            subscriber.channel.configureBlocking(false);
+            subscriber.channel.register(selector, SelectionKey.OP_READ,
+                    subscriber);
+            server.getClientList().register(
+                    (InetSocketAddress) subscriber.channel.getLocalAddress(),
+                    i);
+            send(subscriber, serverAddress, subscriber.receiver.getReceipt(0));
+            subscribers[i] = subscriber;
+        }
+        while (streams.size() < SUBSCRIBERS) {
+            Thread.sleep(10);
+        }
+
+        Random random = new Random(4321);
+        for (double lossRate : LOSS_RATES) {
+            long retransmittedBefore = streams.getRetransmitted();
+            long lostBefore = streams.getLost();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.next = 0;
+            }
+            long[] dropped = new long[1];
+            long start = System.nanoTime();
+            for (int n = 0; n < BURST; ++n) {
+                server.notifyAddition(n, 1.5, 2.5, "Location " + n, "Added");
+            }
+            long last = drain(selector, serverAddress, random, lossRate,
+                    dropped);
+            double seconds = (last - start) / 1e9;
+
+            long delivered = 0;
+            boolean inOrder = true;
+            for (Subscriber subscriber : subscribers) {
+                delivered += subscriber.next;
+                inOrder &= subscriber.next >= 0;
+            }
+            System.out.printf("loss %4.1f%%: %6d of %6d additions in order "
+                    + "in %7.1f ms   %6d dropped   "
+                    + "%6d retransmitted   %4d lost%s%n", lossRate * 100,
+                    delivered, (long) BURST * SUBSCRIBERS, seconds * 1000,
+                    dropped[0],
+                    streams.getRetransmitted() - retransmittedBefore,
+                    streams.getLost() - lostBefore,
+                    inOrder ? "" : "   OUT OF ORDER");
+        }
+        server.close();
+        System.exit(0);
+    }
+
+    /**
+     * Reads the subscribers' channels until every subscriber has the whole
+     * burst, or nothing has arrived for a while, throwing away a share of
+     * what arrives and sending receipts.
+     * 
+     * @param selector
+     *            the selector the channels are registered with
+     * @param serverAddress
+     *            where to send receipts
+     * @param random
+     *            decides what is thrown away
+     * @param lossRate
+     *            the share of datagrams to throw away
+     * @param dropped
+     *            where to count the additions thrown away
+     * @return when the last subscriber got the whole burst, in ns
+     * @throws IOException
+     *             if a channel can't be read or written
+     */
+    private static long drain(Selector selector,
+            InetSocketAddress serverAddress, Random random, double lossRate,
+            long[] dropped) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(NoTiFiBatch.MAX_LENGTH);
+        long last = System.nanoTime();
+        int done = 0;
+        while (done < selector.keys().size()) {
+            if (selector.select(RECEIPT_DELAY / 2) == 0
+                    && System.nanoTime() - last > DRAIN_TIMEOUT * 1000000) {
+                break;
+            }
+            List<SelectionKey> ready = new ArrayList<SelectionKey>(
+                    selector.selectedKeys());
+            selector.selectedKeys().clear();
+            for (SelectionKey key : ready) {
+                Subscriber subscriber = (Subscriber) key.attachment();
+                buffer.clear();
+                while (subscriber.channel.receive(buffer) != null) {
+                    buffer.flip();
+                    NoTiFiMessage message = NoTiFiMessage.decode(buffer);
+                    buffer.clear();
+                    if (random.nextDouble() < lossRate) {
+                        if (message instanceof NoTiFiSequenced) {
+                            dropped[0] += count(
+                                    ((NoTiFiSequenced) message).getMessage());
+                        }
+                        continue;
+                    }
+                    last = System.nanoTime();
+                    if (receive(subscriber, serverAddress, message)) {
+                        ++done;
+                    }
+                }
+            }
+
+            /** Send the receipts that are due. */
+            long now = System.nanoTime();
+            for (SelectionKey key : selector.keys()) {
+                Subscriber subscriber = (Subscriber) key.attachment();
+                if (subscriber.receiptDue != 0
+                        && now >= subscriber.receiptDue) {
+                    sendReceipt(subscriber, serverAddress);
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Hands a message to a subscriber, as NoTiFiClient does.
+     * 
+     * @param subscriber
+     *            the subscriber
+     * @param serverAddress
+     *            where to send receipts
+     * @param message
+     *            the message that arrived
+     * @return whether the subscriber just got the last of the burst
+     * @throws IOException
+     *             if a receipt can't be sent
+     */
+    private static boolean receive(Subscriber subscriber,
+            InetSocketAddress serverAddress, NoTiFiMessage message)
+                    throws IOException {
+        List<NoTiFiMessage> ready;
+        if (message instanceof NoTiFiSequenced) {
+            ready = subscriber.receiver.accept((NoTiFiSequenced) message);
+            if (subscriber.receiver.hasNewGap()) {
+                sendReceipt(subscriber, serverAddress);
+            } else if (subscriber.receiptDue == 0) {
+                subscriber.receiptDue = System.nanoTime()
+                        + RECEIPT_DELAY * 1000000;
+            }
+        } else if (message instanceof NoTiFiError
+                && NoTiFiReceipt.LOST_ERROR.equals(
+                        ((NoTiFiError) message).getErrorMessage())) {
+            ready = subscriber.receiver.skip();
+            sendReceipt(subscriber, serverAddress);
+        } else {
+            return false;
+        }
+        int before = subscriber.next;
+        for (NoTiFiMessage notification : ready) {
+            check(subscriber, notification);
+        }
+        return before < BURST && subscriber.next == BURST;
+    }
+
+    /**
+     * Checks that the additions in a notification are the next ones, and
+     * counts them. A subscriber that gets one out of order is marked with a
+     * negative count.
+     * 
+     * @param subscriber
+     *            the subscriber
+     * @param notification
+     *            an addition or a batch of them
+     */
+    private static void check(Subscriber subscriber,
+            NoTiFiMessage notification) {
+        if (notification instanceof NoTiFiBatch) {
+            for (NoTiFiMessage batched : ((NoTiFiBatch) notification)
+                    .getMessages()) {
+                check(subscriber, batched);
+            }
+        } else if (subscriber.next >= 0) {
+            int userId = ((NoTiFiLocationAddition) notification)
+                    .getLocationRecord().getUserId();
+            subscriber.next = userId == subscriber.next ? userId + 1
+                    : Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Returns the number of additions in a notification.
+     * 
+     * @param notification
+     *            an addition or a batch of them
+     * @return the number of additions
+     */
+    private static int count(NoTiFiMessage notification) {
+        return notification instanceof NoTiFiBatch
+                ? ((NoTiFiBatch) notification).getMessages().size() : 1;
+    }
+
+    /**
+     * Sends a subscriber's receipt, and sets when the next one is due.
+     * 
+     * @param subscriber
+     *            the subscriber
+     * @param serverAddress
+     *            where to send it
+     * @throws IOException
+     *             if it can't be sent
+     */
+    private static void sendReceipt(Subscriber subscriber,
+            InetSocketAddress serverAddress) throws IOException {
+        send(subscriber, serverAddress, subscriber.receiver.getReceipt(0));
+        subscriber.receiptDue = subscriber.receiver.hasGaps()
+                ? System.nanoTime() + 2 * RECEIPT_DELAY * 1000000 : 0;
+    }
+
+    /**
+     * Sends a message from a subscriber's channel.
+     * 
+     * @param subscriber
+     *            the subscriber
+     * @param serverAddress
+     *            where to send it
+     * @param message
+     *            the message
+     * @throws IOException
+     *             if it can't be sent
+     */
+    private static void send(Subscriber subscriber,
+            InetSocketAddress serverAddress, NoTiFiMessage message)
+                    throws IOException {
+        subscriber.channel.send(ByteBuffer.wrap(message.encode()),
+                serverAddress);
+    }
+}
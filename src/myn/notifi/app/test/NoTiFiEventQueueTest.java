@@ -0,0 +1,322 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiEventQueue class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import myn.notifi.app.NoTiFiEventQueue;
+import myn.notifi.app.NoTiFiEventQueue.OverflowPolicy;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiMessage;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiEventQueue class. Each
+ * notification carries who added it as its userId and its place in that
+ * adder's order as its longitude, so the order can be checked after.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiEventQueueTest {
+
+    /** The number of threads adding at once. */
+    private static final int PRODUCERS = 4;
+
+    /** The number of notifications each thread adds. */
+    private static final int PER_PRODUCER = 20000;
+
+    /**
+     * Makes a notification.
+     * 
+     * @param producer
+     *            who added it
+     * @param sequence
+     *            its place in that adder's order
+     * @return the notification
+     */
+    private static NoTiFiMessage make(int producer, int sequence) {
+        return new NoTiFiLocationAddition(0,
+                new LocationRecord(producer, sequence, 0, "", ""));
+    }
+
+    /**
+     * Returns who added a notification.
+     * 
+     * @param event
+     *            the notification taken from the queue
+     * @return who added it
+     */
+    private static int producerOf(NoTiFiEventQueue.Event event) {
+        return ((NoTiFiLocationAddition) event.getMessage())
+                .getLocationRecord().getUserId();
+    }
+
+    /**
+     * Returns a notification's place in its adder's order.
+     * 
+     * @param event
+     *            the notification taken from the queue
+     * @return its place
+     */
+    private static int sequenceOf(NoTiFiEventQueue.Event event) {
+        return (int) ((NoTiFiLocationAddition) event.getMessage())
+                .getLocationRecord().getLongitude();
+    }
+
+    /**
+     * Tests that notifications come out in the order they went in.
+     */
+    @Test
+    public void testOrder() {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(16,
+                OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(queue.offer(make(0, i)));
+        }
+        assertEquals(10, queue.getDepth());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, sequenceOf(queue.poll()));
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.getDepth());
+        assertEquals(10, queue.getEnqueued());
+        assertEquals(0, queue.getDropped());
+    }
+
+    /**
+     * Tests that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testCapacity() {
+        assertEquals(8, new NoTiFiEventQueue(5, OverflowPolicy.DROP_NEWEST)
+                .getCapacity());
+        assertEquals(8, new NoTiFiEventQueue(8, OverflowPolicy.DROP_NEWEST)
+                .getCapacity());
+        assertEquals(2, new NoTiFiEventQueue(0, OverflowPolicy.DROP_NEWEST)
+                .getCapacity());
+    }
+
+    /**
+     * Tests going around the ring many times, with the queue never empty.
+     */
+    @Test
+    public void testWraparound() {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(4,
+                OverflowPolicy.DROP_NEWEST);
+        int next = 0;
+        assertTrue(queue.offer(make(0, 0)));
+        assertTrue(queue.offer(make(0, 1)));
+        for (int i = 2; i < 1000; ++i) {
+            assertTrue(queue.offer(make(0, i)));
+            assertEquals(next++, sequenceOf(queue.poll()));
+            assertEquals(2, queue.getDepth());
+        }
+        assertEquals(next++, sequenceOf(queue.poll()));
+        assertEquals(next++, sequenceOf(queue.poll()));
+        assertNull(queue.poll());
+        assertEquals(1000, next);
+        assertEquals(0, queue.getDropped());
+    }
+
+    /**
+     * Tests that a full queue drops the new notification with DROP_NEWEST.
+     */
+    @Test
+    public void testDropNewest() {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(4,
+                OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(queue.offer(make(0, i)));
+        }
+        assertFalse(queue.offer(make(0, 4)));
+        assertFalse(queue.offer(make(0, 5)));
+        assertEquals(2, queue.getDropped());
+        assertEquals(4, queue.getEnqueued());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(i, sequenceOf(queue.poll()));
+        }
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Tests that a full queue drops the oldest notification with DROP_OLDEST,
+     * and keeps the rest in order.
+     */
+    @Test
+    public void testDropOldest() {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(4,
+                OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; ++i) {
+            assertTrue(queue.offer(make(0, i)));
+        }
+        assertEquals(2, queue.getDropped());
+        assertEquals(6, queue.getEnqueued());
+        assertEquals(4, queue.getDepth());
+        for (int i = 2; i < 6; ++i) {
+            assertEquals(i, sequenceOf(queue.poll()));
+        }
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Tests several threads adding at once with a queue big enough to never
+     * drop, so every notification comes out, in each adder's order.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @Test
+    public void testConcurrentNoDrops() throws InterruptedException {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(
+                PRODUCERS * PER_PRODUCER, OverflowPolicy.DROP_NEWEST);
+        int[] received = runConcurrent(queue);
+        for (int producer = 0; producer < PRODUCERS; ++producer) {
+            assertEquals(PER_PRODUCER, received[producer]);
+        }
+        assertEquals(0, queue.getDropped());
+    }
+
+    /**
+     * Tests several threads adding at once to a small queue that drops the
+     * newest. What comes out is in each adder's order, and everything either
+     * comes out or is counted as dropped.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @Test
+    public void testConcurrentDropNewest() throws InterruptedException {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(64,
+                OverflowPolicy.DROP_NEWEST);
+        int total = sum(runConcurrent(queue));
+        assertEquals(queue.getEnqueued(), total);
+        assertEquals(PRODUCERS * PER_PRODUCER, total + queue.getDropped());
+    }
+
+    /**
+     * Tests several threads adding at once to a small queue that drops the
+     * oldest. What comes out is in each adder's order, every notification is
+     * added, and each one either comes out or is counted as dropped.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @Test
+    public void testConcurrentDropOldest() throws InterruptedException {
+        NoTiFiEventQueue queue = new NoTiFiEventQueue(64,
+                OverflowPolicy.DROP_OLDEST);
+        int total = sum(runConcurrent(queue));
+        assertEquals(PRODUCERS * PER_PRODUCER, queue.getEnqueued());
+        assertEquals(PRODUCERS * PER_PRODUCER, total + queue.getDropped());
+    }
+
+    /**
+     * Adds notifications from several threads while one thread takes them,
+     * and checks that each adder's notifications come out in its order, each
+     * at most once.
+     * 
+     * @param queue
+     *            the queue
+     * @return the number of notifications taken from each adder
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    private static int[] runConcurrent(final NoTiFiEventQueue queue)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final int[] received = new int[PRODUCERS];
+        final int[] last = new int[PRODUCERS];
+        Arrays.fill(last, -1);
+        final List<String> errors = new ArrayList<String>();
+
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                while (true) {
+                    boolean wasProducing = producing.get();
+                    NoTiFiEventQueue.Event event = queue.poll();
+                    if (event == null) {
+                        if (!wasProducing) {
+                            return;
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    int producer = producerOf(event);
+                    int sequence = sequenceOf(event);
+                    if (sequence <= last[producer]) {
+                        errors.add(producer + ": " + sequence + " after "
+                                + last[producer]);
+                    }
+                    last[producer] = sequence;
+                    ++received[producer];
+                }
+            }
+        };
+        consumer.start();
+
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < PRODUCERS; ++p) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < PER_PRODUCER; ++i) {
+                        queue.offer(make(producer, i));
+                    }
+                }
+            };
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        producing.set(false);
+        consumer.join();
+
+        assertEquals(new ArrayList<String>(), errors);
+        assertNull(queue.poll());
+        return received;
+    }
+
+    /**
+     * Adds up counts.
+     * 
+     * @param counts
+     *            the counts
+     * @return their sum
+     */
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,157 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 7
+ * Class:       CSI 4321 - Data Communications
+ * Date:        1 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiFanOut class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiFanOut;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiMessage;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiFanOut class. The clients are
+ * sockets on the loopback address, and each checks that it got the message
+ * with its own message ID.
+ * 
+ * @version 1 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiFanOutTest {
+
+    /** How long a client waits for its datagram, in ms. */
+    private static final int TIMEOUT = 2000;
+
+    /** The message sent to every client. */
+    private static final NoTiFiLocationAddition MESSAGE = new NoTiFiLocationAddition(
+            0, new LocationRecord(7, -97.1146, 31.5493, "BU", "Baylor"));
+
+    /**
+     * Receives a message on a socket.
+     * 
+     * @param socket
+     *            the socket
+     * @return the message
+     * @throws Exception
+     *             if nothing arrives or it can't be decoded
+     */
+    private static NoTiFiMessage receive(DatagramSocket socket)
+            throws Exception {
+        DatagramPacket packet = new DatagramPacket(
+                new byte[NoTiFiBatch.MAX_LENGTH], NoTiFiBatch.MAX_LENGTH);
+        socket.receive(packet);
+        return NoTiFiMessage.decode(Arrays.copyOf(packet.getData(),
+                packet.getLength()));
+    }
+
+    /**
+     * Tests that each client gets the same message once, with its own
+     * message ID.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testEachClientOwnMsgId() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        NoTiFiFanOut fanOut = new NoTiFiFanOut(loopback, 2,
+                Logger.getLogger(NoTiFiFanOutTest.class.getName()));
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        try {
+            List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+            List<Integer> msgIds = new ArrayList<Integer>();
+            for (int i = 0; i < 5; ++i) {
+                DatagramSocket socket = new DatagramSocket(0, loopback);
+                socket.setSoTimeout(TIMEOUT);
+                sockets.add(socket);
+                addresses.add(new InetSocketAddress(loopback,
+                        socket.getLocalPort()));
+                msgIds.add(250 + i);
+            }
+            fanOut.send(MESSAGE, addresses, msgIds);
+
+            for (int i = 0; i < sockets.size(); ++i) {
+                NoTiFiMessage received = receive(sockets.get(i));
+                assertEquals(250 + i, received.getMsgId());
+                assertEquals(MESSAGE.getLocationRecord(),
+                        ((NoTiFiLocationAddition) received)
+                                .getLocationRecord());
+            }
+            assertEquals(1, fanOut.getMessages());
+            assertEquals(5, fanOut.getDatagrams());
+            assertEquals(0, fanOut.getDrops());
+
+            /** The message itself is left with its own message ID. */
+            assertEquals(0, MESSAGE.getMsgId());
+        } finally {
+            for (DatagramSocket socket : sockets) {
+                socket.close();
+            }
+            fanOut.close();
+        }
+    }
+
+    /**
+     * Tests that enough clients to be split among the senders each still get
+     * the message with their own message ID. They all share one socket, and
+     * the message IDs are counted as they arrive.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testSplitAmongSenders() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        NoTiFiFanOut fanOut = new NoTiFiFanOut(loopback, 2,
+                Logger.getLogger(NoTiFiFanOutTest.class.getName()));
+        DatagramSocket socket = new DatagramSocket(0, loopback);
+        try {
+            socket.setSoTimeout(TIMEOUT);
+            socket.setReceiveBufferSize(1 << 20);
+            int clients = NoTiFiFanOut.CLIENTS_PER_SENDER * 2;
+            InetSocketAddress address = new InetSocketAddress(loopback,
+                    socket.getLocalPort());
+            List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+            List<Integer> msgIds = new ArrayList<Integer>();
+            for (int i = 0; i < clients; ++i) {
+                addresses.add(address);
+                msgIds.add(i % 256);
+            }
+            fanOut.send(MESSAGE, addresses, msgIds);
+
+            int[] counts = new int[256];
+            for (int i = 0; i < clients; ++i) {
+                ++counts[receive(socket).getMsgId()];
+            }
+            for (int msgId = 0; msgId < counts.length; ++msgId) {
+                assertEquals(clients / 256, counts[msgId]);
+            }
+            assertEquals(clients, fanOut.getDatagrams());
+            assertEquals(0, fanOut.getDrops());
+        } finally {
+            socket.close();
+            fanOut.close();
+        }
+    }
+}
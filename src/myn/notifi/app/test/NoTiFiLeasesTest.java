@@ -0,0 +1,186 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiLeases class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiLeases;
+import myn.notifi.app.NoTiFiRegionIndex;
+import myn.notifi.app.NoTiFiRegistry;
+import myn.notifi.app.NoTiFiSequencer;
+import myn.notifi.protocol.NoTiFiReceipt;
+import myn.notifi.protocol.NoTiFiRegion;
+import myn.notifi.protocol.NoTiFiSequenced;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiLeases class. The leases are
+ * made with a tick of an hour, so the timer never turns the wheel during a
+ * test, and the wheel is turned by hand instead. The timer is a daemon, so
+ * it doesn't keep the tests running. A lease lasts three ticks.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiLeasesTest {
+
+    /** The time between ticks, too long to come during a test, in ms. */
+    private static final long TICK = 3600000;
+
+    /** The number of ticks a lease lasts. */
+    private static final int LEASE_TICKS = 3;
+
+    /** A client. */
+    private static final InetSocketAddress CLIENT = new InetSocketAddress(
+            "127.0.0.1", 5000);
+
+    /** Another client. */
+    private static final InetSocketAddress OTHER = new InetSocketAddress(
+            "127.0.0.1", 5001);
+
+    /** The registered clients. */
+    private final NoTiFiRegistry registry = new NoTiFiRegistry();
+
+    /** The clients' regions. */
+    private final NoTiFiRegionIndex regions = new NoTiFiRegionIndex();
+
+    /** The clients' numbered streams. */
+    private final NoTiFiSequencer streams = new NoTiFiSequencer();
+
+    /** The leases under test. */
+    private final NoTiFiLeases leases = new NoTiFiLeases(registry, regions,
+            streams, LEASE_TICKS * TICK, TICK,
+            Logger.getLogger(NoTiFiLeasesTest.class.getName()));
+
+    /**
+     * Registers a client and starts its lease.
+     * 
+     * @param address
+     *            the client's address
+     */
+    private void register(InetSocketAddress address) {
+        registry.register(address, 1);
+        leases.renew(address);
+    }
+
+    /**
+     * Turns the wheel some ticks.
+     * 
+     * @param ticks
+     *            the number of ticks
+     */
+    private void tick(int ticks) {
+        for (int i = 0; i < ticks; ++i) {
+            leases.tick();
+        }
+    }
+
+    /**
+     * Tests that a lease runs out on its last tick and not before.
+     */
+    @Test
+    public void testExpiry() {
+        register(CLIENT);
+        assertEquals(1, leases.getActive());
+        tick(LEASE_TICKS - 1);
+        assertEquals(Integer.valueOf(1), registry.get(CLIENT));
+        assertEquals(0, leases.getExpired());
+
+        tick(1);
+        assertNull(registry.get(CLIENT));
+        assertEquals(0, leases.getActive());
+        assertEquals(1, leases.getExpired());
+
+        /** It doesn't run out again when the wheel comes back around. */
+        tick(LEASE_TICKS + 1);
+        assertEquals(1, leases.getExpired());
+    }
+
+    /**
+     * Tests that renewing a lease starts it over from the renewal.
+     */
+    @Test
+    public void testRenewal() {
+        register(CLIENT);
+        register(OTHER);
+        tick(2);
+        leases.renew(CLIENT);
+        assertEquals(1, leases.getRenewed());
+        assertEquals(2, leases.getActive());
+
+        /** The other client's lease runs out on its first deadline. */
+        tick(1);
+        assertEquals(Integer.valueOf(1), registry.get(CLIENT));
+        assertNull(registry.get(OTHER));
+        assertEquals(1, leases.getExpired());
+
+        /** The renewed lease runs out three ticks after the renewal. */
+        tick(LEASE_TICKS - 2);
+        assertEquals(Integer.valueOf(1), registry.get(CLIENT));
+        tick(1);
+        assertNull(registry.get(CLIENT));
+        assertEquals(2, leases.getExpired());
+        assertEquals(1, leases.getRenewed());
+        assertEquals(0, leases.getActive());
+    }
+
+    /**
+     * Tests that a cancelled lease never runs out, and leaves the client to
+     * whoever cancelled it.
+     */
+    @Test
+    public void testCancel() {
+        register(CLIENT);
+        leases.cancel(CLIENT);
+        assertEquals(0, leases.getActive());
+        tick(LEASE_TICKS * 2);
+        assertEquals(Integer.valueOf(1), registry.get(CLIENT));
+        assertEquals(0, leases.getExpired());
+
+        /** A lease started after a cancel is a new one, not a renewal. */
+        leases.renew(CLIENT);
+        assertEquals(0, leases.getRenewed());
+        assertEquals(1, leases.getActive());
+    }
+
+    /**
+     * Tests that a client whose lease runs out loses its region and its
+     * numbered stream too, and that other clients keep theirs.
+     */
+    @Test
+    public void testExpiryCleansUp() {
+        register(CLIENT);
+        register(OTHER);
+        regions.put(CLIENT, new NoTiFiRegion(0, -98, 31, -97, 32));
+        regions.put(OTHER, new NoTiFiRegion(0, -98, 31, -97, 32));
+        streams.receive(CLIENT, new NoTiFiReceipt(0, 0),
+                new ArrayList<NoTiFiSequenced>());
+        streams.receive(OTHER, new NoTiFiReceipt(0, 0),
+                new ArrayList<NoTiFiSequenced>());
+        tick(1);
+        leases.renew(OTHER);
+
+        tick(LEASE_TICKS - 1);
+        assertNull(registry.get(CLIENT));
+        assertNull(regions.get(CLIENT));
+        assertFalse(streams.isReliable(CLIENT));
+        assertNotNull(regions.get(OTHER));
+        assertTrue(streams.isReliable(OTHER));
+        assertEquals(1, regions.size());
+        assertEquals(1, streams.size());
+    }
+}
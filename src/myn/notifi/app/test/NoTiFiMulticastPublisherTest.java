@@ -0,0 +1,80 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiMulticastPublisher class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import myn.notifi.app.NoTiFiMulticastPublisher;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiMulticastPublisher class. A
+ * client joining a group is tested with the server, in NoTiFiServerTest.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiMulticastPublisherTest {
+
+    /** The loopback address, whose interface the groups are kept on. */
+    private static final InetAddress LOOPBACK = InetAddress
+            .getLoopbackAddress();
+
+    /**
+     * Tests that an address that isn't a multicast group is rejected.
+     * 
+     * @throws IOException
+     *             if the address can't be looked up
+     */
+    @Test(expected = IOException.class)
+    public void testNotMulticast() throws IOException {
+        new NoTiFiMulticastPublisher(new InetSocketAddress(LOOPBACK, 5000),
+                LOOPBACK);
+    }
+
+    /**
+     * Tests that an IPv6 group is published to on an IPv6 channel. Where the
+     * host has no IPv6 route the send may fail, but only with an
+     * IOException, never because the channel is the wrong family for the
+     * group.
+     * 
+     * @throws IOException
+     *             if the address can't be looked up or the channel opened
+     */
+    @Test
+    public void testIPv6Group() throws IOException {
+        NoTiFiMulticastPublisher publisher;
+        try {
+            publisher = new NoTiFiMulticastPublisher(new InetSocketAddress(
+                    InetAddress.getByName("ff02::4e54"), 5000), LOOPBACK);
+        } catch (IOException e) {
+            /** This host has no IPv6 at all. */
+            return;
+        }
+        try {
+            publisher.publish(new NoTiFiLocationAddition(0, new LocationRecord(
+                    1, -97.1146, 31.5493, "BU", "Baylor")));
+            assertEquals(1, publisher.getPublished());
+        } catch (IOException e) {
+            assertEquals(0, publisher.getPublished());
+        } finally {
+            publisher.close();
+        }
+    }
+}
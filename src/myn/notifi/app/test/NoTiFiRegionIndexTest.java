@@ -0,0 +1,200 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiRegionIndex class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import myn.notifi.app.NoTiFiRegionIndex;
+import myn.notifi.protocol.NoTiFiRegion;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiRegionIndex class. The index
+ * has cells one degree wide, so the cell edges fall on whole degrees.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegionIndexTest {
+
+    /** A client. */
+    private static final InetSocketAddress CLIENT = new InetSocketAddress(
+            "127.0.0.1", 5000);
+
+    /** Another client. */
+    private static final InetSocketAddress OTHER = new InetSocketAddress(
+            "127.0.0.1", 5001);
+
+    /**
+     * Makes a region.
+     * 
+     * @param minLongitude
+     *            the smallest longitude
+     * @param minLatitude
+     *            the smallest latitude
+     * @param maxLongitude
+     *            the largest longitude
+     * @param maxLatitude
+     *            the largest latitude
+     * @return the region
+     */
+    private static NoTiFiRegion region(double minLongitude,
+            double minLatitude, double maxLongitude, double maxLatitude) {
+        return new NoTiFiRegion(0, minLongitude, minLatitude, maxLongitude,
+                maxLatitude);
+    }
+
+    /**
+     * Returns the clients whose region holds a location, as many times as
+     * they were found.
+     * 
+     * @param index
+     *            the index
+     * @param longitude
+     *            the longitude of the location
+     * @param latitude
+     *            the latitude of the location
+     * @return the clients found
+     */
+    private static List<InetSocketAddress> match(NoTiFiRegionIndex index,
+            double longitude, double latitude) {
+        List<InetSocketAddress> found = new ArrayList<InetSocketAddress>();
+        index.match(longitude, latitude, found);
+        return found;
+    }
+
+    /**
+     * Tests that a region with negative coordinates is found across the
+     * cells it touches, and not outside it.
+     */
+    @Test
+    public void testNegative() {
+        NoTiFiRegionIndex index = new NoTiFiRegionIndex(1);
+        index.put(CLIENT, region(-2.5, -1.5, -0.5, -0.5));
+        assertEquals(Arrays.asList(CLIENT), match(index, -2.5, -1.5));
+        assertEquals(Arrays.asList(CLIENT), match(index, -1, -1));
+        assertEquals(Arrays.asList(CLIENT), match(index, -0.5, -0.5));
+        assertEquals(Collections.emptyList(), match(index, -2.6, -1));
+        assertEquals(Collections.emptyList(), match(index, -0.4, -1));
+        assertEquals(Collections.emptyList(), match(index, -1, -0.4));
+    }
+
+    /**
+     * Tests that a region ending exactly on a cell edge is listed in the cell
+     * past the edge, so its corners are found.
+     */
+    @Test
+    public void testCellEdges() {
+        NoTiFiRegionIndex index = new NoTiFiRegionIndex(1);
+        index.put(CLIENT, region(1, 0, 2, 1));
+        assertEquals(Arrays.asList(CLIENT), match(index, 1, 0));
+        assertEquals(Arrays.asList(CLIENT), match(index, 2, 1));
+        assertEquals(Arrays.asList(CLIENT), match(index, 2, 0));
+        assertEquals(Arrays.asList(CLIENT), match(index, 1.5, 0.5));
+        assertEquals(Collections.emptyList(), match(index, 2.0001, 1));
+        assertEquals(Collections.emptyList(), match(index, 0.9999, 0));
+
+        /** In a cell the region touches, but outside the region. */
+        index.put(OTHER, region(3.2, 3.2, 3.4, 3.4));
+        assertEquals(Collections.emptyList(), match(index, 3.5, 3.5));
+        assertEquals(Arrays.asList(OTHER), match(index, 3.3, 3.3));
+    }
+
+    /**
+     * Tests that a region touching more than the most cells is kept aside and
+     * still found, and that it leaves the wide list when replaced.
+     */
+    @Test
+    public void testWide() {
+        NoTiFiRegionIndex index = new NoTiFiRegionIndex(1);
+        int side = (int) Math.sqrt(NoTiFiRegionIndex.MAX_CELLS);
+        index.put(CLIENT, region(-side, -side, side, side));
+        index.put(OTHER, region(0, 0, 1, 1));
+        assertEquals(Arrays.asList(CLIENT), match(index, -side, side));
+        assertEquals(Arrays.asList(CLIENT), match(index, side - 0.5, 0));
+        assertEquals(Collections.emptyList(), match(index, side + 1, 0));
+        assertEquals(2, match(index, 0.5, 0.5).size());
+
+        index.put(CLIENT, region(5, 5, 6, 6));
+        assertEquals(Collections.emptyList(), match(index, -side, side));
+        assertEquals(Arrays.asList(CLIENT), match(index, 5.5, 5.5));
+        assertEquals(Arrays.asList(OTHER), match(index, 0.5, 0.5));
+
+        /** A whole-world region fits in the wide list too. */
+        index.put(OTHER, region(-180, -90, 180, 90));
+        assertEquals(Arrays.asList(OTHER), match(index, 179, -89));
+    }
+
+    /**
+     * Tests that a new region replaces a client's old one, without counting
+     * as a change to which clients have a region.
+     */
+    @Test
+    public void testReplace() {
+        NoTiFiRegionIndex index = new NoTiFiRegionIndex(1);
+        index.put(CLIENT, region(0, 0, 0.5, 0.5));
+        long version = index.getVersion();
+        index.put(CLIENT, region(0.25, 0.25, 2, 2));
+        assertEquals(version, index.getVersion());
+        assertEquals(1, index.size());
+        assertEquals(region(0.25, 0.25, 2, 2), index.get(CLIENT));
+        assertEquals(Collections.emptyList(), match(index, 0.1, 0.1));
+        assertEquals(Arrays.asList(CLIENT), match(index, 0.3, 0.3));
+        assertEquals(Arrays.asList(CLIENT), match(index, 1.5, 1.5));
+    }
+
+    /**
+     * Tests that removing a region leaves the client notified of everything,
+     * and leaves other clients' regions in the same cells alone.
+     */
+    @Test
+    public void testRemove() {
+        NoTiFiRegionIndex index = new NoTiFiRegionIndex(1);
+        index.put(CLIENT, region(0, 0, 1, 1));
+        index.put(OTHER, region(0, 0, 1, 1));
+        assertTrue(index.isFiltered(CLIENT));
+        long version = index.getVersion();
+
+        assertTrue(index.remove(CLIENT));
+        assertTrue(index.getVersion() > version);
+        assertFalse(index.remove(CLIENT));
+        assertFalse(index.isFiltered(CLIENT));
+        assertNull(index.get(CLIENT));
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList(OTHER), match(index, 0.5, 0.5));
+
+        assertTrue(index.remove(OTHER));
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), match(index, 0.5, 0.5));
+    }
+
+    /**
+     * Tests that a cell size that isn't positive is rejected.
+     */
+    @Test
+    public void testBadCellSize() {
+        for (double cellSize : new double[] { 0, -1, Double.NaN }) {
+            try {
+                new NoTiFiRegionIndex(cellSize);
+                fail("Cell size " + cellSize + " was accepted.");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiServer class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import myn.notifi.app.NoTiFiEventQueue;
+import myn.notifi.app.NoTiFiMulticastClient;
+import myn.notifi.app.NoTiFiServer;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiACK;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiLocationDeletion;
+import myn.notifi.protocol.NoTiFiLocationMove;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiRegister;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiServer class.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiServerTest {
+
+    /** The loopback address, which the server and client use. */
+    private static final InetAddress LOOPBACK = InetAddress
+            .getLoopbackAddress();
+
+    /** How long the client waits for more before it's done, in ms. */
+    private static final int QUIET = 1000;
+
+    /** A multicast group, kept on loopback by the tests. */
+    private static final String MULTICAST_GROUP = "239.255.42.1";
+
+    /** The number of users whose locations change. */
+    private static final int USERS = 50;
+
+    /** The number of changes. */
+    private static final int CHANGES = 5000;
+
+    /**
+     * Tests that a client that was told about every change the queue didn't
+     * drop still ends up with every user's latest location, since the server
+     * makes up for the drops.
+     * 
+     * @throws IOException
+     *             if the sockets can't be used
+     * @throws InterruptedException
+     *             if interrupted while waiting for the client
+     */
+    @Test
+    public void testResyncAfterDrops()
+            throws IOException, InterruptedException {
+        Logger logger = Logger.getLogger(NoTiFiServerTest.class.getName());
+        logger.setUseParentHandlers(false);
+        NoTiFiServer server = new NoTiFiServer(0, LOOPBACK, logger, 2,
+                NoTiFiEventQueue.OverflowPolicy.DROP_OLDEST);
+        final DatagramSocket client = new DatagramSocket(0, LOOPBACK);
+        client.setReceiveBufferSize(4 << 20);
+        client.setSoTimeout(QUIET);
+        InetSocketAddress clientAddress = (InetSocketAddress) client
+                .getLocalSocketAddress();
+        server.getClientList().register(clientAddress, 0);
+
+        /** The client keeps the locations as it's told about them. */
+        final Map<Integer, LocationRecord> seen = new HashMap<Integer, LocationRecord>();
+        final IOException[] failure = new IOException[1];
+        Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[NoTiFiBatch.MAX_LENGTH];
+                DatagramPacket packet = new DatagramPacket(buffer,
+                        buffer.length);
+                try {
+                    while (true) {
+                        client.receive(packet);
+                        apply(seen, NoTiFiMessage.decode(Arrays.copyOf(
+                                packet.getData(), packet.getLength())));
+                    }
+                } catch (SocketTimeoutException e) {
+                    return;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        receiver.start();
+
+        try {
+            Map<Integer, LocationRecord> expected = new HashMap<Integer, LocationRecord>();
+            for (int i = 0; i < CHANGES; ++i) {
+                int userId = i % USERS;
+                LocationRecord record = new LocationRecord(userId, i, -i,
+                        "user" + userId, "change " + i / USERS);
+                if (!expected.containsKey(userId)) {
+                    server.notifyAddition(userId, i, -i,
+                            record.getLocationName(),
+                            record.getLocationDescription());
+                } else if (i % 7 == 0) {
+                    server.notifyDeletion(userId, i, -i,
+                            record.getLocationName(),
+                            record.getLocationDescription());
+                    expected.remove(userId);
+                    continue;
+                } else {
+                    server.notifyMove(userId, i, -i, null,
+                            record.getLocationDescription());
+                }
+                expected.put(userId, record);
+            }
+            receiver.join();
+            assertNull(failure[0]);
+            assertEquals(expected, seen);
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Tests that two servers in one JVM each answer registrations on their own
+     * socket, and keep their own clients.
+     * 
+     * @throws IOException
+     *             if the sockets can't be used
+     */
+    @Test
+    public void testTwoServers() throws IOException {
+        Logger logger = Logger.getLogger(NoTiFiServerTest.class.getName());
+        logger.setUseParentHandlers(false);
+        NoTiFiServer first = new NoTiFiServer(0, LOOPBACK, logger);
+        NoTiFiServer second = new NoTiFiServer(0, LOOPBACK, logger);
+        DatagramSocket client = new DatagramSocket(0, LOOPBACK);
+        try {
+            client.setSoTimeout(QUIET);
+            InetSocketAddress clientAddress = (InetSocketAddress) client
+                    .getLocalSocketAddress();
+            byte[] register = new NoTiFiRegister(7, (Inet4Address) LOOPBACK,
+                    client.getLocalPort()).encode();
+            client.send(new DatagramPacket(register, register.length,
+                    LOOPBACK, first.getLocalPort()));
+
+            byte[] buffer = new byte[NoTiFiBatch.MAX_LENGTH];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            client.receive(packet);
+            assertEquals(first.getLocalPort(), packet.getPort());
+            assertTrue(NoTiFiMessage.decode(Arrays.copyOf(packet.getData(),
+                    packet.getLength())) instanceof NoTiFiACK);
+            assertEquals(Integer.valueOf(7),
+                    first.getClientList().get(clientAddress));
+            assertNull(second.getClientList().get(clientAddress));
+        } finally {
+            client.close();
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Tests that closing a server stops its dispatcher and lets go of its
+     * port, and that closing it again does nothing.
+     * 
+     * @throws IOException
+     *             if the port can't be bound again
+     */
+    @Test
+    public void testClose() throws IOException {
+        Logger logger = Logger.getLogger(NoTiFiServerTest.class.getName());
+        logger.setUseParentHandlers(false);
+        NoTiFiServer server = new NoTiFiServer(0, LOOPBACK, logger);
+        int port = server.getLocalPort();
+        int dispatchers = countThreads("NoTiFi dispatcher");
+        server.close();
+        assertEquals(dispatchers - 1, countThreads("NoTiFi dispatcher"));
+        server.close();
+        new DatagramSocket(port, LOOPBACK).close();
+    }
+
+    /**
+     * Tests that a NoTiFiMulticastClient that joined the server's group on
+     * loopback is told about an addition, a move and a batch once each. The
+     * client prints what it's told, so its output is kept and read back, and
+     * it's told to quit the way a user would.
+     * 
+     * @throws IOException
+     *             if the sockets can't be used
+     * @throws InterruptedException
+     *             if interrupted while waiting for the client
+     */
+    @Test
+    public void testMulticast() throws IOException, InterruptedException {
+        Logger logger = Logger.getLogger(NoTiFiServerTest.class.getName());
+        logger.setUseParentHandlers(false);
+        NoTiFiServer server = new NoTiFiServer(0, LOOPBACK, logger);
+        DatagramSocket free = new DatagramSocket(0, LOOPBACK);
+        int port = free.getLocalPort();
+        free.close();
+
+        PrintStream out = System.out;
+        InputStream in = System.in;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PipedOutputStream keyboard = new PipedOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        System.setIn(new PipedInputStream(keyboard));
+        try {
+            server.enableMulticast(MULTICAST_GROUP + ":" + port + "@"
+                    + LOOPBACK.getHostAddress());
+            NoTiFiMulticastClient.main(new String[] { MULTICAST_GROUP,
+                    String.valueOf(port), LOOPBACK.getHostAddress() });
+            Thread.sleep(QUIET / 2);
+
+            server.notifyAddition(1, -97.1146, 31.5493, "first", "Baylor");
+            Thread.sleep(QUIET / 4);
+            server.notifyMove(1, -97.1, 31.5, null, "moved");
+            Thread.sleep(QUIET / 4);
+            server.setBatching(QUIET / 4, NoTiFiBatch.MAX_LENGTH);
+            server.notifyAddition(2, -96.797, 32.7767, "second", "Dallas");
+            server.notifyAddition(3, -97.7431, 30.2672, "third", "Austin");
+            Thread.sleep(QUIET);
+
+            keyboard.write("quit\n".getBytes());
+            keyboard.flush();
+            Thread.sleep(QUIET / 2);
+        } finally {
+            System.setOut(out);
+            System.setIn(in);
+            keyboard.close();
+            server.close();
+        }
+
+        assertEquals(3, server.getMulticastPublisher().getPublished());
+        String text = printed.toString();
+        assertEquals(text, 4, text.split("\n").length);
+        for (String expected : new String[] { "Name: first",
+                "Description: moved", "Name: second", "Name: third" }) {
+            assertEquals(text, 1, text.split(expected, -1).length - 1);
+        }
+    }
+
+    /**
+     * Counts the live threads with a name.
+     * 
+     * @param name
+     *            the name
+     * @return the number of threads
+     */
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName()) && thread.isAlive()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies a notification to what a client knows.
+     * 
+     * @param seen
+     *            the locations the client knows, by userId
+     * @param message
+     *            an addition, deletion, move, or a batch of them
+     */
+    private static void apply(Map<Integer, LocationRecord> seen,
+            NoTiFiMessage message) {
+        if (message instanceof NoTiFiBatch) {
+            List<NoTiFiMessage> batched = ((NoTiFiBatch) message)
+                    .getMessages();
+            for (NoTiFiMessage each : batched) {
+                apply(seen, each);
+            }
+        } else if (message instanceof NoTiFiLocationAddition) {
+            LocationRecord record = ((NoTiFiLocationAddition) message)
+                    .getLocationRecord();
+            seen.put(record.getUserId(), record);
+        } else if (message instanceof NoTiFiLocationDeletion) {
+            seen.remove(((NoTiFiLocationDeletion) message).getLocationRecord()
+                    .getUserId());
+        } else if (message instanceof NoTiFiLocationMove) {
+            NoTiFiLocationMove move = (NoTiFiLocationMove) message;
+            LocationRecord old = seen.get(move.getUserId());
+            if (old == null) {
+                return;
+            }
+            seen.put(move.getUserId(), new LocationRecord(move.getUserId(),
+                    move.getLongitude(), move.getLatitude(),
+                    move.getLocationName() != null ? move.getLocationName()
+                            : old.getLocationName(),
+                    move.getLocationDescription() != null
+                            ? move.getLocationDescription()
+                            : old.getLocationDescription()));
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiSnapshots class.
+ *
+ ************************************************/
+
+package myn.notifi.app.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import myn.notifi.app.NoTiFiRegionIndex;
+import myn.notifi.app.NoTiFiRegistry;
+import myn.notifi.app.NoTiFiSnapshots;
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiRegion;
+
+import org.junit.Test;
+
+/**
+ * This class is a JUnit 4 test for the NoTiFiSnapshots class. The batches are
+ * sent to a fake sender that keeps them. The locations are kept in userId
+ * order, so a snapshot sends them in that order, and location n is at
+ * longitude -n.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiSnapshotsTest {
+
+    /** A client. */
+    private static final InetSocketAddress CLIENT = new InetSocketAddress(
+            "127.0.0.1", 5000);
+
+    /** The client's message ID. */
+    private static final int MSG_ID = 42;
+
+    /** A rate high enough that a test never waits on it. */
+    private static final int FAST = 1000000;
+
+    /** The registered clients. */
+    private final NoTiFiRegistry registry = new NoTiFiRegistry();
+
+    /** The clients' regions. */
+    private final NoTiFiRegionIndex regions = new NoTiFiRegionIndex();
+
+    /** What the fake sender was given, in order. */
+    private final List<NoTiFiMessage> sent = new ArrayList<NoTiFiMessage>();
+
+    /** A sender that keeps what it's given, and checks who it's for. */
+    private final NoTiFiSnapshots.Sender sender = new NoTiFiSnapshots.Sender() {
+        @Override
+        public void send(InetSocketAddress address, int msgId,
+                NoTiFiMessage message) throws IOException {
+            assertEquals(CLIENT, address);
+            assertEquals(MSG_ID, msgId);
+            sent.add(message);
+        }
+    };
+
+    /**
+     * Makes locations 1 through n, with names of the same length so every
+     * addition is the same size.
+     * 
+     * @param n
+     *            the number of locations
+     * @return the locations, by userId
+     */
+    private static Map<Integer, LocationRecord> makeLocations(int n) {
+        Map<Integer, LocationRecord> locations = new TreeMap<Integer, LocationRecord>();
+        for (int userId = 1; userId <= n; ++userId) {
+            locations.put(userId, new LocationRecord(userId, -userId, 31,
+                    String.format("%03d", userId), "Waco"));
+        }
+        return locations;
+    }
+
+    /**
+     * Returns the userIds of the locations in each message sent, in order.
+     * 
+     * @return the userIds of the locations sent
+     */
+    private List<Integer> sentUserIds() {
+        List<Integer> userIds = new ArrayList<Integer>();
+        for (NoTiFiMessage message : sent) {
+            List<NoTiFiMessage> additions = message instanceof NoTiFiBatch
+                    ? ((NoTiFiBatch) message).getMessages()
+                    : Arrays.asList(message);
+            for (NoTiFiMessage addition : additions) {
+                userIds.add(((NoTiFiLocationAddition) addition)
+                        .getLocationRecord().getUserId());
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Tests that the burst is sent at once, then nothing more until the
+     * tokens come back, and that the wait said is about right.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testPacing() throws Exception {
+        NoTiFiSnapshots snapshots = new NoTiFiSnapshots(registry, regions, 10,
+                2);
+        registry.register(CLIENT, MSG_ID);
+        Map<Integer, LocationRecord> locations = makeLocations(5);
+        snapshots.request(CLIENT);
+
+        /** A length no batch fits in sends a location at a time. */
+        long wait = snapshots.send(locations, 0, sender);
+        assertEquals(Arrays.asList(1, 2), sentUserIds());
+        assertTrue(wait > 0 && wait <= 100000000);
+        assertTrue(snapshots.send(locations, 0, sender) > 0);
+        assertEquals(2, sent.size());
+
+        Thread.sleep(250);
+        snapshots.send(locations, 0, sender);
+        assertEquals(Arrays.asList(1, 2, 3, 4), sentUserIds());
+        assertEquals(4, snapshots.getDatagrams());
+        assertEquals(4, snapshots.getRecords());
+        assertEquals(0, snapshots.getCompleted());
+    }
+
+    /**
+     * Tests that only the locations in a client's region are sent, and that
+     * a snapshot finishes once they are.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testRegion() throws Exception {
+        NoTiFiSnapshots snapshots = new NoTiFiSnapshots(registry, regions,
+                FAST, FAST);
+        registry.register(CLIENT, MSG_ID);
+        regions.put(CLIENT, new NoTiFiRegion(0, -6.5, 30, -2.5, 32));
+        snapshots.request(CLIENT);
+
+        assertEquals(-1, snapshots.send(makeLocations(8),
+                NoTiFiBatch.MAX_LENGTH, sender));
+        assertEquals(1, sent.size());
+        assertEquals(Arrays.asList(3, 4, 5, 6), sentUserIds());
+        assertEquals(1, snapshots.getStarted());
+        assertEquals(1, snapshots.getCompleted());
+        assertEquals(4, snapshots.getRecords());
+
+        /** Nothing is sent with no snapshots asked for. */
+        assertEquals(-1, snapshots.send(makeLocations(8),
+                NoTiFiBatch.MAX_LENGTH, sender));
+        assertEquals(1, sent.size());
+    }
+
+    /**
+     * Tests that locations are batched up to the longest length, and that a
+     * lone location left over is sent as an addition.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testBatching() throws Exception {
+        NoTiFiSnapshots snapshots = new NoTiFiSnapshots(registry, regions,
+                FAST, FAST);
+        registry.register(CLIENT, MSG_ID);
+        Map<Integer, LocationRecord> locations = makeLocations(10);
+
+        /** The length of a batch of three, so four never fit. */
+        NoTiFiBatch three = new NoTiFiBatch(0);
+        for (int userId = 1; userId <= 3; ++userId) {
+            three.addMessage(
+                    new NoTiFiLocationAddition(0, locations.get(userId)));
+        }
+        int maxLength = three.getLength();
+
+        snapshots.request(CLIENT);
+        assertEquals(-1, snapshots.send(locations, maxLength, sender));
+        assertEquals(4, sent.size());
+        for (int i = 0; i < 3; ++i) {
+            NoTiFiBatch batch = (NoTiFiBatch) sent.get(i);
+            assertEquals(3, batch.getMessages().size());
+            assertTrue(batch.getLength() <= maxLength);
+        }
+        assertTrue(sent.get(3) instanceof NoTiFiLocationAddition);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10),
+                sentUserIds());
+        assertEquals(4, snapshots.getDatagrams());
+        assertEquals(10, snapshots.getRecords());
+    }
+
+    /**
+     * Tests that asking again while a snapshot is being sent starts it over,
+     * rather than sending two at once.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testRequestAgain() throws Exception {
+        NoTiFiSnapshots snapshots = new NoTiFiSnapshots(registry, regions, 10,
+                2);
+        registry.register(CLIENT, MSG_ID);
+        Map<Integer, LocationRecord> locations = makeLocations(5);
+        snapshots.request(CLIENT);
+        snapshots.send(locations, 0, sender);
+        assertEquals(Arrays.asList(1, 2), sentUserIds());
+
+        /** The new snapshot has what changed, and the old one is dropped. */
+        locations.remove(1);
+        snapshots.request(CLIENT);
+        Thread.sleep(250);
+        snapshots.send(locations, 0, sender);
+        assertEquals(Arrays.asList(1, 2, 2, 3), sentUserIds());
+        assertEquals(2, snapshots.getStarted());
+        assertEquals(0, snapshots.getCompleted());
+    }
+
+    /**
+     * Tests that a client that deregisters partway through is dropped
+     * without being counted as completed.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    @Test
+    public void testDeregistered() throws Exception {
+        NoTiFiSnapshots snapshots = new NoTiFiSnapshots(registry, regions,
+                FAST, 1);
+        registry.register(CLIENT, MSG_ID);
+        Map<Integer, LocationRecord> locations = makeLocations(5);
+        snapshots.request(CLIENT);
+        assertTrue(snapshots.send(locations, 0, sender) >= 0);
+        assertEquals(1, sent.size());
+
+        registry.deregister(CLIENT);
+        Thread.sleep(10);
+        assertEquals(-1, snapshots.send(locations, 0, sender));
+        assertEquals(1, sent.size());
+        assertEquals(0, snapshots.getCompleted());
+    }
+}
@@ -15,6 +15,8 @@ package myn.notifi.protocol;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This class serializes and deserializes a location's record. It also stores
@@ -83,6 +85,36 @@ public class LocationRecord {
         setLocationDescription(new String(descriptionData));
     }
 
+    /**
+     * This constructor is used to create a LocationRecord from a buffer,
+     * starting at its position. The user ID is read big endian and the
+     * coordinates little endian, per the protocol specification, whatever
+     * the buffer's own byte order is. The position is moved past the record.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there was a problem with the values read
+     * @throws java.nio.BufferUnderflowException
+     *             if the buffer ends before the record does
+     */
+    public LocationRecord(ByteBuffer in) throws IllegalArgumentException {
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.BIG_ENDIAN);
+            setUserId(in.getShort() & 0xFFFF);
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            setLongitude(in.getDouble());
+            setLatitude(in.getDouble());
+        } finally {
+            in.order(order);
+        }
+
+        setLocationName(NoTiFiMessage.getString(in, in.get() & 0xFF));
+        setLocationDescription(
+                NoTiFiMessage.getString(in, in.get() & 0xFF));
+    }
+
     /**
      * This constructor is used to create the object with passed in values.
      * 
@@ -146,6 +178,42 @@ public class LocationRecord {
         out.write(locationDescription.getBytes(NoTiFiMessage.ENCODING));
     }
 
+    /**
+     * This function writes the record into a buffer at its position, the
+     * same way encode() does, and moves the position past it.
+     * 
+     * @param out
+     *            the buffer to write to
+     * @throws java.nio.BufferOverflowException
+     *             if the buffer doesn't have room for the record
+     */
+    public void encodeTo(ByteBuffer out) {
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.BIG_ENDIAN);
+            out.putShort((short) userId);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putDouble(longitude);
+            out.putDouble(latitude);
+        } finally {
+            out.order(order);
+        }
+
+        NoTiFiMessage.putString(out, locationName);
+        NoTiFiMessage.putString(out, locationDescription);
+    }
+
+    /**
+     * Returns the number of bytes encode() writes for this record: the user
+     * ID, both coordinates, and each string with its length byte.
+     * 
+     * @return the encoded length, in bytes
+     */
+    public int getEncodedLength() {
+        return 2 + 8 + 8 + 1 + locationName.length() + 1
+                + locationDescription.length();
+    }
+
     /**
      * This function is used to check whether two objects are equal. Here, it
      * takes in an object, so we need to check that it's a LocationRecord too.
@@ -14,6 +14,7 @@ package myn.notifi.protocol;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class provides serialization and deserialization for the NoTiFiAck
@@ -43,6 +44,19 @@ public class NoTiFiACK extends NoTiFiMessage {
         super(in);
     }
 
+    /**
+     * This constructor takes a buffer. An ACK has nothing but the header, so
+     * it just calls super to read it.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiACK(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+    }
+
     /**
      * This constructor has nothing additional to offer beyond the message ID,
      * so it just calls super to take care of it for it.
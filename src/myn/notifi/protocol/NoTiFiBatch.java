@@ -0,0 +1,388 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class serializes and deserializes a batch of location additions,
+ * deletions and moves sent in one datagram.
+ *
+ ************************************************/
+
+package myn.notifi.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class serializes and deserializes a batch of location additions,
+ * deletions and moves sent in one datagram. After the header comes a count
+ * byte, then for each record the code of the message it stands for followed
+ * by that message without its header. The records keep the order they were
+ * added in, and the batch's message ID stands for all of them.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiBatch extends NoTiFiMessage {
+
+    /** Final variable for the Batch code. */
+    public static final int CODE = 6;
+
+    /**
+     * The largest datagram a batch is built up to by default: an Ethernet MTU
+     * of 1500 bytes less the IPv4 and UDP headers.
+     */
+    public static final int MAX_LENGTH = 1472;
+
+    /** The most records a batch can hold, since the count is one byte. */
+    public static final int MAX_RECORDS = 255;
+
+    /** The length of the header and the count byte. */
+    private static final int HEADER_LENGTH = 3;
+
+    /** The additions, deletions and moves in the batch, in order. */
+    private final List<NoTiFiMessage> messages = new ArrayList<NoTiFiMessage>();
+
+    /** The length of the encoded batch, in bytes. */
+    private int length = HEADER_LENGTH;
+
+    /**
+     * Constructor that takes a stream and pulls the data from that.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    public NoTiFiBatch(DataInputStream in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        int count = in.readUnsignedByte();
+        if (count == 0) {
+            throw new IllegalArgumentException("Empty batch.");
+        }
+        for (int i = 0; i < count; ++i) {
+            int code = in.readUnsignedByte();
+            switch (code) {
+            case NoTiFiLocationAddition.CODE:
+                addMessage(new NoTiFiLocationAddition(msgId,
+                        new LocationRecord(in)));
+                break;
+            case NoTiFiLocationDeletion.CODE:
+                addMessage(new NoTiFiLocationDeletion(msgId,
+                        new LocationRecord(in)));
+                break;
+            case NoTiFiLocationMove.CODE:
+                addMessage(new NoTiFiLocationMove(msgId, in));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unexpected code in batch: " + code);
+            }
+        }
+    }
+
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiBatch(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+        int count = in.get() & 0xFF;
+        if (count == 0) {
+            throw new IllegalArgumentException("Empty batch.");
+        }
+        for (int i = 0; i < count; ++i) {
+            int code = in.get() & 0xFF;
+            switch (code) {
+            case NoTiFiLocationAddition.CODE:
+                addMessage(new NoTiFiLocationAddition(msgId,
+                        new LocationRecord(in)));
+                break;
+            case NoTiFiLocationDeletion.CODE:
+                addMessage(new NoTiFiLocationDeletion(msgId,
+                        new LocationRecord(in)));
+                break;
+            case NoTiFiLocationMove.CODE:
+                addMessage(new NoTiFiLocationMove(msgId, in));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unexpected code in batch: " + code);
+            }
+        }
+    }
+
+    /**
+     * Constructs an empty batch. At least one message must be added before
+     * it is encoded.
+     * 
+     * @param msgId
+     *            the message ID
+     * @throws IllegalArgumentException
+     *             if there is a problem with the message ID
+     */
+    public NoTiFiBatch(int msgId) throws IllegalArgumentException {
+        super(msgId);
+    }
+
+    /**
+     * Returns whether a message can be added without the batch passing the
+     * given length or the most records allowed.
+     * 
+     * @param message
+     *            a location addition, deletion or move
+     * @param maxLength
+     *            the longest the encoded batch may be, in bytes
+     * @return whether the message fits
+     * @throws IllegalArgumentException
+     *             if the message can't be batched
+     */
+    public boolean canAdd(NoTiFiMessage message, int maxLength)
+            throws IllegalArgumentException {
+        return messages.size() < MAX_RECORDS
+                && length + 1 + getBodyLength(message) <= maxLength;
+    }
+
+    /**
+     * Adds a copy of a message to the end of the batch, with the batch's
+     * message ID in place of its own.
+     * 
+     * @param message
+     *            a location addition, deletion or move
+     * @throws IllegalArgumentException
+     *             if the message can't be batched, or the batch is full
+     */
+    public void addMessage(NoTiFiMessage message)
+            throws IllegalArgumentException {
+        int bodyLength = getBodyLength(message);
+        if (messages.size() >= MAX_RECORDS) {
+            throw new IllegalArgumentException("Batch is full.");
+        }
+        messages.add(copy(message, msgId));
+        length += 1 + bodyLength;
+    }
+
+    /**
+     * This function sets the message ID of the batch and every message in it.
+     */
+    @Override
+    public void setMsgId(int msgId) throws IllegalArgumentException {
+        super.setMsgId(msgId);
+        /** The superclass's constructor calls this before the list is made. */
+        if (messages != null) {
+            for (int i = 0; i < messages.size(); ++i) {
+                messages.set(i, copy(messages.get(i), msgId));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of a message with another message ID.
+     * 
+     * @param message
+     *            a location addition, deletion or move
+     * @param msgId
+     *            the message ID of the copy
+     * @return the copy
+     * @throws IllegalArgumentException
+     *             if the message can't be batched
+     */
+    private static NoTiFiMessage copy(NoTiFiMessage message, int msgId)
+            throws IllegalArgumentException {
+        if (message instanceof NoTiFiLocationAddition) {
+            return new NoTiFiLocationAddition(msgId,
+                    ((NoTiFiLocationAddition) message).getLocationRecord());
+        }
+        if (message instanceof NoTiFiLocationDeletion) {
+            return new NoTiFiLocationDeletion(msgId,
+                    ((NoTiFiLocationDeletion) message).getLocationRecord());
+        }
+        if (message instanceof NoTiFiLocationMove) {
+            NoTiFiLocationMove move = (NoTiFiLocationMove) message;
+            return new NoTiFiLocationMove(msgId, move.getUserId(),
+                    move.getLongitude(), move.getLatitude(),
+                    move.getLocationName(), move.getLocationDescription());
+        }
+        throw new IllegalArgumentException(
+                "Only additions, deletions and moves can be batched.");
+    }
+
+    /**
+     * Returns the length of a message without its header.
+     * 
+     * @param message
+     *            a location addition, deletion or move
+     * @return the length, in bytes
+     * @throws IllegalArgumentException
+     *             if the message can't be batched
+     */
+    private static int getBodyLength(NoTiFiMessage message)
+            throws IllegalArgumentException {
+        if (message instanceof NoTiFiLocationAddition) {
+            return ((NoTiFiLocationAddition) message).getLocationRecord()
+                    .getEncodedLength();
+        }
+        if (message instanceof NoTiFiLocationDeletion) {
+            return ((NoTiFiLocationDeletion) message).getLocationRecord()
+                    .getEncodedLength();
+        }
+        if (message instanceof NoTiFiLocationMove) {
+            return ((NoTiFiLocationMove) message).getBodyLength();
+        }
+        throw new IllegalArgumentException(
+                "Only additions, deletions and moves can be batched.");
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encode function to encode the
+     * header, the number of records, and each record after its code.
+     */
+    @Override
+    public byte[] encode() throws IOException {
+        if (messages.isEmpty()) {
+            throw new IOException("Empty batch.");
+        }
+        ByteArrayOutputStream toReturn = new ByteArrayOutputStream(length);
+        toReturn.write(super.encode());
+        DataOutputStream out = new DataOutputStream(toReturn);
+        out.writeByte(messages.size());
+        for (NoTiFiMessage message : messages) {
+            out.writeByte(message.getCode());
+            if (message instanceof NoTiFiLocationAddition) {
+                ((NoTiFiLocationAddition) message).getLocationRecord()
+                        .encode(out);
+            } else if (message instanceof NoTiFiLocationDeletion) {
+                ((NoTiFiLocationDeletion) message).getLocationRecord()
+                        .encode(out);
+            } else {
+                ((NoTiFiLocationMove) message).encodeBody(out);
+            }
+        }
+
+        return toReturn.toByteArray();
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header, the number of records, and each record after its code.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        if (messages.isEmpty()) {
+            throw new IOException("Empty batch.");
+        }
+        super.encodeTo(out);
+        out.put((byte) messages.size());
+        for (NoTiFiMessage message : messages) {
+            out.put((byte) message.getCode());
+            if (message instanceof NoTiFiLocationAddition) {
+                ((NoTiFiLocationAddition) message).getLocationRecord()
+                        .encodeTo(out);
+            } else if (message instanceof NoTiFiLocationDeletion) {
+                ((NoTiFiLocationDeletion) message).getLocationRecord()
+                        .encodeTo(out);
+            } else {
+                ((NoTiFiLocationMove) message).encodeBodyTo(out);
+            }
+        }
+    }
+
+    /**
+     * This function is an implementation of NoTiFiMessage's abstract function.
+     * It simply needs to return the code for a batch message.
+     */
+    public int getCode() {
+        return CODE;
+    }
+
+    /**
+     * Returns the additions, deletions and moves in the batch, in order. Each
+     * has the batch's message ID.
+     * 
+     * @return the messages, which can't be changed
+     */
+    public List<NoTiFiMessage> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Returns the length of the encoded batch.
+     * 
+     * @return the length, in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * This function provides a unique hash value for the object, based on the
+     * member variables.
+     */
+    @Override
+    public int hashCode() {
+        int prime = 13;
+        int hash = super.hashCode();
+        for (NoTiFiMessage message : messages) {
+            hash *= prime + message.hashCode();
+        }
+
+        return hash;
+    }
+
+    /**
+     * This function is used to check whether two objects are equal. Here, it
+     * takes in an object, so we need to check that it's a NoTiFiBatch too.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null && obj instanceof NoTiFiBatch) {
+            NoTiFiBatch temp = (NoTiFiBatch) obj;
+            if (super.equals(temp) && messages.equals(temp.getMessages())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function prints a textual representation of the object.
+     */
+    @Override
+    public String toString() {
+        StringBuilder toReturn = new StringBuilder(super.toString());
+        toReturn.append(", records: ").append(messages.size());
+        for (NoTiFiMessage message : messages) {
+            if (message instanceof NoTiFiLocationAddition) {
+                toReturn.append(", addition: ").append(
+                        ((NoTiFiLocationAddition) message).getLocationRecord());
+            } else if (message instanceof NoTiFiLocationDeletion) {
+                toReturn.append(", deletion: ").append(
+                        ((NoTiFiLocationDeletion) message).getLocationRecord());
+            } else {
+                NoTiFiLocationMove move = (NoTiFiLocationMove) message;
+                toReturn.append(", move: userID: " + move.getUserId()
+                        + ", longitude: " + move.getLongitude()
+                        + ", latitude: " + move.getLatitude()
+                        + ", location name: " + move.getLocationName()
+                        + ", location description: "
+                        + move.getLocationDescription());
+            }
+        }
+        return toReturn.toString();
+    }
+}
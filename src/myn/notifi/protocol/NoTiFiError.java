@@ -17,6 +17,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 
 /**
  * This class serializes and deserializes a NoTiFiError message. It also stores
@@ -56,6 +57,31 @@ public class NoTiFiError extends NoTiFiMessage {
         setErrorMessage(error);
     }
 
+    /**
+     * This constructor takes a buffer to make the class. The error message is
+     * read up to the first end of line, the same as the stream constructor,
+     * and anything after it is skipped.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the parameter
+     */
+    public NoTiFiError(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+
+        int length = 0;
+        while (length < in.remaining()) {
+            byte b = in.get(in.position() + length);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            ++length;
+        }
+        setErrorMessage(getString(in, length));
+        in.position(in.limit());
+    }
+
     /**
      * This function takes parameters to create the object
      * 
@@ -86,6 +112,16 @@ public class NoTiFiError extends NoTiFiMessage {
         return toReturn.toByteArray();
     }
 
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header and the error message.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        putChars(out, errorMessage);
+    }
+
     /**
      * This function is an implementation of NoTiFiMessage's abstract function.
      * It simply needs to return the code for a error message.
@@ -16,6 +16,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class serializes and deserializes a location deletion message. It also
@@ -48,6 +49,20 @@ public class NoTiFiLocationDeletion extends NoTiFiMessage {
         locationRecord = new LocationRecord(in);
     }
 
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiLocationDeletion(ByteBuffer in)
+            throws IllegalArgumentException {
+        super(in);
+        locationRecord = new LocationRecord(in);
+    }
+
     public NoTiFiLocationDeletion(int msgId, LocationRecord locationRecord)
             throws IllegalArgumentException {
         super(msgId);
@@ -68,6 +83,16 @@ public class NoTiFiLocationDeletion extends NoTiFiMessage {
         return toReturn.toByteArray();
     }
 
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header and the location record.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        locationRecord.encodeTo(out);
+    }
+
     /**
      * This function is an implementation of NoTiFiMessage's abstract function.
      * It simply needs to return the code for a location deletion message.
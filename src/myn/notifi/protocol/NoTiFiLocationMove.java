@@ -0,0 +1,527 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class serializes and deserializes a location move message, which
+ * replaces a user's location in place.
+ *
+ ************************************************/
+
+package myn.notifi.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class serializes and deserializes a location move message. It stands
+ * for a user's location being replaced by a new one, which used to take a
+ * deletion of the old location and an addition of the new one. It carries
+ * the user ID and the new coordinates, followed by a flags byte saying which
+ * of the name and description come after because they changed. A name or
+ * description that didn't change is null.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiLocationMove extends NoTiFiMessage {
+
+    /** Final variable for the LocationMove code. */
+    public static final int CODE = 7;
+
+    /** The flag for a name that changed. */
+    private static final int NAME_FLAG = 0x01;
+
+    /** The flag for a description that changed. */
+    private static final int DESCRIPTION_FLAG = 0x02;
+
+    /** The largest length of a name or description. */
+    private static final int BYTE_MAX_VALUE = 255;
+
+    /** An integer in unsigned format for the userId. */
+    private int userId;
+
+    /** The signed double representing the new longitude. */
+    private double longitude;
+
+    /** The signed double representing the new latitude. */
+    private double latitude;
+
+    /** The new location name, or null if it didn't change. */
+    private String locationName;
+
+    /** The new location description, or null if it didn't change. */
+    private String locationDescription;
+
+    /**
+     * Constructor that takes a stream and pulls the data from that.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    public NoTiFiLocationMove(DataInputStream in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        decodeBody(in);
+    }
+
+    /**
+     * Constructor that pulls everything but the header from a stream, for a
+     * move inside a batch.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    NoTiFiLocationMove(int msgId, DataInput in)
+            throws IllegalArgumentException, IOException {
+        super(msgId);
+        decodeBody(in);
+    }
+
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiLocationMove(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+        decodeBody(in);
+    }
+
+    /**
+     * Constructor that pulls everything but the header from a buffer, for a
+     * move inside a batch.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    NoTiFiLocationMove(int msgId, ByteBuffer in)
+            throws IllegalArgumentException {
+        super(msgId);
+        decodeBody(in);
+    }
+
+    /**
+     * This constructor is used to create the message with passed in values.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param userId
+     *            the user's ID
+     * @param longitude
+     *            the new longitude of the location
+     * @param latitude
+     *            the new latitude of the location
+     * @param locationName
+     *            the new name of the location, or null if it didn't change
+     * @param locationDescription
+     *            the new description, or null if it didn't change
+     * @throws IllegalArgumentException
+     *             if there is a problem with the parameters
+     */
+    public NoTiFiLocationMove(int msgId, int userId, double longitude,
+            double latitude, String locationName, String locationDescription)
+                    throws IllegalArgumentException {
+        super(msgId);
+        setUserId(userId);
+        setLongitude(longitude);
+        setLatitude(latitude);
+        setLocationName(locationName);
+        setLocationDescription(locationDescription);
+    }
+
+    /**
+     * This function reads everything after the header from a stream, per the
+     * protocol specification.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    private void decodeBody(DataInput in)
+            throws IllegalArgumentException, IOException {
+        setUserId(in.readUnsignedShort());
+        /** The coordinates are little endian, like in a location record. */
+        setLongitude(Double.longBitsToDouble(Long.reverseBytes(in.readLong())));
+        setLatitude(Double.longBitsToDouble(Long.reverseBytes(in.readLong())));
+
+        int flags = in.readUnsignedByte();
+        if ((flags & ~(NAME_FLAG | DESCRIPTION_FLAG)) != 0) {
+            throw new IllegalArgumentException("Unexpected move flags.");
+        }
+        if ((flags & NAME_FLAG) != 0) {
+            setLocationName(readString(in));
+        }
+        if ((flags & DESCRIPTION_FLAG) != 0) {
+            setLocationDescription(readString(in));
+        }
+    }
+
+    /**
+     * This function reads everything after the header from a buffer. The
+     * user ID is read big endian and the coordinates little endian, whatever
+     * the buffer's own byte order is.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    private void decodeBody(ByteBuffer in) throws IllegalArgumentException {
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.BIG_ENDIAN);
+            setUserId(in.getShort() & 0xFFFF);
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            setLongitude(in.getDouble());
+            setLatitude(in.getDouble());
+        } finally {
+            in.order(order);
+        }
+
+        int flags = in.get() & 0xFF;
+        if ((flags & ~(NAME_FLAG | DESCRIPTION_FLAG)) != 0) {
+            throw new IllegalArgumentException("Unexpected move flags.");
+        }
+        if ((flags & NAME_FLAG) != 0) {
+            setLocationName(getString(in, in.get() & 0xFF));
+        }
+        if ((flags & DESCRIPTION_FLAG) != 0) {
+            setLocationDescription(getString(in, in.get() & 0xFF));
+        }
+    }
+
+    /**
+     * This function reads a string written as a length byte and its
+     * characters.
+     * 
+     * @param in
+     *            the stream to read from
+     * @return the string
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    private static String readString(DataInput in) throws IOException {
+        byte[] data = new byte[in.readUnsignedByte()];
+        in.readFully(data);
+        return new String(data, ENCODING);
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encode function to encode the
+     * header and the message's data.
+     */
+    @Override
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream toReturn = new ByteArrayOutputStream();
+        toReturn.write(super.encode());
+        encodeBody(new DataOutputStream(toReturn));
+
+        return toReturn.toByteArray();
+    }
+
+    /**
+     * This function writes everything after the header to a stream, per the
+     * protocol specification.
+     * 
+     * @param out
+     *            the stream to write to
+     * @throws IOException
+     *             if there was a problem with I/O
+     */
+    void encodeBody(DataOutput out) throws IOException {
+        out.writeShort(userId);
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(longitude)));
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(latitude)));
+
+        int flags = 0;
+        if (locationName != null) {
+            flags |= NAME_FLAG;
+        }
+        if (locationDescription != null) {
+            flags |= DESCRIPTION_FLAG;
+        }
+        out.writeByte(flags);
+        if (locationName != null) {
+            out.writeByte(locationName.length());
+            out.write(locationName.getBytes(ENCODING));
+        }
+        if (locationDescription != null) {
+            out.writeByte(locationDescription.length());
+            out.write(locationDescription.getBytes(ENCODING));
+        }
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header and the message's data.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        encodeBodyTo(out);
+    }
+
+    /**
+     * This function writes everything after the header to a buffer, the same
+     * way encodeBody() does.
+     * 
+     * @param out
+     *            the buffer to write to
+     */
+    void encodeBodyTo(ByteBuffer out) {
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.BIG_ENDIAN);
+            out.putShort((short) userId);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putDouble(longitude);
+            out.putDouble(latitude);
+        } finally {
+            out.order(order);
+        }
+
+        int flags = 0;
+        if (locationName != null) {
+            flags |= NAME_FLAG;
+        }
+        if (locationDescription != null) {
+            flags |= DESCRIPTION_FLAG;
+        }
+        out.put((byte) flags);
+        if (locationName != null) {
+            putString(out, locationName);
+        }
+        if (locationDescription != null) {
+            putString(out, locationDescription);
+        }
+    }
+
+    /**
+     * Returns the number of bytes encodeBody() writes.
+     * 
+     * @return the length of everything after the header, in bytes
+     */
+    int getBodyLength() {
+        int length = 2 + 8 + 8 + 1;
+        if (locationName != null) {
+            length += 1 + locationName.length();
+        }
+        if (locationDescription != null) {
+            length += 1 + locationDescription.length();
+        }
+        return length;
+    }
+
+    /**
+     * This function is an implementation of NoTiFiMessage's abstract function.
+     * It simply needs to return the code for a location move message.
+     */
+    public int getCode() {
+        return CODE;
+    }
+
+    /**
+     * Returns the user ID of the location that moved.
+     * 
+     * @return the user ID
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the new longitude.
+     * 
+     * @return the longitude
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Returns the new latitude.
+     * 
+     * @return the latitude
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Returns the new location name.
+     * 
+     * @return the location name, or null if it didn't change
+     */
+    public String getLocationName() {
+        return locationName;
+    }
+
+    /**
+     * Returns the new location description.
+     * 
+     * @return the location description, or null if it didn't change
+     */
+    public String getLocationDescription() {
+        return locationDescription;
+    }
+
+    /**
+     * This function sets the user ID to a passed in value. The userId is a
+     * 16-bit value so there is a check for that.
+     * 
+     * @param userId
+     *            the value to replace the user ID
+     * @throws IllegalArgumentException
+     *             if there is a problem with the argument passed in
+     */
+    public void setUserId(int userId) throws IllegalArgumentException {
+        if ((userId & 0xFFFF0000) != 0) {
+            throw new IllegalArgumentException(
+                    "User ID greater than 2 bytes in setter.");
+        } else {
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * This function sets the longitude to a passed in value.
+     * 
+     * @param longitude
+     *            a value to replace the longitude
+     */
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * This function sets the latitude to a passed in value.
+     * 
+     * @param latitude
+     *            a value to replace latitude
+     */
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * This function sets the location's name to a passed in value.
+     * 
+     * @param locationName
+     *            a value to replace the location name, or null if it didn't
+     *            change
+     * @throws IllegalArgumentException
+     *             if there is a problem with the argument passed in
+     */
+    public void setLocationName(String locationName)
+            throws IllegalArgumentException {
+        if (locationName != null && locationName.length() > BYTE_MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Name length greater than 255 characters.");
+        } else {
+            this.locationName = locationName;
+        }
+    }
+
+    /**
+     * This function sets the location's description to a passed in value.
+     * 
+     * @param locationDescription
+     *            a value to replace the location description, or null if it
+     *            didn't change
+     * @throws IllegalArgumentException
+     *             if there is a problem with the argument passed in
+     */
+    public void setLocationDescription(String locationDescription)
+            throws IllegalArgumentException {
+        if (locationDescription != null
+                && locationDescription.length() > BYTE_MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Description length greater than 255 characters.");
+        } else {
+            this.locationDescription = locationDescription;
+        }
+    }
+
+    /**
+     * This function provides a unique hash value for the object, based on the
+     * member variables.
+     */
+    @Override
+    public int hashCode() {
+        int prime = 13;
+        int hash = super.hashCode();
+
+        hash *= prime + userId;
+        hash *= prime + Double.hashCode(longitude);
+        hash *= prime + Double.hashCode(latitude);
+        hash *= prime + (locationName == null ? 0 : locationName.hashCode());
+        hash *= prime + (locationDescription == null ? 0
+                : locationDescription.hashCode());
+
+        return hash;
+    }
+
+    /**
+     * This function is used to check whether two objects are equal. Here, it
+     * takes in an object, so we need to check that it's a NoTiFiLocationMove
+     * too.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null && obj instanceof NoTiFiLocationMove) {
+            NoTiFiLocationMove temp = (NoTiFiLocationMove) obj;
+            if (super.equals(temp) && userId == temp.getUserId()
+                    && 0 == Double.compare(longitude, temp.getLongitude())
+                    && 0 == Double.compare(latitude, temp.getLatitude())
+                    && (locationName == null ? temp.getLocationName() == null
+                            : locationName.equals(temp.getLocationName()))
+                    && (locationDescription == null
+                            ? temp.getLocationDescription() == null
+                            : locationDescription
+                                    .equals(temp.getLocationDescription()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function prints a textual representation of the object.
+     */
+    @Override
+    public String toString() {
+        return super.toString() + ", userID: " + userId + ", longitude: "
+                + longitude + ", latitude: " + latitude + ", location name: "
+                + locationName + ", location description: "
+                + locationDescription;
+    }
+}
@@ -15,7 +15,11 @@ package myn.notifi.protocol;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public abstract class NoTiFiMessage {
 
@@ -23,6 +27,10 @@ public abstract class NoTiFiMessage {
     final int VERSION = 3;
     /** A string to store the encoding. */
     public static final String ENCODING = "ASCII";
+    /** The character set for the encoding. */
+    static final Charset CHARSET = Charset.forName(ENCODING);
+    /** The position of the message ID byte in an encoded message. */
+    public static final int MSG_ID_OFFSET = 1;
     /** An int to store the message id. */
     int msgId;
 
@@ -49,9 +57,42 @@ public abstract class NoTiFiMessage {
         }
 
         /** Read in the bytes for the header. */
-        int codeByte = in.readUnsignedByte();
-        int msgIdByte = in.readUnsignedByte();
+        readHeader(in.readUnsignedByte(), in.readUnsignedByte());
+    }
 
+    /**
+     * This function constructs the base NoTiFiMessage class from a buffer,
+     * starting at its position. Like the stream constructor, it only reads
+     * the header, and moves the position past it.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer or the member
+     *             variables
+     */
+    public NoTiFiMessage(ByteBuffer in) throws IllegalArgumentException {
+        /** Make sure the buffer isn't null. */
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "ByteBuffer is null in Message constructor.");
+        }
+
+        readHeader(in.get() & 0xFF, in.get() & 0xFF);
+    }
+
+    /**
+     * This function checks the header's bytes and sets the message ID.
+     * 
+     * @param codeByte
+     *            the first byte, with the version and code
+     * @param msgIdByte
+     *            the second byte, with the message ID
+     * @throws IllegalArgumentException
+     *             if the version or code is wrong
+     */
+    private void readHeader(int codeByte, int msgIdByte)
+            throws IllegalArgumentException {
         /** Grab the code, then shift it over and grab the version. */
         int codeCode = (codeByte & 0x0F);
         int versionCode = (codeByte >>> 4) & 0x0F;
@@ -141,6 +182,21 @@ public abstract class NoTiFiMessage {
         case NoTiFiACK.CODE:
             toReturn = new NoTiFiACK(input);
             break;
+        case NoTiFiBatch.CODE:
+            toReturn = new NoTiFiBatch(input);
+            break;
+        case NoTiFiLocationMove.CODE:
+            toReturn = new NoTiFiLocationMove(input);
+            break;
+        case NoTiFiRegion.CODE:
+            toReturn = new NoTiFiRegion(input);
+            break;
+        case NoTiFiSequenced.CODE:
+            toReturn = new NoTiFiSequenced(input);
+            break;
+        case NoTiFiReceipt.CODE:
+            toReturn = new NoTiFiReceipt(input);
+            break;
         default:
             throw new IllegalArgumentException("Unexpected code: " + operation);
         }
@@ -156,6 +212,165 @@ public abstract class NoTiFiMessage {
         return toReturn;
     }
 
+    /**
+     * This function returns a NoTiFiMessage read from a buffer, from its
+     * position to its limit, which should be the entire packet and only one
+     * packet. Nothing is copied out of the buffer but the message's strings,
+     * so a buffer a packet was received into can be reused for the next one.
+     * The buffer's byte order doesn't matter and isn't changed, and its
+     * position is moved to its limit.
+     * 
+     * @param in
+     *            a buffer containing the data message
+     * @return a NoTiFiMessage sub class
+     * @throws IllegalArgumentException
+     *             if there is an issue with the message's values
+     * @throws IOException
+     *             if the message is cut short or has extra data
+     */
+    public static NoTiFiMessage decode(ByteBuffer in)
+            throws IllegalArgumentException, IOException {
+
+        /** The message to return in this factory function. */
+        NoTiFiMessage toReturn = null;
+
+        if (!in.hasRemaining()) {
+            throw new IOException("Buffer contains no data");
+        }
+
+        /** Read the code from the first byte, without moving past it. */
+        int operation = (in.get(in.position()) & 0x0F);
+
+        try {
+            switch (operation) {
+            case NoTiFiRegister.CODE:
+                toReturn = new NoTiFiRegister(in);
+                break;
+            case NoTiFiLocationAddition.CODE:
+                toReturn = new NoTiFiLocationAddition(in);
+                break;
+            case NoTiFiLocationDeletion.CODE:
+                toReturn = new NoTiFiLocationDeletion(in);
+                break;
+            case NoTiFiDeregister.CODE:
+                toReturn = new NoTiFiDeregister(in);
+                break;
+            case NoTiFiError.CODE:
+                toReturn = new NoTiFiError(in);
+                break;
+            case NoTiFiACK.CODE:
+                toReturn = new NoTiFiACK(in);
+                break;
+            case NoTiFiBatch.CODE:
+                toReturn = new NoTiFiBatch(in);
+                break;
+            case NoTiFiLocationMove.CODE:
+                toReturn = new NoTiFiLocationMove(in);
+                break;
+            case NoTiFiRegion.CODE:
+                toReturn = new NoTiFiRegion(in);
+                break;
+            case NoTiFiSequenced.CODE:
+                toReturn = new NoTiFiSequenced(in);
+                break;
+            case NoTiFiReceipt.CODE:
+                toReturn = new NoTiFiReceipt(in);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unexpected code: " + operation);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Message is cut short.");
+        }
+
+        /** Like the stream version, there can't be anything left over. */
+        if (in.hasRemaining()) {
+            throw new IOException("More data than necessary.");
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * This function writes the message into a buffer at its position, and
+     * moves the position past it. Nothing is allocated, so one buffer can be
+     * reused for every message sent. The buffer's byte order doesn't matter
+     * and isn't changed. This base version only writes the header.
+     * 
+     * @param out
+     *            the buffer to write to, which must have room for the message
+     * @throws IOException
+     *             if the message can't be encoded
+     * @throws java.nio.BufferOverflowException
+     *             if the buffer doesn't have room for the message
+     */
+    public void encodeTo(ByteBuffer out) throws IOException {
+        out.put((byte) ((VERSION << 4) | getCode()));
+        out.put((byte) msgId);
+    }
+
+    /**
+     * This function reads a string of the given length from a buffer. The
+     * characters are read straight out of a heap buffer's array.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @param length
+     *            the number of characters
+     * @return the string
+     * @throws BufferUnderflowException
+     *             if the buffer doesn't have that many bytes left
+     */
+    static String getString(ByteBuffer in, int length)
+            throws BufferUnderflowException {
+        if (in.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        String toReturn;
+        if (in.hasArray()) {
+            toReturn = new String(in.array(),
+                    in.arrayOffset() + in.position(), length, CHARSET);
+            in.position(in.position() + length);
+        } else {
+            byte[] data = new byte[length];
+            in.get(data);
+            toReturn = new String(data, CHARSET);
+        }
+        return toReturn;
+    }
+
+    /**
+     * This function writes a string's characters to a buffer, one byte each,
+     * with anything outside of ASCII written as a question mark the way
+     * String.getBytes() does.
+     * 
+     * @param out
+     *            the buffer to write to
+     * @param string
+     *            the string to write
+     */
+    static void putChars(ByteBuffer out, String string) {
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            out.put((byte) (c < 0x80 ? c : '?'));
+        }
+    }
+
+    /**
+     * This function writes a string to a buffer as its length byte followed
+     * by its characters.
+     * 
+     * @param out
+     *            the buffer to write to
+     * @param string
+     *            the string to write
+     */
+    static void putString(ByteBuffer out, String string) {
+        out.put((byte) string.length());
+        putChars(out, string);
+    }
+
     /**
      * This function performs the encode operation for the header. Very much
      * like the constructor, it only takes care of the header.
@@ -0,0 +1,275 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class serializes and deserializes a receipt message, which tells the
+ * server which sequenced notifications a client has and which it missed.
+ *
+ ************************************************/
+
+package myn.notifi.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class serializes and deserializes a receipt message. A client sends
+ * one to ask for reliable delivery, and then to say which sequenced
+ * notifications it has: every one up to and including a sequence number,
+ * which is 0 before the first, followed by ranges of later ones that it
+ * missed and wants sent again. After the header comes that sequence number
+ * as a 4 byte big endian integer, then a count byte, then the first and last
+ * sequence number of each missing range the same way.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiReceipt extends NoTiFiMessage {
+
+    /** Final variable for the Receipt code. */
+    public static final int CODE = 10;
+
+    /** The most missing ranges a receipt can hold. */
+    public static final int MAX_RANGES = 255;
+
+    /**
+     * The error a server sends when missing notifications are too old to be
+     * sent again, so the client has to get the locations some other way.
+     */
+    public static final String LOST_ERROR = "Notifications lost";
+
+    /** The last sequence number up to which every notification arrived. */
+    private int received;
+
+    /** The first and last sequence number of each missing range, in turn. */
+    private final List<Integer> missing = new ArrayList<Integer>();
+
+    /**
+     * Constructor that takes a stream and pulls the data from that.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    public NoTiFiReceipt(DataInputStream in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        setReceived(in.readInt());
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; ++i) {
+            addMissing(in.readInt(), in.readInt());
+        }
+    }
+
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiReceipt(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.BIG_ENDIAN);
+            setReceived(in.getInt());
+            int count = in.get() & 0xFF;
+            for (int i = 0; i < count; ++i) {
+                addMissing(in.getInt(), in.getInt());
+            }
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * This constructor is used to create a receipt with no missing ranges.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param received
+     *            the last sequence number up to which every notification
+     *            arrived, or 0 if none have
+     * @throws IllegalArgumentException
+     *             if there is a problem with the parameters
+     */
+    public NoTiFiReceipt(int msgId, int received)
+            throws IllegalArgumentException {
+        super(msgId);
+        setReceived(received);
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encode function to encode the
+     * header, the sequence number received up to, and the missing ranges.
+     */
+    @Override
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream toReturn = new ByteArrayOutputStream();
+        toReturn.write(super.encode());
+        DataOutputStream out = new DataOutputStream(toReturn);
+        out.writeInt(received);
+        out.writeByte(missing.size() / 2);
+        for (int sequence : missing) {
+            out.writeInt(sequence);
+        }
+
+        return toReturn.toByteArray();
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header, the sequence number received up to, and the missing ranges.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.BIG_ENDIAN);
+            out.putInt(received);
+            out.put((byte) (missing.size() / 2));
+            for (int sequence : missing) {
+                out.putInt(sequence);
+            }
+        } finally {
+            out.order(order);
+        }
+    }
+
+    /**
+     * This function is an implementation of NoTiFiMessage's abstract function.
+     * It simply needs to return the code for a receipt message.
+     */
+    public int getCode() {
+        return CODE;
+    }
+
+    /**
+     * Returns the last sequence number up to which every notification
+     * arrived.
+     * 
+     * @return the sequence number, or 0 if none have arrived
+     */
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * Returns the first and last sequence number of each missing range, in
+     * turn, so the list is twice as long as the number of ranges.
+     * 
+     * @return the ranges, which can't be changed
+     */
+    public List<Integer> getMissing() {
+        return Collections.unmodifiableList(missing);
+    }
+
+    /**
+     * This function sets the last sequence number up to which every
+     * notification arrived.
+     * 
+     * @param received
+     *            the sequence number, or 0 if none have arrived
+     * @throws IllegalArgumentException
+     *             if the sequence number is negative, or past a missing range
+     */
+    public void setReceived(int received) throws IllegalArgumentException {
+        if (received < 0) {
+            throw new IllegalArgumentException(
+                    "Negative received sequence number.");
+        }
+        if (!missing.isEmpty() && missing.get(0) <= received) {
+            throw new IllegalArgumentException(
+                    "Missing range before received sequence number.");
+        }
+        this.received = received;
+    }
+
+    /**
+     * This function adds a missing range after the last one.
+     * 
+     * @param first
+     *            the first sequence number missing
+     * @param last
+     *            the last sequence number missing
+     * @throws IllegalArgumentException
+     *             if the range is backwards, doesn't come after the sequence
+     *             number received up to and the last range, or the receipt
+     *             is full
+     */
+    public void addMissing(int first, int last)
+            throws IllegalArgumentException {
+        int after = missing.isEmpty() ? received
+                : missing.get(missing.size() - 1);
+        if (first <= after || last < first) {
+            throw new IllegalArgumentException("Bad missing range.");
+        }
+        if (missing.size() / 2 >= MAX_RANGES) {
+            throw new IllegalArgumentException("Too many missing ranges.");
+        }
+        missing.add(first);
+        missing.add(last);
+    }
+
+    /**
+     * This function provides a unique hash value for the object, based on the
+     * member variables.
+     */
+    @Override
+    public int hashCode() {
+        int prime = 13;
+        int hash = super.hashCode();
+
+        hash *= prime + received;
+        hash *= prime + missing.hashCode();
+
+        return hash;
+    }
+
+    /**
+     * This function is used to check whether two objects are equal. Here, it
+     * takes in an object, so we need to check that it's a NoTiFiReceipt too.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null && obj instanceof NoTiFiReceipt) {
+            NoTiFiReceipt temp = (NoTiFiReceipt) obj;
+            if (super.equals(temp) && received == temp.getReceived()
+                    && missing.equals(temp.getMissing())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function prints a textual representation of the object.
+     */
+    @Override
+    public String toString() {
+        StringBuilder toReturn = new StringBuilder(super.toString());
+        toReturn.append(", received: ").append(received)
+                .append(", missing:");
+        for (int i = 0; i < missing.size(); i += 2) {
+            toReturn.append(' ').append(missing.get(i)).append('-')
+                    .append(missing.get(i + 1));
+        }
+        return toReturn.toString();
+    }
+}
@@ -0,0 +1,296 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class serializes and deserializes a region message, which sets the
+ * area a registered client wants to be notified about.
+ *
+ ************************************************/
+
+package myn.notifi.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class serializes and deserializes a region message. A registered client
+ * sends one to be notified only of locations inside a box, given by its
+ * smallest and largest longitude and latitude as little endian doubles, like
+ * the coordinates of a location record. The edges of the box are inside it.
+ * A client that never sends one is notified of every location.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiRegion extends NoTiFiMessage {
+
+    /** Final variable for the Region code. */
+    public static final int CODE = 8;
+
+    /** The smallest longitude in the region. */
+    private double minLongitude;
+
+    /** The smallest latitude in the region. */
+    private double minLatitude;
+
+    /** The largest longitude in the region. */
+    private double maxLongitude;
+
+    /** The largest latitude in the region. */
+    private double maxLatitude;
+
+    /**
+     * Constructor that takes a stream and pulls the data from that.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    public NoTiFiRegion(DataInputStream in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        setBounds(readDouble(in), readDouble(in), readDouble(in),
+                readDouble(in));
+    }
+
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     */
+    public NoTiFiRegion(ByteBuffer in) throws IllegalArgumentException {
+        super(in);
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            setBounds(in.getDouble(), in.getDouble(), in.getDouble(),
+                    in.getDouble());
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * This constructor is used to create the message with passed in values.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param minLongitude
+     *            the smallest longitude in the region
+     * @param minLatitude
+     *            the smallest latitude in the region
+     * @param maxLongitude
+     *            the largest longitude in the region
+     * @param maxLatitude
+     *            the largest latitude in the region
+     * @throws IllegalArgumentException
+     *             if there is a problem with the parameters
+     */
+    public NoTiFiRegion(int msgId, double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude)
+                    throws IllegalArgumentException {
+        super(msgId);
+        setBounds(minLongitude, minLatitude, maxLongitude, maxLatitude);
+    }
+
+    /**
+     * This function reads a little endian double from a stream.
+     * 
+     * @param in
+     *            the stream to read from
+     * @return the double
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    private static double readDouble(DataInputStream in) throws IOException {
+        return Double.longBitsToDouble(Long.reverseBytes(in.readLong()));
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encode function to encode the
+     * header and the message's data.
+     */
+    @Override
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream toReturn = new ByteArrayOutputStream();
+        toReturn.write(super.encode());
+        DataOutputStream out = new DataOutputStream(toReturn);
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(minLongitude)));
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(minLatitude)));
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(maxLongitude)));
+        out.writeLong(Long.reverseBytes(Double.doubleToLongBits(maxLatitude)));
+
+        return toReturn.toByteArray();
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header and the message's data.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putDouble(minLongitude);
+            out.putDouble(minLatitude);
+            out.putDouble(maxLongitude);
+            out.putDouble(maxLatitude);
+        } finally {
+            out.order(order);
+        }
+    }
+
+    /**
+     * This function is an implementation of NoTiFiMessage's abstract function.
+     * It simply needs to return the code for a region message.
+     */
+    public int getCode() {
+        return CODE;
+    }
+
+    /**
+     * Returns whether a location is inside the region, edges included.
+     * 
+     * @param longitude
+     *            the longitude of the location
+     * @param latitude
+     *            the latitude of the location
+     * @return whether the location is inside
+     */
+    public boolean contains(double longitude, double latitude) {
+        return longitude >= minLongitude && longitude <= maxLongitude
+                && latitude >= minLatitude && latitude <= maxLatitude;
+    }
+
+    /**
+     * Returns the smallest longitude in the region.
+     * 
+     * @return the smallest longitude
+     */
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    /**
+     * Returns the smallest latitude in the region.
+     * 
+     * @return the smallest latitude
+     */
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    /**
+     * Returns the largest longitude in the region.
+     * 
+     * @return the largest longitude
+     */
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * Returns the largest latitude in the region.
+     * 
+     * @return the largest latitude
+     */
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    /**
+     * This function sets the edges of the region. They are set together, so
+     * the smallest values can be checked against the largest.
+     * 
+     * @param minLongitude
+     *            the smallest longitude in the region
+     * @param minLatitude
+     *            the smallest latitude in the region
+     * @param maxLongitude
+     *            the largest longitude in the region
+     * @param maxLatitude
+     *            the largest latitude in the region
+     * @throws IllegalArgumentException
+     *             if an edge isn't a number, or a smallest value is past the
+     *             largest
+     */
+    public void setBounds(double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude)
+                    throws IllegalArgumentException {
+        /** Written so that NaN fails the checks too. */
+        if (!(minLongitude <= maxLongitude)) {
+            throw new IllegalArgumentException("Bad region longitudes.");
+        }
+        if (!(minLatitude <= maxLatitude)) {
+            throw new IllegalArgumentException("Bad region latitudes.");
+        }
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.maxLongitude = maxLongitude;
+        this.maxLatitude = maxLatitude;
+    }
+
+    /**
+     * This function provides a unique hash value for the object, based on the
+     * member variables.
+     */
+    @Override
+    public int hashCode() {
+        int prime = 13;
+        int hash = super.hashCode();
+
+        hash *= prime + Double.hashCode(minLongitude);
+        hash *= prime + Double.hashCode(minLatitude);
+        hash *= prime + Double.hashCode(maxLongitude);
+        hash *= prime + Double.hashCode(maxLatitude);
+
+        return hash;
+    }
+
+    /**
+     * This function is used to check whether two objects are equal. Here, it
+     * takes in an object, so we need to check that it's a NoTiFiRegion too.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null && obj instanceof NoTiFiRegion) {
+            NoTiFiRegion temp = (NoTiFiRegion) obj;
+            if (super.equals(temp)
+                    && 0 == Double.compare(minLongitude,
+                            temp.getMinLongitude())
+                    && 0 == Double.compare(minLatitude, temp.getMinLatitude())
+                    && 0 == Double.compare(maxLongitude,
+                            temp.getMaxLongitude())
+                    && 0 == Double.compare(maxLatitude,
+                            temp.getMaxLatitude())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function prints a textual representation of the object.
+     */
+    @Override
+    public String toString() {
+        return super.toString() + ", min longitude: " + minLongitude
+                + ", min latitude: " + minLatitude + ", max longitude: "
+                + maxLongitude + ", max latitude: " + maxLatitude;
+    }
+}
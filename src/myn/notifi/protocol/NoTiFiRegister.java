@@ -17,6 +17,8 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This class serializes and deserializes a register message. It also stores the
@@ -89,6 +91,42 @@ public class NoTiFiRegister extends NoTiFiMessage {
         setPort(port);
     }
 
+    /**
+     * This function creates a register object from a buffer. The address and
+     * port are read little endian, per protocol, whatever the buffer's own
+     * byte order is.
+     * 
+     * @param in
+     *            the buffer to read the information from
+     * @throws IllegalArgumentException
+     *             if there was a problem with the buffer
+     * @throws IOException
+     *             if the address can't be made
+     */
+    public NoTiFiRegister(ByteBuffer in)
+            throws IllegalArgumentException, IOException {
+        /** Call the super constructor to read the header information. */
+        super(in);
+
+        int tempAddress;
+        int tempPort;
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            tempAddress = in.getInt();
+            tempPort = in.getShort() & 0xFFFF;
+        } finally {
+            in.order(order);
+        }
+
+        /** Read little endian, the int now has the first octet on top. */
+        byte[] addressBytes = { (byte) (tempAddress >>> 24),
+                (byte) (tempAddress >>> 16), (byte) (tempAddress >>> 8),
+                (byte) tempAddress };
+        setAddress((Inet4Address) Inet4Address.getByAddress(addressBytes));
+        setPort(tempPort);
+    }
+
     /**
      * Basic constructor that takes in parameters instead of an input stream. In
      * this case, we just call the setters so that they can perform the data
@@ -150,6 +188,27 @@ public class NoTiFiRegister extends NoTiFiMessage {
         return toReturn.toByteArray();
     }
 
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header, then the address and port in little endian order.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        byte[] inetaddr = address.getAddress();
+        int tempAddress = ((inetaddr[0] & 0xFF) << 24)
+                | ((inetaddr[1] & 0xFF) << 16) | ((inetaddr[2] & 0xFF) << 8)
+                | (inetaddr[3] & 0xFF);
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(tempAddress);
+            out.putShort((short) port);
+        } finally {
+            out.order(order);
+        }
+    }
+
     /**
      * This function is an implementation of NoTiFiMessage's abstract function.
      * It simply needs to return the code for a register message.
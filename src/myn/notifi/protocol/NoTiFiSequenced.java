@@ -0,0 +1,244 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class serializes and deserializes a sequenced message, which numbers
+ * a notification so a client can tell when one was lost.
+ *
+ ************************************************/
+
+package myn.notifi.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class serializes and deserializes a sequenced message. It wraps a
+ * location addition, deletion, move or batch sent to a client that asked for
+ * reliable delivery, numbering it so the client can put notifications back in
+ * order and ask for the ones it missed with a receipt. Each client's
+ * notifications are numbered on their own, from 1. After the header comes
+ * the sequence number as a 4 byte big endian integer, followed by the whole
+ * notification, header and all.
+ * 
+ * @version 3 December 2015
+ * @author Austin Sandlin
+ */
+public class NoTiFiSequenced extends NoTiFiMessage {
+
+    /** Final variable for the Sequenced code. */
+    public static final int CODE = 9;
+
+    /** The bytes a sequenced message adds to the notification it wraps. */
+    public static final int OVERHEAD = 6;
+
+    /** The notification's sequence number. */
+    private int sequence;
+
+    /** The notification. */
+    private NoTiFiMessage message;
+
+    /**
+     * Constructor that takes a stream and pulls the data from that.
+     * 
+     * @param in
+     *            the stream to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the stream
+     * @throws IOException
+     *             if there was a problem during I/O
+     */
+    public NoTiFiSequenced(DataInputStream in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        setSequence(in.readInt());
+        /** The notification is the rest of the packet. */
+        byte[] rest = new byte[in.available()];
+        in.readFully(rest);
+        setMessage(NoTiFiMessage.decode(rest));
+    }
+
+    /**
+     * Constructor that takes a buffer and pulls the data from that.
+     * 
+     * @param in
+     *            the buffer to read from
+     * @throws IllegalArgumentException
+     *             if there is a problem with the buffer
+     * @throws IOException
+     *             if the notification is cut short or has extra data
+     */
+    public NoTiFiSequenced(ByteBuffer in)
+            throws IllegalArgumentException, IOException {
+        super(in);
+        ByteOrder order = in.order();
+        try {
+            in.order(ByteOrder.BIG_ENDIAN);
+            setSequence(in.getInt());
+        } finally {
+            in.order(order);
+        }
+        setMessage(NoTiFiMessage.decode(in));
+    }
+
+    /**
+     * This constructor is used to create the message with passed in values.
+     * 
+     * @param msgId
+     *            the message ID
+     * @param sequence
+     *            the notification's sequence number
+     * @param message
+     *            a location addition, deletion, move or batch
+     * @throws IllegalArgumentException
+     *             if there is a problem with the parameters
+     */
+    public NoTiFiSequenced(int msgId, int sequence, NoTiFiMessage message)
+            throws IllegalArgumentException {
+        super(msgId);
+        setSequence(sequence);
+        setMessage(message);
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encode function to encode the
+     * header, the sequence number and the notification.
+     */
+    @Override
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream toReturn = new ByteArrayOutputStream();
+        toReturn.write(super.encode());
+        DataOutputStream out = new DataOutputStream(toReturn);
+        out.writeInt(sequence);
+        out.write(message.encode());
+
+        return toReturn.toByteArray();
+    }
+
+    /**
+     * This function overrides NoTiFiMessage's encodeTo function to write the
+     * header, the sequence number and the notification.
+     */
+    @Override
+    public void encodeTo(ByteBuffer out) throws IOException {
+        super.encodeTo(out);
+        ByteOrder order = out.order();
+        try {
+            out.order(ByteOrder.BIG_ENDIAN);
+            out.putInt(sequence);
+        } finally {
+            out.order(order);
+        }
+        message.encodeTo(out);
+    }
+
+    /**
+     * This function is an implementation of NoTiFiMessage's abstract function.
+     * It simply needs to return the code for a sequenced message.
+     */
+    public int getCode() {
+        return CODE;
+    }
+
+    /**
+     * Returns the notification's sequence number.
+     * 
+     * @return the sequence number
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the notification.
+     * 
+     * @return a location addition, deletion, move or batch
+     */
+    public NoTiFiMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * This function sets the sequence number to a passed in value.
+     * 
+     * @param sequence
+     *            the sequence number, which starts at 1
+     * @throws IllegalArgumentException
+     *             if the sequence number isn't positive
+     */
+    public void setSequence(int sequence) throws IllegalArgumentException {
+        if (sequence <= 0) {
+            throw new IllegalArgumentException(
+                    "Sequence number must be positive.");
+        }
+        this.sequence = sequence;
+    }
+
+    /**
+     * This function sets the notification to a passed in value.
+     * 
+     * @param message
+     *            a location addition, deletion, move or batch
+     * @throws IllegalArgumentException
+     *             if the message isn't a notification
+     */
+    public void setMessage(NoTiFiMessage message)
+            throws IllegalArgumentException {
+        if (!(message instanceof NoTiFiLocationAddition
+                || message instanceof NoTiFiLocationDeletion
+                || message instanceof NoTiFiLocationMove
+                || message instanceof NoTiFiBatch)) {
+            throw new IllegalArgumentException(
+                    "Only notifications can be sequenced.");
+        }
+        this.message = message;
+    }
+
+    /**
+     * This function provides a unique hash value for the object, based on the
+     * member variables.
+     */
+    @Override
+    public int hashCode() {
+        int prime = 13;
+        int hash = super.hashCode();
+
+        hash *= prime + sequence;
+        hash *= prime + message.hashCode();
+
+        return hash;
+    }
+
+    /**
+     * This function is used to check whether two objects are equal. Here, it
+     * takes in an object, so we need to check that it's a NoTiFiSequenced
+     * too.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null && obj instanceof NoTiFiSequenced) {
+            NoTiFiSequenced temp = (NoTiFiSequenced) obj;
+            if (super.equals(temp) && sequence == temp.getSequence()
+                    && message.equals(temp.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function prints a textual representation of the object.
+     */
+    @Override
+    public String toString() {
+        return super.toString() + ", sequence: " + sequence + ", message: ("
+                + message + ")";
+    }
+}
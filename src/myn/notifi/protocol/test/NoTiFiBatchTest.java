@@ -0,0 +1,155 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiBatch class.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiACK;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiLocationDeletion;
+import myn.notifi.protocol.NoTiFiLocationMove;
+import myn.notifi.protocol.NoTiFiMessage;
+
+public class NoTiFiBatchTest {
+    byte[] input = new byte[] {
+
+            (byte) (0x36), (byte) (0x07), (byte) (0x02),
+
+            (byte) (0x02),
+
+            (byte) (0x00), (byte) (0x4D),
+
+            (byte) (0xB7), (byte) (0x7A), (byte) (0x4E), (byte) (0x7A),
+            (byte) (0xDF), (byte) (0x8C), (byte) (0x3F), (byte) (0x40),
+
+            (byte) (0x71), (byte) (0xE6), (byte) (0x57), (byte) (0x73),
+            (byte) (0x80), (byte) (0x47), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x02), (byte) (0x42), (byte) (0x55), (byte) (0x06),
+            (byte) (0x42), (byte) (0x41), (byte) (0x59), (byte) (0x4C),
+            (byte) (0x4F), (byte) (0x52),
+
+            (byte) (0x01),
+
+            (byte) (0x00), (byte) (0x4D),
+
+            (byte) (0xB7), (byte) (0x7A), (byte) (0x4E), (byte) (0x7A),
+            (byte) (0xDF), (byte) (0x8C), (byte) (0x3F), (byte) (0x40),
+
+            (byte) (0x71), (byte) (0xE6), (byte) (0x57), (byte) (0x73),
+            (byte) (0x80), (byte) (0x47), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x02), (byte) (0x42), (byte) (0x55), (byte) (0x06),
+            (byte) (0x42), (byte) (0x41), (byte) (0x59), (byte) (0x4C),
+            (byte) (0x4F), (byte) (0x52) };
+    LocationRecord location = new LocationRecord(77, 31.550285, -97.117215,
+            "BU", "BAYLOR");
+
+    @Test
+    public void testStreamConstructor()
+            throws IllegalArgumentException, IOException {
+        NoTiFiBatch temp = (NoTiFiBatch) NoTiFiMessage.decode(input);
+        assertEquals(temp.getCode(), 6);
+        assertEquals(temp.getMsgId(), 7);
+        assertEquals(temp.getMessages().size(), 2);
+        assertEquals(temp.getMessages().get(0),
+                new NoTiFiLocationDeletion(7, location));
+        assertEquals(temp.getMessages().get(1),
+                new NoTiFiLocationAddition(7, location));
+    }
+
+    @Test
+    public void testParamConstructor() throws IllegalArgumentException {
+        NoTiFiBatch temp = new NoTiFiBatch(7);
+        temp.addMessage(new NoTiFiLocationDeletion(0, location));
+        temp.addMessage(new NoTiFiLocationAddition(0, location));
+        assertEquals(temp.getCode(), 6);
+        assertEquals(temp.getMsgId(), 7);
+        assertEquals(temp.getMessages().size(), 2);
+        assertEquals(temp.getLength(), input.length);
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        NoTiFiBatch temp = new NoTiFiBatch(7);
+        temp.addMessage(new NoTiFiLocationDeletion(0, location));
+        temp.addMessage(new NoTiFiLocationAddition(0, location));
+        assertArrayEquals(temp.encode(), input);
+        assertEquals(NoTiFiMessage.decode(input), temp);
+    }
+
+    @Test
+    public void testCanAdd() throws IllegalArgumentException {
+        NoTiFiBatch temp = new NoTiFiBatch(0);
+        NoTiFiLocationAddition addition = new NoTiFiLocationAddition(0,
+                location);
+        assertTrue(temp.canAdd(addition, 32));
+        assertFalse(temp.canAdd(addition, 31));
+        for (int i = 0; i < NoTiFiBatch.MAX_RECORDS; ++i) {
+            temp.addMessage(addition);
+        }
+        assertFalse(temp.canAdd(addition, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMove() throws IOException {
+        NoTiFiBatch temp = new NoTiFiBatch(7);
+        temp.addMessage(new NoTiFiLocationAddition(0, location));
+        temp.addMessage(new NoTiFiLocationMove(0, 77, 1.5, 2.5, null, "WACO"));
+        assertEquals(temp.getLength(), 3 + 29 + 1 + 19 + 5);
+        assertEquals(temp.getMessages().get(1),
+                new NoTiFiLocationMove(7, 77, 1.5, 2.5, null, "WACO"));
+
+        byte[] encoded = temp.encode();
+        assertEquals(encoded.length, temp.getLength());
+        assertEquals(NoTiFiMessage.decode(encoded), temp);
+
+        temp.setMsgId(8);
+        assertEquals(temp.getMessages().get(1).getMsgId(), 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddWrongMessage() throws IllegalArgumentException {
+        new NoTiFiBatch(0).addMessage(new NoTiFiACK(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBatch() throws IllegalArgumentException, IOException {
+        NoTiFiMessage.decode(new byte[] { (byte) 0x36, 0, 0 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongRecordCode()
+            throws IllegalArgumentException, IOException {
+        byte[] wrong = input.clone();
+        wrong[3] = 5;
+        NoTiFiMessage.decode(wrong);
+    }
+
+    @Test
+    public void testToString() throws IllegalArgumentException, IOException {
+        NoTiFiBatch temp = new NoTiFiBatch(7);
+        temp.addMessage(new NoTiFiLocationAddition(0, location));
+        assertEquals(temp.toString(),
+                "version: 3, msgId: 7, code: 6, records: 1, addition: userID: 77, longitude: 31.550285, latitude: -97.117215, location name: BU, location description: BAYLOR");
+    }
+
+}
@@ -0,0 +1,131 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for decoding and encoding NoTiFi messages
+ * with ByteBuffers.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiACK;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiDeregister;
+import myn.notifi.protocol.NoTiFiError;
+import myn.notifi.protocol.NoTiFiLocationAddition;
+import myn.notifi.protocol.NoTiFiLocationDeletion;
+import myn.notifi.protocol.NoTiFiLocationMove;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiRegister;
+
+public class NoTiFiByteBufferTest {
+    LocationRecord location = new LocationRecord(77, 31.550285, -97.117215,
+            "BU", "BAYLOR");
+
+    /**
+     * Makes one of every kind of message.
+     * 
+     * @return the messages
+     * @throws IOException
+     *             if the address can't be made
+     */
+    private NoTiFiMessage[] messages() throws IOException {
+        Inet4Address address = (Inet4Address) Inet4Address
+                .getByAddress(new byte[] { (byte) 192, (byte) 168, 1, 2 });
+        NoTiFiBatch batch = new NoTiFiBatch(9);
+        batch.addMessage(new NoTiFiLocationDeletion(0, location));
+        batch.addMessage(new NoTiFiLocationMove(0, 77, 1.5, 2.5, null, "WACO"));
+        return new NoTiFiMessage[] { new NoTiFiRegister(1, address, 5000),
+                new NoTiFiLocationAddition(2, location),
+                new NoTiFiLocationDeletion(3, location),
+                new NoTiFiDeregister(4, address, 65535),
+                new NoTiFiError(5, "Unknown client"), new NoTiFiACK(6), batch,
+                new NoTiFiLocationMove(7, 77, 1.5, 2.5, "BU", null) };
+    }
+
+    @Test
+    public void testEncodeToMatchesEncode() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(NoTiFiBatch.MAX_LENGTH);
+        for (NoTiFiMessage message : messages()) {
+            buffer.clear();
+            message.encodeTo(buffer);
+            assertArrayEquals(message.encode(),
+                    Arrays.copyOf(buffer.array(), buffer.position()));
+        }
+    }
+
+    @Test
+    public void testDecodeMatchesStream() throws IOException {
+        for (NoTiFiMessage message : messages()) {
+            byte[] encoded = message.encode();
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            NoTiFiMessage decoded = NoTiFiMessage.decode(buffer);
+            assertEquals(NoTiFiMessage.decode(encoded), decoded);
+            assertEquals(message.toString(), decoded.toString());
+            assertEquals(encoded.length, buffer.position());
+        }
+    }
+
+    @Test
+    public void testReusedDirectBuffer() throws IOException {
+        /** The byte order of the buffer shouldn't matter, or be changed. */
+        ByteBuffer buffer = ByteBuffer.allocateDirect(NoTiFiBatch.MAX_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (NoTiFiMessage message : messages()) {
+            buffer.clear();
+            message.encodeTo(buffer);
+            buffer.flip();
+            assertEquals(message.toString(),
+                    NoTiFiMessage.decode(buffer).toString());
+            assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        }
+    }
+
+    @Test
+    public void testSlice() throws IOException {
+        /** A slice's array doesn't start at its first byte. */
+        byte[] encoded = new NoTiFiLocationAddition(2, location).encode();
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 5);
+        buffer.position(5);
+        ByteBuffer slice = buffer.slice();
+        slice.put(encoded);
+        slice.flip();
+        assertEquals(location, ((NoTiFiLocationAddition) NoTiFiMessage
+                .decode(slice)).getLocationRecord());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testCutShort() throws IOException {
+        byte[] encoded = new NoTiFiLocationAddition(2, location).encode();
+        NoTiFiMessage.decode(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testExtraData() throws IOException {
+        byte[] encoded = Arrays.copyOf(new NoTiFiACK(2).encode(), 3);
+        NoTiFiMessage.decode(ByteBuffer.wrap(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongVersion() throws IOException {
+        NoTiFiMessage.decode(ByteBuffer.wrap(new byte[] { 0x25, 0 }));
+    }
+
+}
@@ -0,0 +1,100 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiLocationMove class.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.NoTiFiLocationMove;
+import myn.notifi.protocol.NoTiFiMessage;
+
+public class NoTiFiLocationMoveTest {
+    byte[] input = new byte[] {
+
+            (byte) (0x37), (byte) (0x00),
+
+            (byte) (0x00), (byte) (0x4D),
+
+            (byte) (0xB7), (byte) (0x7A), (byte) (0x4E), (byte) (0x7A),
+            (byte) (0xDF), (byte) (0x8C), (byte) (0x3F), (byte) (0x40),
+
+            (byte) (0x71), (byte) (0xE6), (byte) (0x57), (byte) (0x73),
+            (byte) (0x80), (byte) (0x47), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x01),
+
+            (byte) (0x02), (byte) (0x42), (byte) (0x55) };
+
+    @Test
+    public void testStreamConstructor()
+            throws IllegalArgumentException, IOException {
+        NoTiFiLocationMove temp = (NoTiFiLocationMove) NoTiFiMessage
+                .decode(input);
+        assertEquals(temp.getCode(), 7);
+        assertEquals(temp.getMsgId(), 0);
+        assertEquals(temp.getUserId(), 77);
+        assertEquals(temp.getLongitude(), 31.550285, 0);
+        assertEquals(temp.getLatitude(), -97.117215, 0);
+        assertEquals(temp.getLocationName(), "BU");
+        assertNull(temp.getLocationDescription());
+    }
+
+    @Test
+    public void testParamConstructor() throws IllegalArgumentException {
+        NoTiFiLocationMove temp = new NoTiFiLocationMove(0, 77, 31.550285,
+                -97.117215, null, "BAYLOR");
+        assertEquals(temp.getCode(), 7);
+        assertNull(temp.getLocationName());
+        assertEquals(temp.getLocationDescription(), "BAYLOR");
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        NoTiFiLocationMove temp = new NoTiFiLocationMove(0, 77, 31.550285,
+                -97.117215, "BU", null);
+        assertArrayEquals(temp.encode(), input);
+        assertEquals(NoTiFiMessage.decode(input), temp);
+    }
+
+    @Test
+    public void testEncodeBoth() throws IOException {
+        NoTiFiLocationMove temp = new NoTiFiLocationMove(9, 77, 1.5, 2.5,
+                "BU", "BAYLOR");
+        assertEquals(NoTiFiMessage.decode(temp.encode()), temp);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadFlags() throws IllegalArgumentException, IOException {
+        byte[] wrong = input.clone();
+        wrong[20] = 4;
+        NoTiFiMessage.decode(wrong);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadUserId() throws IllegalArgumentException {
+        new NoTiFiLocationMove(0, 0x10000, 1.5, 2.5, null, null);
+    }
+
+    @Test
+    public void testToString() throws IllegalArgumentException, IOException {
+        NoTiFiLocationMove temp = (NoTiFiLocationMove) NoTiFiMessage
+                .decode(input);
+        assertEquals(temp.toString(),
+                "version: 3, msgId: 0, code: 7, userID: 77, longitude: 31.550285, latitude: -97.117215, location name: BU, location description: null");
+    }
+
+}
@@ -0,0 +1,99 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiReceipt class.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiReceipt;
+
+public class NoTiFiReceiptTest {
+    byte[] input = new byte[] {
+
+            (byte) (0x3A), (byte) (0x07),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x05),
+
+            (byte) (0x02),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x07),
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x08),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x0A),
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x0A) };
+
+    @Test
+    public void testStreamConstructor()
+            throws IllegalArgumentException, IOException {
+        NoTiFiReceipt temp = (NoTiFiReceipt) NoTiFiMessage.decode(input);
+        assertEquals(temp.getCode(), 10);
+        assertEquals(temp.getMsgId(), 7);
+        assertEquals(temp.getReceived(), 5);
+        assertEquals(temp.getMissing(), Arrays.asList(7, 8, 10, 10));
+    }
+
+    @Test
+    public void testBufferConstructor()
+            throws IllegalArgumentException, IOException {
+        assertEquals(NoTiFiMessage.decode(ByteBuffer.wrap(input)),
+                NoTiFiMessage.decode(input));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        NoTiFiReceipt temp = new NoTiFiReceipt(7, 5);
+        temp.addMissing(7, 8);
+        temp.addMissing(10, 10);
+        assertArrayEquals(temp.encode(), input);
+        ByteBuffer out = ByteBuffer.allocate(input.length);
+        temp.encodeTo(out);
+        assertArrayEquals(out.array(), input);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        NoTiFiReceipt temp = new NoTiFiReceipt(3, 0);
+        assertEquals(temp.encode().length, 7);
+        assertEquals(NoTiFiMessage.decode(temp.encode()), temp);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangeBeforeReceived() {
+        new NoTiFiReceipt(0, 5).addMissing(5, 6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlappingRanges() {
+        NoTiFiReceipt temp = new NoTiFiReceipt(0, 5);
+        temp.addMissing(7, 9);
+        temp.addMissing(9, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBackwardsRange() {
+        new NoTiFiReceipt(0, 5).addMissing(8, 7);
+    }
+
+    @Test
+    public void testToString() throws IllegalArgumentException, IOException {
+        assertEquals(NoTiFiMessage.decode(input).toString(),
+                "version: 3, msgId: 7, code: 10, received: 5, missing: 7-8 10-10");
+    }
+
+}
@@ -0,0 +1,104 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiRegion class.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiRegion;
+
+public class NoTiFiRegionTest {
+    byte[] input = new byte[] {
+
+            (byte) (0x38), (byte) (0x05),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x00),
+            (byte) (0x00), (byte) (0x60), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x00),
+            (byte) (0x00), (byte) (0x40), (byte) (0x3F), (byte) (0x40),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x00),
+            (byte) (0x00), (byte) (0x40), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x00), (byte) (0x00),
+            (byte) (0x00), (byte) (0xC0), (byte) (0x3F), (byte) (0x40) };
+
+    @Test
+    public void testStreamConstructor()
+            throws IllegalArgumentException, IOException {
+        NoTiFiRegion temp = (NoTiFiRegion) NoTiFiMessage.decode(input);
+        assertEquals(temp.getCode(), 8);
+        assertEquals(temp.getMsgId(), 5);
+        assertEquals(temp.getMinLongitude(), -97.5, 0);
+        assertEquals(temp.getMinLatitude(), 31.25, 0);
+        assertEquals(temp.getMaxLongitude(), -97.0, 0);
+        assertEquals(temp.getMaxLatitude(), 31.75, 0);
+    }
+
+    @Test
+    public void testBufferConstructor()
+            throws IllegalArgumentException, IOException {
+        assertEquals(NoTiFiMessage.decode(ByteBuffer.wrap(input)),
+                NoTiFiMessage.decode(input));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        NoTiFiRegion temp = new NoTiFiRegion(5, -97.5, 31.25, -97.0, 31.75);
+        assertArrayEquals(temp.encode(), input);
+        ByteBuffer out = ByteBuffer.allocate(input.length);
+        temp.encodeTo(out);
+        assertArrayEquals(out.array(), input);
+    }
+
+    @Test
+    public void testContains() {
+        NoTiFiRegion temp = new NoTiFiRegion(5, -97.5, 31.25, -97.0, 31.75);
+        assertTrue(temp.contains(-97.2, 31.5));
+        assertTrue(temp.contains(-97.5, 31.75));
+        assertFalse(temp.contains(-96.9, 31.5));
+        assertFalse(temp.contains(-97.2, 31.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBackwardsLongitudes() {
+        new NoTiFiRegion(0, -97.0, 31.25, -97.5, 31.75);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaN() {
+        new NoTiFiRegion(0, -97.5, Double.NaN, -97.0, 31.75);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTooShort() throws IllegalArgumentException, IOException {
+        byte[] wrong = new byte[input.length - 1];
+        System.arraycopy(input, 0, wrong, 0, wrong.length);
+        NoTiFiMessage.decode(wrong);
+    }
+
+    @Test
+    public void testToString() throws IllegalArgumentException, IOException {
+        assertEquals(NoTiFiMessage.decode(input).toString(),
+                "version: 3, msgId: 5, code: 8, min longitude: -97.5, min latitude: 31.25, max longitude: -97.0, max latitude: 31.75");
+    }
+
+}
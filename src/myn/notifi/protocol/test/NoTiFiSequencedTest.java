@@ -0,0 +1,108 @@
+/************************************************
+ *
+ * Author:      Austin Sandlin
+ * Assignment:  Program 8
+ * Class:       CSI 4321 - Data Communications
+ * Date:        3 December 2015
+ *
+ * This class is a JUnit 4 test for the NoTiFiSequenced class.
+ *
+ ************************************************/
+
+package myn.notifi.protocol.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import myn.notifi.protocol.LocationRecord;
+import myn.notifi.protocol.NoTiFiACK;
+import myn.notifi.protocol.NoTiFiBatch;
+import myn.notifi.protocol.NoTiFiLocationDeletion;
+import myn.notifi.protocol.NoTiFiMessage;
+import myn.notifi.protocol.NoTiFiSequenced;
+
+public class NoTiFiSequencedTest {
+    byte[] input = new byte[] {
+
+            (byte) (0x39), (byte) (0x07),
+
+            (byte) (0x00), (byte) (0x00), (byte) (0x01), (byte) (0x02),
+
+            (byte) (0x32), (byte) (0x00),
+
+            (byte) (0x00), (byte) (0x4D),
+
+            (byte) (0xB7), (byte) (0x7A), (byte) (0x4E), (byte) (0x7A),
+            (byte) (0xDF), (byte) (0x8C), (byte) (0x3F), (byte) (0x40),
+
+            (byte) (0x71), (byte) (0xE6), (byte) (0x57), (byte) (0x73),
+            (byte) (0x80), (byte) (0x47), (byte) (0x58), (byte) (0xC0),
+
+            (byte) (0x02), (byte) (0x42), (byte) (0x55), (byte) (0x06),
+            (byte) (0x42), (byte) (0x41), (byte) (0x59), (byte) (0x4C),
+            (byte) (0x4F), (byte) (0x52) };
+    LocationRecord location = new LocationRecord(77, 31.550285, -97.117215,
+            "BU", "BAYLOR");
+
+    @Test
+    public void testStreamConstructor()
+            throws IllegalArgumentException, IOException {
+        NoTiFiSequenced temp = (NoTiFiSequenced) NoTiFiMessage.decode(input);
+        assertEquals(temp.getCode(), 9);
+        assertEquals(temp.getMsgId(), 7);
+        assertEquals(temp.getSequence(), 258);
+        assertEquals(temp.getMessage(),
+                new NoTiFiLocationDeletion(0, location));
+    }
+
+    @Test
+    public void testBufferConstructor()
+            throws IllegalArgumentException, IOException {
+        assertEquals(NoTiFiMessage.decode(ByteBuffer.wrap(input)),
+                NoTiFiMessage.decode(input));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        NoTiFiSequenced temp = new NoTiFiSequenced(7, 258,
+                new NoTiFiLocationDeletion(0, location));
+        assertArrayEquals(temp.encode(), input);
+        ByteBuffer out = ByteBuffer.allocate(input.length);
+        temp.encodeTo(out);
+        assertArrayEquals(out.array(), input);
+        assertEquals(temp.encode().length,
+                temp.getMessage().encode().length + NoTiFiSequenced.OVERHEAD);
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        NoTiFiBatch batch = new NoTiFiBatch(0);
+        batch.addMessage(new NoTiFiLocationDeletion(0, location));
+        batch.addMessage(new NoTiFiLocationDeletion(0, location));
+        NoTiFiSequenced temp = new NoTiFiSequenced(1, 1, batch);
+        assertEquals(NoTiFiMessage.decode(temp.encode()), temp);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotANotification() {
+        new NoTiFiSequenced(0, 1, new NoTiFiACK(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSequence() {
+        new NoTiFiSequenced(0, 0, new NoTiFiLocationDeletion(0, location));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCutShort() throws IllegalArgumentException, IOException {
+        byte[] wrong = new byte[input.length - 1];
+        System.arraycopy(input, 0, wrong, 0, wrong.length);
+        NoTiFiMessage.decode(wrong);
+    }
+
+}